@@ -18,6 +18,11 @@ package com.ctrip.framework.apollo;
 
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -35,6 +40,75 @@ public interface ConfigFile {
    */
   boolean hasContent();
 
+  /**
+   * Get file content of the namespace as a stream of UTF-8 bytes, which is useful for large content
+   * such as certificates, rule sets or scripts.
+   *
+   * @return the stream of the file content, {@code null} if there is no content
+   *
+   * @since 2.6.0
+   */
+  default InputStream getContentAsStream() {
+    String content = getContent();
+    if (content == null) {
+      return null;
+    }
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Get file content of the namespace as UTF-8 bytes. The returned buffer is read only, so that it
+   * could be shared by all the callers instead of being copied for each of them.
+   *
+   * @return the read only buffer of the file content, {@code null} if there is no content
+   *
+   * @since 2.6.0
+   */
+  default ByteBuffer getContentBytes() {
+    String content = getContent();
+    if (content == null) {
+      return null;
+    }
+    return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+  }
+
+  /**
+   * Get the file content deserialized into an object of the type, which is memoized until the
+   * content is changed, so that it is not deserialized on every access.
+   * <p>
+   * The object is memoized per type, so the deserializer passed in the first call of the type is used
+   * for all the calls of the type, as well as whether to rebuild it in the background.
+   *
+   * @param type         the type of the object
+   * @param deserializer the function to deserialize the file content, which is only called with non
+   *                     null content
+   * @return the object, {@code null} if there is no content
+   *
+   * @since 2.6.0
+   */
+  default <T> T asObject(Class<T> type, Function<String, T> deserializer) {
+    String content = getContent();
+    return content == null ? null : deserializer.apply(content);
+  }
+
+  /**
+   * Same as {@link #asObject(Class, Function)}, except that the object may be rebuilt in the
+   * background once the content is changed, and the previous object is returned until the new one is
+   * ready, so that the callers are not blocked by the deserialization. The previous object is kept if
+   * the new content fails to be deserialized.
+   *
+   * @param type                the type of the object
+   * @param deserializer        the function to deserialize the file content, which is only called
+   *                            with non null content
+   * @param rebuildInBackground whether to rebuild the object in the background
+   * @return the object, {@code null} if there is no content
+   *
+   * @since 2.6.0
+   */
+  default <T> T asObject(Class<T> type, Function<String, T> deserializer, boolean rebuildInBackground) {
+    return asObject(type, deserializer);
+  }
+
   /**
    * Get the appId of this config file instance
    * @return the appId
@@ -23,10 +23,14 @@ import com.ctrip.framework.apollo.core.utils.DeferredLoggerFactory;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 
@@ -38,7 +42,9 @@ import com.ctrip.framework.apollo.model.ConfigFileChangeEvent;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -52,8 +58,11 @@ public abstract class AbstractConfigFile implements ConfigFile, RepositoryChange
   protected final AtomicReference<Properties> m_configProperties;
   private final List<ConfigFileChangeListener> m_listeners = Lists.newCopyOnWriteArrayList();
   protected final PropertiesFactory propertiesFactory;
+  private final ConcurrentMap<Class<?>, MaterializedObject<?>> m_materializedObjects = Maps.newConcurrentMap();
 
   private volatile ConfigSourceType m_sourceType = ConfigSourceType.NONE;
+  //increased on each change of the content, so that the materialized objects are rebuilt
+  private volatile long m_contentVersion;
 
   static {
     m_executorService = Executors.newCachedThreadPool(ApolloThreadFactory
@@ -81,6 +90,9 @@ public abstract class AbstractConfigFile implements ConfigFile, RepositoryChange
       //register the change listener no matter config repository is working or not
       //so that whenever config repository is recovered, config could get changed
       m_configRepository.addChangeListener(this);
+      if (m_configProperties.get() != null) {
+        AbstractConfigRepository.catchUpWithRepository(m_configRepository, m_appId, m_namespace, this);
+      }
     }
   }
 
@@ -111,8 +123,12 @@ public abstract class AbstractConfigFile implements ConfigFile, RepositoryChange
 
     String oldValue = getContent();
 
-    update(newProperties);
+    update(newConfigProperties);
     m_sourceType = m_configRepository.getSourceType();
+    m_contentVersion++;
+    for (MaterializedObject<?> materializedObject : m_materializedObjects.values()) {
+      materializedObject.onContentChange();
+    }
 
     String newValue = getContent();
 
@@ -129,6 +145,26 @@ public abstract class AbstractConfigFile implements ConfigFile, RepositoryChange
     Tracer.logEvent(APOLLO_CLIENT_CONFIGCHANGES, m_namespace);
   }
 
+  @Override
+  public <T> T asObject(Class<T> type, Function<String, T> deserializer) {
+    return asObject(type, deserializer, false);
+  }
+
+  @Override
+  public <T> T asObject(Class<T> type, Function<String, T> deserializer, boolean rebuildInBackground) {
+    Preconditions.checkNotNull(type, "type cannot be null");
+    Preconditions.checkNotNull(deserializer, "deserializer cannot be null");
+    MaterializedObject<?> materializedObject = m_materializedObjects.get(type);
+    if (materializedObject == null) {
+      materializedObject = new MaterializedObject<>(type, deserializer, rebuildInBackground);
+      MaterializedObject<?> previous = m_materializedObjects.putIfAbsent(type, materializedObject);
+      if (previous != null) {
+        materializedObject = previous;
+      }
+    }
+    return type.cast(materializedObject.get());
+  }
+
   @Override
   public void addChangeListener(ConfigFileChangeListener listener) {
     if (!m_listeners.contains(listener)) {
@@ -146,6 +182,115 @@ public abstract class AbstractConfigFile implements ConfigFile, RepositoryChange
     return m_sourceType;
   }
 
+  /**
+   * The object deserialized from the content of a version, which is rebuilt once the content is changed
+   */
+  private class MaterializedObject<T> {
+    private final Class<T> m_type;
+    private final Function<String, T> m_deserializer;
+    private final boolean m_rebuildInBackground;
+    private final AtomicBoolean m_rebuilding = new AtomicBoolean();
+    private volatile Materialized<T> m_current;
+    //the version failed to be deserialized in the background, which is not retried until the next change
+    private volatile long m_failedVersion = -1;
+
+    MaterializedObject(Class<T> type, Function<String, T> deserializer, boolean rebuildInBackground) {
+      m_type = type;
+      m_deserializer = deserializer;
+      m_rebuildInBackground = rebuildInBackground;
+    }
+
+    T get() {
+      Materialized<T> current = m_current;
+      if (current != null && current.m_version == m_contentVersion) {
+        return current.m_value;
+      }
+      if (current != null && m_rebuildInBackground) {
+        rebuildInBackground();
+        return current.m_value;
+      }
+      synchronized (this) {
+        current = m_current;
+        if (current == null || current.m_version != m_contentVersion) {
+          current = materialize();
+          m_current = current;
+        }
+        return current.m_value;
+      }
+    }
+
+    void onContentChange() {
+      if (m_rebuildInBackground && m_current != null) {
+        rebuildInBackground();
+      }
+    }
+
+    private Materialized<T> materialize() {
+      //the version is read before the content, so that a change in between is materialized next time
+      long version = m_contentVersion;
+      String content = getContent();
+      Materialized<T> current = m_current;
+      if (current != null && Objects.equals(current.m_content, content)) {
+        //the content read last time was already the new one
+        return new Materialized<>(version, content, current.m_value);
+      }
+      return new Materialized<>(version, content, content == null ? null : m_deserializer.apply(content));
+    }
+
+    private void rebuildInBackground() {
+      if (m_failedVersion == m_contentVersion || !m_rebuilding.compareAndSet(false, true)) {
+        return;
+      }
+      m_executorService.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            rebuild();
+          } finally {
+            m_rebuilding.set(false);
+          }
+          //changed again while rebuilding
+          if (m_current.m_version != m_contentVersion) {
+            rebuildInBackground();
+          }
+        }
+      });
+    }
+
+    private void rebuild() {
+      long version = m_contentVersion;
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigFile.asObject", m_type.getName());
+      try {
+        synchronized (this) {
+          if (m_current.m_version != version) {
+            m_current = materialize();
+          }
+        }
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        m_failedVersion = version;
+        transaction.setStatus(ex);
+        Tracer.logError(ex);
+        logger.error("Failed to rebuild {} from config file {}, the previous one is kept", m_type.getName(),
+            m_namespace, ex);
+      } finally {
+        transaction.complete();
+      }
+    }
+  }
+
+  private static class Materialized<T> {
+    private final long m_version;
+    private final String m_content;
+    private final T m_value;
+
+    Materialized(long version, String content, T value) {
+      m_version = version;
+      m_content = content;
+      m_value = value;
+    }
+  }
+
   private void fireConfigChange(final ConfigFileChangeEvent changeEvent) {
     for (final ConfigFileChangeListener listener : m_listeners) {
       m_executorService.submit(new Runnable() {
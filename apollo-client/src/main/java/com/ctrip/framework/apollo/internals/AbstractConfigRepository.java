@@ -38,8 +38,17 @@ public abstract class AbstractConfigRepository implements ConfigRepository {
   protected PropertiesFactory propertiesFactory = ApolloInjector.getInstance(PropertiesFactory.class);
 
   protected boolean trySync() {
+    return trySync(new Runnable() {
+      @Override
+      public void run() {
+        sync();
+      }
+    });
+  }
+
+  protected boolean trySync(Runnable sync) {
     try {
-      sync();
+      sync.run();
       return true;
     } catch (Throwable ex) {
       Tracer.logEvent(APOLLO_CONFIG_EXCEPTION, ExceptionUtil.getDetailMessage(ex));
@@ -64,6 +73,57 @@ public abstract class AbstractConfigRepository implements ConfigRepository {
     m_listeners.remove(listener);
   }
 
+  /**
+   * @return the snapshot of the current config if the repository keeps one, which is shared rather
+   * than copied as {@link #getConfig()} does, or null otherwise
+   */
+  ConfigSnapshot getConfigSnapshot() {
+    return null;
+  }
+
+  /**
+   * @return the snapshot of the current config if the repository keeps one, or null otherwise
+   */
+  static ConfigSnapshot getConfigSnapshot(ConfigRepository repository) {
+    if (repository instanceof AbstractConfigRepository) {
+      return ((AbstractConfigRepository) repository).getConfigSnapshot();
+    }
+    return null;
+  }
+
+  /**
+   * @return the snapshot of the current config if the repository keeps one, otherwise a snapshot of
+   * a copy of its config, or null if there is none
+   */
+  static ConfigSnapshot getConfigSnapshot(ConfigRepository repository,
+      PropertiesFactory propertiesFactory) {
+    ConfigSnapshot snapshot = getConfigSnapshot(repository);
+    if (snapshot != null) {
+      return snapshot;
+    }
+    Properties config = repository.getConfig();
+    return config == null ? null : ConfigSnapshot.copyOf(config, propertiesFactory);
+  }
+
+  /**
+   * Notify the listener of the current config of the repository, which may be refreshed in the
+   * background before the listener is registered, e.g. when it serves the local cache file at
+   * startup, so the listener should check it once more after registering.
+   */
+  static void catchUpWithRepository(ConfigRepository repository, String appId, String namespace,
+      RepositoryChangeListener listener) {
+    try {
+      ConfigSnapshot snapshot = getConfigSnapshot(repository);
+      if (snapshot != null && listener instanceof ConfigSnapshotListener) {
+        ((ConfigSnapshotListener) listener).onRepositorySnapshotChange(appId, namespace, snapshot);
+      } else {
+        listener.onRepositoryChange(appId, namespace, repository.getConfig());
+      }
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
+  }
+
   protected void fireRepositoryChange(String appId, String namespace, Properties newProperties) {
     for (RepositoryChangeListener listener : m_listeners) {
       try {
@@ -75,6 +135,31 @@ public abstract class AbstractConfigRepository implements ConfigRepository {
     }
   }
 
+  /**
+   * Pass the snapshot by reference to the {@link ConfigSnapshotListener}s, and a copy of it as
+   * properties to the other listeners, which is shared by them as
+   * {@link #fireRepositoryChange(String, String, Properties)} does.
+   */
+  void fireRepositoryChange(String appId, String namespace, ConfigSnapshot newSnapshot) {
+    Properties newProperties = null;
+    for (RepositoryChangeListener listener : m_listeners) {
+      try {
+        if (listener instanceof ConfigSnapshotListener) {
+          ((ConfigSnapshotListener) listener).onRepositorySnapshotChange(appId, namespace,
+              newSnapshot);
+          continue;
+        }
+        if (newProperties == null) {
+          newProperties = ConfigSnapshot.toProperties(newSnapshot, propertiesFactory);
+        }
+        listener.onRepositoryChange(appId, namespace, newProperties);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Failed to invoke repository change listener {}", listener.getClass(), ex);
+      }
+    }
+  }
+
   @Override
   public void initialize() {
     this.sync();
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static com.ctrip.framework.apollo.monitor.internal.ApolloClientMonitorConstant.*;
+
+import com.ctrip.framework.apollo.PropertiesCompatibleConfigFile;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import java.util.Properties;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The plain text config file whose content is parsed into properties, which is parsed once for each
+ * change, so that the keys are looked up without parsing the content again.
+ */
+public abstract class AbstractPropertiesCompatibleConfigFile extends PlainTextConfigFile implements
+    PropertiesCompatibleConfigFile {
+  private static final Logger logger = LoggerFactory.getLogger(
+      AbstractPropertiesCompatibleConfigFile.class);
+  private final Function<String, Properties> m_parser;
+  private volatile Properties cachedProperties;
+
+  /**
+   * @param parser parses the content into properties
+   */
+  public AbstractPropertiesCompatibleConfigFile(String appId, String namespace,
+      ConfigRepository configRepository, Function<String, Properties> parser) {
+    super(appId, namespace, configRepository);
+    m_parser = parser;
+    tryTransformToProperties();
+  }
+
+  @Override
+  protected void update(Properties newProperties) {
+    super.update(newProperties);
+    tryTransformToProperties();
+  }
+
+  @Override
+  public Properties asProperties() {
+    if (cachedProperties == null) {
+      transformToProperties();
+    }
+    return cachedProperties;
+  }
+
+  private boolean tryTransformToProperties() {
+    try {
+      transformToProperties();
+      return true;
+    } catch (Throwable ex) {
+      Tracer.logEvent(APOLLO_CONFIG_EXCEPTION, ExceptionUtil.getDetailMessage(ex));
+      logger.warn("{} to properties failed, reason: {}", getConfigFileFormat().getValue(),
+          ExceptionUtil.getDetailMessage(ex));
+    }
+    return false;
+  }
+
+  private synchronized void transformToProperties() {
+    cachedProperties = toProperties();
+  }
+
+  private Properties toProperties() {
+    if (!this.hasContent()) {
+      return propertiesFactory.getPropertiesInstance();
+    }
+
+    try {
+      return m_parser.apply(getContent());
+    } catch (Throwable ex) {
+      ApolloConfigException exception = new ApolloConfigException(
+          String.format("Parse %s file content failed for namespace: %s",
+              getConfigFileFormat().getValue(), m_namespace), ex);
+      Tracer.logError(exception);
+      throw exception;
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * The binary format of the local cache files, which loads much faster than the properties format
+ * and detects corrupted files.
+ * <pre>
+ * magic (4 bytes) | version (1 byte) | flags (1 byte) | entry count (4 bytes)
+ * | raw payload length (4 bytes) | payload length (4 bytes) | payload
+ * | CRC32C of all the preceding bytes (4 bytes)
+ * </pre>
+ * The payload is the keys and values as length-prefixed UTF-8, deflated if the compressed flag is
+ * set. All the integers are big-endian.
+ */
+final class BinaryCacheFile {
+  static final String FILE_EXTENSION = "bin";
+  private static final int MAGIC = 0x41504c43;//APLC
+  private static final byte VERSION = 1;
+  private static final byte FLAG_COMPRESSED = 1;
+  private static final int HEADER_LENGTH = 18;
+  private static final int TRAILER_LENGTH = 4;
+  //java.util.zip.CRC32C is available and intrinsified since Java 9, Guava's one is the fallback
+  private static final Constructor<? extends Checksum> CRC32C_CONSTRUCTOR = findCrc32c();
+
+  private BinaryCacheFile() {
+  }
+
+  static boolean isBinaryCacheFile(File file) {
+    return file.getName().endsWith("." + FILE_EXTENSION);
+  }
+
+  static void store(Properties properties, OutputStream out, boolean compress) throws IOException {
+    ByteArrayOutputStream rawPayload = new ByteArrayOutputStream();
+    DataOutputStream entries = new DataOutputStream(rawPayload);
+    int count = 0;
+    for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+      if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String)) {
+        continue;
+      }
+      writeString(entries, (String) entry.getKey());
+      writeString(entries, (String) entry.getValue());
+      count++;
+    }
+    entries.flush();
+
+    byte[] payload = rawPayload.toByteArray();
+    int rawPayloadLength = payload.length;
+    if (compress) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length / 4);
+      try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+        deflater.write(payload);
+      }
+      payload = compressed.toByteArray();
+    }
+
+    ByteArrayOutputStream content = new ByteArrayOutputStream(
+        HEADER_LENGTH + payload.length + TRAILER_LENGTH);
+    DataOutputStream data = new DataOutputStream(content);
+    data.writeInt(MAGIC);
+    data.writeByte(VERSION);
+    data.writeByte(compress ? FLAG_COMPRESSED : 0);
+    data.writeInt(count);
+    data.writeInt(rawPayloadLength);
+    data.writeInt(payload.length);
+    data.write(payload);
+    data.flush();
+    byte[] bytes = content.toByteArray();
+    data.writeInt(crc32c(bytes, 0, bytes.length));
+    data.flush();
+
+    content.writeTo(out);
+  }
+
+  /**
+   * Load the file into the given properties.
+   *
+   * @throws IOException if the file could not be read, or it is corrupted
+   */
+  static Properties load(File file, Properties properties) throws IOException {
+    byte[] bytes = readFully(file);
+    return load(bytes, 0, bytes.length, String.format("cache file %s", file), true, properties);
+  }
+
+  /**
+   * Load the content in the binary format into the given properties.
+   *
+   * @param source the description of the content in the error messages
+   * @param verifyChecksum whether to verify the checksum, which could be skipped if the content
+   * has been verified by {@link #isIntact(byte[], int, int)}
+   * @throws IOException if the content is corrupted
+   */
+  static Properties load(byte[] bytes, int offset, int length, String source,
+      boolean verifyChecksum, Properties properties) throws IOException {
+    int contentLength = length - TRAILER_LENGTH;
+    if (contentLength < HEADER_LENGTH) {
+      throw new IOException(String.format("Content of %s is truncated", source));
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length).slice();
+    if (verifyChecksum && buffer.getInt(contentLength) != crc32c(bytes, offset, contentLength)) {
+      throw new IOException(String.format("Checksum of %s mismatches", source));
+    }
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException(String.format("Content of %s is not in the binary format", source));
+    }
+    byte version = buffer.get();
+    if (version != VERSION) {
+      throw new IOException(
+          String.format("Version %d of %s is not supported", version, source));
+    }
+    byte flags = buffer.get();
+    int count = buffer.getInt();
+    int rawPayloadLength = buffer.getInt();
+    int payloadLength = buffer.getInt();
+    if (payloadLength != contentLength - HEADER_LENGTH || count < 0 || rawPayloadLength < 0) {
+      throw new IOException(String.format("Header of %s is corrupted", source));
+    }
+
+    ByteBuffer payload = buffer;
+    if ((flags & FLAG_COMPRESSED) != 0) {
+      payload = ByteBuffer.wrap(
+          inflate(bytes, offset + HEADER_LENGTH, payloadLength, rawPayloadLength));
+    } else {
+      payload.limit(contentLength);
+    }
+
+    try {
+      for (int i = 0; i < count; i++) {
+        String key = readString(payload);
+        properties.put(key, readString(payload));
+      }
+    } catch (RuntimeException ex) {
+      throw new IOException(String.format("Entries of %s are corrupted", source), ex);
+    }
+    return properties;
+  }
+
+  /**
+   * @return whether the content in the binary format is complete and matches its checksum, without
+   * decoding the entries
+   */
+  static boolean isIntact(byte[] bytes, int offset, int length) {
+    int contentLength = length - TRAILER_LENGTH;
+    if (contentLength < HEADER_LENGTH) {
+      return false;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length).slice();
+    return buffer.getInt(0) == MAGIC
+        && buffer.getInt(contentLength) == crc32c(bytes, offset, contentLength);
+  }
+
+  static int crc32c(byte[] bytes, int offset, int length) {
+    if (CRC32C_CONSTRUCTOR != null) {
+      try {
+        Checksum checksum = CRC32C_CONSTRUCTOR.newInstance();
+        checksum.update(bytes, offset, length);
+        return (int) checksum.getValue();
+      } catch (ReflectiveOperationException ex) {
+        //fall back to Guava
+      }
+    }
+    return Hashing.crc32c().hashBytes(bytes, offset, length).asInt();
+  }
+
+  private static Constructor<? extends Checksum> findCrc32c() {
+    try {
+      return Class.forName("java.util.zip.CRC32C").asSubclass(Checksum.class).getConstructor();
+    } catch (Throwable ex) {
+      return null;
+    }
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException(String.format("Cache file %s is too large", file));
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new EOFException(String.format("Cache file %s is truncated", file));
+        }
+      }
+      return buffer.array();
+    }
+  }
+
+  private static byte[] inflate(byte[] bytes, int offset, int length, int rawLength)
+      throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes, offset, length);
+      byte[] raw = new byte[rawLength];
+      int inflated = 0;
+      while (inflated < rawLength) {
+        int n = inflater.inflate(raw, inflated, rawLength - inflated);
+        if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Compressed payload is truncated");
+        }
+        inflated += n;
+      }
+      return raw;
+    } catch (DataFormatException ex) {
+      throw new IOException("Compressed payload is corrupted", ex);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(Charsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IllegalStateException("Invalid string length: " + length);
+    }
+    String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+        Charsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+}
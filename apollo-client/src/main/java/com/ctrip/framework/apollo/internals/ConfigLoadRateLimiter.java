@@ -0,0 +1,267 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide token bucket shared by all the namespaces loading configs from the config service,
+ * so the aggregated load rate no longer grows with the number of namespaces.
+ * <p>
+ * Each namespace has its own queue of pending loads, and the permits are handed out by start-time
+ * fair queuing: the backlogged namespace with the smallest virtual finish tag goes first, where
+ * every grant advances the tag by {@code 1 / weight}. A single namespace is additionally limited to
+ * the per namespace rate, as before.
+ * <p>
+ * Queued loads never block the executor they run on, they are dispatched to it once a permit is
+ * available. Only {@link #acquire(String, long, TimeUnit)} waits, and it is meant for the caller
+ * threads, e.g. the first load of a namespace.
+ */
+public class ConfigLoadRateLimiter {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigLoadRateLimiter.class);
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final ScheduledExecutorService m_dispatchExecutorService;
+
+  private final double m_permitsPerSecond;
+  private final double m_maxStoredPermits;
+  private final long m_namespaceIntervalInNanos;
+  private final Map<String, NamespaceQueue> m_namespaceQueues = Maps.newHashMap();
+  private double m_storedPermits;
+  private long m_lastRefillNanos;
+  private double m_virtualTime;
+  private long m_nextDispatchNanos;
+  private boolean m_dispatchScheduled;
+  private int m_contendingAcquirers;
+
+  static {
+    m_dispatchExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("ConfigLoadRateLimiter", true));
+  }
+
+  public ConfigLoadRateLimiter() {
+    this(ApolloInjector.getInstance(ConfigUtil.class));
+  }
+
+  private ConfigLoadRateLimiter(ConfigUtil configUtil) {
+    this(configUtil.getLoadConfigGlobalQPS(), configUtil.getLoadConfigQPS());
+  }
+
+  /**
+   * @param permitsPerSecond the aggregated permits per second of all the namespaces, which is also
+   * the burst size
+   * @param namespacePermitsPerSecond the permits per second of a single namespace
+   */
+  ConfigLoadRateLimiter(double permitsPerSecond, double namespacePermitsPerSecond) {
+    Preconditions.checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive");
+    Preconditions.checkArgument(namespacePermitsPerSecond > 0,
+        "namespacePermitsPerSecond must be positive");
+    m_permitsPerSecond = permitsPerSecond;
+    m_maxStoredPermits = Math.max(1, permitsPerSecond);
+    m_namespaceIntervalInNanos = (long) (NANOS_PER_SECOND / namespacePermitsPerSecond);
+    m_storedPermits = m_maxStoredPermits;
+    m_lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Queue the task of the namespace and run it on the executor once it gets a permit. Submitting a
+   * task which is still pending for the namespace is a no-op.
+   *
+   * @param key the namespace key
+   * @param weight the share of the namespace relative to the others, must be positive
+   * @param executor the executor to run the task on
+   * @param task the task to run
+   */
+  public void submit(String key, int weight, Executor executor, Runnable task) {
+    Preconditions.checkArgument(weight > 0, "weight must be positive");
+    synchronized (this) {
+      NamespaceQueue queue = getNamespaceQueue(key);
+      queue.weight = weight;
+      if (queue.pendingTasks.isEmpty()) {
+        queue.finishTag = Math.max(queue.finishTag, m_virtualTime) + 1.0 / weight;
+      }
+      if (!queue.pendingTasks.containsKey(task)) {
+        queue.pendingTasks.put(task, executor);
+      }
+    }
+    dispatch();
+  }
+
+  /**
+   * Wait for a permit of the namespace in the current thread. Waiting callers take precedence over
+   * the queued tasks.
+   *
+   * @return true if the permit is acquired, false if timed out or interrupted
+   */
+  public synchronized boolean acquire(String key, long timeout, TimeUnit unit) {
+    NamespaceQueue queue = getNamespaceQueue(key);
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    boolean contending = false;
+    try {
+      while (true) {
+        long now = System.nanoTime();
+        refill(now);
+        long namespaceWaitNanos = queue.nextPermitNanos - now;
+        if (namespaceWaitNanos <= 0 && !contending) {
+          //from now on, the queued tasks wait until this caller gets its permit
+          contending = true;
+          m_contendingAcquirers++;
+        }
+        long waitNanos = Math.max(namespaceWaitNanos, nanosUntilNextPermit());
+        if (waitNanos <= 0) {
+          m_storedPermits -= 1;
+          queue.nextPermitNanos = now + m_namespaceIntervalInNanos;
+          return true;
+        }
+        long remainingNanos = deadline - now;
+        if (remainingNanos <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, Math.min(waitNanos, remainingNanos));
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      if (contending) {
+        m_contendingAcquirers--;
+      }
+      scheduleDispatch(System.nanoTime());
+    }
+  }
+
+  private void dispatch() {
+    List<Map.Entry<Runnable, Executor>> grantedTasks = Lists.newArrayList();
+    synchronized (this) {
+      long now = System.nanoTime();
+      if (m_dispatchScheduled && now >= m_nextDispatchNanos) {
+        m_dispatchScheduled = false;
+      }
+      refill(now);
+      while (m_contendingAcquirers == 0 && m_storedPermits >= 1) {
+        NamespaceQueue next = null;
+        for (NamespaceQueue queue : m_namespaceQueues.values()) {
+          if (!queue.pendingTasks.isEmpty() && queue.nextPermitNanos <= now
+              && (next == null || queue.finishTag < next.finishTag)) {
+            next = queue;
+          }
+        }
+        if (next == null) {
+          break;
+        }
+        m_storedPermits -= 1;
+        m_virtualTime = Math.max(m_virtualTime, next.finishTag - 1.0 / next.weight);
+        next.nextPermitNanos = now + m_namespaceIntervalInNanos;
+
+        Iterator<Map.Entry<Runnable, Executor>> iterator = next.pendingTasks.entrySet().iterator();
+        Map.Entry<Runnable, Executor> task = iterator.next();
+        iterator.remove();
+        grantedTasks.add(Maps.immutableEntry(task.getKey(), task.getValue()));
+        if (!next.pendingTasks.isEmpty()) {
+          next.finishTag += 1.0 / next.weight;
+        }
+      }
+      scheduleDispatch(now);
+    }
+
+    for (Map.Entry<Runnable, Executor> task : grantedTasks) {
+      try {
+        task.getValue().execute(task.getKey());
+      } catch (RejectedExecutionException ex) {
+        logger.warn("Failed to run the config load task {}", task.getKey(), ex);
+      }
+    }
+  }
+
+  /**
+   * Schedule the next dispatch for the backlogged namespaces, unless an earlier one is scheduled.
+   */
+  private void scheduleDispatch(long now) {
+    if (m_contendingAcquirers > 0) {
+      //the last contending acquirer schedules the dispatch when it finishes
+      return;
+    }
+    long earliestPermitNanos = Long.MAX_VALUE;
+    for (NamespaceQueue queue : m_namespaceQueues.values()) {
+      if (!queue.pendingTasks.isEmpty()) {
+        earliestPermitNanos = Math.min(earliestPermitNanos, queue.nextPermitNanos);
+      }
+    }
+    if (earliestPermitNanos == Long.MAX_VALUE) {
+      return;
+    }
+    long dispatchNanos = Math.max(earliestPermitNanos, now + nanosUntilNextPermit());
+    if (m_dispatchScheduled && m_nextDispatchNanos <= dispatchNanos) {
+      return;
+    }
+    m_dispatchScheduled = true;
+    m_nextDispatchNanos = dispatchNanos;
+    m_dispatchExecutorService.schedule(new Runnable() {
+      @Override
+      public void run() {
+        dispatch();
+      }
+    }, Math.max(0, dispatchNanos - now), TimeUnit.NANOSECONDS);
+  }
+
+  private void refill(long now) {
+    if (now > m_lastRefillNanos) {
+      m_storedPermits = Math.min(m_maxStoredPermits,
+          m_storedPermits + (now - m_lastRefillNanos) * m_permitsPerSecond / NANOS_PER_SECOND);
+      m_lastRefillNanos = now;
+    }
+  }
+
+  private long nanosUntilNextPermit() {
+    if (m_storedPermits >= 1) {
+      return 0;
+    }
+    return (long) Math.ceil((1 - m_storedPermits) * NANOS_PER_SECOND / m_permitsPerSecond);
+  }
+
+  private NamespaceQueue getNamespaceQueue(String key) {
+    NamespaceQueue queue = m_namespaceQueues.get(key);
+    if (queue == null) {
+      queue = new NamespaceQueue();
+      queue.nextPermitNanos = System.nanoTime();
+      m_namespaceQueues.put(key, queue);
+    }
+    return queue;
+  }
+
+  private static class NamespaceQueue {
+    private final LinkedHashMap<Runnable, Executor> pendingTasks = new LinkedHashMap<>();
+    private int weight = 1;
+    private double finishTag;
+    private long nextPermitNanos;
+  }
+}
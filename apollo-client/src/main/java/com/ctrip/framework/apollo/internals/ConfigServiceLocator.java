@@ -27,6 +27,7 @@ import com.google.common.util.concurrent.RateLimiter;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -67,8 +68,12 @@ public class ConfigServiceLocator {
    */
   protected AtomicBoolean discoveryTaskQueueMark;
   private RateLimiter m_discoveryRateLimiter;
+  private final ConfigServiceOutlierDetector m_outlierDetector = new ConfigServiceOutlierDetector();
   private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
   private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+  private static final ExecutorService m_warmUpExecutorService = Executors.newCachedThreadPool(
+      ApolloThreadFactory.create("ConfigServiceLocator-WarmUp", true));
+  private final AtomicBoolean m_connectionsWarmedUp = new AtomicBoolean(false);
 
   /**
    * Create a config service locator.
@@ -201,7 +206,38 @@ public class ConfigServiceLocator {
       );
     }
 
-    return m_configServices.get();
+    return m_outlierDetector.filterAvailable(m_configServices.get());
+  }
+
+  /**
+   * Report that the config service answered a request.
+   *
+   * @param configService the config service
+   */
+  public void onConfigServiceSuccess(ServiceDTO configService) {
+    m_outlierDetector.onSuccess(configService);
+  }
+
+  /**
+   * Report that a request to the config service failed, the config service will be ejected
+   * temporarily if it keeps failing.
+   *
+   * @param configService the config service
+   */
+  public void onConfigServiceFailure(ServiceDTO configService) {
+    if (m_outlierDetector.onFailure(configService, m_configServices.get())) {
+      logger.warn("Config service {} keeps failing, eject it temporarily",
+          configService.getHomepageUrl());
+      Tracer.logEvent(APOLLO_CONFIG_SERVICE_EJECTED, configService.getHomepageUrl());
+    }
+  }
+
+  /**
+   * @param configService the config service
+   * @return true if the config service is ejected temporarily
+   */
+  public boolean isConfigServiceEjected(ServiceDTO configService) {
+    return !m_outlierDetector.isAvailable(configService);
   }
 
   private boolean tryUpdateConfigServices() {
@@ -281,6 +317,48 @@ public class ConfigServiceLocator {
   private void setConfigServices(List<ServiceDTO> services) {
     m_configServices.set(services);
     logConfigServices(services);
+    if (m_configUtil.isConfigServiceWarmUpEnabled() && m_connectionsWarmedUp.compareAndSet(false, true)) {
+      warmUpConnections(services);
+    }
+  }
+
+  /**
+   * Open a connection to each config service in the background, so the first config loads could
+   * reuse the keep-alive connections instead of paying for the DNS lookup and the handshakes.
+   */
+  private void warmUpConnections(List<ServiceDTO> services) {
+    for (ServiceDTO service : services) {
+      final String url = assembleWarmUpUrl(service.getHomepageUrl());
+      m_warmUpExecutorService.submit(new Runnable() {
+        @Override
+        public void run() {
+          HttpRequest request = new HttpRequest(url);
+          request.setConnectTimeout(m_configUtil.getConnectTimeout());
+          request.setReadTimeout(m_configUtil.getReadTimeout());
+
+          Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "warmUpConnection");
+          transaction.addData("Url", url);
+          try {
+            m_httpClient.doGet(request, m_responseType);
+            transaction.setStatus(Transaction.SUCCESS);
+          } catch (Throwable ex) {
+            //the config loads will report the failure if the config service is really unavailable
+            transaction.setStatus(ex);
+            logger.debug("Warm up connection to {} failed, reason: {}", url,
+                ExceptionUtil.getDetailMessage(ex));
+          } finally {
+            transaction.complete();
+          }
+        }
+      });
+    }
+  }
+
+  private String assembleWarmUpUrl(String homepageUrl) {
+    if (!homepageUrl.endsWith("/")) {
+      homepageUrl += "/";
+    }
+    return homepageUrl + "services/config";
   }
 
   private String assembleMetaServiceUrl() {
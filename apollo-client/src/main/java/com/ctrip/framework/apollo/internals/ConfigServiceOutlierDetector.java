@@ -0,0 +1,189 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks the request outcomes of each config service instance, and temporarily ejects the ones
+ * which fail consecutively or have a high error rate.
+ * <p>
+ * An ejected instance is re-admitted after the ejection time, which doubles every time it is
+ * ejected again without a success in between. The last available instance is never ejected.
+ */
+class ConfigServiceOutlierDetector {
+  static final int CONSECUTIVE_FAILURES_THRESHOLD = 3;
+  static final int ERROR_RATE_WINDOW_SIZE = 20;
+  static final int ERROR_RATE_MIN_REQUESTS = 10;
+  static final double ERROR_RATE_THRESHOLD = 0.5;
+  static final long BASE_EJECTION_TIME_IN_MILLIS = 10_000;
+  static final long MAX_EJECTION_TIME_IN_MILLIS = 5 * 60_000;
+
+  private final ConcurrentMap<String, InstanceHealth> m_instances = Maps.newConcurrentMap();
+  //the ejections are decided one at a time, so that the last available instances could not be
+  //ejected together by concurrent failures
+  private final Object m_ejectionLock = new Object();
+  private final LongSupplier m_clock;
+
+  ConfigServiceOutlierDetector() {
+    this(System::currentTimeMillis);
+  }
+
+  ConfigServiceOutlierDetector(LongSupplier clock) {
+    m_clock = clock;
+  }
+
+  void onSuccess(ServiceDTO configService) {
+    getInstanceHealth(configService).onSuccess();
+  }
+
+  /**
+   * @param configService the config service which failed
+   * @param configServices all the known config services
+   * @return true if the config service is ejected because of this failure
+   */
+  boolean onFailure(ServiceDTO configService, List<ServiceDTO> configServices) {
+    InstanceHealth health = getInstanceHealth(configService);
+    long now = m_clock.getAsLong();
+    synchronized (m_ejectionLock) {
+      if (!health.onFailure(now)) {
+        return false;
+      }
+      if (!hasOtherAvailable(configService, configServices, now)) {
+        return false;
+      }
+      health.eject(now);
+      return true;
+    }
+  }
+
+  boolean isAvailable(ServiceDTO configService) {
+    InstanceHealth health = m_instances.get(configService.getHomepageUrl());
+    return health == null || health.isAvailable(m_clock.getAsLong());
+  }
+
+  /**
+   * @return the available config services, or all of them if none is available
+   */
+  List<ServiceDTO> filterAvailable(List<ServiceDTO> configServices) {
+    long now = m_clock.getAsLong();
+    List<ServiceDTO> available = null;
+    for (int i = 0; i < configServices.size(); i++) {
+      ServiceDTO configService = configServices.get(i);
+      InstanceHealth health = m_instances.get(configService.getHomepageUrl());
+      boolean isAvailable = health == null || health.isAvailable(now);
+      if (!isAvailable && available == null) {
+        available = Lists.newArrayList(configServices.subList(0, i));
+      } else if (isAvailable && available != null) {
+        available.add(configService);
+      }
+    }
+    if (available == null) {
+      return configServices;
+    }
+    return available.isEmpty() ? configServices : available;
+  }
+
+  private boolean hasOtherAvailable(ServiceDTO configService, List<ServiceDTO> configServices,
+      long now) {
+    for (ServiceDTO other : configServices) {
+      if (other.getHomepageUrl().equals(configService.getHomepageUrl())) {
+        continue;
+      }
+      InstanceHealth health = m_instances.get(other.getHomepageUrl());
+      if (health == null || health.isAvailable(now)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private InstanceHealth getInstanceHealth(ServiceDTO configService) {
+    return m_instances.computeIfAbsent(configService.getHomepageUrl(), k -> new InstanceHealth());
+  }
+
+  private static class InstanceHealth {
+    private final boolean[] m_recentFailures = new boolean[ERROR_RATE_WINDOW_SIZE];
+    private int m_recentIndex;
+    private int m_recentCount;
+    private int m_recentFailureCount;
+    private int m_consecutiveFailures;
+    private int m_ejectionCount;
+    private volatile long m_ejectedUntil;
+
+    synchronized void onSuccess() {
+      record(false);
+      m_consecutiveFailures = 0;
+      m_ejectionCount = 0;
+    }
+
+    /**
+     * @return whether the instance should be ejected
+     */
+    synchronized boolean onFailure(long now) {
+      if (!isAvailable(now)) {
+        // already ejected
+        return false;
+      }
+      record(true);
+      m_consecutiveFailures++;
+      // failed again right after re-admission
+      if (m_ejectionCount > 0) {
+        return true;
+      }
+      if (m_consecutiveFailures >= CONSECUTIVE_FAILURES_THRESHOLD) {
+        return true;
+      }
+      return m_recentCount >= ERROR_RATE_MIN_REQUESTS
+          && m_recentFailureCount >= m_recentCount * ERROR_RATE_THRESHOLD;
+    }
+
+    synchronized void eject(long now) {
+      long ejectionTime = BASE_EJECTION_TIME_IN_MILLIS << Math.min(m_ejectionCount, 16);
+      m_ejectedUntil = now + Math.min(ejectionTime, MAX_EJECTION_TIME_IN_MILLIS);
+      m_ejectionCount++;
+      m_consecutiveFailures = 0;
+      m_recentIndex = 0;
+      m_recentCount = 0;
+      m_recentFailureCount = 0;
+    }
+
+    boolean isAvailable(long now) {
+      return now >= m_ejectedUntil;
+    }
+
+    private void record(boolean failure) {
+      if (m_recentCount == m_recentFailures.length) {
+        if (m_recentFailures[m_recentIndex]) {
+          m_recentFailureCount--;
+        }
+      } else {
+        m_recentCount++;
+      }
+      m_recentFailures[m_recentIndex] = failure;
+      if (failure) {
+        m_recentFailureCount++;
+      }
+      m_recentIndex = (m_recentIndex + 1) % m_recentFailures.length;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.util.OrderedProperties;
+import com.ctrip.framework.apollo.util.PersistentHashMap;
+import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
+import com.google.common.collect.ImmutableSet;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of the configs of a namespace.
+ * <p>
+ * It is created once for each change of the configs, and then passed by reference from the
+ * repositories to the {@link ConfigSnapshotListener}s in the chain, rather than copied by each of
+ * them. The other {@link RepositoryChangeListener}s and the callers of
+ * {@link ConfigRepository#getConfig()} get a copy of it as properties, see
+ * {@link #toProperties(ConfigSnapshot, PropertiesFactory)}.
+ * <p>
+ * The configs are kept in a {@link PersistentHashMap}, so the snapshot of a release merged from the
+ * previous one, see {@link RemoteConfigRepository#mergeConfigurations(Map, java.util.List)}, shares
+ * its entries with the previous snapshot.
+ */
+final class ConfigSnapshot extends AbstractMap<Object, Object> {
+  private final PersistentHashMap<Object, Object> m_configs;
+  //the keys in the order they are added, only kept if the order is enabled
+  private final Set<Object> m_orderedKeys;
+  private Set<Entry<Object, Object>> m_entrySet;
+
+  private ConfigSnapshot(PersistentHashMap<Object, Object> configs, Set<Object> orderedKeys) {
+    m_configs = configs;
+    m_orderedKeys = orderedKeys;
+  }
+
+  /**
+   * Get the snapshot of the configs, whose order is kept if the properties of the factory are
+   * {@link OrderedProperties}.
+   *
+   * @see #copyOf(Map, boolean)
+   */
+  static ConfigSnapshot copyOf(Map<?, ?> configs, PropertiesFactory propertiesFactory) {
+    if (configs instanceof ConfigSnapshot) {
+      return (ConfigSnapshot) configs;
+    }
+    return copyOf(configs, propertiesFactory.getPropertiesInstance() instanceof OrderedProperties);
+  }
+
+  /**
+   * Get the snapshot of the configs, which is the configs themselves if they are a snapshot already,
+   * otherwise a snapshot of a copy of them. The configs are not copied if they are a
+   * {@link PersistentHashMap} and the order is not kept.
+   *
+   * @param configs the configs
+   * @param ordered whether to keep the order of the configs
+   * @return the snapshot of the configs
+   */
+  static ConfigSnapshot copyOf(Map<?, ?> configs, boolean ordered) {
+    if (configs instanceof ConfigSnapshot) {
+      return (ConfigSnapshot) configs;
+    }
+    Set<Object> orderedKeys = ordered ? ImmutableSet.copyOf(configs.keySet()) : null;
+    return new ConfigSnapshot(PersistentHashMap.copyOf(configs), orderedKeys);
+  }
+
+  /**
+   * @return a copy of the snapshot as the properties of the factory, or null if the snapshot is null
+   */
+  static Properties toProperties(ConfigSnapshot snapshot, PropertiesFactory propertiesFactory) {
+    if (snapshot == null) {
+      return null;
+    }
+    Properties properties = propertiesFactory.getPropertiesInstance();
+    for (Entry<Object, Object> entry : snapshot.entrySet()) {
+      properties.put(entry.getKey(), entry.getValue());
+    }
+    return properties;
+  }
+
+  @Override
+  public int size() {
+    return m_configs.size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return m_configs.containsKey(key);
+  }
+
+  @Override
+  public Object get(Object key) {
+    return m_configs.get(key);
+  }
+
+  /**
+   * @return the value of the key if it is a string, as {@link Properties#getProperty(String)} does
+   */
+  String getProperty(String key) {
+    Object value = m_configs.get(key);
+    return value instanceof String ? (String) value : null;
+  }
+
+  /**
+   * @return the keys whose values are strings, as {@link Properties#stringPropertyNames()} does
+   */
+  Set<String> stringPropertyNames() {
+    Set<String> propertyNames = new LinkedHashSet<>();
+    for (Entry<Object, Object> entry : entrySet()) {
+      if (entry.getKey() instanceof String && entry.getValue() instanceof String) {
+        propertyNames.add((String) entry.getKey());
+      }
+    }
+    return Collections.unmodifiableSet(propertyNames);
+  }
+
+  @Override
+  public Set<Entry<Object, Object>> entrySet() {
+    if (m_orderedKeys == null) {
+      return m_configs.entrySet();
+    }
+    Set<Entry<Object, Object>> entrySet = m_entrySet;
+    if (entrySet == null) {
+      entrySet = new AbstractSet<Entry<Object, Object>>() {
+        @Override
+        public Iterator<Entry<Object, Object>> iterator() {
+          final Iterator<Object> keys = m_orderedKeys.iterator();
+          return new Iterator<Entry<Object, Object>>() {
+            @Override
+            public boolean hasNext() {
+              return keys.hasNext();
+            }
+
+            @Override
+            public Entry<Object, Object> next() {
+              Object key = keys.next();
+              return new SimpleImmutableEntry<>(key, m_configs.get(key));
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return m_configs.size();
+        }
+      };
+      m_entrySet = entrySet;
+    }
+    return entrySet;
+  }
+}
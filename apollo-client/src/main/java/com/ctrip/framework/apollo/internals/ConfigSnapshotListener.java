@@ -0,0 +1,32 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+/**
+ * The {@link RepositoryChangeListener} in the repository chain, which takes the
+ * {@link ConfigSnapshot} of a change by reference rather than a copy of it as properties, see
+ * {@link AbstractConfigRepository#fireRepositoryChange(String, String, ConfigSnapshot)}.
+ */
+interface ConfigSnapshotListener extends RepositoryChangeListener {
+  /**
+   * Invoked when config repository changes.
+   * @param appId the appId of this repository change
+   * @param namespace the namespace of this repository change
+   * @param newSnapshot the snapshot of the configs after change
+   */
+  void onRepositorySnapshotChange(String appId, String namespace, ConfigSnapshot newSnapshot);
+}
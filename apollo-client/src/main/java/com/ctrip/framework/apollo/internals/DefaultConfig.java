@@ -47,13 +47,14 @@ import com.google.common.util.concurrent.RateLimiter;
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
-public class DefaultConfig extends AbstractConfig implements RepositoryChangeListener {
+public class DefaultConfig extends AbstractConfig implements ConfigSnapshotListener {
 
   private static final Logger logger = DeferredLoggerFactory.getLogger(DefaultConfig.class);
   private final String m_appId;
   private final String m_namespace;
   private final Properties m_resourceProperties;
-  private final AtomicReference<Properties> m_configProperties;
+  //the snapshot shared by the repository, or the properties of the repository if it keeps none
+  private final AtomicReference<Map<Object, Object>> m_configProperties;
   private final ConfigRepository m_configRepository;
   private final RateLimiter m_warnLogRateLimiter;
 
@@ -92,7 +93,9 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
   private void initialize() {
     try {
       m_configRepository.initialize();
-      updateConfig(m_configRepository.getConfig(), m_configRepository.getSourceType());
+      ConfigSnapshot snapshot = AbstractConfigRepository.getConfigSnapshot(m_configRepository);
+      updateConfig(snapshot != null ? snapshot : m_configRepository.getConfig(),
+          m_configRepository.getSourceType());
     } catch (Throwable ex) {
       Tracer.logError(ex);
       logger.warn("Init Apollo Local Config failed - namespace: {}, reason: {}.",
@@ -101,6 +104,9 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
       //register the change listener no matter config repository is working or not
       //so that whenever config repository is recovered, config could get changed
       m_configRepository.addChangeListener(this);
+      if (m_configProperties.get() != null) {
+        AbstractConfigRepository.catchUpWithRepository(m_configRepository, m_appId, m_namespace, this);
+      }
     }
   }
 
@@ -111,9 +117,12 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
    * @return value
    */
   protected String getPropertyFromRepository(String key) {
-    Properties properties = m_configProperties.get();
+    Map<Object, Object> properties = m_configProperties.get();
+    if (properties instanceof ConfigSnapshot) {
+      return ((ConfigSnapshot) properties).getProperty(key);
+    }
     if (properties != null) {
-      return properties.getProperty(key);
+      return ((Properties) properties).getProperty(key);
     }
     return null;
   }
@@ -151,7 +160,7 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
    * @return property names
    */
   protected Set<String> getPropertyNamesFromRepository() {
-    Properties properties = m_configProperties.get();
+    Map<Object, Object> properties = m_configProperties.get();
     if (properties == null) {
       return Collections.emptySet();
     }
@@ -223,7 +232,7 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
     return m_sourceType;
   }
 
-  private Set<String> stringPropertyNames(Properties properties) {
+  private Set<String> stringPropertyNames(Map<Object, Object> properties) {
     //jdk9以下版本Properties#enumerateStringProperties方法存在性能问题，keys() + get(k) 重复迭代, jdk9之后改为entrySet遍历.
     Map<String, String> h = Maps.newLinkedHashMapWithExpectedSize(properties.size());
     for (Map.Entry<Object, Object> e : properties.entrySet()) {
@@ -247,10 +256,24 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
       return;
     }
 
-    ConfigSourceType sourceType = m_configRepository.getSourceType();
     Properties newConfigProperties = propertiesFactory.getPropertiesInstance();
     newConfigProperties.putAll(newProperties);
 
+    this.updateAndFireConfigChanges(newConfigProperties);
+  }
+
+  @Override
+  public synchronized void onRepositorySnapshotChange(String appId, String namespace,
+      ConfigSnapshot newSnapshot) {
+    if (newSnapshot.equals(m_configProperties.get())) {
+      return;
+    }
+    this.updateAndFireConfigChanges(newSnapshot);
+  }
+
+  private void updateAndFireConfigChanges(Map<Object, Object> newConfigProperties) {
+    ConfigSourceType sourceType = m_configRepository.getSourceType();
+
     Map<String, ConfigChange> actualChanges = updateAndCalcConfigChanges(newConfigProperties,
         sourceType);
 
@@ -264,15 +287,15 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
     Tracer.logEvent(APOLLO_CLIENT_CONFIGCHANGES, m_namespace);
   }
 
-  private void updateConfig(Properties newConfigProperties, ConfigSourceType sourceType) {
+  private void updateConfig(Map<Object, Object> newConfigProperties, ConfigSourceType sourceType) {
     m_configProperties.set(newConfigProperties);
     m_sourceType = sourceType;
   }
 
-  private Map<String, ConfigChange> updateAndCalcConfigChanges(Properties newConfigProperties,
-      ConfigSourceType sourceType) {
-    List<ConfigChange> configChanges =
-        calcPropertyChanges(m_appId, m_namespace, m_configProperties.get(), newConfigProperties);
+  private Map<String, ConfigChange> updateAndCalcConfigChanges(
+      Map<Object, Object> newConfigProperties, ConfigSourceType sourceType) {
+    List<ConfigChange> configChanges = calcPropertyChanges(m_appId, m_namespace,
+        toProperties(m_configProperties.get()), toProperties(newConfigProperties));
 
     ImmutableMap.Builder<String, ConfigChange> actualChanges =
         new ImmutableMap.Builder<>();
@@ -323,6 +346,16 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
     return actualChanges.build();
   }
 
+  /**
+   * @return the properties, or a copy of the snapshot as properties
+   */
+  private Properties toProperties(Map<Object, Object> properties) {
+    if (properties instanceof ConfigSnapshot) {
+      return ConfigSnapshot.toProperties((ConfigSnapshot) properties, propertiesFactory);
+    }
+    return (Properties) properties;
+  }
+
   private Properties loadFromResource(String appId, String namespace) {
     String name = String.format("META-INF/config/%s+%s.properties", appId, namespace);
     InputStream in = ClassLoaderUtil.getLoader().getResourceAsStream(name);
@@ -26,6 +26,7 @@ import com.ctrip.framework.apollo.spi.ApolloInjectorCustomizer;
 import com.ctrip.framework.apollo.spi.ConfigFactory;
 import com.ctrip.framework.apollo.spi.ConfigFactoryManager;
 import com.ctrip.framework.apollo.spi.ConfigRegistry;
+import com.ctrip.framework.apollo.spi.ConfigServiceLoadBalancerClient;
 import com.ctrip.framework.apollo.spi.DefaultConfigFactory;
 import com.ctrip.framework.apollo.spi.DefaultConfigFactoryManager;
 import com.ctrip.framework.apollo.spi.DefaultConfigRegistry;
@@ -35,10 +36,12 @@ import com.ctrip.framework.apollo.util.factory.DefaultPropertiesFactory;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import com.ctrip.framework.apollo.util.http.DefaultHttpClient;
 import com.ctrip.framework.apollo.util.http.HttpClient;
+import com.ctrip.framework.apollo.util.json.JsonParser;
 import com.ctrip.framework.apollo.util.yaml.YamlParser;
 import com.ctrip.framework.foundation.internals.ServiceBootstrap;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
+import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import java.util.List;
 
@@ -107,11 +110,23 @@ public class DefaultInjector implements Injector {
       bind(HttpClient.class).to(DefaultHttpClient.class).in(Singleton.class);
       bind(ConfigServiceLocator.class).in(Singleton.class);
       bind(RemoteConfigLongPollService.class).in(Singleton.class);
+      bind(ConfigLoadRateLimiter.class).in(Singleton.class);
+      bind(LocalCacheFileWriter.class).in(Singleton.class);
       bind(YamlParser.class).in(Singleton.class);
+      bind(JsonParser.class).in(Singleton.class);
       bind(PropertiesFactory.class).to(DefaultPropertiesFactory.class).in(Singleton.class);
       bind(ConfigMonitor.class).to(DefaultConfigMonitor.class).in(Singleton.class);
       bind(ApolloClientMonitorContext.class).in(Singleton.class);
       bind(ApolloClientMetricsExporterFactory.class).to(DefaultApolloClientMetricsExporterFactory.class).in(Singleton.class);
     }
+
+    /**
+     * shared by all the requests to config services, so that the load balancer sees all of them
+     */
+    @Provides
+    @Singleton
+    ConfigServiceLoadBalancerClient provideConfigServiceLoadBalancerClient() {
+      return ServiceBootstrap.loadPrimary(ConfigServiceLoadBalancerClient.class);
+    }
   }
 }
@@ -16,15 +16,21 @@
  */
 package com.ctrip.framework.apollo.internals;
 
+import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
+import com.ctrip.framework.apollo.util.json.JsonParser;
 
 /**
+ * The json content is flattened by {@link JsonParser}.
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
-public class JsonConfigFile extends PlainTextConfigFile {
+public class JsonConfigFile extends AbstractPropertiesCompatibleConfigFile {
+
   public JsonConfigFile(String appId, String namespace,
                         ConfigRepository configRepository) {
-    super(appId, namespace, configRepository);
+    super(appId, namespace, configRepository,
+        content -> ApolloInjector.getInstance(JsonParser.class).jsonToProperties(content));
   }
 
   @Override
@@ -16,6 +16,7 @@
  */
 package com.ctrip.framework.apollo.internals;
 
+import com.ctrip.framework.apollo.kubernetes.KubernetesConfigMapWriter;
 import com.ctrip.framework.apollo.kubernetes.KubernetesManager;
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -34,7 +35,6 @@ import com.google.gson.reflect.TypeToken;
 import org.slf4j.Logger;
 
 import java.lang.reflect.Type;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
@@ -42,7 +42,7 @@ import java.util.Properties;
  * @author dyx1234
  */
 public class K8sConfigMapConfigRepository extends AbstractConfigRepository
-        implements RepositoryChangeListener {
+        implements ConfigSnapshotListener {
     private static final Logger logger = DeferredLoggerFactory.getLogger(K8sConfigMapConfigRepository.class);
     private final String appId;
     private final String namespace;
@@ -51,7 +51,8 @@ public class K8sConfigMapConfigRepository extends AbstractConfigRepository
     private final String k8sNamespace;
     private final ConfigUtil configUtil;
     private final KubernetesManager kubernetesManager;
-    private volatile Properties configMapProperties;
+    private final KubernetesConfigMapWriter configMapWriter;
+    private volatile ConfigSnapshot configMapProperties;
     private volatile ConfigRepository upstream;
     private volatile ConfigSourceType sourceType = ConfigSourceType.CONFIGMAP;
     private static final Gson GSON = new Gson();
@@ -61,11 +62,14 @@ public class K8sConfigMapConfigRepository extends AbstractConfigRepository
         this.namespace = namespace;
         configUtil = ApolloInjector.getInstance(ConfigUtil.class);
         kubernetesManager = ApolloInjector.getInstance(KubernetesManager.class);
+        configMapWriter = ApolloInjector.getInstance(KubernetesConfigMapWriter.class);
         k8sNamespace = configUtil.getK8sNamespace();
 
         this.setConfigMapKey(configUtil.getCluster(), namespace);
         this.setConfigMapName(configUtil.getAppId(), false);
         this.setUpstreamRepository(upstream);
+        // the config map written by the other pods is followed while it is the source of the configs
+        kubernetesManager.addConfigMapChangeListener(k8sNamespace, configMapName, this::onConfigMapChange);
     }
 
     private void setConfigMapKey(String cluster, String namespace) {
@@ -110,12 +114,15 @@ public class K8sConfigMapConfigRepository extends AbstractConfigRepository
 
     @Override
     public Properties getConfig() {
+        return ConfigSnapshot.toProperties(getConfigSnapshot(), propertiesFactory);
+    }
+
+    @Override
+    ConfigSnapshot getConfigSnapshot() {
         if (configMapProperties == null) {
             sync();
         }
-        Properties result = propertiesFactory.getPropertiesInstance();
-        result.putAll(configMapProperties);
-        return result;
+        return configMapProperties;
     }
 
     /**
@@ -156,7 +163,7 @@ public class K8sConfigMapConfigRepository extends AbstractConfigRepository
         Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "syncK8sConfigMap");
         Throwable exception = null;
         try {
-            configMapProperties = loadFromK8sConfigMap();
+            configMapProperties = ConfigSnapshot.copyOf(loadFromK8sConfigMap(), propertiesFactory);
             sourceType = ConfigSourceType.CONFIGMAP;
             transaction.setStatus(Transaction.SUCCESS);
         } catch (Throwable ex) {
@@ -179,15 +186,7 @@ public class K8sConfigMapConfigRepository extends AbstractConfigRepository
 
         try {
             String jsonConfig = kubernetesManager.getValueFromConfigMap(k8sNamespace, configMapName, configMapKey);
-
-            // Convert jsonConfig to properties
-            Properties properties = propertiesFactory.getPropertiesInstance();
-            if (jsonConfig != null && !jsonConfig.isEmpty()) {
-                Type type = new TypeToken<Map<String, String>>() {}.getType();
-                Map<String, String> configMap = GSON.fromJson(jsonConfig, type);
-                configMap.forEach(properties::setProperty);
-            }
-            return properties;
+            return toProperties(jsonConfig);
         } catch (Exception ex) {
             Tracer.logError(ex);
             throw new ApolloConfigException(String
@@ -195,12 +194,51 @@ public class K8sConfigMapConfigRepository extends AbstractConfigRepository
         }
     }
 
+    private Properties toProperties(String jsonConfig) {
+        // Convert jsonConfig to properties
+        Properties properties = propertiesFactory.getPropertiesInstance();
+        if (jsonConfig != null && !jsonConfig.isEmpty()) {
+            Type type = new TypeToken<Map<String, String>>() {}.getType();
+            Map<String, String> configMap = GSON.fromJson(jsonConfig, type);
+            configMap.forEach(properties::setProperty);
+        }
+        return properties;
+    }
+
+    /**
+     * Follow the config map written by the other pods, if the upstream is not available
+     *
+     * @param data the data of the config map after change
+     */
+    void onConfigMapChange(Map<String, String> data) {
+        // the last configs are kept if the key is removed, e.g. the config map is deleted
+        if (sourceType != ConfigSourceType.CONFIGMAP || configMapProperties == null
+                || !data.containsKey(configMapKey)) {
+            return;
+        }
+        ConfigSnapshot newProperties;
+        try {
+            newProperties = ConfigSnapshot.copyOf(toProperties(data.get(configMapKey)), propertiesFactory);
+        } catch (Throwable ex) {
+            logger.warn("Reload config from Kubernetes ConfigMap {} failed, reason: {}", configMapName,
+                    ExceptionUtil.getDetailMessage(ex));
+            return;
+        }
+        synchronized (this) {
+            if (sourceType != ConfigSourceType.CONFIGMAP || newProperties.equals(configMapProperties)) {
+                return;
+            }
+            configMapProperties = newProperties;
+        }
+        this.fireRepositoryChange(appId, namespace, newProperties);
+    }
+
     private boolean trySyncFromUpstream() {
         if (upstream == null) {
             return false;
         }
         try {
-            updateConfigMapProperties(upstream.getConfig(), upstream.getSourceType());
+            updateConfigMapProperties(getConfigSnapshot(upstream, propertiesFactory), upstream.getSourceType());
             return true;
         } catch (Throwable ex) {
             Tracer.logError(ex);
@@ -210,13 +248,13 @@ public class K8sConfigMapConfigRepository extends AbstractConfigRepository
         return false;
     }
 
-    private synchronized void updateConfigMapProperties(Properties newProperties, ConfigSourceType sourceType) {
+    private synchronized void updateConfigMapProperties(ConfigSnapshot newSnapshot, ConfigSourceType sourceType) {
         this.sourceType = sourceType;
-        if (newProperties == null || newProperties.equals(configMapProperties)) {
+        if (newSnapshot == null || newSnapshot.equals(configMapProperties)) {
             return;
         }
-        this.configMapProperties = newProperties;
-        persistConfigMap(configMapProperties);
+        this.configMapProperties = newSnapshot;
+        persistConfigMap(ConfigSnapshot.toProperties(newSnapshot, propertiesFactory));
     }
 
     @Override
@@ -232,38 +270,26 @@ public class K8sConfigMapConfigRepository extends AbstractConfigRepository
      */
     @Override
     public void onRepositoryChange(String appId, String namespace, Properties newProperties) {
-        if (newProperties == null || newProperties.equals(configMapProperties)) {
+        if (newProperties == null) {
             return;
         }
-        Properties newFileProperties = propertiesFactory.getPropertiesInstance();
-        newFileProperties.putAll(newProperties);
-        updateConfigMapProperties(newFileProperties, upstream.getSourceType());
-        this.fireRepositoryChange(appId, namespace, newProperties);
+        this.onRepositorySnapshotChange(appId, namespace,
+                ConfigSnapshot.copyOf(newProperties, propertiesFactory));
     }
 
-    void persistConfigMap(Properties properties) {
-        Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "persistK8sConfigMap");
-        transaction.addData("configMapName", configMapName);
-        transaction.addData("k8sNamespace", k8sNamespace);
-        try {
-            // Convert properties to a JSON string using Gson
-            String jsonConfig = GSON.toJson(properties);
-            Map<String, String> data = new HashMap<>();
-            data.put(configMapKey, jsonConfig);
-
-            // update configmap
-            kubernetesManager.updateConfigMap(k8sNamespace, configMapName, data);
-            transaction.setStatus(Transaction.SUCCESS);
-        } catch (Exception ex) {
-            ApolloConfigException exception =
-                    new ApolloConfigException(
-                            String.format("Persist config to Kubernetes ConfigMap %s failed!", configMapName), ex);
-            Tracer.logError(exception);
-            transaction.setStatus(exception);
-            logger.error("Persist config to Kubernetes ConfigMap failed!", exception);
-        } finally {
-            transaction.complete();
+    @Override
+    public void onRepositorySnapshotChange(String appId, String namespace, ConfigSnapshot newSnapshot) {
+        if (newSnapshot == null || newSnapshot.equals(configMapProperties)) {
+            return;
         }
+        updateConfigMapProperties(newSnapshot, upstream.getSourceType());
+        this.fireRepositoryChange(appId, namespace, newSnapshot);
+    }
+
+    void persistConfigMap(Properties properties) {
+        // Convert properties to a JSON string using Gson, and write it along with the other namespaces
+        String jsonConfig = GSON.toJson(properties);
+        configMapWriter.write(k8sNamespace, configMapName, configMapKey, jsonConfig);
     }
 
 }
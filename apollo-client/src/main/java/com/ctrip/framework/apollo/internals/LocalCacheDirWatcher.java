@@ -0,0 +1,211 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.DeferredLoggerFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+
+/**
+ * Watches the local cache dir for the files created or modified by another process, e.g. the
+ * process holding the lease of the {@link SharedLocalCache}, an editor in local mode, or the kubelet
+ * updating a mounted ConfigMap, see {@link MountedConfigMapConfigRepository}.
+ * <p>
+ * The changes of a file are debounced, so that the listeners are notified once the file has not
+ * been changed for {@link #DEBOUNCE_IN_MILLIS}, rather than in the middle of a series of writes.
+ * <p>
+ * The instances are shared by the whole JVM, one thread per dir.
+ */
+final class LocalCacheDirWatcher {
+  private static final Logger logger = DeferredLoggerFactory.getLogger(LocalCacheDirWatcher.class);
+  static final long DEBOUNCE_IN_MILLIS = 200;
+  //stands for any file, e.g. after the events overflowed
+  private static final String ANY_FILE = "";
+  private static final ExecutorService m_executorService;
+  private static final Map<File, LocalCacheDirWatcher> s_instances = Maps.newHashMap();
+  private static final Set<File> s_unavailableDirs = Sets.newHashSet();
+
+  private final File m_dir;
+  private final WatchService m_watchService;
+  private final List<Listener> m_listeners = new CopyOnWriteArrayList<>();
+  //file name -> the time of its last event
+  private final Map<String, Long> m_pendingChanges = Maps.newLinkedHashMap();
+  private final CountDownLatch m_stopped = new CountDownLatch(1);
+
+  static {
+    m_executorService = Executors.newCachedThreadPool(
+        ApolloThreadFactory.create("LocalCacheDirWatcher", true));
+  }
+
+  /**
+   * @return the watcher of the dir, or null if the dir could not be watched
+   */
+  static synchronized LocalCacheDirWatcher getInstance(File dir) {
+    File key = dir.getAbsoluteFile();
+    LocalCacheDirWatcher watcher = s_instances.get(key);
+    if (watcher != null || s_unavailableDirs.contains(key)) {
+      return watcher;
+    }
+    try {
+      final LocalCacheDirWatcher created = new LocalCacheDirWatcher(key);
+      m_executorService.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            created.watch();
+          } finally {
+            created.m_stopped.countDown();
+          }
+        }
+      });
+      s_instances.put(key, created);
+      watcher = created;
+    } catch (Throwable ex) {
+      s_unavailableDirs.add(key);
+      Tracer.logError(ex);
+      logger.warn("Watch local cache dir {} failed, reason: {}", key,
+          ExceptionUtil.getDetailMessage(ex));
+    }
+    return watcher;
+  }
+
+  // for test only
+  static void reset() throws InterruptedException {
+    List<LocalCacheDirWatcher> watchers;
+    synchronized (LocalCacheDirWatcher.class) {
+      watchers = Lists.newArrayList(s_instances.values());
+      s_instances.clear();
+      s_unavailableDirs.clear();
+    }
+    for (LocalCacheDirWatcher watcher : watchers) {
+      watcher.close();
+      watcher.m_stopped.await(5, TimeUnit.SECONDS);
+    }
+  }
+
+  private LocalCacheDirWatcher(File dir) throws IOException {
+    m_dir = dir;
+    m_watchService = dir.toPath().getFileSystem().newWatchService();
+    try {
+      dir.toPath().register(m_watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException | RuntimeException ex) {
+      m_watchService.close();
+      throw ex;
+    }
+  }
+
+  void register(Listener listener) {
+    m_listeners.add(listener);
+  }
+
+  private void watch() {
+    while (!Thread.currentThread().isInterrupted()) {
+      WatchKey key;
+      try {
+        key = m_pendingChanges.isEmpty() ? m_watchService.take()
+            : m_watchService.poll(DEBOUNCE_IN_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ClosedWatchServiceException ex) {
+        return;
+      }
+      if (key != null) {
+        long now = System.currentTimeMillis();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          String fileName = event.kind() == StandardWatchEventKinds.OVERFLOW ? ANY_FILE
+              : ((Path) event.context()).getFileName().toString();
+          //moved to the end, so the map is ordered by the time of the last event
+          m_pendingChanges.remove(fileName);
+          m_pendingChanges.put(fileName, now);
+        }
+        if (!key.reset()) {
+          //e.g. the dir is deleted, which is watched again once it is requested again
+          logger.warn("Local cache dir {} is no longer watched", m_dir);
+          close();
+          return;
+        }
+      }
+      notifyDebouncedChanges();
+    }
+  }
+
+  private void notifyDebouncedChanges() {
+    long due = System.currentTimeMillis() - DEBOUNCE_IN_MILLIS;
+    Iterator<Map.Entry<String, Long>> iterator = m_pendingChanges.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Long> entry = iterator.next();
+      if (entry.getValue() > due) {
+        return;
+      }
+      iterator.remove();
+      String fileName = ANY_FILE.equals(entry.getKey()) ? null : entry.getKey();
+      for (Listener listener : m_listeners) {
+        try {
+          listener.onLocalCacheFileChanged(fileName);
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+          logger.warn("Notify local cache file {} changed to {} failed", fileName, listener, ex);
+        }
+      }
+    }
+  }
+
+  private void close() {
+    synchronized (LocalCacheDirWatcher.class) {
+      s_instances.remove(m_dir, this);
+    }
+    try {
+      m_watchService.close();
+    } catch (IOException ex) {
+      //ignore
+    }
+  }
+
+  interface Listener {
+
+    /**
+     * Called when a file in the local cache dir was created or modified, by any process.
+     *
+     * @param fileName the name of the file, or null if any file may be changed
+     */
+    void onLocalCacheFileChanged(String fileName);
+  }
+}
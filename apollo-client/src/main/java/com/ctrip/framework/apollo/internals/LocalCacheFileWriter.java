@@ -0,0 +1,228 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.DeferredLoggerFactory;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.collect.Maps;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+
+/**
+ * Persists the local cache files on a single background thread.
+ * <p>
+ * Only the latest snapshot of a file is kept while it waits to be written, so a burst of releases
+ * results in one write instead of one per release. Each file is written to a temp file in the same
+ * directory first and then moved over the old one atomically, so a crash in the middle of a write
+ * never leaves a truncated cache file behind. The temp file has a fixed name per file, so the one
+ * left by a crash is overwritten by the next write rather than piling up.
+ * <p>
+ * The pending snapshots are flushed on JVM shutdown, for at most
+ * {@link #SHUTDOWN_FLUSH_TIMEOUT_IN_MILLIS}.
+ */
+public class LocalCacheFileWriter {
+  private static final Logger logger = DeferredLoggerFactory.getLogger(LocalCacheFileWriter.class);
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final long SHUTDOWN_FLUSH_TIMEOUT_IN_MILLIS = 3000;
+  private static final ExecutorService m_executorService;
+
+  private final ConcurrentMap<File, Properties> m_pendingSnapshots = Maps.newConcurrentMap();
+  private final boolean m_fsyncEnabled;
+  private final boolean m_compressionEnabled;
+
+  static {
+    m_executorService = Executors.newSingleThreadExecutor(
+        ApolloThreadFactory.create("LocalCacheFileWriter", true));
+    try {
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          flushOnShutdown();
+        }
+      }, "LocalCacheFileWriter-Shutdown"));
+    } catch (Throwable ex) {
+      //the JVM is shutting down already
+      logger.debug("Register the shutdown hook failed, reason: {}",
+          ExceptionUtil.getDetailMessage(ex));
+    }
+  }
+
+  public LocalCacheFileWriter() {
+    this(ApolloInjector.getInstance(ConfigUtil.class));
+  }
+
+  private LocalCacheFileWriter(ConfigUtil configUtil) {
+    this(configUtil.isCacheFileFsyncEnabled(), configUtil.isCacheFileBinaryCompressionEnabled());
+  }
+
+  /**
+   * @param fsyncEnabled whether to force the files to the storage device before replacing the old
+   * ones
+   * @param compressionEnabled whether to compress the files in the binary format
+   */
+  LocalCacheFileWriter(boolean fsyncEnabled, boolean compressionEnabled) {
+    m_fsyncEnabled = fsyncEnabled;
+    m_compressionEnabled = compressionEnabled;
+  }
+
+  /**
+   * Queue the snapshot to be written to the file, replacing the pending one of the same file if
+   * any. The snapshot must not be modified afterwards. Files with the
+   * {@link BinaryCacheFile#FILE_EXTENSION} are written in the binary format, the others in the
+   * properties format.
+   */
+  public void write(final File file, Properties snapshot) {
+    if (m_pendingSnapshots.put(file, snapshot) != null) {
+      //coalesced with the pending one
+      return;
+    }
+    m_executorService.execute(new Runnable() {
+      @Override
+      public void run() {
+        flush(file);
+      }
+    });
+  }
+
+  /**
+   * @return the snapshot of the file which is not written yet, or null if there is none
+   */
+  public Properties getPendingSnapshot(File file) {
+    return m_pendingSnapshots.get(file);
+  }
+
+  /**
+   * Wait for the snapshots queued so far to be written, e.g. before the local cache dir is removed.
+   *
+   * @return whether they are written before the timeout
+   */
+  public boolean awaitPendingWrites(long timeout, TimeUnit unit) throws InterruptedException {
+    return awaitQueuedTasks(m_executorService, timeout, unit);
+  }
+
+  /**
+   * Wait for the tasks queued so far to the single thread executor to be done.
+   *
+   * @return whether they are done before the timeout
+   */
+  static boolean awaitQueuedTasks(ExecutorService singleThreadExecutor, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    //the tasks are executed in order on the single thread
+    Future<?> future = singleThreadExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+    try {
+      future.get(timeout, unit);
+      return true;
+    } catch (ExecutionException | TimeoutException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * The writer thread is a daemon, which is stopped with the JVM once the shutdown hooks are done,
+   * so wait for it to write the pending snapshots first.
+   */
+  private static void flushOnShutdown() {
+    try {
+      if (!awaitQueuedTasks(m_executorService, SHUTDOWN_FLUSH_TIMEOUT_IN_MILLIS,
+          TimeUnit.MILLISECONDS)) {
+        logger.warn("Persist local cache files on shutdown timed out after {} ms",
+            SHUTDOWN_FLUSH_TIMEOUT_IN_MILLIS);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void flush(File file) {
+    Properties snapshot = m_pendingSnapshots.get(file);
+    while (snapshot != null) {
+      writeAtomically(file, snapshot);
+      //keep the snapshot readable until it is written, and write again if it was replaced meanwhile
+      if (m_pendingSnapshots.remove(file, snapshot)) {
+        return;
+      }
+      snapshot = m_pendingSnapshots.get(file);
+    }
+  }
+
+  private void writeAtomically(File file, Properties snapshot) {
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "persistLocalConfigFile");
+    transaction.addData("LocalConfigFile", file.getAbsolutePath());
+    File tempFile = null;
+    try {
+      //the files are written by this single thread, so the fixed name does not clash
+      tempFile = new File(file.getParentFile(), file.getName() + TEMP_FILE_SUFFIX);
+      try (FileOutputStream out = new FileOutputStream(tempFile)) {
+        store(file, snapshot, out);
+        if (m_fsyncEnabled) {
+          out.getChannel().force(true);
+        }
+      }
+      try {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      ApolloConfigException exception =
+          new ApolloConfigException(
+              String.format("Persist local cache file %s failed", file.getAbsolutePath()), ex);
+      Tracer.logError(exception);
+      transaction.setStatus(exception);
+      logger.warn("Persist local cache file {} failed, reason: {}.", file.getAbsolutePath(),
+          ExceptionUtil.getDetailMessage(ex));
+    } finally {
+      if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+        logger.debug("Delete temp file {} failed", tempFile.getAbsolutePath());
+      }
+      transaction.complete();
+    }
+  }
+
+  void store(File file, Properties snapshot, FileOutputStream out) throws IOException {
+    if (BinaryCacheFile.isBinaryCacheFile(file)) {
+      BinaryCacheFile.store(snapshot, out, m_compressionEnabled);
+    } else {
+      snapshot.store(out, "Persisted by DefaultConfig");
+    }
+  }
+}
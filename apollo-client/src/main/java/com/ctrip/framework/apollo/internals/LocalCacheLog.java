@@ -0,0 +1,496 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static com.ctrip.framework.apollo.monitor.internal.ApolloClientMonitorConstant.APOLLO_CLIENT_LOCAL_CACHE_LOG_RECOVERED;
+
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.DeferredLoggerFactory;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+
+/**
+ * Keeps the local cache files of all the namespaces of an app in a single append-only log, which
+ * saves opening, reading and writing one small file per namespace, e.g. on the overlay filesystems
+ * of containers.
+ * <pre>
+ * magic (4 bytes) | version (1 byte) | record*
+ * record: last modified (8 bytes) | name length (4 bytes) | content length (4 bytes) | name | content
+ * </pre>
+ * The name is the one of the local cache file the record stands for, and the content is the file
+ * in the {@link BinaryCacheFile} format, which carries its own checksum. The last modified time is
+ * not covered by the checksum, so it is updated in place.
+ * <p>
+ * The latest record of each name is located by an in-memory offset index, which is rebuilt by
+ * scanning the log when it is opened. A torn or corrupted tail left by a crash is truncated then.
+ * Once the superseded records take more space than the live ones, the log is compacted into a temp
+ * file which then replaces it atomically.
+ * <p>
+ * The log is locked while it is open, so it is only written by one process, and shared by the
+ * whole JVM as the file locks are held per JVM. Like {@link LocalCacheFileWriter}, the records are
+ * appended on a single background thread, and only the latest snapshot of a name is kept while it
+ * waits to be written.
+ */
+final class LocalCacheLog {
+  private static final Logger logger = DeferredLoggerFactory.getLogger(LocalCacheLog.class);
+  static final String FILE_EXTENSION = "cachelog";
+  private static final int MAGIC = 0x41504c47;//APLG
+  private static final byte VERSION = 1;
+  private static final int FILE_HEADER_LENGTH = 5;
+  private static final int RECORD_HEADER_LENGTH = 16;
+  private static final long COMPACTION_MIN_GARBAGE_BYTES = 1024 * 1024;
+  private static final String LOCK_FILE_SUFFIX = ".lock";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final ExecutorService m_executorService;
+  private static final Map<File, LocalCacheLog> s_instances = Maps.newHashMap();
+  private static final Set<File> s_unavailableFiles = Sets.newHashSet();
+
+  private final File m_file;
+  private final boolean m_fsyncEnabled;
+  private final FileChannel m_lockChannel;
+  private final Map<String, Record> m_index = Maps.newHashMap();
+  private final ConcurrentMap<String, Properties> m_pendingSnapshots = Maps.newConcurrentMap();
+  private FileChannel m_channel;
+  private long m_liveBytes;
+  private long m_garbageBytes;
+
+  static {
+    m_executorService = Executors.newSingleThreadExecutor(
+        ApolloThreadFactory.create("LocalCacheLog", true));
+  }
+
+  /**
+   * @return the log of the file shared by the whole JVM, or null if it could not be opened, e.g.
+   * locked by another process
+   */
+  static synchronized LocalCacheLog getInstance(File file, boolean fsyncEnabled) {
+    LocalCacheLog cacheLog = s_instances.get(file);
+    if (cacheLog != null && !file.isFile()) {
+      //the cache dir was cleaned up, start over with a new log
+      s_instances.remove(file);
+      try {
+        cacheLog.close();
+      } catch (IOException ex) {
+        //ignore
+      }
+      cacheLog = null;
+    }
+    if (cacheLog != null || s_unavailableFiles.contains(file)) {
+      return cacheLog;
+    }
+    try {
+      cacheLog = new LocalCacheLog(file, fsyncEnabled);
+      s_instances.put(file, cacheLog);
+    } catch (Throwable ex) {
+      s_unavailableFiles.add(file);
+      Tracer.logError(ex);
+      logger.warn("Open local cache log {} failed, falling back to the local cache files, reason: {}",
+          file.getAbsolutePath(), ExceptionUtil.getDetailMessage(ex));
+    }
+    return cacheLog;
+  }
+
+  /**
+   * Open the log, and recover it if it was not closed cleanly.
+   *
+   * @param file the log file, which is created if it does not exist
+   * @param fsyncEnabled whether to force the records to the storage device once appended
+   * @throws IOException if the log could not be opened, or it is locked by another process
+   */
+  LocalCacheLog(File file, boolean fsyncEnabled) throws IOException {
+    m_file = file;
+    m_fsyncEnabled = fsyncEnabled;
+    //the log itself is replaced by the compaction, so the lock is held on a separate file
+    m_lockChannel = FileChannel.open(new File(file.getPath() + LOCK_FILE_SUFFIX).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    FileLock lock = null;
+    try {
+      lock = m_lockChannel.tryLock();
+    } catch (OverlappingFileLockException ex) {
+      //locked by another instance in this JVM
+    } finally {
+      if (lock == null) {
+        m_lockChannel.close();
+      }
+    }
+    if (lock == null) {
+      throw new IOException(String.format("Local cache log %s is locked by another process", file));
+    }
+
+    try {
+      m_channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+      recover();
+      compactIfNecessary();
+    } catch (IOException ex) {
+      close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Queue the snapshot to be appended to the log, replacing the pending one of the same name if
+   * any. The snapshot must not be modified afterwards.
+   */
+  void write(final String name, Properties snapshot) {
+    if (m_pendingSnapshots.put(name, snapshot) != null) {
+      //coalesced with the pending one
+      return;
+    }
+    m_executorService.execute(new Runnable() {
+      @Override
+      public void run() {
+        flush(name);
+      }
+    });
+  }
+
+  /**
+   * @return the snapshot of the name which is not appended yet, or null if there is none
+   */
+  Properties getPendingSnapshot(String name) {
+    return m_pendingSnapshots.get(name);
+  }
+
+  /**
+   * Load the latest snapshot of the name into the given properties.
+   *
+   * @return the given properties, or null if the log has no record of the name
+   * @throws IOException if the record could not be read, or it is corrupted
+   */
+  Properties read(String name, Properties properties) throws IOException {
+    Properties pendingSnapshot = m_pendingSnapshots.get(name);
+    if (pendingSnapshot != null) {
+      properties.putAll(pendingSnapshot);
+      return properties;
+    }
+    byte[] content;
+    synchronized (this) {
+      Record record = m_index.get(name);
+      if (record == null) {
+        return null;
+      }
+      content = readFully(record.contentOffset(), record.contentLength);
+    }
+    //the records are verified when the log is opened, or appended by this process afterwards
+    return BinaryCacheFile.load(content, 0, content.length,
+        String.format("%s in local cache log %s", name, m_file), false, properties);
+  }
+
+  /**
+   * @return the time the record of the name was appended or touched, or 0 if there is none
+   */
+  synchronized long lastModified(String name) {
+    Record record = m_index.get(name);
+    return record == null ? 0 : record.lastModified;
+  }
+
+  /**
+   * Set the last modified time of the record of the name to now, if there is one.
+   */
+  synchronized void touch(String name) throws IOException {
+    Record record = m_index.get(name);
+    if (record == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    ByteBuffer buffer = ByteBuffer.allocate(8);
+    buffer.putLong(now).flip();
+    writeFully(buffer, record.offset);
+    record.lastModified = now;
+  }
+
+  /**
+   * Rewrite the log with the latest record of each name only.
+   */
+  synchronized void compact() throws IOException {
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "compactLocalCacheLog");
+    transaction.addData("LocalCacheLog", m_file.getAbsolutePath());
+    File tempFile = File.createTempFile(m_file.getName(), TEMP_FILE_SUFFIX, m_file.getParentFile());
+    try {
+      Map<String, Record> compactedIndex = Maps.newHashMapWithExpectedSize(m_index.size());
+      long position = FILE_HEADER_LENGTH;
+      try (FileChannel out = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+        ByteBuffer header = fileHeader();
+        while (header.hasRemaining()) {
+          out.write(header);
+        }
+        for (Map.Entry<String, Record> entry : m_index.entrySet()) {
+          Record record = entry.getValue();
+          long transferred = 0;
+          while (transferred < record.length()) {
+            transferred += m_channel.transferTo(record.offset + transferred,
+                record.length() - transferred, out);
+          }
+          compactedIndex.put(entry.getKey(), record.movedTo(position));
+          position += record.length();
+        }
+        if (m_fsyncEnabled) {
+          out.force(true);
+        }
+      }
+      try {
+        Files.move(tempFile.toPath(), m_file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(tempFile.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      m_channel.close();
+      m_channel = FileChannel.open(m_file.toPath(), StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      m_index.clear();
+      m_index.putAll(compactedIndex);
+      logger.debug("Compacted local cache log {} from {} to {} bytes", m_file.getAbsolutePath(),
+          FILE_HEADER_LENGTH + m_liveBytes + m_garbageBytes, position);
+      m_liveBytes = position - FILE_HEADER_LENGTH;
+      m_garbageBytes = 0;
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (IOException ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      if (tempFile.exists() && !tempFile.delete()) {
+        logger.debug("Delete temp file {} failed", tempFile.getAbsolutePath());
+      }
+      transaction.complete();
+    }
+  }
+
+  // for test only
+  static synchronized void reset() throws InterruptedException {
+    LocalCacheFileWriter.awaitQueuedTasks(m_executorService, 5, TimeUnit.SECONDS);
+    for (LocalCacheLog cacheLog : s_instances.values()) {
+      try {
+        cacheLog.close();
+      } catch (IOException ex) {
+        //ignore
+      }
+    }
+    s_instances.clear();
+    s_unavailableFiles.clear();
+  }
+
+  synchronized void close() throws IOException {
+    if (!m_lockChannel.isOpen()) {
+      return;
+    }
+    try {
+      if (m_channel != null) {
+        m_channel.close();
+      }
+    } finally {
+      //which releases the lock
+      m_lockChannel.close();
+    }
+  }
+
+  private void flush(String name) {
+    Properties snapshot = m_pendingSnapshots.get(name);
+    while (snapshot != null) {
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "appendLocalCacheLog");
+      transaction.addData("LocalCacheLog", m_file.getAbsolutePath());
+      transaction.addData("Name", name);
+      try {
+        append(name, snapshot);
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        ApolloConfigException exception = new ApolloConfigException(
+            String.format("Append %s to local cache log %s failed", name, m_file.getAbsolutePath()),
+            ex);
+        Tracer.logError(exception);
+        transaction.setStatus(exception);
+        logger.warn("Append {} to local cache log {} failed, reason: {}.", name,
+            m_file.getAbsolutePath(), ExceptionUtil.getDetailMessage(ex));
+      } finally {
+        transaction.complete();
+      }
+      //keep the snapshot readable until it is written, and write again if it was replaced meanwhile
+      if (m_pendingSnapshots.remove(name, snapshot)) {
+        return;
+      }
+      snapshot = m_pendingSnapshots.get(name);
+    }
+  }
+
+  private synchronized void append(String name, Properties snapshot) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    BinaryCacheFile.store(snapshot, content, false);
+    byte[] nameBytes = name.getBytes(Charsets.UTF_8);
+    long now = System.currentTimeMillis();
+    ByteBuffer buffer = ByteBuffer.allocate(
+        RECORD_HEADER_LENGTH + nameBytes.length + content.size());
+    buffer.putLong(now).putInt(nameBytes.length).putInt(content.size()).put(nameBytes)
+        .put(content.toByteArray()).flip();
+
+    long offset = m_channel.size();
+    writeFully(buffer, offset);
+    if (m_fsyncEnabled) {
+      m_channel.force(false);
+    }
+    index(name, new Record(offset, nameBytes.length, content.size(), now));
+    compactIfNecessary();
+  }
+
+  /**
+   * Build the index by scanning the log, and truncate the log at the first record which is torn or
+   * corrupted, which is most likely the last one appended before a crash.
+   */
+  private void recover() throws IOException {
+    long size = m_channel.size();
+    if (size < FILE_HEADER_LENGTH) {
+      //new or torn before the header was written
+      m_channel.truncate(0);
+      writeFully(fileHeader(), 0);
+      return;
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException(String.format("Local cache log %s is too large", m_file));
+    }
+    byte[] bytes = readFully(0, (int) size);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException(String.format("%s is not a local cache log", m_file));
+    }
+    byte version = buffer.get();
+    if (version != VERSION) {
+      throw new IOException(
+          String.format("Version %d of local cache log %s is not supported", version, m_file));
+    }
+
+    int position = FILE_HEADER_LENGTH;
+    while (position < bytes.length) {
+      int remaining = bytes.length - position;
+      if (remaining < RECORD_HEADER_LENGTH) {
+        break;
+      }
+      long lastModified = buffer.getLong(position);
+      int nameLength = buffer.getInt(position + 8);
+      int contentLength = buffer.getInt(position + 12);
+      if (nameLength < 0 || contentLength < 0
+          || (long) RECORD_HEADER_LENGTH + nameLength + contentLength > remaining) {
+        break;
+      }
+      int contentOffset = position + RECORD_HEADER_LENGTH + nameLength;
+      if (!BinaryCacheFile.isIntact(bytes, contentOffset, contentLength)) {
+        break;
+      }
+      String name = new String(bytes, position + RECORD_HEADER_LENGTH, nameLength, Charsets.UTF_8);
+      Record record = new Record(position, nameLength, contentLength, lastModified);
+      index(name, record);
+      position += record.length();
+    }
+
+    if (position < bytes.length) {
+      Tracer.logEvent(APOLLO_CLIENT_LOCAL_CACHE_LOG_RECOVERED, m_file.getAbsolutePath());
+      logger.warn("Local cache log {} has a torn or corrupted tail, truncated from {} to {} bytes",
+          m_file.getAbsolutePath(), bytes.length, position);
+      m_channel.truncate(position);
+      if (m_fsyncEnabled) {
+        m_channel.force(false);
+      }
+    }
+  }
+
+  private void compactIfNecessary() throws IOException {
+    if (m_garbageBytes >= COMPACTION_MIN_GARBAGE_BYTES && m_garbageBytes > m_liveBytes) {
+      compact();
+    }
+  }
+
+  private void index(String name, Record record) {
+    Record previous = m_index.put(name, record);
+    if (previous != null) {
+      m_liveBytes -= previous.length();
+      m_garbageBytes += previous.length();
+    }
+    m_liveBytes += record.length();
+  }
+
+  private ByteBuffer fileHeader() {
+    ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+    header.putInt(MAGIC).put(VERSION).flip();
+    return header;
+  }
+
+  private byte[] readFully(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      int read = m_channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new EOFException(String.format("Local cache log %s is truncated", m_file));
+      }
+    }
+    return buffer.array();
+  }
+
+  private void writeFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += m_channel.write(buffer, position);
+    }
+  }
+
+  private static class Record {
+    private final long offset;
+    private final int nameLength;
+    private final int contentLength;
+    private long lastModified;
+
+    Record(long offset, int nameLength, int contentLength, long lastModified) {
+      this.offset = offset;
+      this.nameLength = nameLength;
+      this.contentLength = contentLength;
+      this.lastModified = lastModified;
+    }
+
+    long contentOffset() {
+      return offset + RECORD_HEADER_LENGTH + nameLength;
+    }
+
+    int length() {
+      return RECORD_HEADER_LENGTH + nameLength + contentLength;
+    }
+
+    Record movedTo(long newOffset) {
+      return new Record(newOffset, nameLength, contentLength, lastModified);
+    }
+  }
+}
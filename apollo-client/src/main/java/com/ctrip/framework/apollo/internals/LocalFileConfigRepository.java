@@ -17,23 +17,31 @@
 package com.ctrip.framework.apollo.internals;
 
 import static com.ctrip.framework.apollo.monitor.internal.ApolloClientMonitorConstant.*;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.core.utils.DeferredLoggerFactory;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.tracer.Tracer;
@@ -42,20 +50,38 @@ import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class LocalFileConfigRepository extends AbstractConfigRepository
-    implements RepositoryChangeListener {
+    implements ConfigSnapshotListener {
   private static final Logger logger = DeferredLoggerFactory.getLogger(LocalFileConfigRepository.class);
   private static final String CONFIG_DIR = "/config-cache";
+  private static final String PROPERTIES_FILE_EXTENSION = "properties";
+  private static final String METADATA_FILE_EXTENSION = "meta";
+  private static final String METADATA_RELEASE_KEY = "releaseKey";
+  private static final String METADATA_NOTIFICATION_ID = "notificationId";
+  private static final String METADATA_CHECKSUM = "checksum";
+  private static final ExecutorService m_revalidateExecutorService = Executors.newCachedThreadPool(
+      ApolloThreadFactory.create("LocalFileConfigRepository-Revalidate", true));
   private final String m_appId;
   private final String m_namespace;
   private File m_baseDir;
   private final ConfigUtil m_configUtil;
-  private volatile Properties m_fileProperties;
+  private final LocalCacheFileWriter m_cacheFileWriter;
+  private volatile ConfigSnapshot m_fileProperties;
   private volatile ConfigRepository m_upstream;
+  private volatile boolean m_upstreamRestored;
+  private volatile Properties m_persistedMetadata;
+  private volatile SharedLocalCache m_sharedLocalCache;
+  private Supplier<ConfigRepository> m_upstreamFactory;
+  private volatile Set<String> m_localCacheFileNames;
+  private volatile boolean m_localCacheDirWatched;
 
   private volatile ConfigSourceType m_sourceType = ConfigSourceType.LOCAL;
 
@@ -72,13 +98,163 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     m_appId = appId;
     m_namespace = namespace;
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_cacheFileWriter = ApolloInjector.getInstance(LocalCacheFileWriter.class);
     this.setLocalCacheDir(findLocalCacheDir(), false);
     this.setUpstreamRepository(upstream);
+    if (upstream == null && m_configUtil.isInLocalMode()) {
+      //the local cache files are edited by hand in local mode
+      this.watchLocalCacheDir();
+    }
+  }
+
+  /**
+   * Create the repository which shares the local cache dir with the other processes of the app on
+   * the same host, see {@link SharedLocalCache}. The upstream is only created once this process is
+   * the one loading the configs from the config service.
+   *
+   * @param upstreamFactory the factory of the upstream repository
+   */
+  public static LocalFileConfigRepository createShared(String appId, String namespace,
+      Supplier<ConfigRepository> upstreamFactory) {
+    LocalFileConfigRepository repository = new LocalFileConfigRepository(appId, namespace);
+    repository.shareLocalCacheDir(upstreamFactory);
+    return repository;
+  }
+
+  private void shareLocalCacheDir(Supplier<ConfigRepository> upstreamFactory) {
+    SharedLocalCache sharedLocalCache = SharedLocalCache.getInstance(m_baseDir, m_appId);
+    if (sharedLocalCache == null) {
+      this.setUpstreamRepository(upstreamFactory.get());
+      return;
+    }
+    m_upstreamFactory = upstreamFactory;
+    m_sharedLocalCache = sharedLocalCache;
+    sharedLocalCache.register(new SharedLocalCache.Participant() {
+      @Override
+      public void onLeaseAcquired() {
+        takeOverUpstream(true);
+      }
+    });
+    if (sharedLocalCache.isLeader()) {
+      takeOverUpstream(false);
+    } else {
+      this.watchLocalCacheDir();
+    }
+  }
+
+  /**
+   * Reload the local cache file once it is changed by another process, as long as there is no
+   * upstream.
+   */
+  private void watchLocalCacheDir() {
+    final File baseDir = m_baseDir;
+    LocalCacheDirWatcher watcher = LocalCacheDirWatcher.getInstance(baseDir);
+    if (watcher == null) {
+      return;
+    }
+    m_localCacheFileNames = ImmutableSet.of(
+        assembleLocalCacheFile(baseDir, m_appId, m_namespace).getName(),
+        assembleTargetLocalCacheFile(baseDir, m_appId, m_namespace).getName());
+    m_localCacheDirWatched = true;
+    watcher.register(new LocalCacheDirWatcher.Listener() {
+      @Override
+      public void onLocalCacheFileChanged(String fileName) {
+        //the dir may be changed afterwards, see setLocalCacheDir
+        if (baseDir.equals(m_baseDir)) {
+          reloadLocalCacheFile(fileName);
+        }
+      }
+    });
+  }
+
+  /**
+   * Create the upstream once this process holds the lease of the shared local cache dir, and sync
+   * with it right away if the config was loaded from the local cache file already.
+   */
+  private void takeOverUpstream(boolean syncImmediately) {
+    synchronized (this) {
+      if (m_upstream != null) {
+        return;
+      }
+      this.setUpstreamRepository(m_upstreamFactory.get());
+    }
+    if (!syncImmediately || m_fileProperties == null) {
+      return;
+    }
+    logger.info("Loading config of namespace {} from upstream instead of the shared local cache dir",
+        m_namespace);
+    m_revalidateExecutorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        ConfigSnapshot previous = m_fileProperties;
+        if (trySyncFromUpstream() && !m_fileProperties.equals(previous)) {
+          //e.g. the previous leader exited before persisting the last release
+          fireRepositoryChange(m_appId, m_namespace, m_fileProperties);
+        }
+      }
+    });
+  }
+
+  /**
+   * Reload the local cache file changed by another process, e.g. the one holding the lease of the
+   * shared local cache dir, and fire the change events if it differs.
+   */
+  private void reloadLocalCacheFile(String fileName) {
+    //the config is loaded on demand, and the upstream is followed if there is one
+    if (m_upstream != null || m_fileProperties == null
+        || (fileName != null && !m_localCacheFileNames.contains(fileName))) {
+      return;
+    }
+    Properties properties;
+    try {
+      properties = this.loadFromLocalCacheFile(m_baseDir, m_appId, m_namespace);
+    } catch (Throwable ex) {
+      logger.warn("Reload local cache file {} failed, reason: {}", fileName,
+          ExceptionUtil.getDetailMessage(ex));
+      return;
+    }
+    synchronized (this) {
+      if (m_upstream != null || properties.equals(m_fileProperties)) {
+        return;
+      }
+      m_fileProperties = ConfigSnapshot.copyOf(properties, propertiesFactory);
+      m_sourceType = ConfigSourceType.LOCAL;
+    }
+    this.fireRepositoryChange(m_appId, m_namespace, m_fileProperties);
+  }
+
+  /**
+   * @return whether the local cache files are persisted by another process, which holds the lease
+   * of the shared local cache dir
+   */
+  private boolean isSharedLocalCacheFollower() {
+    return m_sharedLocalCache != null && m_upstream == null;
+  }
+
+  /**
+   * Wait for the process holding the lease to persist the local cache file, if it is not there yet,
+   * e.g. all the processes of the app start at the same time with an empty local cache dir.
+   */
+  private void awaitSharedLocalCacheFile() {
+    long deadline = System.currentTimeMillis() + m_configUtil.getReadTimeout();
+    while (isSharedLocalCacheFollower()
+        && !findLocalCacheFile(m_baseDir, m_appId, m_namespace).isFile()
+        && System.currentTimeMillis() < deadline) {
+      try {
+        TimeUnit.MILLISECONDS.sleep(50);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
   }
 
   void setLocalCacheDir(File baseDir, boolean syncImmediately) {
     m_baseDir = baseDir;
     this.checkLocalConfigCacheDir(m_baseDir);
+    if (m_localCacheDirWatched) {
+      this.watchLocalCacheDir();
+    }
     if (syncImmediately) {
       this.trySync();
     }
@@ -103,12 +279,15 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
 
   @Override
   public Properties getConfig() {
+    return ConfigSnapshot.toProperties(getConfigSnapshot(), propertiesFactory);
+  }
+
+  @Override
+  ConfigSnapshot getConfigSnapshot() {
     if (m_fileProperties == null) {
       sync();
     }
-    Properties result = propertiesFactory.getPropertiesInstance();
-    result.putAll(m_fileProperties);
-    return result;
+    return m_fileProperties;
   }
 
   @Override
@@ -136,17 +315,32 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
 
   @Override
   public void onRepositoryChange(String appId, String namespace, Properties newProperties) {
-    if (newProperties.equals(m_fileProperties)) {
+    this.onRepositorySnapshotChange(appId, namespace,
+        ConfigSnapshot.copyOf(newProperties, propertiesFactory));
+  }
+
+  @Override
+  public void onRepositorySnapshotChange(String appId, String namespace,
+      ConfigSnapshot newSnapshot) {
+    if (newSnapshot.equals(m_fileProperties)) {
+      //e.g. a new release with the same configurations
+      persistLocalCacheMetadata(m_baseDir, m_appId, m_namespace);
       return;
     }
-    Properties newFileProperties = propertiesFactory.getPropertiesInstance();
-    newFileProperties.putAll(newProperties);
-    updateFileProperties(newFileProperties, m_upstream.getSourceType());
-    this.fireRepositoryChange(appId, namespace, newProperties);
+    updateFileProperties(newSnapshot, m_upstream.getSourceType());
+    this.fireRepositoryChange(appId, namespace, newSnapshot);
   }
 
   @Override
   protected void sync() {
+    if (m_fileProperties == null && isSharedLocalCacheFollower()) {
+      awaitSharedLocalCacheFile();
+    }
+
+    if (m_fileProperties == null && tryServeStaleWhileRevalidate()) {
+      return;
+    }
+
     //sync with upstream immediately
     boolean syncFromUpstreamResultSuccess = trySyncFromUpstream();
 
@@ -158,7 +352,8 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     Throwable exception = null;
     try {
       transaction.addData("Basedir", m_baseDir.getAbsolutePath());
-      m_fileProperties = this.loadFromLocalCacheFile(m_baseDir, m_appId, m_namespace);
+      m_fileProperties = ConfigSnapshot.copyOf(
+          this.loadFromLocalCacheFile(m_baseDir, m_appId, m_namespace), propertiesFactory);
       m_sourceType = ConfigSourceType.LOCAL;
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
@@ -177,12 +372,56 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     }
   }
 
+  /**
+   * Serve the local cache file right away if it is fresh enough, and sync with the upstream in the
+   * background, which fires the change events as usual if the upstream config differs.
+   */
+  private boolean tryServeStaleWhileRevalidate() {
+    if (m_upstream == null || !m_configUtil.isStaleWhileRevalidateEnabled()) {
+      return false;
+    }
+    File file = findLocalCacheFile(m_baseDir, m_appId, m_namespace);
+    long lastModified = getLocalCacheLastModified(file);
+    long ageInMillis = System.currentTimeMillis() - lastModified;
+    if (lastModified <= 0
+        || ageInMillis > TimeUnit.SECONDS.toMillis(m_configUtil.getStaleWhileRevalidateMaxAgeInSeconds())) {
+      return false;
+    }
+
+    try {
+      Properties properties = this.loadFromLocalCacheFile(m_baseDir, m_appId, m_namespace);
+      synchronized (this) {
+        if (m_fileProperties == null) {
+          m_fileProperties = ConfigSnapshot.copyOf(properties, propertiesFactory);
+          m_sourceType = ConfigSourceType.LOCAL;
+        }
+      }
+    } catch (Throwable ex) {
+      logger.warn("Load stale config from local cache file {} failed, reason: {}",
+          file.getAbsolutePath(), ExceptionUtil.getDetailMessage(ex));
+      return false;
+    }
+
+    Tracer.logEvent(APOLLO_CLIENT_STALE_WHILE_REVALIDATE, m_namespace);
+    logger.debug("Served local cache file {} which is {} ms old, revalidating in background",
+        file.getAbsolutePath(), ageInMillis);
+    m_revalidateExecutorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        trySyncFromUpstream();
+      }
+    });
+    return true;
+  }
+
   private boolean trySyncFromUpstream() {
     if (m_upstream == null) {
       return false;
     }
+    restoreUpstreamFromLocalCache();
     try {
-      updateFileProperties(m_upstream.getConfig(), m_upstream.getSourceType());
+      updateFileProperties(getConfigSnapshot(m_upstream, propertiesFactory),
+          m_upstream.getSourceType());
       return true;
     } catch (Throwable ex) {
       Tracer.logError(ex);
@@ -193,21 +432,180 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     return false;
   }
 
-  private synchronized void updateFileProperties(Properties newProperties, ConfigSourceType sourceType) {
+  private synchronized void updateFileProperties(ConfigSnapshot newSnapshot,
+      ConfigSourceType sourceType) {
     this.m_sourceType = sourceType;
-    if (newProperties.equals(m_fileProperties)) {
+    if (newSnapshot.equals(m_fileProperties)) {
+      //the local cache file is confirmed by the upstream, which resets its age
+      touchLocalCacheFile(m_baseDir, m_appId, m_namespace);
+      persistLocalCacheMetadata(m_baseDir, m_appId, m_namespace);
       return;
     }
-    this.m_fileProperties = newProperties;
+    this.m_fileProperties = newSnapshot;
     persistLocalCacheFile(m_baseDir, m_appId, m_namespace);
+    persistLocalCacheMetadata(m_baseDir, m_appId, m_namespace);
+  }
+
+  /**
+   * Hand the local cache file and the release key it was persisted with to the remote repository,
+   * so that an unchanged namespace is answered with 304 on startup and the long polling resumes
+   * from the notification id of the previous run.
+   */
+  private void restoreUpstreamFromLocalCache() {
+    if (m_upstreamRestored || !(m_upstream instanceof RemoteConfigRepository)) {
+      return;
+    }
+    m_upstreamRestored = true;
+    File metadataFile = assembleLocalCacheFile(m_baseDir, m_appId, m_namespace,
+        METADATA_FILE_EXTENSION);
+    try {
+      Properties metadata = loadLocalCacheMetadata(metadataFile);
+      if (metadata == null) {
+        return;
+      }
+      Properties properties = ConfigSnapshot.toProperties(m_fileProperties, propertiesFactory);
+      if (properties == null) {
+        properties = this.loadFromLocalCacheFile(m_baseDir, m_appId, m_namespace);
+      }
+      //the files are written separately, so the metadata may belong to another version
+      String releaseKey = metadata.getProperty(METADATA_RELEASE_KEY);
+      if (Strings.isNullOrEmpty(releaseKey)
+          || !checksum(properties).equals(metadata.getProperty(METADATA_CHECKSUM))) {
+        logger.debug("Local cache metadata {} does not match the local cache file, ignore it",
+            metadataFile.getAbsolutePath());
+        return;
+      }
+      long notificationId = Long.parseLong(metadata.getProperty(METADATA_NOTIFICATION_ID,
+          String.valueOf(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER)));
+      ((RemoteConfigRepository) m_upstream).restore(properties, releaseKey, notificationId);
+      m_persistedMetadata = metadata;
+    } catch (Throwable ex) {
+      logger.warn("Restore from local cache metadata {} failed, reason: {}",
+          metadataFile.getAbsolutePath(), ExceptionUtil.getDetailMessage(ex));
+    }
+  }
+
+  private Properties loadLocalCacheMetadata(File metadataFile) throws IOException {
+    LocalCacheLog cacheLog = getCacheLog();
+    if (cacheLog != null) {
+      Properties metadata = cacheLog.read(metadataFile.getName(), new Properties());
+      if (metadata != null) {
+        return metadata;
+      }
+    }
+    Properties metadata = new Properties();
+    Properties pendingSnapshot = m_cacheFileWriter.getPendingSnapshot(metadataFile);
+    if (pendingSnapshot != null) {
+      metadata.putAll(pendingSnapshot);
+      return metadata;
+    }
+    if (!metadataFile.isFile()) {
+      return null;
+    }
+    try (InputStream in = new FileInputStream(metadataFile)) {
+      metadata.load(in);
+    }
+    return metadata;
+  }
+
+  /**
+   * Persist the release key and the notification id of the local cache file, if the upstream is
+   * the remote repository and the local cache file holds its config.
+   */
+  private void persistLocalCacheMetadata(File baseDir, String appId, String namespace) {
+    if (baseDir == null || !(m_upstream instanceof RemoteConfigRepository)) {
+      return;
+    }
+    RemoteConfigRepository remoteConfigRepository = (RemoteConfigRepository) m_upstream;
+    ApolloConfig apolloConfig = remoteConfigRepository.getApolloConfig();
+    ConfigSnapshot properties = m_fileProperties;
+    if (apolloConfig == null || Strings.isNullOrEmpty(apolloConfig.getReleaseKey())
+        || properties == null || !properties.equals(apolloConfig.getConfigurations())) {
+      return;
+    }
+    Properties metadata = new Properties();
+    metadata.setProperty(METADATA_RELEASE_KEY, apolloConfig.getReleaseKey());
+    long notificationId = remoteConfigRepository.getNotificationId();
+    if (notificationId != ConfigConsts.NOTIFICATION_ID_PLACEHOLDER) {
+      metadata.setProperty(METADATA_NOTIFICATION_ID, String.valueOf(notificationId));
+    }
+    metadata.setProperty(METADATA_CHECKSUM, checksum(properties));
+    if (metadata.equals(m_persistedMetadata)) {
+      return;
+    }
+    m_persistedMetadata = metadata;
+    writeLocalCacheFile(
+        assembleLocalCacheFile(baseDir, appId, namespace, METADATA_FILE_EXTENSION), metadata);
+  }
+
+  // for test only
+  static void reset() throws InterruptedException {
+    //the threads sharing and watching the local cache dir outlive the repositories
+    LocalCacheLog.reset();
+    SharedLocalCache.reset();
+    LocalCacheDirWatcher.reset();
+  }
+
+  /**
+   * @return the SHA-256 digest of the entries sorted by key, so it does not depend on the order
+   * the entries are kept in
+   */
+  private static String checksum(Map<?, ?> properties) {
+    Map<String, String> sortedProperties = new TreeMap<>();
+    for (Map.Entry<?, ?> entry : properties.entrySet()) {
+      sortedProperties.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+    }
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (Map.Entry<String, String> entry : sortedProperties.entrySet()) {
+      //the lengths delimit the keys and the values
+      hasher.putInt(entry.getKey().length()).putString(entry.getKey(), StandardCharsets.UTF_8)
+          .putInt(entry.getValue().length()).putString(entry.getValue(), StandardCharsets.UTF_8);
+    }
+    return hasher.hash().toString();
   }
 
   private Properties loadFromLocalCacheFile(File baseDir, String appId, String namespace) throws IOException {
     Preconditions.checkNotNull(baseDir, "Basedir cannot be null");
 
-    File file = assembleLocalCacheFile(baseDir, appId, namespace);
+    File targetFile = assembleTargetLocalCacheFile(baseDir, appId, namespace);
     Properties properties = null;
 
+    LocalCacheLog cacheLog = getCacheLog();
+    if (cacheLog != null) {
+      try {
+        properties = cacheLog.read(targetFile.getName(), propertiesFactory.getPropertiesInstance());
+        if (properties != null) {
+          return properties;
+        }
+      } catch (IOException ex) {
+        Tracer.logError(ex);
+        logger.warn("Loading {} from local cache log failed, reason: {}, falling back to the local cache file",
+            targetFile.getName(), ExceptionUtil.getDetailMessage(ex));
+      }
+    }
+
+    Properties pendingSnapshot = m_cacheFileWriter.getPendingSnapshot(targetFile);
+    if (pendingSnapshot != null) {
+      //the file is about to be written by the cache file writer
+      properties = propertiesFactory.getPropertiesInstance();
+      properties.putAll(pendingSnapshot);
+      return properties;
+    }
+
+    File file = findLocalCacheFile(baseDir, appId, namespace);
+    if (BinaryCacheFile.isBinaryCacheFile(file)) {
+      try {
+        properties = BinaryCacheFile.load(file, propertiesFactory.getPropertiesInstance());
+        logger.debug("Loading local config file {} successfully!", file.getAbsolutePath());
+        return properties;
+      } catch (IOException ex) {
+        Tracer.logError(ex);
+        logger.warn("Loading local config file {} failed, reason: {}, falling back to the properties file",
+            file.getAbsolutePath(), ExceptionUtil.getDetailMessage(ex));
+        file = assembleLocalCacheFile(baseDir, appId, namespace);
+      }
+    }
+
     if (file.isFile() && file.canRead()) {
       InputStream in = null;
 
@@ -234,6 +632,11 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
           String.format("Cannot read from local cache file %s", file.getAbsolutePath()));
     }
 
+    if (!file.equals(targetFile) || cacheLog != null) {
+      //migrate the properties file to the binary format or the local cache log
+      writeLocalCacheFile(targetFile, properties);
+    }
+
     return properties;
   }
 
@@ -241,33 +644,72 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     if (baseDir == null) {
       return;
     }
-    File file = assembleLocalCacheFile(baseDir, appId, namespace);
+    //m_fileProperties is replaced rather than modified, so it is safe to write it asynchronously
+    writeLocalCacheFile(assembleTargetLocalCacheFile(baseDir, appId, namespace),
+        ConfigSnapshot.toProperties(m_fileProperties, propertiesFactory));
+  }
+
+  /**
+   * Write the snapshot to the local cache log if it is enabled, or to the file otherwise.
+   */
+  private void writeLocalCacheFile(File file, Properties snapshot) {
+    if (isSharedLocalCacheFollower()) {
+      //the local cache files are persisted by the process holding the lease only
+      return;
+    }
+    LocalCacheLog cacheLog = getCacheLog();
+    if (cacheLog != null) {
+      cacheLog.write(file.getName(), snapshot);
+    } else {
+      m_cacheFileWriter.write(file, snapshot);
+    }
+  }
 
-    OutputStream out = null;
+  /**
+   * @return the last modified time of the local cache file, or 0 if it does not exist
+   */
+  private long getLocalCacheLastModified(File file) {
+    LocalCacheLog cacheLog = getCacheLog();
+    if (cacheLog != null) {
+      long lastModified = cacheLog.lastModified(
+          assembleTargetLocalCacheFile(m_baseDir, m_appId, m_namespace).getName());
+      if (lastModified > 0) {
+        return lastModified;
+      }
+    }
+    return file.isFile() ? file.lastModified() : 0;
+  }
 
-    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "persistLocalConfigFile");
-    transaction.addData("LocalConfigFile", file.getAbsolutePath());
-    try {
-      out = new FileOutputStream(file);
-      m_fileProperties.store(out, "Persisted by DefaultConfig");
-      transaction.setStatus(Transaction.SUCCESS);
-    } catch (IOException ex) {
-      ApolloConfigException exception =
-          new ApolloConfigException(
-              String.format("Persist local cache file %s failed", file.getAbsolutePath()), ex);
-      Tracer.logError(exception);
-      transaction.setStatus(exception);
-      logger.warn("Persist local cache file {} failed, reason: {}.", file.getAbsolutePath(),
-          ExceptionUtil.getDetailMessage(ex));
-    } finally {
-      if (out != null) {
-        try {
-          out.close();
-        } catch (IOException ex) {
-          //ignore
-        }
+  /**
+   * @return the local cache log of the app, or null if it is disabled or not available
+   */
+  private LocalCacheLog getCacheLog() {
+    //the processes sharing the local cache dir follow the files of each namespace
+    if (m_baseDir == null || !m_configUtil.isCacheFileConsolidatedEnabled()
+        || m_sharedLocalCache != null) {
+      return null;
+    }
+    return LocalCacheLog.getInstance(
+        new File(m_baseDir, String.format("%s.%s", m_appId, LocalCacheLog.FILE_EXTENSION)),
+        m_configUtil.isCacheFileFsyncEnabled());
+  }
+
+  private void touchLocalCacheFile(File baseDir, String appId, String namespace) {
+    if (baseDir == null || !m_configUtil.isStaleWhileRevalidateEnabled()) {
+      return;
+    }
+    File file = assembleTargetLocalCacheFile(baseDir, appId, namespace);
+    LocalCacheLog cacheLog = getCacheLog();
+    if (cacheLog != null) {
+      try {
+        cacheLog.touch(file.getName());
+      } catch (IOException ex) {
+        logger.debug("Update last modified time of {} in local cache log failed", file.getName(), ex);
       }
-      transaction.complete();
+      return;
+    }
+    if (file.isFile() && !file.setLastModified(System.currentTimeMillis())) {
+      logger.debug("Update last modified time of local cache file {} failed", file.getAbsolutePath());
     }
   }
 
@@ -296,9 +738,42 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
   }
 
   File assembleLocalCacheFile(File baseDir, String appId, String namespace) {
+    return assembleLocalCacheFile(baseDir, appId, namespace, PROPERTIES_FILE_EXTENSION);
+  }
+
+  /**
+   * @return the cache file to persist the config to, in the binary format if it is enabled
+   */
+  private File assembleTargetLocalCacheFile(File baseDir, String appId, String namespace) {
+    if (m_configUtil.isCacheFileBinaryEnabled()) {
+      return assembleLocalCacheFile(baseDir, appId, namespace, BinaryCacheFile.FILE_EXTENSION);
+    }
+    return assembleLocalCacheFile(baseDir, appId, namespace);
+  }
+
+  /**
+   * @return the cache file to load the config from, the binary one is preferred if it is enabled
+   * and not older than the properties one, e.g. left by a previous run with the binary format
+   * disabled
+   */
+  private File findLocalCacheFile(File baseDir, String appId, String namespace) {
+    File propertiesFile = assembleLocalCacheFile(baseDir, appId, namespace);
+    if (!m_configUtil.isCacheFileBinaryEnabled()) {
+      return propertiesFile;
+    }
+    File binaryFile = assembleTargetLocalCacheFile(baseDir, appId, namespace);
+    if (binaryFile.isFile()
+        && (!propertiesFile.isFile() || binaryFile.lastModified() >= propertiesFile.lastModified())) {
+      return binaryFile;
+    }
+    return propertiesFile;
+  }
+
+  private File assembleLocalCacheFile(File baseDir, String appId, String namespace,
+      String extension) {
     String fileName =
-        String.format("%s.properties", Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
-            .join(appId, m_configUtil.getCluster(), namespace));
+        String.format("%s.%s", Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+            .join(appId, m_configUtil.getCluster(), namespace), extension);
     return new File(baseDir, fileName);
   }
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.utils.DeferredLoggerFactory;
+import com.ctrip.framework.apollo.core.utils.StringUtils;
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.escape.EscapeUtil;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+
+/**
+ * Loads the config from a Kubernetes ConfigMap projected into the pod as a volume, which makes no
+ * call to the API server and needs no RBAC permission of the ConfigMap, if the upstream is not
+ * available.
+ * <p>
+ * The ConfigMap is supposed to be the one written by {@link K8sConfigMapConfigRepository}, so that
+ * each namespace is a file named by its ConfigMap key, containing the config in json. The kubelet
+ * updates the volume by writing the files into a new timestamped dir and then swapping the
+ * {@link #DATA_DIR_NAME} symlink to it, which is followed as long as the config is loaded from the
+ * volume.
+ * <p>
+ * The namespaces compressed into the binaryData of the ConfigMap are mounted as gzip files, which are
+ * decompressed once read. If the ConfigMap is sharded, all of its shards are supposed to be mounted
+ * into the same dir by a projected volume.
+ */
+public class MountedConfigMapConfigRepository extends AbstractConfigRepository
+    implements ConfigSnapshotListener {
+  private static final Logger logger = DeferredLoggerFactory.getLogger(
+      MountedConfigMapConfigRepository.class);
+  //the symlink swapped by the kubelet atomically on each update of the ConfigMap
+  static final String DATA_DIR_NAME = "..data";
+  private static final Type CONFIG_TYPE = new TypeToken<Map<String, String>>() {
+  }.getType();
+  private static final Gson GSON = new Gson();
+  private final String m_appId;
+  private final String m_namespace;
+  private final File m_mountDir;
+  private final String m_configMapKey;
+  private volatile ConfigSnapshot m_fileProperties;
+  private volatile ConfigRepository m_upstream;
+  private volatile ConfigSourceType m_sourceType = ConfigSourceType.CONFIGMAP;
+
+  /**
+   * Constructor.
+   *
+   * @param mountDir the dir the ConfigMap is mounted to
+   * @param upstream the upstream repository, which is preferred if it is available
+   */
+  public MountedConfigMapConfigRepository(String appId, String namespace, File mountDir,
+      ConfigRepository upstream) {
+    m_appId = appId;
+    m_namespace = namespace;
+    m_mountDir = mountDir;
+    String cluster = ApolloInjector.getInstance(ConfigUtil.class).getCluster();
+    m_configMapKey = EscapeUtil.createConfigMapKey(
+        StringUtils.isBlank(cluster) ? "default" : cluster, namespace);
+    this.setUpstreamRepository(upstream);
+    this.watchMountDir();
+  }
+
+  private void watchMountDir() {
+    LocalCacheDirWatcher watcher = LocalCacheDirWatcher.getInstance(m_mountDir);
+    if (watcher == null) {
+      return;
+    }
+    watcher.register(new LocalCacheDirWatcher.Listener() {
+      @Override
+      public void onLocalCacheFileChanged(String fileName) {
+        //the files are replaced by the symlink swap, or written in place if not mounted by kubelet
+        if (fileName == null || DATA_DIR_NAME.equals(fileName) || m_configMapKey.equals(fileName)) {
+          reloadMountedFile();
+        }
+      }
+    });
+  }
+
+  /**
+   * Reload the mounted file once the ConfigMap is updated, and fire the change events if it
+   * differs, as long as the upstream is not available.
+   */
+  private void reloadMountedFile() {
+    if (m_fileProperties == null || m_sourceType != ConfigSourceType.CONFIGMAP) {
+      return;
+    }
+    Properties properties;
+    try {
+      properties = this.loadFromMountedFile();
+    } catch (Throwable ex) {
+      logger.warn("Reload mounted ConfigMap file {} failed, reason: {}", assembleMountedFile(),
+          ExceptionUtil.getDetailMessage(ex));
+      return;
+    }
+    synchronized (this) {
+      if (m_sourceType != ConfigSourceType.CONFIGMAP || properties.equals(m_fileProperties)) {
+        return;
+      }
+      m_fileProperties = ConfigSnapshot.copyOf(properties, propertiesFactory);
+    }
+    this.fireRepositoryChange(m_appId, m_namespace, m_fileProperties);
+  }
+
+  @Override
+  public Properties getConfig() {
+    return ConfigSnapshot.toProperties(getConfigSnapshot(), propertiesFactory);
+  }
+
+  @Override
+  ConfigSnapshot getConfigSnapshot() {
+    if (m_fileProperties == null) {
+      sync();
+    }
+    return m_fileProperties;
+  }
+
+  @Override
+  public void setUpstreamRepository(ConfigRepository upstreamConfigRepository) {
+    if (upstreamConfigRepository == null) {
+      return;
+    }
+    //clear previous listener
+    if (m_upstream != null) {
+      m_upstream.removeChangeListener(this);
+    }
+    m_upstream = upstreamConfigRepository;
+    upstreamConfigRepository.addChangeListener(this);
+  }
+
+  @Override
+  public ConfigSourceType getSourceType() {
+    return m_sourceType;
+  }
+
+  @Override
+  public void onRepositoryChange(String namespace, Properties newProperties) {
+    this.onRepositoryChange(m_appId, namespace, newProperties);
+  }
+
+  @Override
+  public void onRepositoryChange(String appId, String namespace, Properties newProperties) {
+    this.onRepositorySnapshotChange(appId, namespace,
+        ConfigSnapshot.copyOf(newProperties, propertiesFactory));
+  }
+
+  @Override
+  public void onRepositorySnapshotChange(String appId, String namespace,
+      ConfigSnapshot newSnapshot) {
+    if (newSnapshot.equals(m_fileProperties)) {
+      return;
+    }
+    updateFileProperties(newSnapshot, m_upstream.getSourceType());
+    this.fireRepositoryChange(appId, namespace, newSnapshot);
+  }
+
+  @Override
+  protected void sync() {
+    //sync with upstream immediately
+    boolean syncFromUpstreamResultSuccess = trySyncFromUpstream();
+
+    if (syncFromUpstreamResultSuccess) {
+      return;
+    }
+
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "syncMountedConfigMap");
+    Throwable exception = null;
+    try {
+      transaction.addData("MountDir", m_mountDir.getAbsolutePath());
+      Properties properties = this.loadFromMountedFile();
+      synchronized (this) {
+        m_fileProperties = ConfigSnapshot.copyOf(properties, propertiesFactory);
+        m_sourceType = ConfigSourceType.CONFIGMAP;
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+      transaction.setStatus(ex);
+      exception = ex;
+    } finally {
+      transaction.complete();
+    }
+
+    if (m_fileProperties == null) {
+      m_sourceType = ConfigSourceType.NONE;
+      throw new ApolloConfigException(
+          "Load config from mounted Kubernetes ConfigMap failed!", exception);
+    }
+  }
+
+  private boolean trySyncFromUpstream() {
+    if (m_upstream == null) {
+      return false;
+    }
+    try {
+      updateFileProperties(getConfigSnapshot(m_upstream, propertiesFactory),
+          m_upstream.getSourceType());
+      return true;
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger
+          .warn("Sync config from upstream repository {} failed, reason: {}", m_upstream.getClass(),
+              ExceptionUtil.getDetailMessage(ex));
+    }
+    return false;
+  }
+
+  private synchronized void updateFileProperties(ConfigSnapshot newSnapshot,
+      ConfigSourceType sourceType) {
+    this.m_sourceType = sourceType;
+    if (newSnapshot.equals(m_fileProperties)) {
+      return;
+    }
+    this.m_fileProperties = newSnapshot;
+  }
+
+  private Properties loadFromMountedFile() throws IOException {
+    File file = assembleMountedFile();
+    if (!file.isFile()) {
+      throw new ApolloConfigException(
+          String.format("Cannot find mounted ConfigMap file %s", file.getAbsolutePath()));
+    }
+    Properties properties = propertiesFactory.getPropertiesInstance();
+    //the symlinks are followed, so the file is read from the dir the data symlink points to
+    try (Reader reader = new InputStreamReader(openMountedFile(file), StandardCharsets.UTF_8)) {
+      Map<String, String> config = GSON.fromJson(reader, CONFIG_TYPE);
+      if (config != null) {
+        properties.putAll(config);
+      }
+    }
+    logger.debug("Loading mounted ConfigMap file {}", file.getAbsolutePath());
+    return properties;
+  }
+
+  private InputStream openMountedFile(File file) throws IOException {
+    InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()));
+    in.mark(2);
+    int magic = in.read() | (in.read() << 8);
+    in.reset();
+    if (magic != GZIPInputStream.GZIP_MAGIC) {
+      return in;
+    }
+    try {
+      return new GZIPInputStream(in);
+    } catch (IOException ex) {
+      in.close();
+      throw ex;
+    }
+  }
+
+  private File assembleMountedFile() {
+    return new File(m_mountDir, m_configMapKey);
+  }
+}
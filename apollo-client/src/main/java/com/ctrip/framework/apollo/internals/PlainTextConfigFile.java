@@ -17,12 +17,18 @@
 package com.ctrip.framework.apollo.internals;
 
 import com.ctrip.framework.apollo.core.ConfigConsts;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Properties;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public abstract class PlainTextConfigFile extends AbstractConfigFile {
+  //the UTF-8 bytes of the current content, encoded on the first access and shared by all the callers
+  private volatile ContentBytes m_contentBytes;
 
   public PlainTextConfigFile(String appId, String namespace, ConfigRepository configRepository) {
     super(appId, namespace, configRepository);
@@ -44,8 +50,48 @@ public abstract class PlainTextConfigFile extends AbstractConfigFile {
     return m_configProperties.get().containsKey(ConfigConsts.CONFIG_FILE_CONTENT_KEY);
   }
 
+  @Override
+  public InputStream getContentAsStream() {
+    byte[] bytes = contentBytes();
+    return bytes == null ? null : new ByteArrayInputStream(bytes);
+  }
+
+  @Override
+  public ByteBuffer getContentBytes() {
+    byte[] bytes = contentBytes();
+    return bytes == null ? null : ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+
   @Override
   protected void update(Properties newProperties) {
     m_configProperties.set(newProperties);
+    m_contentBytes = null;
+  }
+
+  /**
+   * The bytes must not be modified, since they are shared by all the callers
+   */
+  private byte[] contentBytes() {
+    String content = getContent();
+    if (content == null) {
+      return null;
+    }
+    ContentBytes contentBytes = m_contentBytes;
+    //the same content instance is shared along the repository chain, so it is compared by reference
+    if (contentBytes == null || contentBytes.m_content != content) {
+      contentBytes = new ContentBytes(content, content.getBytes(StandardCharsets.UTF_8));
+      m_contentBytes = contentBytes;
+    }
+    return contentBytes.m_bytes;
+  }
+
+  private static class ContentBytes {
+    private final String m_content;
+    private final byte[] m_bytes;
+
+    ContentBytes(String content, byte[] bytes) {
+      m_content = content;
+      m_bytes = bytes;
+    }
   }
 }
@@ -37,7 +37,6 @@ import com.ctrip.framework.apollo.util.ExceptionUtil;
 import com.ctrip.framework.apollo.util.http.HttpClient;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
-import com.ctrip.framework.foundation.internals.ServiceBootstrap;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashBasedTable;
@@ -86,8 +85,7 @@ public class RemoteConfigLongPollService {
   private ConfigUtil m_configUtil;
   private HttpClient m_httpClient;
   private ConfigServiceLocator m_serviceLocator;
-  private final ConfigServiceLoadBalancerClient configServiceLoadBalancerClient = ServiceBootstrap.loadPrimary(
-      ConfigServiceLoadBalancerClient.class);
+  private final ConfigServiceLoadBalancerClient configServiceLoadBalancerClient;
 
   /**
    * Constructor.
@@ -106,6 +104,7 @@ public class RemoteConfigLongPollService {
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
     m_httpClient = ApolloInjector.getInstance(HttpClient.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+    configServiceLoadBalancerClient = ApolloInjector.getInstance(ConfigServiceLoadBalancerClient.class);
     m_longPollRateLimiter = RateLimiter.create(m_configUtil.getLongPollQPS());
   }
 
@@ -120,6 +119,27 @@ public class RemoteConfigLongPollService {
     return result;
   }
 
+  /**
+   * @return the notification id the long polling of the namespace has reached
+   */
+  long getNotificationId(String appId, String namespace) {
+    Long notificationId = m_notifications.get(appId, namespace);
+    return notificationId == null ? INIT_NOTIFICATION_ID : notificationId;
+  }
+
+  /**
+   * Resume the long polling of the namespace from the notification id of a previous run, unless it
+   * has been notified in this run already.
+   */
+  void restoreNotificationId(String appId, String namespace, long notificationId) {
+    synchronized (m_notifications) {
+      Long current = m_notifications.get(appId, namespace);
+      if (current != null && current == INIT_NOTIFICATION_ID) {
+        m_notifications.put(appId, namespace, notificationId);
+      }
+    }
+  }
+
   private void startLongPolling(String sysAppId) {
     if (Boolean.TRUE.equals(m_longPollStarted.putIfAbsent(sysAppId, true))) {
       //already started
@@ -191,7 +211,7 @@ public class RemoteConfigLongPollService {
         transaction.addData("Url", url);
 
         final HttpResponse<List<ApolloConfigNotification>> response =
-            m_httpClient.doGet(request, m_responseType);
+            doGet(lastServiceDto, request);
 
         logger.debug("Long polling response: {}, url: {}", response.getStatusCode(), url);
         if (response.getStatusCode() == 200 && response.getBody() != null) {
@@ -206,6 +226,11 @@ public class RemoteConfigLongPollService {
           lastServiceDto = null;
         }
 
+        //move away from the config service which is ejected because of the failures of others
+        if (lastServiceDto != null && m_serviceLocator.isConfigServiceEjected(lastServiceDto)) {
+          lastServiceDto = null;
+        }
+
         m_longPollFailSchedulePolicyInSecond.success();
         transaction.addData("StatusCode", response.getStatusCode());
         transaction.setStatus(Transaction.SUCCESS);
@@ -231,6 +256,23 @@ public class RemoteConfigLongPollService {
     }
   }
 
+  private HttpResponse<List<ApolloConfigNotification>> doGet(ServiceDTO configService,
+      HttpRequest request) {
+    HttpResponse<List<ApolloConfigNotification>> response;
+    try {
+      response = m_httpClient.doGet(request, m_responseType);
+    } catch (Throwable ex) {
+      // long polls are held by the server, so they are neither counted as in-flight requests nor
+      // timed, only their failures are reported, with the default penalty rather than the time held
+      configServiceLoadBalancerClient.onRequestStart(configService);
+      configServiceLoadBalancerClient.onRequestComplete(configService, -1, false);
+      m_serviceLocator.onConfigServiceFailure(configService);
+      throw ex;
+    }
+    m_serviceLocator.onConfigServiceSuccess(configService);
+    return response;
+  }
+
   private void notify(String appId, ServiceDTO lastServiceDto, List<ApolloConfigNotification> notifications) {
     if (notifications == null || notifications.isEmpty()) {
       return;
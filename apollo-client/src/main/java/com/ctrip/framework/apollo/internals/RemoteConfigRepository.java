@@ -36,10 +36,12 @@ import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.spi.ConfigServiceLoadBalancerClient;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.PersistentHashMap;
 import com.ctrip.framework.apollo.util.http.HttpClient;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
@@ -49,15 +51,23 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.escape.Escaper;
 import com.google.common.net.UrlEscapers;
-import com.google.common.util.concurrent.RateLimiter;
 import com.google.gson.Gson;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -78,12 +88,37 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   private final ConfigUtil m_configUtil;
   private final RemoteConfigLongPollService remoteConfigLongPollService;
   private volatile AtomicReference<ApolloConfig> m_configCache;
+  //the snapshot of the configurations in m_configCache, which is shared by the downstream
+  private volatile ConfigSnapshot m_configSnapshot;
+  //the config of a previous run, only used as the base of the first load
+  private final AtomicReference<ApolloConfig> m_restoredConfig;
+  //the notification id when the listeners were notified last time
+  private volatile long m_lastNotifiedNotificationId = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
   private final String m_appId;
   private final String m_namespace;
   protected final static ScheduledExecutorService m_executorService;
+  private final static ExecutorService m_hedgeExecutorService;
+  //the queries beyond it are sent by the syncing thread itself, i.e. without hedging
+  private static final int MAX_HEDGE_THREADS = 8;
+  //latencies of the recent config queries to each config service, used to compute its hedge delay
+  private final static ConcurrentMap<String, RollingLatencyWindow> s_queryConfigLatencies =
+      Maps.newConcurrentMap();
+  private static final int QUERY_CONFIG_LATENCY_SAMPLES = 100;
+  private static final int MIN_HEDGE_LATENCY_SAMPLES = 10;
+  private static final long MIN_HEDGE_DELAY_IN_MILLIS = 20;
+  //syncs triggered by the long polling carry real changes, so they get a larger share
+  private static final int PERIODIC_REFRESH_WEIGHT = 1;
+  private static final int LONG_POLL_NOTIFIED_WEIGHT = 2;
   private final AtomicReference<ServiceDTO> m_longPollServiceDto;
   private final AtomicReference<ApolloNotificationMessages> m_remoteMessages;
-  private final RateLimiter m_loadConfigRateLimiter;
+  private final ConfigLoadRateLimiter m_loadConfigRateLimiter;
+  private final String m_loadConfigRateLimiterKey;
+  private final Runnable m_syncTask;
+  private final Runnable m_startupRetryTask;
+  private final AtomicBoolean m_startupRetryScheduled;
+  //whether the repository is created before the startup deadline, only its loads are bounded by it
+  private final boolean m_withinStartupDeadline;
+  private final ConfigServiceLoadBalancerClient m_loadBalancerClient;
   private final AtomicBoolean m_configNeedForceRefresh;
   private final SchedulePolicy m_loadConfigFailSchedulePolicy;
   private static final Gson GSON = new Gson();
@@ -91,6 +126,10 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   static {
     m_executorService = Executors.newScheduledThreadPool(1,
         ApolloThreadFactory.create("RemoteConfigRepository", true));
+    m_hedgeExecutorService = new ThreadPoolExecutor(0, MAX_HEDGE_THREADS, 60L, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(),
+        ApolloThreadFactory.create("RemoteConfigRepository-Hedge", true),
+        new ThreadPoolExecutor.CallerRunsPolicy());
   }
 
   /**
@@ -103,13 +142,48 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     m_appId = appId;
     m_namespace = namespace;
     m_configCache = new AtomicReference<>();
+    m_restoredConfig = new AtomicReference<>();
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_withinStartupDeadline = m_configUtil.getStartupDeadlineInMillis() > 0
+        && m_configUtil.getStartupDeadlineRemainingInMillis() > 0;
     m_httpClient = ApolloInjector.getInstance(HttpClient.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
     remoteConfigLongPollService = ApolloInjector.getInstance(RemoteConfigLongPollService.class);
+    m_loadBalancerClient = ApolloInjector.getInstance(ConfigServiceLoadBalancerClient.class);
     m_longPollServiceDto = new AtomicReference<>();
     m_remoteMessages = new AtomicReference<>();
-    m_loadConfigRateLimiter = RateLimiter.create(m_configUtil.getLoadConfigQPS());
+    m_loadConfigRateLimiter = ApolloInjector.getInstance(ConfigLoadRateLimiter.class);
+    m_loadConfigRateLimiterKey = STRING_JOINER.join(appId, namespace);
+    m_syncTask = new Runnable() {
+      @Override
+      public void run() {
+        trySync(new Runnable() {
+          @Override
+          public void run() {
+            doSync(false);
+          }
+        });
+      }
+    };
+    m_startupRetryTask = new Runnable() {
+      @Override
+      public void run() {
+        //the long polling or the periodic refresh may have loaded the config in the meantime
+        if (m_configCache.get() != null) {
+          return;
+        }
+        trySync(new Runnable() {
+          @Override
+          public void run() {
+            doSync(false);
+          }
+        });
+        if (m_configCache.get() == null) {
+          scheduleStartupRetry();
+        }
+      }
+    };
+    m_startupRetryScheduled = new AtomicBoolean(false);
     m_configNeedForceRefresh = new AtomicBoolean(true);
     m_loadConfigFailSchedulePolicy = new ExponentialSchedulePolicy(m_configUtil.getOnErrorRetryInterval(),
         m_configUtil.getOnErrorRetryInterval() * 8);
@@ -119,13 +193,18 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
   @Override
   public Properties getConfig() {
+    return ConfigSnapshot.toProperties(getConfigSnapshot(), propertiesFactory);
+  }
+
+  @Override
+  ConfigSnapshot getConfigSnapshot() {
     if (m_configCache.get() == null) {
       long start = System.currentTimeMillis();
       this.sync();
       Tracer.logEvent(APOLLO_CLIENT_NAMESPACE_FIRST_LOAD_SPEND+":"+m_namespace,
           String.valueOf(System.currentTimeMillis() - start));
     }
-    return transformApolloConfigToProperties(m_configCache.get());
+    return m_configSnapshot;
   }
 
   @Override
@@ -133,6 +212,55 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     //remote config doesn't need upstream
   }
 
+  /**
+   * Restore the config persisted by a previous run, so that the first load sends its release key
+   * and gets 304 if it is still up to date. The config is not served until it is confirmed by the
+   * config service.
+   *
+   * @param configurations the configurations of the release
+   * @param releaseKey the release key
+   * @param notificationId the notification id of the namespace, the long polling resumes from it
+   */
+  void restore(Properties configurations, String releaseKey, long notificationId) {
+    if (m_configCache.get() != null) {
+      return;
+    }
+    ApolloConfig restoredConfig = new ApolloConfig(m_appId, m_configUtil.getCluster(),
+        m_namespace, releaseKey);
+    Map<String, String> restoredConfigurations = Maps.newHashMapWithExpectedSize(
+        configurations.size());
+    for (String key : configurations.stringPropertyNames()) {
+      restoredConfigurations.put(key, configurations.getProperty(key));
+    }
+    restoredConfig.setConfigurations(restoredConfigurations);
+    m_restoredConfig.set(restoredConfig);
+    if (notificationId != ConfigConsts.NOTIFICATION_ID_PLACEHOLDER) {
+      remoteConfigLongPollService.restoreNotificationId(m_appId, m_namespace, notificationId);
+    }
+  }
+
+  /**
+   * @return the config loaded from the config service, or null if not loaded yet
+   */
+  ApolloConfig getApolloConfig() {
+    return m_configCache.get();
+  }
+
+  /**
+   * @return the notification id the long polling of the namespace has reached
+   */
+  long getNotificationId() {
+    return remoteConfigLongPollService.getNotificationId(m_appId, m_namespace);
+  }
+
+  /**
+   * @return the config to load the new one against, i.e. the current one or the restored one
+   */
+  private ApolloConfig getPreviousConfig() {
+    ApolloConfig previousConfig = m_configCache.get();
+    return previousConfig != null ? previousConfig : m_restoredConfig.get();
+  }
+
   @Override
   public ConfigSourceType getSourceType() {
     return ConfigSourceType.REMOTE;
@@ -147,26 +275,86 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
           public void run() {
             Tracer.logEvent(APOLLO_CONFIGSERVICE, String.format("periodicRefresh: %s", m_namespace));
             logger.debug("refresh config for namespace: {}", m_namespace);
-            trySync();
+            submitSync(PERIODIC_REFRESH_WEIGHT);
             Tracer.logEvent(APOLLO_CLIENT_VERSION, Apollo.VERSION);
           }
         }, m_configUtil.getRefreshInterval(), m_configUtil.getRefreshInterval(),
         m_configUtil.getRefreshIntervalTimeUnit());
   }
 
+  /**
+   * Queue a sync in the process-wide rate limiter, it runs on the executor once permitted.
+   */
+  private void submitSync(int weight) {
+    m_loadConfigRateLimiter.submit(m_loadConfigRateLimiterKey, weight, m_executorService,
+        m_syncTask);
+  }
+
+  /**
+   * Load the config in the caller thread, which is bounded by the startup deadline if the repository
+   * is created before it is exceeded. If the config could not be loaded in time, it keeps retrying
+   * in the background.
+   */
   @Override
-  protected synchronized void sync() {
+  protected void sync() {
+    //the callers wait for the permit in their own threads, at most 5 seconds
+    long permitTimeout = TimeUnit.SECONDS.toMillis(5);
+    if (m_withinStartupDeadline) {
+      permitTimeout = Math.min(permitTimeout, m_configUtil.getStartupDeadlineRemainingInMillis());
+    }
+    if (!m_loadConfigRateLimiter.acquire(m_loadConfigRateLimiterKey, permitTimeout,
+        TimeUnit.MILLISECONDS)) {
+      logger.debug("Load config rate limit exceeded for namespace: {}, loading anyway",
+          m_namespace);
+    }
+    try {
+      doSync(m_withinStartupDeadline);
+    } catch (Throwable ex) {
+      if (m_configCache.get() == null && m_withinStartupDeadline
+          && m_startupRetryScheduled.compareAndSet(false, true)) {
+        scheduleStartupRetry();
+      }
+      throw ex;
+    }
+  }
+
+  private void scheduleStartupRetry() {
+    long delay = m_loadConfigFailSchedulePolicy.fail();
+    logger.debug("Config for namespace {} is not loaded yet, will retry in {} {}", m_namespace,
+        delay, m_configUtil.getOnErrorRetryIntervalTimeUnit());
+    m_executorService.schedule(new Runnable() {
+      @Override
+      public void run() {
+        m_loadConfigRateLimiter.submit(m_loadConfigRateLimiterKey, PERIODIC_REFRESH_WEIGHT,
+            m_executorService, m_startupRetryTask);
+      }
+    }, delay, m_configUtil.getOnErrorRetryIntervalTimeUnit());
+  }
+
+  /**
+   * @param withinStartupDeadline whether the load is bounded by the startup deadline
+   */
+  private synchronized void doSync(boolean withinStartupDeadline) {
     Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "syncRemoteConfig");
 
     try {
       ApolloConfig previous = m_configCache.get();
-      ApolloConfig current = loadApolloConfig();
+      ApolloConfig current = loadApolloConfig(withinStartupDeadline);
 
+      long notificationId = getNotificationId();
       //reference equals means HTTP 304
       if (previous != current) {
         logger.debug("Remote Config refreshed!");
+        m_configSnapshot = current == null ? null
+            : ConfigSnapshot.copyOf(current.getConfigurations(), propertiesFactory);
         m_configCache.set(current);
-        this.fireRepositoryChange(m_appId, m_namespace, this.getConfig());
+        m_restoredConfig.set(null);
+        m_lastNotifiedNotificationId = notificationId;
+        this.fireRepositoryChange(m_appId, m_namespace, m_configSnapshot);
+      } else if (current != null && notificationId != m_lastNotifiedNotificationId) {
+        //the config is unchanged, but the listeners may persist the new notification id with it
+        m_lastNotifiedNotificationId = notificationId;
+        this.fireRepositoryChange(m_appId, m_namespace, m_configSnapshot);
       }
 
       if (current != null) {
@@ -183,25 +371,17 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     }
   }
 
-  private Properties transformApolloConfigToProperties(ApolloConfig apolloConfig) {
-    Properties result = propertiesFactory.getPropertiesInstance();
-    result.putAll(apolloConfig.getConfigurations());
-    return result;
-  }
-
-  private ApolloConfig loadApolloConfig() {
-    if (!m_loadConfigRateLimiter.tryAcquire(5, TimeUnit.SECONDS)) {
-      //wait at most 5 seconds
-      try {
-        TimeUnit.SECONDS.sleep(5);
-      } catch (InterruptedException e) {
-      }
-    }
+  private ApolloConfig loadApolloConfig(boolean withinStartupDeadline) {
     String appId = this.m_appId;
     String cluster = m_configUtil.getCluster();
     String dataCenter = m_configUtil.getDataCenter();
     String secret = m_configUtil.getAccessKeySecret(appId);
     Tracer.logEvent(APOLLO_CLIENT_CONFIGMETA, STRING_JOINER.join(appId, cluster, m_namespace));
+    if (withinStartupDeadline && isStartupDeadlineExceeded()) {
+      throw new ApolloConfigException(String.format(
+          "Startup deadline exceeded, skip loading config - appId: %s, cluster: %s, namespace: %s",
+          appId, cluster, m_namespace));
+    }
     int maxRetries = m_configNeedForceRefresh.get() ? 2 : 1;
     long onErrorSleepTime = 0; // 0 means no sleep
     Throwable exception = null;
@@ -212,40 +392,62 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     for (int i = 0; i < maxRetries; i++) {
       List<ServiceDTO> randomConfigServices = Lists.newLinkedList(configServices);
       Collections.shuffle(randomConfigServices);
+      //Access the server chosen by the load balancer before the others
+      ServiceDTO chosenConfigService = m_loadBalancerClient.chooseOneFrom(configServices);
+      randomConfigServices.remove(chosenConfigService);
+      randomConfigServices.add(0, chosenConfigService);
       //Access the server which notifies the client first
-      if (m_longPollServiceDto.get() != null) {
-        randomConfigServices.add(0, m_longPollServiceDto.getAndSet(null));
+      ServiceDTO longPollServiceDto = m_longPollServiceDto.getAndSet(null);
+      if (longPollServiceDto != null
+          && !m_serviceLocator.isConfigServiceEjected(longPollServiceDto)) {
+        randomConfigServices.add(0, longPollServiceDto);
       }
 
-      for (ServiceDTO configService : randomConfigServices) {
+      Iterator<ServiceDTO> configServiceIterator = randomConfigServices.iterator();
+      while (configServiceIterator.hasNext()) {
+        ServiceDTO configService = configServiceIterator.next();
         if (onErrorSleepTime > 0) {
           logger.warn(
               "Load config failed, will retry in {} {}. appId: {}, cluster: {}, namespaces: {}",
               onErrorSleepTime, m_configUtil.getOnErrorRetryIntervalTimeUnit(), appId, cluster, m_namespace);
 
           try {
-            m_configUtil.getOnErrorRetryIntervalTimeUnit().sleep(onErrorSleepTime);
+            long sleepTimeInMillis =
+                m_configUtil.getOnErrorRetryIntervalTimeUnit().toMillis(onErrorSleepTime);
+            if (withinStartupDeadline) {
+              sleepTimeInMillis = Math.min(sleepTimeInMillis,
+                  m_configUtil.getStartupDeadlineRemainingInMillis());
+            }
+            TimeUnit.MILLISECONDS.sleep(sleepTimeInMillis);
           } catch (InterruptedException e) {
             //ignore
           }
         }
 
-        url = assembleQueryConfigUrl(configService.getHomepageUrl(), appId, cluster, m_namespace,
-                dataCenter, m_remoteMessages.get(), m_configCache.get());
-
-        logger.debug("Loading config from {}", url);
+        if (withinStartupDeadline && isStartupDeadlineExceeded()) {
+          break retryLoopLabel;
+        }
 
-        HttpRequest request = new HttpRequest(url);
-        if (!StringUtils.isBlank(secret)) {
-          Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
-          request.setHeaders(headers);
+        HttpRequest request = assembleQueryConfigRequest(configService, appId, cluster, dataCenter,
+            secret);
+        if (withinStartupDeadline) {
+          applyStartupDeadline(request);
         }
+        url = request.getUrl();
+
+        logger.debug("Loading config from {}", url);
 
         Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "queryConfig");
         transaction.addData("Url", url);
         try {
 
-          HttpResponse<ApolloConfig> response = m_httpClient.doGet(request, ApolloConfig.class);
+          HttpResponse<ApolloConfig> response;
+          if (m_configUtil.isConfigServiceHedgeEnabled()) {
+            response = doGetWithHedging(request, configService, configServiceIterator, appId,
+                cluster, dataCenter, secret, transaction);
+          } else {
+            response = doGet(configService, request);
+          }
           m_configNeedForceRefresh.set(false);
           m_loadConfigFailSchedulePolicy.success();
 
@@ -254,7 +456,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
           if (response.getStatusCode() == 304) {
             logger.debug("Config server responds with 304 HTTP status code.");
-            return m_configCache.get();
+            return getPreviousConfig();
           }
 
           ApolloConfig result = response.getBody();
@@ -263,7 +465,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
             ConfigSyncType configSyncType = ConfigSyncType.fromString(result.getConfigSyncType());
 
             if (configSyncType == ConfigSyncType.INCREMENTAL_SYNC) {
-              ApolloConfig previousConfig = m_configCache.get();
+              ApolloConfig previousConfig = getPreviousConfig();
               Map<String, String> previousConfigurations =
                   (previousConfig != null) ? previousConfig.getConfigurations() : null;
               result.setConfigurations(
@@ -319,6 +521,173 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     throw new ApolloConfigException(message, exception);
   }
 
+  private boolean isStartupDeadlineExceeded() {
+    if (m_configUtil.getStartupDeadlineRemainingInMillis() > 0) {
+      return false;
+    }
+    Tracer.logEvent(APOLLO_CLIENT_STARTUP_DEADLINE_EXCEEDED, m_namespace);
+    logger.warn("Startup deadline of {} ms exceeded, namespace {} falls back to the local cache "
+        + "or the default values, and keeps loading in the background",
+        m_configUtil.getStartupDeadlineInMillis(), m_namespace);
+    return true;
+  }
+
+  /**
+   * Shorten the timeouts of the request so that it does not outlive the startup deadline.
+   */
+  private void applyStartupDeadline(HttpRequest request) {
+    long remaining = Math.max(1, m_configUtil.getStartupDeadlineRemainingInMillis());
+    if (remaining < m_configUtil.getConnectTimeout()) {
+      request.setConnectTimeout((int) remaining);
+    }
+    if (remaining < m_configUtil.getReadTimeout()) {
+      request.setReadTimeout((int) remaining);
+    }
+  }
+
+  private HttpRequest assembleQueryConfigRequest(ServiceDTO configService, String appId,
+      String cluster, String dataCenter, String secret) {
+    String url = assembleQueryConfigUrl(configService.getHomepageUrl(), appId, cluster, m_namespace,
+        dataCenter, m_remoteMessages.get(), getPreviousConfig());
+
+    HttpRequest request = new HttpRequest(url);
+    if (!StringUtils.isBlank(secret)) {
+      Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
+      request.setHeaders(headers);
+    }
+    return request;
+  }
+
+  private HttpResponse<ApolloConfig> doGet(ServiceDTO configService, HttpRequest request) {
+    m_loadBalancerClient.onRequestStart(configService);
+    long start = System.currentTimeMillis();
+    HttpResponse<ApolloConfig> response;
+    try {
+      response = m_httpClient.doGet(request, ApolloConfig.class);
+    } catch (ApolloConfigStatusCodeException ex) {
+      // client errors like 404 are still answered by a healthy config service
+      onRequestComplete(configService, System.currentTimeMillis() - start,
+          ex.getStatusCode() < 500);
+      throw ex;
+    } catch (Throwable ex) {
+      onRequestComplete(configService, System.currentTimeMillis() - start, false);
+      throw ex;
+    }
+    long latency = System.currentTimeMillis() - start;
+    getQueryConfigLatencies(configService).record(latency);
+    onRequestComplete(configService, latency, true);
+    return response;
+  }
+
+  private void onRequestComplete(ServiceDTO configService, long latency, boolean success) {
+    m_loadBalancerClient.onRequestComplete(configService, latency, success);
+    if (success) {
+      m_serviceLocator.onConfigServiceSuccess(configService);
+    } else {
+      m_serviceLocator.onConfigServiceFailure(configService);
+    }
+  }
+
+  /**
+   * Query the config from the given config service, and if it does not answer within the hedge
+   * delay, send a duplicate query to the next config service and take whichever answers first.
+   * The next config service is consumed from the iterator only when the duplicate query is sent.
+   */
+  private HttpResponse<ApolloConfig> doGetWithHedging(final HttpRequest request,
+      final ServiceDTO configService, Iterator<ServiceDTO> configServiceIterator, String appId,
+      String cluster, String dataCenter, String secret, Transaction transaction) throws Throwable {
+    CompletionService<HttpResponse<ApolloConfig>> completionService =
+        new ExecutorCompletionService<>(m_hedgeExecutorService);
+    List<Future<HttpResponse<ApolloConfig>>> futures = Lists.newArrayListWithCapacity(2);
+    futures.add(completionService.submit(() -> doGet(configService, request)));
+
+    try {
+      long hedgeDelay = computeHedgeDelayInMillis(configService);
+      Future<HttpResponse<ApolloConfig>> completed =
+          completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+      if (completed != null) {
+        return getHedgedResult(completed);
+      }
+
+      final ServiceDTO hedgeConfigService = nextHedgeConfigService(configService, configServiceIterator);
+      if (hedgeConfigService == null) {
+        return getHedgedResult(completionService.take());
+      }
+
+      final HttpRequest hedgeRequest = assembleQueryConfigRequest(hedgeConfigService, appId,
+          cluster, dataCenter, secret);
+      hedgeRequest.setConnectTimeout(request.getConnectTimeout());
+      hedgeRequest.setReadTimeout(request.getReadTimeout());
+      logger.debug("Config service does not respond in {} ms, hedging with {}", hedgeDelay,
+          hedgeRequest.getUrl());
+      Tracer.logEvent(APOLLO_CLIENT_CONFIG_HEDGE, hedgeConfigService.getHomepageUrl());
+      transaction.addData("HedgeUrl", hedgeRequest.getUrl());
+      futures.add(completionService.submit(() -> doGet(hedgeConfigService, hedgeRequest)));
+
+      Throwable failure = null;
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          return getHedgedResult(completionService.take());
+        } catch (ApolloConfigStatusCodeException ex) {
+          // 404 is a definitive answer, no need to wait for the other one
+          if (ex.getStatusCode() == 404) {
+            throw ex;
+          }
+          failure = failure == null ? ex : failure;
+        } catch (Throwable ex) {
+          failure = failure == null ? ex : failure;
+        }
+      }
+      throw failure;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ApolloConfigException("Interrupted while loading config", ex);
+    } finally {
+      // the loser could not be interrupted while blocking on socket read, it is abandoned and
+      // bounded by the read timeout
+      for (Future<HttpResponse<ApolloConfig>> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private ServiceDTO nextHedgeConfigService(ServiceDTO configService,
+      Iterator<ServiceDTO> configServiceIterator) {
+    while (configServiceIterator.hasNext()) {
+      ServiceDTO candidate = configServiceIterator.next();
+      if (!Objects.equals(candidate.getHomepageUrl(), configService.getHomepageUrl())) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  private HttpResponse<ApolloConfig> getHedgedResult(Future<HttpResponse<ApolloConfig>> future)
+      throws Throwable {
+    try {
+      return future.get();
+    } catch (ExecutionException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  private static RollingLatencyWindow getQueryConfigLatencies(ServiceDTO configService) {
+    return s_queryConfigLatencies.computeIfAbsent(configService.getHomepageUrl(),
+        k -> new RollingLatencyWindow(QUERY_CONFIG_LATENCY_SAMPLES));
+  }
+
+  /**
+   * @return the hedge delay of the config service, based on the latencies of its recent queries
+   */
+  private long computeHedgeDelayInMillis(ServiceDTO configService) {
+    RollingLatencyWindow latencies = getQueryConfigLatencies(configService);
+    if (latencies.size() < MIN_HEDGE_LATENCY_SAMPLES) {
+      return m_configUtil.getConfigServiceHedgeInitialDelayInMillis();
+    }
+    long p95 = latencies.percentile(0.95);
+    return Math.max(MIN_HEDGE_DELAY_IN_MILLIS, Math.min(p95, m_configUtil.getReadTimeout()));
+  }
+
   String assembleQueryConfigUrl(String uri, String appId, String cluster, String namespace,
                                 String dataCenter, ApolloNotificationMessages remoteMessages, ApolloConfig previousConfig) {
 
@@ -368,13 +737,8 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   public void onLongPollNotified(ServiceDTO longPollNotifiedServiceDto, ApolloNotificationMessages remoteMessages) {
     m_longPollServiceDto.set(longPollNotifiedServiceDto);
     m_remoteMessages.set(remoteMessages);
-    m_executorService.submit(new Runnable() {
-      @Override
-      public void run() {
-        m_configNeedForceRefresh.set(true);
-        trySync();
-      }
-    });
+    m_configNeedForceRefresh.set(true);
+    submitSync(LONG_POLL_NOTIFIED_WEIGHT);
   }
 
   private List<ServiceDTO> getConfigServices() {
@@ -386,13 +750,17 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     return services;
   }
 
+  /**
+   * Apply the incremental changes to the previous configurations, which are kept in a
+   * {@link PersistentHashMap}, so the merged configurations share all but the changed entries with
+   * the previous ones, and so do their snapshots, see {@link ConfigSnapshot#copyOf(Map, boolean)}. Only the
+   * first merge after a full sync copies the configurations into a persistent map.
+   */
   Map<String, String> mergeConfigurations(Map<String, String> previousConfigurations,
       List<ConfigurationChange> configurationChanges) {
-    Map<String, String> newConfigurations = new HashMap<>();
-
-    if (previousConfigurations != null) {
-      newConfigurations = Maps.newHashMap(previousConfigurations);
-    }
+    PersistentHashMap<String, String> newConfigurations = previousConfigurations == null
+        ? PersistentHashMap.<String, String>empty()
+        : PersistentHashMap.copyOf(previousConfigurations);
 
     if (configurationChanges == null) {
       return newConfigurations;
@@ -402,10 +770,10 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
       switch (ConfigurationChangeType.fromString(change.getConfigurationChangeType())) {
         case ADDED:
         case MODIFIED:
-          newConfigurations.put(change.getKey(), change.getNewValue());
+          newConfigurations = newConfigurations.plus(change.getKey(), change.getNewValue());
           break;
         case DELETED:
-          newConfigurations.remove(change.getKey());
+          newConfigurations = newConfigurations.minus(change.getKey());
           break;
         default:
           //do nothing
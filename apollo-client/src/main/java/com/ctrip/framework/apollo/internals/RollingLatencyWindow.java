@@ -0,0 +1,61 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent requests and answers percentile queries over them.
+ */
+class RollingLatencyWindow {
+  private final long[] m_samples;
+  private int m_nextIndex;
+  private int m_size;
+
+  RollingLatencyWindow(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    m_samples = new long[capacity];
+  }
+
+  synchronized void record(long latencyInMillis) {
+    m_samples[m_nextIndex] = latencyInMillis;
+    m_nextIndex = (m_nextIndex + 1) % m_samples.length;
+    if (m_size < m_samples.length) {
+      m_size++;
+    }
+  }
+
+  synchronized int size() {
+    return m_size;
+  }
+
+  /**
+   * @param percentile the percentile in (0, 1], e.g. 0.95
+   * @return the latency at the given percentile, or -1 if there is no sample yet
+   */
+  synchronized long percentile(double percentile) {
+    if (m_size == 0) {
+      return -1;
+    }
+    long[] sorted = Arrays.copyOf(m_samples, m_size);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile * m_size) - 1;
+    return sorted[Math.max(0, Math.min(index, m_size - 1))];
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.DeferredLoggerFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+
+/**
+ * Coordinates the processes of an app on the same host which share the local cache dir.
+ * <p>
+ * The process holding the lock of the lease file is the leader, which loads the configs from the
+ * config service and persists them as usual. The others, the followers, only read the local cache
+ * files, and reload them once they are changed, as reported by the {@link LocalCacheDirWatcher}.
+ * The lock is released by the OS when the leader exits, and then taken over by one of the
+ * followers, which keep trying to acquire it.
+ * <p>
+ * The lock is held per JVM, so the instances are shared by the whole JVM.
+ */
+final class SharedLocalCache {
+  private static final Logger logger = DeferredLoggerFactory.getLogger(SharedLocalCache.class);
+  static final String LEASE_FILE_EXTENSION = "lease";
+  private static final long LEASE_RETRY_INTERVAL_IN_MILLIS = 1000;
+  private static final ScheduledExecutorService m_executorService;
+  private static final Map<File, SharedLocalCache> s_instances = Maps.newHashMap();
+  private static final Set<File> s_unavailableFiles = Sets.newHashSet();
+
+  private final File m_leaseFile;
+  private final FileChannel m_leaseChannel;
+  private final List<Participant> m_participants = new CopyOnWriteArrayList<>();
+  private volatile FileLock m_lease;
+  private ScheduledFuture<?> m_leaseRetry;
+
+  static {
+    m_executorService = Executors.newScheduledThreadPool(1,
+        ApolloThreadFactory.create("SharedLocalCache", true));
+  }
+
+  /**
+   * @return the shared local cache of the app in the dir, or null if it could not be set up, e.g.
+   * the dir is not writable
+   */
+  static synchronized SharedLocalCache getInstance(File baseDir, String appId) {
+    File leaseFile = new File(baseDir, String.format("%s.%s", appId, LEASE_FILE_EXTENSION));
+    SharedLocalCache sharedLocalCache = s_instances.get(leaseFile);
+    if (sharedLocalCache != null || s_unavailableFiles.contains(leaseFile)) {
+      return sharedLocalCache;
+    }
+    try {
+      sharedLocalCache = new SharedLocalCache(leaseFile);
+      s_instances.put(leaseFile, sharedLocalCache);
+      sharedLocalCache.start();
+    } catch (Throwable ex) {
+      s_unavailableFiles.add(leaseFile);
+      Tracer.logError(ex);
+      logger.warn("Share local cache dir {} failed, loading configs on its own, reason: {}",
+          baseDir.getAbsolutePath(), ExceptionUtil.getDetailMessage(ex));
+    }
+    return sharedLocalCache;
+  }
+
+  SharedLocalCache(File leaseFile) throws IOException {
+    m_leaseFile = leaseFile;
+    m_leaseChannel = FileChannel.open(leaseFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE);
+  }
+
+  // for test only
+  static void reset() throws InterruptedException {
+    synchronized (SharedLocalCache.class) {
+      for (SharedLocalCache sharedLocalCache : s_instances.values()) {
+        sharedLocalCache.close();
+      }
+      s_instances.clear();
+      s_unavailableFiles.clear();
+    }
+    //the lease retry in progress, if any
+    LocalCacheFileWriter.awaitQueuedTasks(m_executorService, 5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Try to acquire the lease right away, and keep trying in the background if it is held by
+   * another process.
+   */
+  synchronized void start() {
+    if (tryAcquireLease()) {
+      return;
+    }
+    m_leaseRetry = m_executorService.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        if (tryAcquireLease()) {
+          for (Participant participant : m_participants) {
+            notifyLeaseAcquired(participant);
+          }
+        }
+      }
+    }, LEASE_RETRY_INTERVAL_IN_MILLIS, LEASE_RETRY_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void close() {
+    if (m_leaseRetry != null) {
+      m_leaseRetry.cancel(false);
+    }
+    try {
+      //which releases the lease
+      m_leaseChannel.close();
+    } catch (IOException ex) {
+      //ignore
+    }
+  }
+
+  /**
+   * @return whether this process is the leader, which loads the configs from the config service
+   */
+  boolean isLeader() {
+    return m_lease != null;
+  }
+
+  /**
+   * Register the participant, which is notified if this process becomes the leader afterwards.
+   */
+  void register(Participant participant) {
+    m_participants.add(participant);
+  }
+
+  /**
+   * @return whether the lease is acquired by this call
+   */
+  private synchronized boolean tryAcquireLease() {
+    if (m_lease != null) {
+      return false;
+    }
+    try {
+      m_lease = m_leaseChannel.tryLock();
+    } catch (OverlappingFileLockException ex) {
+      //held by this JVM already, which should not happen as the instances are shared
+      return false;
+    } catch (IOException ex) {
+      logger.debug("Acquire lease {} failed", m_leaseFile.getAbsolutePath(), ex);
+      return false;
+    }
+    if (m_lease == null) {
+      return false;
+    }
+    if (m_leaseRetry != null) {
+      m_leaseRetry.cancel(false);
+    }
+    logger.info("Acquired lease {}, loading configs for the processes sharing the local cache dir",
+        m_leaseFile.getAbsolutePath());
+    return true;
+  }
+
+  private void notifyLeaseAcquired(Participant participant) {
+    try {
+      participant.onLeaseAcquired();
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.warn("Notify lease acquired to {} failed", participant, ex);
+    }
+  }
+
+  interface Participant {
+
+    /**
+     * Called once when this process becomes the leader, unless it is the leader already when the
+     * participant is registered.
+     */
+    void onLeaseAcquired();
+  }
+}
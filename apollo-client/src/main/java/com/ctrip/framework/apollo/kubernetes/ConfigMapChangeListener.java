@@ -0,0 +1,32 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.kubernetes;
+
+import java.util.Map;
+
+/**
+ * Listener of the changes of a config map, which may be written by any pod.
+ */
+public interface ConfigMapChangeListener {
+
+    /**
+     * Called when the config map is changed, or deleted.
+     *
+     * @param data the data of the config map after change, empty if the config map is deleted
+     */
+    void onChange(Map<String, String> data);
+}
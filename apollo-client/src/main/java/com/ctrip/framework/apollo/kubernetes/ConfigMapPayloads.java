@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.kubernetes;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The layout of the values in the config maps of the cache.
+ * <p>
+ * A value larger than {@link #COMPRESSION_THRESHOLD_BYTES} is gzipped into the binaryData of the
+ * config map, the others are kept as is in the data. The keys of an app are sharded across several
+ * config maps by consistent hashing if configured, and the number of the shards is kept in the
+ * {@link #SHARDS_INDEX_KEY} of the first config map, so that the readers find the keys no matter
+ * how many shards they are configured with.
+ */
+final class ConfigMapPayloads {
+    // the values are json, which is usually compressed to less than a fifth
+    static final int COMPRESSION_THRESHOLD_BYTES = 16 * 1024;
+
+    // the limit of the data and binaryData of a config map, enforced by the API server
+    static final int MAX_CONFIG_MAP_BYTES = 1024 * 1024;
+
+    // never conflicts with the keys of the namespaces, which contain ___
+    static final String SHARDS_INDEX_KEY = "shards";
+
+    private ConfigMapPayloads() {
+    }
+
+    /**
+     * @return the name of the config map the key is kept in
+     */
+    static String shardName(String name, String key, int shards) {
+        if (shards <= 1) {
+            return name;
+        }
+        // jump consistent hash, so that only 1/n of the keys are moved when a shard is added
+        int shard = Hashing.consistentHash(Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8), shards);
+        return shardName(name, shard);
+    }
+
+    static String shardName(String name, int shard) {
+        return name + "-" + shard;
+    }
+
+    /**
+     * @return the number of the shards kept in the index, or 1 if the config map is not sharded
+     */
+    static int shards(Map<String, String> indexData) {
+        String shards = indexData == null ? null : indexData.get(SHARDS_INDEX_KEY);
+        if (shards == null) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(shards));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    static boolean shouldCompress(String value) {
+        return value.length() > COMPRESSION_THRESHOLD_BYTES / 4
+                && value.getBytes(StandardCharsets.UTF_8).length > COMPRESSION_THRESHOLD_BYTES;
+    }
+
+    static byte[] compress(String value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(value.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static String decompress(byte[] bytes) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(ByteStreams.toByteArray(gzip), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the values of the config map, including the ones compressed into the binaryData
+     */
+    static Map<String, String> decode(V1ConfigMap configMap) {
+        Map<String, String> data = new HashMap<>();
+        if (configMap == null) {
+            return data;
+        }
+        if (configMap.getData() != null) {
+            data.putAll(configMap.getData());
+        }
+        if (configMap.getBinaryData() != null) {
+            configMap.getBinaryData().forEach((key, value) -> data.put(key, decompress(value)));
+        }
+        return data;
+    }
+}
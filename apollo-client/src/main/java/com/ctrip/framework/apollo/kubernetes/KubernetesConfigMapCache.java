@@ -0,0 +1,276 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.kubernetes;
+
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.reflect.TypeToken;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
+import io.kubernetes.client.openapi.models.V1ConfigMapList;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Status;
+import io.kubernetes.client.util.Watch;
+import io.kubernetes.client.util.Watchable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the config maps read by this pod in memory.
+ * <p>
+ * A config map is listed once when it is read for the first time, and then watched from the
+ * resourceVersion of the list, so that the reads are served locally and the changes written by the
+ * other pods are pushed to the {@link ConfigMapChangeListener}s. The watch is resumed from the last
+ * resourceVersion seen once it times out, or listed again if that resourceVersion has expired. Either
+ * is done after a jittered delay of up to {@link #MIN_RETRY_INTERVAL_MILLIS}, so that a watch closed
+ * right away does not spin, and the watches of the pods started together are not resumed together.
+ */
+class KubernetesConfigMapCache {
+    private static final Logger logger = LoggerFactory.getLogger(KubernetesConfigMapCache.class);
+
+    // the API server closes the watch after this, which is then resumed from the last resourceVersion
+    private static final int WATCH_TIMEOUT_SECONDS = 300;
+
+    private static final long MIN_RETRY_INTERVAL_MILLIS = 1000;
+
+    private static final long MAX_RETRY_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final ExecutorService executorService;
+
+    private final CoreV1Api coreV1Api;
+    private final CoreV1Api watchApi;
+    // k8sNamespace/name -> the cached config map
+    private final ConcurrentMap<String, CachedConfigMap> configMaps = new ConcurrentHashMap<>();
+
+    static {
+        executorService = Executors.newCachedThreadPool(
+                ApolloThreadFactory.create("KubernetesConfigMapCache", true));
+    }
+
+    /**
+     * @param coreV1Api the api to list the config maps
+     * @param watchApi  the api to watch the config maps, whose client is supposed to have no read
+     *                  timeout, as a watch may be idle until {@link #WATCH_TIMEOUT_SECONDS}
+     */
+    KubernetesConfigMapCache(CoreV1Api coreV1Api, CoreV1Api watchApi) {
+        this.coreV1Api = coreV1Api;
+        this.watchApi = watchApi;
+    }
+
+    /**
+     * get the data of the config map, which is listed and then watched on the first call
+     *
+     * @param k8sNamespace config map namespace
+     * @param name         config map name
+     * @return the data of the config map, empty if it does not exist, or null if it could not be
+     * listed, which is tried again on the next call
+     */
+    Map<String, String> getData(String k8sNamespace, String name) {
+        CachedConfigMap configMap = getCachedConfigMap(k8sNamespace, name);
+        return start(configMap) ? configMap.data : null;
+    }
+
+    /**
+     * add a listener of the config map, which is listed and then watched if not yet
+     *
+     * @param k8sNamespace config map namespace
+     * @param name         config map name
+     * @param listener     the listener notified of the changes pushed by the watch
+     */
+    void addChangeListener(String k8sNamespace, String name, ConfigMapChangeListener listener) {
+        CachedConfigMap configMap = getCachedConfigMap(k8sNamespace, name);
+        configMap.listeners.add(listener);
+        start(configMap);
+    }
+
+    private CachedConfigMap getCachedConfigMap(String k8sNamespace, String name) {
+        return configMaps.computeIfAbsent(k8sNamespace + "/" + name,
+                configMapId -> new CachedConfigMap(k8sNamespace, name));
+    }
+
+    /**
+     * @return whether the config map is listed, and watched since then
+     */
+    private boolean start(CachedConfigMap configMap) {
+        if (configMap.data != null) {
+            return true;
+        }
+        synchronized (configMap) {
+            if (configMap.data == null) {
+                try {
+                    configMap.list();
+                } catch (Exception e) {
+                    logger.warn("List ConfigMap {}/{} failed: {}", configMap.k8sNamespace, configMap.name,
+                            e.getMessage());
+                    return false;
+                }
+                executorService.submit(configMap::watch);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * open a watch of the config map from the resourceVersion
+     */
+    @VisibleForTesting
+    Watchable<V1ConfigMap> watch(String k8sNamespace, String name, String resourceVersion)
+            throws ApiException {
+        return Watch.createWatch(watchApi.getApiClient(),
+                watchApi.listNamespacedConfigMapCall(k8sNamespace, null, true, null,
+                        fieldSelector(name), null, null, resourceVersion, null,
+                        WATCH_TIMEOUT_SECONDS, true, null),
+                new TypeToken<Watch.Response<V1ConfigMap>>() {
+                }.getType());
+    }
+
+    private static String fieldSelector(String name) {
+        return "metadata.name=" + name;
+    }
+
+    private class CachedConfigMap {
+        private final String k8sNamespace;
+        private final String name;
+        private final List<ConfigMapChangeListener> listeners = new CopyOnWriteArrayList<>();
+        private volatile Map<String, String> data;
+        // the resourceVersion to resume the watch from, null if the config map is to be listed again
+        private String resourceVersion;
+
+        CachedConfigMap(String k8sNamespace, String name) {
+            this.k8sNamespace = k8sNamespace;
+            this.name = name;
+        }
+
+        void list() throws ApiException {
+            V1ConfigMapList list = coreV1Api.listNamespacedConfigMap(k8sNamespace, null, null, null,
+                    fieldSelector(name), null, null, null, null, null, null);
+            List<V1ConfigMap> items = list.getItems();
+            update(items.isEmpty() ? null : items.get(0));
+            resourceVersion = Objects.requireNonNull(list.getMetadata()).getResourceVersion();
+        }
+
+        void watch() {
+            long retryInterval = MIN_RETRY_INTERVAL_MILLIS;
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    if (resourceVersion == null) {
+                        list();
+                    }
+                    watchOnce();
+                    retryInterval = MIN_RETRY_INTERVAL_MILLIS;
+                    sleepJittered(MIN_RETRY_INTERVAL_MILLIS);
+                } catch (Throwable e) {
+                    if (e instanceof ApiException && ((ApiException) e).getCode() == HttpURLConnection.HTTP_GONE) {
+                        logger.info("Watch of ConfigMap {}/{} expired, listing it again", k8sNamespace, name);
+                        resourceVersion = null;
+                        sleepJittered(MIN_RETRY_INTERVAL_MILLIS);
+                        continue;
+                    }
+                    logger.warn("Watch ConfigMap {}/{} failed, retrying in {}ms: {}", k8sNamespace, name,
+                            retryInterval, e.getMessage());
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(retryInterval);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    retryInterval = Math.min(retryInterval * 2, MAX_RETRY_INTERVAL_MILLIS);
+                }
+            }
+        }
+
+        /**
+         * sleep between half of the interval and the interval
+         */
+        private void sleepJittered(long intervalMillis) {
+            long halfInterval = intervalMillis / 2;
+            try {
+                TimeUnit.MILLISECONDS.sleep(halfInterval + ThreadLocalRandom.current().nextLong(halfInterval + 1));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * watch until the API server closes the watch, or the resourceVersion expires
+         */
+        private void watchOnce() throws ApiException, IOException {
+            try (Watchable<V1ConfigMap> watch = KubernetesConfigMapCache.this.watch(k8sNamespace, name,
+                    resourceVersion)) {
+                for (Watch.Response<V1ConfigMap> event : watch) {
+                    switch (event.type) {
+                        case "ADDED":
+                        case "MODIFIED":
+                            update(event.object);
+                            break;
+                        case "DELETED":
+                            update(null);
+                            break;
+                        case "BOOKMARK":
+                            break;
+                        case "ERROR":
+                            V1Status status = event.status;
+                            if (status != null && status.getCode() != null
+                                    && status.getCode() == HttpURLConnection.HTTP_GONE) {
+                                throw new ApiException(status.getCode(), status.getMessage());
+                            }
+                            throw new ApiException("Watch error: " + (status == null ? null : status.getMessage()));
+                        default:
+                            logger.debug("Unknown watch event type {} of ConfigMap {}/{}", event.type, k8sNamespace,
+                                    name);
+                            continue;
+                    }
+                    V1ObjectMeta metadata = event.object == null ? null : event.object.getMetadata();
+                    if (metadata != null && metadata.getResourceVersion() != null) {
+                        resourceVersion = metadata.getResourceVersion();
+                    }
+                }
+            }
+        }
+
+        private void update(V1ConfigMap configMap) {
+            // the values compressed into the binaryData are decompressed once here, not on each read
+            Map<String, String> newData = Collections.unmodifiableMap(ConfigMapPayloads.decode(configMap));
+            Map<String, String> oldData = data;
+            data = newData;
+            if (oldData == null || oldData.equals(newData)) {
+                return;
+            }
+            for (ConfigMapChangeListener listener : listeners) {
+                try {
+                    listener.onChange(newData);
+                } catch (Throwable e) {
+                    logger.warn("Notify ConfigMap {}/{} changed to {} failed", k8sNamespace, name, listener, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.kubernetes;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the namespaces to the ConfigMap cache in batches.
+ * <p>
+ * The namespaces written to the same ConfigMap within {@link #DEFAULT_BATCH_WINDOW_MILLIS} are
+ * applied in a single JSON merge patch, see {@link KubernetesManager#patchConfigMap}, rather than
+ * one read-modify-replace of the whole ConfigMap per namespace, which conflict with each other when
+ * many namespaces change at once. Only the latest value of a namespace in a batch is written.
+ * <p>
+ * A failed batch is queued again with a backoff, at most {@link #MAX_RETRIES} times in a row,
+ * unless the values of its namespaces are replaced by newer ones meanwhile.
+ */
+@Singleton
+public class KubernetesConfigMapWriter {
+    private static final Logger logger = LoggerFactory.getLogger(KubernetesConfigMapWriter.class);
+
+    private static final long DEFAULT_BATCH_WINDOW_MILLIS = 100;
+    private static final int MAX_RETRIES = 5;
+    private static final long RETRY_BASE_DELAY_MILLIS = 200;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+
+    private static final ScheduledExecutorService executorService;
+
+    private final KubernetesManager kubernetesManager;
+    private final long batchWindowMillis;
+    // k8sNamespace/name -> the pending data of the config map
+    private final Map<String, Map<String, String>> pendingData = new LinkedHashMap<>();
+    // k8sNamespace/name -> the consecutive failures of the config map, guarded by pendingData
+    private final Map<String, Integer> failures = new HashMap<>();
+
+    static {
+        executorService = Executors.newSingleThreadScheduledExecutor(
+                ApolloThreadFactory.create("KubernetesConfigMapWriter", true));
+    }
+
+    public KubernetesConfigMapWriter() {
+        this(ApolloInjector.getInstance(KubernetesManager.class), DEFAULT_BATCH_WINDOW_MILLIS);
+    }
+
+    @VisibleForTesting
+    public KubernetesConfigMapWriter(KubernetesManager kubernetesManager, long batchWindowMillis) {
+        this.kubernetesManager = kubernetesManager;
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    /**
+     * Queue the value of the key to be written to the config map with the other keys written within
+     * the batch window.
+     *
+     * @param k8sNamespace config map namespace
+     * @param name         config map name
+     * @param key          config map key (cluster+namespace)
+     * @param value        value(json string)
+     */
+    public void write(String k8sNamespace, String name, String key, String value) {
+        String configMapId = k8sNamespace + "/" + name;
+        synchronized (pendingData) {
+            Map<String, String> data = pendingData.get(configMapId);
+            if (data != null) {
+                // joins the batch which is scheduled already
+                data.put(key, value);
+                return;
+            }
+            data = new LinkedHashMap<>();
+            data.put(key, value);
+            pendingData.put(configMapId, data);
+        }
+        executorService.schedule(() -> flush(k8sNamespace, name, configMapId), batchWindowMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(String k8sNamespace, String name, String configMapId) {
+        Map<String, String> data;
+        synchronized (pendingData) {
+            data = pendingData.remove(configMapId);
+        }
+        if (data == null) {
+            return;
+        }
+        Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "persistK8sConfigMap");
+        transaction.addData("configMapName", name);
+        transaction.addData("k8sNamespace", k8sNamespace);
+        transaction.addData("keys", data.size());
+        try {
+            kubernetesManager.patchConfigMap(k8sNamespace, name, data);
+            synchronized (pendingData) {
+                failures.remove(configMapId);
+            }
+            transaction.setStatus(Transaction.SUCCESS);
+        } catch (Throwable ex) {
+            ApolloConfigException exception = new ApolloConfigException(
+                    String.format("Persist config to Kubernetes ConfigMap %s failed!", name), ex);
+            Tracer.logError(exception);
+            transaction.setStatus(exception);
+            logger.error("Persist config to Kubernetes ConfigMap failed!", exception);
+            retry(k8sNamespace, name, configMapId, data);
+        } finally {
+            transaction.complete();
+        }
+    }
+
+    /**
+     * Queue the failed data again, except for the keys written since then, whose values are newer.
+     */
+    private void retry(String k8sNamespace, String name, String configMapId, Map<String, String> data) {
+        long delay;
+        synchronized (pendingData) {
+            int failureCount = failures.merge(configMapId, 1, Integer::sum);
+            if (failureCount > MAX_RETRIES) {
+                failures.remove(configMapId);
+                logger.error("Persist config to Kubernetes ConfigMap {} failed after {} retries, keys {} are dropped",
+                        name, MAX_RETRIES, data.keySet());
+                return;
+            }
+            Map<String, String> pending = pendingData.get(configMapId);
+            if (pending != null) {
+                // joins the batch which is scheduled already
+                for (Map.Entry<String, String> entry : data.entrySet()) {
+                    pending.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+                return;
+            }
+            pendingData.put(configMapId, data);
+            delay = Math.min(RETRY_BASE_DELAY_MILLIS << (failureCount - 1), MAX_RETRY_DELAY_MILLIS);
+        }
+        executorService.schedule(() -> flush(k8sNamespace, name, configMapId), delay, TimeUnit.MILLISECONDS);
+    }
+}
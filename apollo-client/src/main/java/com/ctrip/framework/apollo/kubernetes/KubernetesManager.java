@@ -16,10 +16,16 @@
  */
 package com.ctrip.framework.apollo.kubernetes;
 
+import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.inject.Singleton;
+import io.kubernetes.client.custom.V1Patch;
 import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.ApiException;
 import io.kubernetes.client.openapi.apis.CoreV1Api;
@@ -28,23 +34,30 @@ import io.kubernetes.client.openapi.models.V1ObjectMeta;
 import io.kubernetes.client.openapi.models.V1Pod;
 import io.kubernetes.client.openapi.models.V1PodList;
 import io.kubernetes.client.util.Config;
+import io.kubernetes.client.util.PatchUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.util.Base64;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Manages Kubernetes ConfigMap operations.
  * Required Kubernetes permissions:
  * - pods: [get, list] - For pod selection and write eligibility
- * - configmaps: [get, create, update] - For ConfigMap operations
+ * - configmaps: [get, list, watch, create, update, patch] - For ConfigMap operations
  */
 @Service
+@Singleton
 public class KubernetesManager {
     private static final Logger logger = LoggerFactory.getLogger(KubernetesManager.class);
 
@@ -52,15 +65,33 @@ public class KubernetesManager {
 
     private static final int MAX_SEARCH_NUM = 100;
 
+    // the keys removed by a merge patch are set to null
+    private static final Gson GSON = new GsonBuilder().serializeNulls().create();
+
+    // The write pods only change when pods are started or stopped, so the election is reused for a while
+    private static final long WRITE_POD_ELECTION_TTL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
     private ApiClient client;
     private CoreV1Api coreV1Api;
+    private KubernetesConfigMapCache configMapCache;
     private int propertyKubernetesMaxWritePods = 3;
+    private int configMapShards = 1;
     private String localPodName = System.getenv("HOSTNAME");
+    private long writePodElectionTtlMillis = WRITE_POD_ELECTION_TTL_MILLIS;
+    // k8sNamespace -> the last successful election of this pod
+    private final ConcurrentMap<String, WritePodElection> writePodElections = new ConcurrentHashMap<>();
+    // k8sNamespace/name of the config maps whose shards index is written by this pod
+    private final Set<String> indexedConfigMaps = ConcurrentHashMap.newKeySet();
 
     public KubernetesManager() {
         try {
             client = Config.defaultClient();
             coreV1Api = new CoreV1Api(client);
+            // the watches are held open by the API server until they time out
+            ApiClient watchClient = Config.defaultClient();
+            watchClient.setReadTimeout(0);
+            configMapCache = new KubernetesConfigMapCache(coreV1Api, new CoreV1Api(watchClient));
+            configMapShards = ApolloInjector.getInstance(ConfigUtil.class).getK8sConfigMapShards();
         } catch (Exception e) {
             String errorMessage = "Failed to initialize Kubernetes client: " + e.getMessage();
             logger.error(errorMessage, e);
@@ -73,6 +104,22 @@ public class KubernetesManager {
         this.coreV1Api = coreV1Api;
         this.localPodName = localPodName;
         this.propertyKubernetesMaxWritePods = propertyKubernetesMaxWritePods;
+        this.configMapCache = new KubernetesConfigMapCache(coreV1Api, coreV1Api);
+    }
+
+    @VisibleForTesting
+    KubernetesManager(CoreV1Api coreV1Api, String localPodName, int propertyKubernetesMaxWritePods,
+                      KubernetesConfigMapCache configMapCache, int configMapShards) {
+        this(coreV1Api, localPodName, propertyKubernetesMaxWritePods);
+        this.configMapCache = configMapCache;
+        this.configMapShards = configMapShards;
+    }
+
+    @VisibleForTesting
+    public KubernetesManager(CoreV1Api coreV1Api, String localPodName, int propertyKubernetesMaxWritePods,
+                             long writePodElectionTtlMillis) {
+        this(coreV1Api, localPodName, propertyKubernetesMaxWritePods);
+        this.writePodElectionTtlMillis = writePodElectionTtlMillis;
     }
 
     private V1ConfigMap buildConfigMap(String name, String namespace, Map<String, String> data) {
@@ -113,7 +160,11 @@ public class KubernetesManager {
     }
 
     /**
-     * get value from config map
+     * get value from config map, which is served by the in-memory cache of the config map once it is
+     * listed, and read from the API server otherwise
+     * <p>
+     * The value is read from the shard of the config map recorded in its index, and decompressed if it
+     * is kept in the binaryData.
      *
      * @param k8sNamespace k8sNamespace
      * @param name               config map name
@@ -126,17 +177,31 @@ public class KubernetesManager {
             return null;
         }
         try {
-            V1ConfigMap configMap = coreV1Api.readNamespacedConfigMap(name, k8sNamespace, null);
-            if (!Objects.requireNonNull(configMap.getData()).containsKey(key)) {
+            Map<String, String> data = readData(k8sNamespace, name);
+            int shards = ConfigMapPayloads.shards(data);
+            if (shards > 1) {
+                data = readData(k8sNamespace, ConfigMapPayloads.shardName(name, key, shards));
+            }
+            if (!data.containsKey(key)) {
                 logger.error("Specified key not found in ConfigMap: {}, k8sNamespace: {}, name: {}", name, k8sNamespace, name);
             }
-            return configMap.getData().get(key);
+            return data.get(key);
         } catch (Exception e) {
             logger.error("Error occurred while getting value from ConfigMap: {}", e.getMessage(), e);
             return null;
         }
     }
 
+    private Map<String, String> readData(String k8sNamespace, String name) throws ApiException {
+        Map<String, String> cachedData = configMapCache.getData(k8sNamespace, name);
+        if (cachedData != null) {
+            return cachedData;
+        }
+        V1ConfigMap configMap = coreV1Api.readNamespacedConfigMap(name, k8sNamespace, null);
+        Objects.requireNonNull(configMap.getData());
+        return ConfigMapPayloads.decode(configMap);
+    }
+
     /**
      * update config map
      *
@@ -207,6 +272,96 @@ public class KubernetesManager {
         throw new ApolloConfigException(errorMessage);
     }
 
+    /**
+     * patch the given keys of the config map with a JSON merge patch, the other keys are left untouched
+     * <p>
+     * Unlike {@link #updateConfigMap}, the config map is neither read nor sent as a whole, so the
+     * pods writing other keys at the same time do not conflict with each other.
+     * <p>
+     * The values larger than {@link ConfigMapPayloads#COMPRESSION_THRESHOLD_BYTES} are gzipped into the
+     * binaryData, and the keys are sharded across the config maps named {@code name-0..name-(n-1)} if
+     * more than one shard is configured, so that the config maps of an app with many namespaces do not
+     * exceed the size limit of the API server.
+     *
+     * @param k8sNamespace configmap namespace
+     * @param name         config map name
+     * @param data         the keys to patch and their new values
+     * @return true if the config map is patched or this pod is not supposed to write it
+     */
+    public boolean patchConfigMap(String k8sNamespace, String name, Map<String, String> data) throws ApiException {
+        if (StringUtils.isEmpty(k8sNamespace) || StringUtils.isEmpty(name)) {
+            logger.error("Parameters can not be null or empty: k8sNamespace={}, name={}", k8sNamespace, name);
+            return false;
+        }
+        if (data == null || data.isEmpty() || !isWritePod(k8sNamespace)) {
+            return true;
+        }
+
+        Map<String, ConfigMapPatch> patches = new LinkedHashMap<>();
+        if (indexedConfigMaps.add(k8sNamespace + "/" + name)) {
+            // removed if not sharded, so that the readers do not follow a stale index
+            patches.computeIfAbsent(name, shardName -> new ConfigMapPatch()).data
+                    .put(ConfigMapPayloads.SHARDS_INDEX_KEY, configMapShards > 1 ? String.valueOf(configMapShards) : null);
+        }
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            String shardName = ConfigMapPayloads.shardName(name, entry.getKey(), configMapShards);
+            patches.computeIfAbsent(shardName, key -> new ConfigMapPatch()).put(entry.getKey(), entry.getValue());
+        }
+        try {
+            for (Map.Entry<String, ConfigMapPatch> patch : patches.entrySet()) {
+                patchShard(k8sNamespace, patch.getKey(), patch.getValue(), !patch.getKey().equals(name));
+            }
+            return true;
+        } catch (ApiException e) {
+            indexedConfigMaps.remove(k8sNamespace + "/" + name);
+            logger.error("Error patching ConfigMap: {}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    private void patchShard(String k8sNamespace, String name, ConfigMapPatch configMapPatch, boolean createIfAbsent)
+            throws ApiException {
+        if (configMapPatch.isEmpty()) {
+            return;
+        }
+        V1Patch patch = new V1Patch(GSON.toJson(configMapPatch));
+        try {
+            // the generated client sends a JSON patch unless the patch format is specified
+            PatchUtils.patch(V1ConfigMap.class,
+                    () -> coreV1Api.patchNamespacedConfigMapCall(name, k8sNamespace, patch,
+                            null, null, null, null, null, null),
+                    V1Patch.PATCH_FORMAT_JSON_MERGE_PATCH, coreV1Api.getApiClient());
+        } catch (ApiException e) {
+            if (!createIfAbsent || e.getCode() != 404) {
+                throw e;
+            }
+            // the shards are created on the first write, the config map itself by the repository
+            createConfigMap(k8sNamespace, name, null);
+            patchShard(k8sNamespace, name, configMapPatch, false);
+        }
+    }
+
+    /**
+     * add a listener of the changes of the config map, including the ones written by the other pods,
+     * which are pushed by watching the config map
+     *
+     * @param k8sNamespace config map namespace
+     * @param name         config map name
+     * @param listener     the listener
+     */
+    public void addConfigMapChangeListener(String k8sNamespace, String name, ConfigMapChangeListener listener) {
+        if (StringUtils.isEmpty(k8sNamespace) || StringUtils.isEmpty(name)) {
+            logger.error("Parameters can not be null or empty: k8sNamespace={}, name={}", k8sNamespace, name);
+            return;
+        }
+        configMapCache.addChangeListener(k8sNamespace, name, listener);
+        // the shards written by the other pods, which may be more than the ones configured for this pod
+        // once they are configured with more shards, are followed only if they are configured here
+        for (int shard = 0; configMapShards > 1 && shard < configMapShards; shard++) {
+            configMapCache.addChangeListener(k8sNamespace, ConfigMapPayloads.shardName(name, shard), listener);
+        }
+    }
+
     /**
      * check config map exist
      *
@@ -231,12 +386,32 @@ public class KubernetesManager {
     }
 
     /**
-     * check pod whether pod can write configmap
+     * check pod whether pod can write configmap, the result is cached for a while so that the pods
+     * are not listed on every update
      *
      * @param k8sNamespace config map namespace
      * @return true if this pod can write configmap, false otherwise
      */
     private boolean isWritePod(String k8sNamespace) {
+        WritePodElection election = writePodElections.get(k8sNamespace);
+        if (election != null && !election.isExpired()) {
+            return election.isWritePod();
+        }
+        Boolean writePod = electWritePod(k8sNamespace);
+        if (writePod == null) {
+            // not cached, so that it is elected again on the next update
+            return true;
+        }
+        writePodElections.put(k8sNamespace, new WritePodElection(writePod,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writePodElectionTtlMillis)));
+        return writePod;
+    }
+
+    /**
+     * @return whether this pod is one of the oldest running pods of the app, or null if it could not be
+     * determined
+     */
+    private Boolean electWritePod(String k8sNamespace) {
         try {
             if (Strings.isNullOrEmpty(localPodName)) {
                 return true;
@@ -265,7 +440,54 @@ public class KubernetesManager {
                     .anyMatch(localPodName::equals);
         } catch (Exception e) {
             logger.info("Error determining write pod eligibility:{}", e.getMessage(), e);
-            return true;
+            return null;
+        }
+    }
+
+    /**
+     * the body of a JSON merge patch of the data and binaryData of a config map, where a key is set in
+     * one of them and removed from the other
+     */
+    private static class ConfigMapPatch {
+        private final Map<String, String> data = new LinkedHashMap<>();
+        private final Map<String, String> binaryData = new LinkedHashMap<>();
+
+        void put(String key, String value) {
+            if (value == null || !ConfigMapPayloads.shouldCompress(value)) {
+                data.put(key, value);
+                binaryData.put(key, null);
+                return;
+            }
+            String compressed = Base64.getEncoder().encodeToString(ConfigMapPayloads.compress(value));
+            if (compressed.length() > ConfigMapPayloads.MAX_CONFIG_MAP_BYTES) {
+                logger.error("Skip writing key {} to ConfigMap as it exceeds the size limit even compressed: {} bytes",
+                        key, compressed.length());
+                return;
+            }
+            data.put(key, null);
+            binaryData.put(key, compressed);
+        }
+
+        boolean isEmpty() {
+            return data.isEmpty() && binaryData.isEmpty();
+        }
+    }
+
+    private static class WritePodElection {
+        private final boolean writePod;
+        private final long expiresAtNanos;
+
+        WritePodElection(boolean writePod, long expiresAtNanos) {
+            this.writePod = writePod;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isWritePod() {
+            return writePod;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAtNanos >= 0;
         }
     }
 }
@@ -50,6 +50,11 @@ public class ApolloClientMonitorConstant {
   public static final String APOLLO_CLIENT_NAMESPACE_TIMEOUT = "Apollo.Client.NamespaceTimeout";
   public static final String APOLLO_CLIENT_NAMESPACE_USAGE = "Apollo.Client.NamespaceUsage";
   public static final String APOLLO_CLIENT_NAMESPACE_FIRST_LOAD_SPEND = "Apollo.Client.NamespaceFirstLoadSpendTime";
+  public static final String APOLLO_CLIENT_CONFIG_HEDGE = "Apollo.Client.ConfigHedge";
+  public static final String APOLLO_CONFIG_SERVICE_EJECTED = "Apollo.Config.ServiceEjected";
+  public static final String APOLLO_CLIENT_STALE_WHILE_REVALIDATE = "Apollo.Client.StaleWhileRevalidate";
+  public static final String APOLLO_CLIENT_STARTUP_DEADLINE_EXCEEDED = "Apollo.Client.StartupDeadlineExceeded";
+  public static final String APOLLO_CLIENT_LOCAL_CACHE_LOG_RECOVERED = "Apollo.Client.LocalCacheLogRecovered";
 
   /**
    * listener tag
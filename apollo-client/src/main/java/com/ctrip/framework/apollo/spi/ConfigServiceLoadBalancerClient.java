@@ -31,4 +31,24 @@ public interface ConfigServiceLoadBalancerClient extends Ordered {
    * @throws IllegalArgumentException if arg is null of empty
    */
   ServiceDTO chooseOneFrom(List<ServiceDTO> configServices);
+
+  /**
+   * notified before a request is sent to the config service
+   *
+   * @param configService the config service the request is sent to
+   */
+  default void onRequestStart(ServiceDTO configService) {
+  }
+
+  /**
+   * notified after a request sent to the config service completes
+   *
+   * @param configService the config service the request was sent to
+   * @param latencyInMillis the time the request took, negative if the latency is not meaningful,
+   *                        e.g. failed long polling requests which are held by the server, whose
+   *                        successes are not reported at all
+   * @param success whether the config service answered the request
+   */
+  default void onRequestComplete(ServiceDTO configService, long latencyInMillis, boolean success) {
+  }
 }
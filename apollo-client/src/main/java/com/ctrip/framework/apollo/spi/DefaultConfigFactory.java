@@ -34,7 +34,9 @@ import com.ctrip.framework.apollo.internals.XmlConfigFile;
 import com.ctrip.framework.apollo.internals.YamlConfigFile;
 import com.ctrip.framework.apollo.internals.YmlConfigFile;
 import com.ctrip.framework.apollo.internals.K8sConfigMapConfigRepository;
+import com.ctrip.framework.apollo.internals.MountedConfigMapConfigRepository;
 import com.ctrip.framework.apollo.util.ConfigUtil;
+import java.io.File;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -124,6 +126,8 @@ public class DefaultConfigFactory implements ConfigFactory {
   ConfigRepository createConfigRepository(String appId, String namespace) {
     if (m_configUtil.isPropertyKubernetesCacheEnabled()) {
       return createConfigMapConfigRepository(appId, namespace);
+    } else if (m_configUtil.getK8sConfigMapMountPath() != null) {
+      return createMountedConfigMapConfigRepository(appId, namespace);
     } else if (m_configUtil.isPropertyFileCacheEnabled()) {
       return createLocalConfigRepository(appId, namespace);
     }
@@ -144,6 +148,10 @@ public class DefaultConfigFactory implements ConfigFactory {
           namespace);
       return new LocalFileConfigRepository(appId, namespace);
     }
+    if (m_configUtil.isCacheFileSharedEnabled()) {
+      return LocalFileConfigRepository.createShared(appId, namespace,
+          () -> createRemoteConfigRepository(appId, namespace));
+    }
     return new LocalFileConfigRepository(appId, namespace, createRemoteConfigRepository(appId, namespace));
   }
 
@@ -155,6 +163,20 @@ public class DefaultConfigFactory implements ConfigFactory {
   private ConfigRepository createConfigMapConfigRepository(String appId, String namespace) {
     return new K8sConfigMapConfigRepository(appId, namespace, createLocalConfigRepository(appId, namespace));
   }
+
+  /**
+   * Creates a repository for a given namespace, which falls back to the Kubernetes config map
+   * mounted as a volume
+   * @param namespace the namespace of the repository
+   * @return the newly created repository for the given namespace
+   */
+  private ConfigRepository createMountedConfigMapConfigRepository(String appId, String namespace) {
+    ConfigRepository upstream = m_configUtil.isPropertyFileCacheEnabled()
+        ? createLocalConfigRepository(appId, namespace) : createRemoteConfigRepository(appId, namespace);
+    return new MountedConfigMapConfigRepository(appId, namespace,
+        new File(m_configUtil.getK8sConfigMapMountPath()), upstream);
+  }
+
   RemoteConfigRepository createRemoteConfigRepository(String appId, String namespace) {
     return new RemoteConfigRepository(appId, namespace);
   }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.spi;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Power-of-two-choices load balancer: picks 2 config services at random and chooses the one with
+ * the lower cost, which is the EWMA latency weighted by the number of in-flight requests.
+ * <p>
+ * The EWMA latency of an instance decays while it is idle, so that an instance which was slow or
+ * failing is probed again after a while.
+ */
+public class LatencyAwareConfigServiceLoadBalancerClient implements ConfigServiceLoadBalancerClient {
+
+  private static final int ORDER = -1;
+  private static final double EWMA_ALPHA = 0.3;
+  private static final double IDLE_DECAY_TIME_IN_MILLIS = 10_000;
+  private static final long FAILURE_PENALTY_IN_MILLIS = 5_000;
+
+  private final ConcurrentMap<String, InstanceStats> m_instanceStats = Maps.newConcurrentMap();
+
+  @Override
+  public ServiceDTO chooseOneFrom(List<ServiceDTO> configServices) {
+    if (null == configServices) {
+      throw new IllegalArgumentException("arg is null");
+    }
+    if (configServices.isEmpty()) {
+      throw new IllegalArgumentException("arg is empty");
+    }
+    int size = configServices.size();
+    if (size == 1) {
+      return configServices.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(size);
+    int second = random.nextInt(size - 1);
+    if (second >= first) {
+      second++;
+    }
+    ServiceDTO one = configServices.get(first);
+    ServiceDTO another = configServices.get(second);
+    long now = System.currentTimeMillis();
+    return cost(one, now) <= cost(another, now) ? one : another;
+  }
+
+  @Override
+  public void onRequestStart(ServiceDTO configService) {
+    getInstanceStats(configService).m_inFlight.incrementAndGet();
+  }
+
+  @Override
+  public void onRequestComplete(ServiceDTO configService, long latencyInMillis, boolean success) {
+    InstanceStats stats = getInstanceStats(configService);
+    stats.m_inFlight.decrementAndGet();
+    if (!success) {
+      stats.observe(Math.max(latencyInMillis, FAILURE_PENALTY_IN_MILLIS), true);
+    } else if (latencyInMillis >= 0) {
+      stats.observe(latencyInMillis, false);
+    }
+  }
+
+  double cost(ServiceDTO configService, long now) {
+    InstanceStats stats = m_instanceStats.get(configService.getHomepageUrl());
+    if (stats == null) {
+      // never used, try it first
+      return 0;
+    }
+    return stats.decayedLatency(now) * (Math.max(stats.m_inFlight.get(), 0) + 1);
+  }
+
+  private InstanceStats getInstanceStats(ServiceDTO configService) {
+    return m_instanceStats.computeIfAbsent(configService.getHomepageUrl(), k -> new InstanceStats());
+  }
+
+  @Override
+  public int getOrder() {
+    return ORDER;
+  }
+
+  private static class InstanceStats {
+    private final AtomicInteger m_inFlight = new AtomicInteger();
+    private double m_ewmaLatency;
+    private long m_lastUpdateTime;
+    private boolean m_observed;
+
+    synchronized void observe(long latencyInMillis, boolean failure) {
+      if (!m_observed) {
+        m_ewmaLatency = latencyInMillis;
+        m_observed = true;
+      } else if (failure) {
+        m_ewmaLatency = Math.max(m_ewmaLatency, latencyInMillis);
+      } else {
+        m_ewmaLatency = EWMA_ALPHA * latencyInMillis + (1 - EWMA_ALPHA) * m_ewmaLatency;
+      }
+      m_lastUpdateTime = System.currentTimeMillis();
+    }
+
+    synchronized double decayedLatency(long now) {
+      long idleTime = Math.max(now - m_lastUpdateTime, 0);
+      return m_ewmaLatency * Math.exp(-idleTime / IDLE_DECAY_TIME_IN_MILLIS);
+    }
+  }
+}
@@ -56,6 +56,7 @@ public class ConfigUtil {
   private int readTimeout = 5000; //5 seconds
   private String cluster;
   private int loadConfigQPS = 2; //2 times per second
+  private int loadConfigGlobalQPS = 100; //100 times per second for all the namespaces
   private int longPollQPS = 2; //2 times per second
   //for on error retry
   private long onErrorRetryInterval = 1;//1 second
@@ -77,6 +78,19 @@ public class ConfigUtil {
   private String monitorExternalType = "";
   private long monitorExternalExportPeriod = 10;
   private int monitorExceptionQueueSize = 25;
+  private boolean configServiceHedgeEnabled = false;
+  private long configServiceHedgeInitialDelayInMillis = 1000;//1 second
+  private boolean configServiceWarmUpEnabled = false;
+  private boolean staleWhileRevalidateEnabled = false;
+  private long staleWhileRevalidateMaxAgeInSeconds = TimeUnit.DAYS.toSeconds(1);
+  private long startupDeadlineInMillis = 0;//no deadline
+  private boolean cacheFileFsyncEnabled = false;
+  private boolean cacheFileBinaryEnabled = false;
+  private boolean cacheFileBinaryCompressionEnabled = false;
+  private boolean cacheFileConsolidatedEnabled = false;
+  private boolean cacheFileSharedEnabled = false;
+  private int k8sConfigMapShards = 1;
+  private final long startupNanos = System.nanoTime();
 
   public ConfigUtil() {
     warnLogRateLimiter = RateLimiter.create(0.017); // 1 warning log output per minute
@@ -98,6 +112,15 @@ public class ConfigUtil {
     initClientMonitorExternalType();
     initClientMonitorExternalExportPeriod();
     initClientMonitorExceptionQueueSize();
+    initConfigServiceHedge();
+    initConfigServiceWarmUp();
+    initStaleWhileRevalidate();
+    initStartupDeadline();
+    initCacheFileFsyncEnabled();
+    initCacheFileBinary();
+    initCacheFileConsolidated();
+    initCacheFileShared();
+    initK8sConfigMapShards();
   }
 
   /**
@@ -273,6 +296,18 @@ public class ConfigUtil {
       }
     }
 
+    {
+      Integer value = getCustomizedIntegerValue(ApolloClientSystemConsts.APOLLO_LOAD_CONFIG_GLOBAL_QPS);
+      if (null != value) {
+        if (value <= 0) {
+          logger.warn("Config for {} is invalid: {}, remain default value: {}",
+              ApolloClientSystemConsts.APOLLO_LOAD_CONFIG_GLOBAL_QPS, value, loadConfigGlobalQPS);
+        } else {
+          loadConfigGlobalQPS = value;
+        }
+      }
+    }
+
     {
       Integer value = getCustomizedIntegerValue("apollo.longPollQPS");
       if (null != value) {
@@ -297,6 +332,10 @@ public class ConfigUtil {
     return loadConfigQPS;
   }
 
+  public int getLoadConfigGlobalQPS() {
+    return loadConfigGlobalQPS;
+  }
+
   public int getLongPollQPS() {
     return longPollQPS;
   }
@@ -417,6 +456,50 @@ public class ConfigUtil {
     return k8sNamespace;
   }
 
+  /**
+   * The dir the Kubernetes ConfigMap cache is mounted to as a volume, which is read instead of
+   * calling the API server, or null if it is not mounted.
+   */
+  public String getK8sConfigMapMountPath() {
+    // 1. Get from System Property
+    String mountPath = System.getProperty(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_MOUNT_PATH);
+    if (Strings.isNullOrEmpty(mountPath)) {
+      // 2. Get from OS environment variable
+      mountPath = System.getenv(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_MOUNT_PATH_ENVIRONMENT_VARIABLES);
+    }
+    if (Strings.isNullOrEmpty(mountPath)) {
+      // 3. Get from server.properties
+      mountPath = Foundation.server().getProperty(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_MOUNT_PATH, null);
+    }
+    if (Strings.isNullOrEmpty(mountPath)) {
+      // 4. Get from app.properties
+      mountPath = Foundation.app().getProperty(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_MOUNT_PATH, null);
+    }
+    return Strings.emptyToNull(mountPath);
+  }
+
+  private void initK8sConfigMapShards() {
+    Integer value = getCustomizedIntegerValue(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_SHARDS);
+
+    if (value != null) {
+      if (value <= 0) {
+        logger.warn("Config for {} is invalid: {}, remain default value: {}",
+                ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_SHARDS, value, k8sConfigMapShards);
+      } else {
+        k8sConfigMapShards = value;
+      }
+    }
+  }
+
+  /**
+   * The number of the Kubernetes ConfigMaps the cache of an app is sharded across, by consistent
+   * hashing of the ConfigMap keys, so that the apps with large or numerous namespaces are not
+   * limited by the size of a single ConfigMap.
+   */
+  public int getK8sConfigMapShards() {
+    return k8sConfigMapShards;
+  }
+
   public boolean isInLocalMode() {
     try {
       return Env.LOCAL == getApolloEnv();
@@ -618,6 +701,187 @@ public class ConfigUtil {
     return monitorExceptionQueueSize;
   }
 
+  private void initConfigServiceHedge() {
+    configServiceHedgeEnabled = getPropertyBoolean(ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_HEDGE_ENABLE,
+            ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_HEDGE_ENABLE_ENVIRONMENT_VARIABLES,
+            configServiceHedgeEnabled);
+
+    Integer value = getCustomizedIntegerValue(ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_HEDGE_INITIAL_DELAY);
+
+    if (value != null) {
+      if (value <= 0) {
+        logger.warn("Config for {} is invalid: {}, remain default value: 1000",
+                ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_HEDGE_INITIAL_DELAY, value);
+      } else {
+        configServiceHedgeInitialDelayInMillis = value;
+      }
+    }
+  }
+
+  /**
+   * Whether to send a duplicate config query to another config service instance when the first
+   * one does not answer in time.
+   */
+  public boolean isConfigServiceHedgeEnabled() {
+    return configServiceHedgeEnabled;
+  }
+
+  /**
+   * The hedge delay used before enough latency samples are collected to compute it adaptively.
+   */
+  public long getConfigServiceHedgeInitialDelayInMillis() {
+    return configServiceHedgeInitialDelayInMillis;
+  }
+
+  private void initConfigServiceWarmUp() {
+    configServiceWarmUpEnabled = getPropertyBoolean(ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_WARM_UP_ENABLE,
+            ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_WARM_UP_ENABLE_ENVIRONMENT_VARIABLES,
+            configServiceWarmUpEnabled);
+  }
+
+  /**
+   * Whether to open a connection to each config service in the background once the config services
+   * are located, so the first config load could reuse it. Disabled by default, as it sends an
+   * extra request to each config service.
+   */
+  public boolean isConfigServiceWarmUpEnabled() {
+    return configServiceWarmUpEnabled;
+  }
+
+  private void initStaleWhileRevalidate() {
+    staleWhileRevalidateEnabled = getPropertyBoolean(
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_ENABLE,
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_ENABLE_ENVIRONMENT_VARIABLES,
+            staleWhileRevalidateEnabled);
+
+    Integer value = getCustomizedIntegerValue(
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_MAX_AGE);
+
+    if (value != null) {
+      if (value <= 0) {
+        logger.warn("Config for {} is invalid: {}, remain default value: {}",
+                ApolloClientSystemConsts.APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_MAX_AGE, value,
+                staleWhileRevalidateMaxAgeInSeconds);
+      } else {
+        staleWhileRevalidateMaxAgeInSeconds = value;
+      }
+    }
+  }
+
+  /**
+   * Whether to serve the local cache file right away at startup, if it is not older than
+   * {@link #getStaleWhileRevalidateMaxAgeInSeconds()}, and reconcile with the remote in the
+   * background.
+   */
+  public boolean isStaleWhileRevalidateEnabled() {
+    return staleWhileRevalidateEnabled;
+  }
+
+  public long getStaleWhileRevalidateMaxAgeInSeconds() {
+    return staleWhileRevalidateMaxAgeInSeconds;
+  }
+
+  private void initStartupDeadline() {
+    Integer value = getCustomizedIntegerValue(ApolloClientSystemConsts.APOLLO_STARTUP_DEADLINE);
+
+    if (value != null) {
+      if (value <= 0) {
+        logger.warn("Config for {} is invalid: {}, remain default value: no deadline",
+                ApolloClientSystemConsts.APOLLO_STARTUP_DEADLINE, value);
+      } else {
+        startupDeadlineInMillis = value;
+      }
+    }
+  }
+
+  /**
+   * The time budget for the first load of all the namespaces, counted from the creation of this
+   * instance. 0 means no deadline.
+   */
+  public long getStartupDeadlineInMillis() {
+    return startupDeadlineInMillis;
+  }
+
+  /**
+   * @return the remaining time of the startup deadline in milliseconds, 0 if it is exceeded, or
+   * {@link Long#MAX_VALUE} if there is no deadline
+   */
+  public long getStartupDeadlineRemainingInMillis() {
+    long deadline = getStartupDeadlineInMillis();
+    if (deadline <= 0) {
+      return Long.MAX_VALUE;
+    }
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startupNanos);
+    return Math.max(0, deadline - elapsed);
+  }
+
+  private void initCacheFileFsyncEnabled() {
+    cacheFileFsyncEnabled = getPropertyBoolean(ApolloClientSystemConsts.APOLLO_CACHE_FILE_FSYNC_ENABLE,
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_FSYNC_ENABLE_ENVIRONMENT_VARIABLES,
+            cacheFileFsyncEnabled);
+  }
+
+  /**
+   * Whether to force the local cache files to the storage device before they replace the old
+   * ones, which survives a power loss at the cost of slower writes.
+   */
+  public boolean isCacheFileFsyncEnabled() {
+    return cacheFileFsyncEnabled;
+  }
+
+  private void initCacheFileBinary() {
+    cacheFileBinaryEnabled = getPropertyBoolean(ApolloClientSystemConsts.APOLLO_CACHE_FILE_BINARY_ENABLE,
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_BINARY_ENABLE_ENVIRONMENT_VARIABLES,
+            cacheFileBinaryEnabled);
+    cacheFileBinaryCompressionEnabled = getPropertyBoolean(
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_BINARY_COMPRESSION_ENABLE,
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_BINARY_COMPRESSION_ENABLE_ENVIRONMENT_VARIABLES,
+            cacheFileBinaryCompressionEnabled);
+  }
+
+  /**
+   * Whether to persist the local cache files in the checksummed binary format instead of the
+   * properties format. The existing properties files are still loaded and migrated.
+   */
+  public boolean isCacheFileBinaryEnabled() {
+    return cacheFileBinaryEnabled;
+  }
+
+  public boolean isCacheFileBinaryCompressionEnabled() {
+    return cacheFileBinaryCompressionEnabled;
+  }
+
+  private void initCacheFileConsolidated() {
+    cacheFileConsolidatedEnabled = getPropertyBoolean(
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_CONSOLIDATED_ENABLE,
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_CONSOLIDATED_ENABLE_ENVIRONMENT_VARIABLES,
+            cacheFileConsolidatedEnabled);
+  }
+
+  /**
+   * Whether to keep the local cache files of all the namespaces of an app in a single append-only
+   * log instead of one file per namespace. The existing files are still loaded and migrated.
+   */
+  public boolean isCacheFileConsolidatedEnabled() {
+    return cacheFileConsolidatedEnabled;
+  }
+
+  private void initCacheFileShared() {
+    cacheFileSharedEnabled = getPropertyBoolean(
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_SHARED_ENABLE,
+            ApolloClientSystemConsts.APOLLO_CACHE_FILE_SHARED_ENABLE_ENVIRONMENT_VARIABLES,
+            cacheFileSharedEnabled);
+  }
+
+  /**
+   * Whether to share the local cache dir with the other processes of the app on the same host, so
+   * that only one of them loads the configs from the config service and the others follow the local
+   * cache files it persists. The local cache files are kept one per namespace in this mode.
+   */
+  public boolean isCacheFileSharedEnabled() {
+    return cacheFileSharedEnabled;
+  }
+
   private boolean getPropertyBoolean(String propertyName, String envName, boolean defaultVal) {
     String enablePropertyNamesCache = System.getProperty(propertyName);
     if (Strings.isNullOrEmpty(enablePropertyNamesCache)) {
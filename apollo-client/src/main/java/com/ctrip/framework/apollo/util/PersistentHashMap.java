@@ -0,0 +1,506 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.util;
+
+import com.google.common.base.Preconditions;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map backed by a hash array mapped trie, see Phil Bagwell's "Ideal Hash Trees".
+ * <p>
+ * {@link #plus(Object, Object)} and {@link #minus(Object)} return a new map which shares all but
+ * the changed path of the trie with this one, so changing k keys of a map with n keys costs
+ * O(k log n) rather than copying the whole map. Bulk changes are applied with a {@link Builder},
+ * which edits the nodes it has created in place.
+ * <p>
+ * The keys and values must not be null, and the iteration order is not specified.
+ *
+ * @since 2.6.0
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  //the max depth of the trie: 7 levels of the 32-bit hash and a collision node
+  private static final int MAX_DEPTH = 8;
+
+  private static final PersistentHashMap<Object, Object> EMPTY = new PersistentHashMap<>(null, 0);
+
+  private final Node m_root;
+  private final int m_size;
+  private transient Set<Entry<K, V>> m_entrySet;
+
+  private PersistentHashMap(Node root, int size) {
+    m_root = root;
+    m_size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentHashMap<K, V> empty() {
+    return (PersistentHashMap<K, V>) EMPTY;
+  }
+
+  /**
+   * Get the persistent map with the same entries as the given map, which is the map itself if it
+   * is a persistent map already.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+    if (map instanceof PersistentHashMap) {
+      return (PersistentHashMap<K, V>) map;
+    }
+    Builder<K, V> builder = PersistentHashMap.<K, V>empty().toBuilder();
+    for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+      builder.put(entry.getKey(), entry.getValue());
+    }
+    return builder.build();
+  }
+
+  @Override
+  public int size() {
+    return m_size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    if (m_root == null || key == null) {
+      return null;
+    }
+    return (V) m_root.find(0, hash(key), key);
+  }
+
+  /**
+   * @return a map with the key mapped to the value, which is this map if the key is mapped to the
+   * value already
+   */
+  public PersistentHashMap<K, V> plus(K key, V value) {
+    checkEntry(key, value);
+    Box added = new Box();
+    Node root = (m_root == null ? BitmapNode.EMPTY : m_root)
+        .put(null, 0, hash(key), key, value, added);
+    if (root == m_root) {
+      return this;
+    }
+    return new PersistentHashMap<>(root, added.value ? m_size + 1 : m_size);
+  }
+
+  /**
+   * @return a map without the key, which is this map if it doesn't contain the key
+   */
+  public PersistentHashMap<K, V> minus(Object key) {
+    if (m_root == null || key == null) {
+      return this;
+    }
+    Box removed = new Box();
+    Node root = m_root.remove(null, 0, hash(key), key, removed);
+    if (!removed.value) {
+      return this;
+    }
+    return root == null ? PersistentHashMap.<K, V>empty() : new PersistentHashMap<>(root, m_size - 1);
+  }
+
+  /**
+   * @return a builder starting with the entries of this map, which is not affected by the builder
+   */
+  public Builder<K, V> toBuilder() {
+    return new Builder<>(m_root, m_size);
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    Set<Entry<K, V>> entrySet = m_entrySet;
+    if (entrySet == null) {
+      entrySet = new AbstractSet<Entry<K, V>>() {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+          return new EntryIterator<>(m_root);
+        }
+
+        @Override
+        public int size() {
+          return m_size;
+        }
+      };
+      m_entrySet = entrySet;
+    }
+    return entrySet;
+  }
+
+  /**
+   * Applies changes to a persistent map, by editing in place the nodes created by itself only.
+   */
+  public static final class Builder<K, V> {
+    private Object m_edit = new Object();
+    private Node m_root;
+    private int m_size;
+
+    private Builder(Node root, int size) {
+      m_root = root;
+      m_size = size;
+    }
+
+    public Builder<K, V> put(K key, V value) {
+      checkEntry(key, value);
+      Box added = new Box();
+      m_root = (m_root == null ? BitmapNode.EMPTY : m_root)
+          .put(m_edit, 0, hash(key), key, value, added);
+      if (added.value) {
+        m_size++;
+      }
+      return this;
+    }
+
+    public Builder<K, V> remove(Object key) {
+      if (m_root != null && key != null) {
+        Box removed = new Box();
+        m_root = m_root.remove(m_edit, 0, hash(key), key, removed);
+        if (removed.value) {
+          m_size--;
+        }
+      }
+      return this;
+    }
+
+    public PersistentHashMap<K, V> build() {
+      //the nodes are shared by the map from now on, so they are copied by the following changes
+      m_edit = new Object();
+      return m_root == null ? PersistentHashMap.<K, V>empty() : new PersistentHashMap<>(m_root, m_size);
+    }
+  }
+
+  private static void checkEntry(Object key, Object value) {
+    Preconditions.checkNotNull(key, "key must not be null");
+    Preconditions.checkNotNull(value, "value must not be null");
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static final class Box {
+    private boolean value;
+  }
+
+  /**
+   * A node of the trie, whose array holds the key value pairs, with a null key for a child node.
+   */
+  private abstract static class Node {
+    final Object m_edit;
+    Object[] m_array;
+
+    Node(Object edit, Object[] array) {
+      m_edit = edit;
+      m_array = array;
+    }
+
+    abstract int pairCount();
+
+    abstract Object find(int shift, int hash, Object key);
+
+    abstract Node put(Object edit, int shift, int hash, Object key, Object value, Box added);
+
+    /**
+     * @return the node without the key, or null if it is empty then
+     */
+    abstract Node remove(Object edit, int shift, int hash, Object key, Box removed);
+
+    boolean isEditable(Object edit) {
+      return edit != null && edit == m_edit;
+    }
+  }
+
+  private static final class BitmapNode extends Node {
+    static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+    int m_bitmap;
+
+    BitmapNode(Object edit, int bitmap, Object[] array) {
+      super(edit, array);
+      m_bitmap = bitmap;
+    }
+
+    @Override
+    int pairCount() {
+      return Integer.bitCount(m_bitmap);
+    }
+
+    @Override
+    Object find(int shift, int hash, Object key) {
+      int bit = bit(hash, shift);
+      if ((m_bitmap & bit) == 0) {
+        return null;
+      }
+      int index = index(bit);
+      Object keyOrNull = m_array[2 * index];
+      Object valueOrNode = m_array[2 * index + 1];
+      if (keyOrNull == null) {
+        return ((Node) valueOrNode).find(shift + BITS, hash, key);
+      }
+      return key.equals(keyOrNull) ? valueOrNode : null;
+    }
+
+    @Override
+    Node put(Object edit, int shift, int hash, Object key, Object value, Box added) {
+      int bit = bit(hash, shift);
+      int index = index(bit);
+      if ((m_bitmap & bit) != 0) {
+        Object keyOrNull = m_array[2 * index];
+        Object valueOrNode = m_array[2 * index + 1];
+        if (keyOrNull == null) {
+          Node child = ((Node) valueOrNode).put(edit, shift + BITS, hash, key, value, added);
+          return child == valueOrNode ? this : set(edit, 2 * index + 1, child);
+        }
+        if (key.equals(keyOrNull)) {
+          return value == valueOrNode ? this : set(edit, 2 * index + 1, value);
+        }
+        added.value = true;
+        Node child = createNode(edit, shift + BITS, keyOrNull, valueOrNode, hash, key, value);
+        BitmapNode node = (BitmapNode) set(edit, 2 * index, null);
+        node.m_array[2 * index + 1] = child;
+        return node;
+      }
+
+      added.value = true;
+      int count = pairCount();
+      if (isEditable(edit) && m_array.length >= 2 * (count + 1)) {
+        System.arraycopy(m_array, 2 * index, m_array, 2 * (index + 1), 2 * (count - index));
+        m_array[2 * index] = key;
+        m_array[2 * index + 1] = value;
+        m_bitmap |= bit;
+        return this;
+      }
+      //leave some room for the following puts of the same builder
+      Object[] array = new Object[2 * (edit == null ? count + 1 : Math.min(count + 4, 1 << BITS))];
+      System.arraycopy(m_array, 0, array, 0, 2 * index);
+      array[2 * index] = key;
+      array[2 * index + 1] = value;
+      System.arraycopy(m_array, 2 * index, array, 2 * (index + 1), 2 * (count - index));
+      return new BitmapNode(edit, m_bitmap | bit, array);
+    }
+
+    @Override
+    Node remove(Object edit, int shift, int hash, Object key, Box removed) {
+      int bit = bit(hash, shift);
+      if ((m_bitmap & bit) == 0) {
+        return this;
+      }
+      int index = index(bit);
+      Object keyOrNull = m_array[2 * index];
+      Object valueOrNode = m_array[2 * index + 1];
+      if (keyOrNull == null) {
+        Node child = ((Node) valueOrNode).remove(edit, shift + BITS, hash, key, removed);
+        if (child == valueOrNode) {
+          return this;
+        }
+        if (child != null) {
+          return set(edit, 2 * index + 1, child);
+        }
+      } else if (key.equals(keyOrNull)) {
+        removed.value = true;
+      } else {
+        return this;
+      }
+
+      if (m_bitmap == bit) {
+        return null;
+      }
+      int count = pairCount();
+      if (isEditable(edit)) {
+        System.arraycopy(m_array, 2 * (index + 1), m_array, 2 * index, 2 * (count - index - 1));
+        m_array[2 * count - 2] = null;
+        m_array[2 * count - 1] = null;
+        m_bitmap ^= bit;
+        return this;
+      }
+      Object[] array = new Object[2 * (count - 1)];
+      System.arraycopy(m_array, 0, array, 0, 2 * index);
+      System.arraycopy(m_array, 2 * (index + 1), array, 2 * index, 2 * (count - index - 1));
+      return new BitmapNode(edit, m_bitmap ^ bit, array);
+    }
+
+    private Node set(Object edit, int i, Object item) {
+      if (isEditable(edit)) {
+        m_array[i] = item;
+        return this;
+      }
+      Object[] array = m_array.clone();
+      array[i] = item;
+      return new BitmapNode(edit, m_bitmap, array);
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(m_bitmap & (bit - 1));
+    }
+
+    private static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Node createNode(Object edit, int shift, Object key1, Object value1, int hash2,
+        Object key2, Object value2) {
+      int hash1 = hash(key1);
+      if (hash1 == hash2) {
+        return new CollisionNode(edit, hash1, new Object[]{key1, value1, key2, value2});
+      }
+      Box added = new Box();
+      return EMPTY.put(edit, shift, hash1, key1, value1, added)
+          .put(edit, shift, hash2, key2, value2, added);
+    }
+  }
+
+  /**
+   * The node of the keys with the same hash, which are rare enough to be always copied on change.
+   */
+  private static final class CollisionNode extends Node {
+    final int m_hash;
+
+    CollisionNode(Object edit, int hash, Object[] array) {
+      super(edit, array);
+      m_hash = hash;
+    }
+
+    @Override
+    int pairCount() {
+      return m_array.length / 2;
+    }
+
+    @Override
+    Object find(int shift, int hash, Object key) {
+      int i = indexOf(key);
+      return i < 0 ? null : m_array[i + 1];
+    }
+
+    @Override
+    Node put(Object edit, int shift, int hash, Object key, Object value, Box added) {
+      if (hash != m_hash) {
+        //the keys with another hash are put in the bitmap node which this node is nested in
+        return new BitmapNode(edit, BitmapNode.bit(m_hash, shift), new Object[]{null, this})
+            .put(edit, shift, hash, key, value, added);
+      }
+      int i = indexOf(key);
+      if (i >= 0) {
+        if (m_array[i + 1] == value) {
+          return this;
+        }
+        Object[] array = m_array.clone();
+        array[i + 1] = value;
+        return new CollisionNode(edit, m_hash, array);
+      }
+      added.value = true;
+      Object[] array = new Object[m_array.length + 2];
+      System.arraycopy(m_array, 0, array, 0, m_array.length);
+      array[m_array.length] = key;
+      array[m_array.length + 1] = value;
+      return new CollisionNode(edit, m_hash, array);
+    }
+
+    @Override
+    Node remove(Object edit, int shift, int hash, Object key, Box removed) {
+      int i = indexOf(key);
+      if (i < 0) {
+        return this;
+      }
+      removed.value = true;
+      if (m_array.length == 2) {
+        return null;
+      }
+      Object[] array = new Object[m_array.length - 2];
+      System.arraycopy(m_array, 0, array, 0, i);
+      System.arraycopy(m_array, i + 2, array, i, m_array.length - i - 2);
+      return new CollisionNode(edit, m_hash, array);
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < m_array.length; i += 2) {
+        if (key.equals(m_array[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+
+  private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+    private final Object[][] m_arrays = new Object[MAX_DEPTH][];
+    private final int[] m_lengths = new int[MAX_DEPTH];
+    private final int[] m_positions = new int[MAX_DEPTH];
+    private int m_depth = -1;
+    private Entry<K, V> m_next;
+
+    EntryIterator(Node root) {
+      if (root != null) {
+        push(root);
+      }
+      advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return m_next != null;
+    }
+
+    @Override
+    public Entry<K, V> next() {
+      Entry<K, V> next = m_next;
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      advance();
+      return next;
+    }
+
+    private void push(Node node) {
+      m_depth++;
+      m_arrays[m_depth] = node.m_array;
+      m_lengths[m_depth] = 2 * node.pairCount();
+      m_positions[m_depth] = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void advance() {
+      while (m_depth >= 0) {
+        int position = m_positions[m_depth];
+        if (position >= m_lengths[m_depth]) {
+          m_arrays[m_depth] = null;
+          m_depth--;
+          continue;
+        }
+        Object keyOrNull = m_arrays[m_depth][position];
+        Object valueOrNode = m_arrays[m_depth][position + 1];
+        m_positions[m_depth] = position + 2;
+        if (keyOrNull == null) {
+          push((Node) valueOrNode);
+        } else {
+          m_next = new SimpleImmutableEntry<>((K) keyOrNull, (V) valueOrNode);
+          return;
+        }
+      }
+      m_next = null;
+    }
+  }
+}
@@ -21,6 +21,7 @@ import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.base.Function;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import com.google.gson.Gson;
 import java.io.IOException;
@@ -89,7 +90,7 @@ public class DefaultHttpClient implements HttpClient {
   private <T> HttpResponse<T> doGetWithSerializeFunction(HttpRequest httpRequest,
                                                          Function<String, T> serializeFunction) {
     InputStreamReader isr = null;
-    InputStreamReader esr = null;
+    InputStream errorStream = null;
     int statusCode;
     try {
       HttpURLConnection conn = (HttpURLConnection) new URL(httpRequest.getUrl()).openConnection();
@@ -130,12 +131,12 @@ public class DefaultHttpClient implements HttpClient {
          * we should clean up the connection by reading the response body so that the connection
          * could be reused.
          */
-        InputStream errorStream = conn.getErrorStream();
+        errorStream = conn.getErrorStream();
 
         if (errorStream != null) {
-          esr = new InputStreamReader(errorStream, StandardCharsets.UTF_8);
           try {
-            CharStreams.toString(esr);
+            //the error body is discarded, so skip the decoding
+            ByteStreams.exhaust(errorStream);
           } catch (IOException ioe) {
             //ignore
           }
@@ -169,9 +170,9 @@ public class DefaultHttpClient implements HttpClient {
         }
       }
 
-      if (esr != null) {
+      if (errorStream != null) {
         try {
-          esr.close();
+          errorStream.close();
         } catch (IOException ex) {
           // ignore
         }
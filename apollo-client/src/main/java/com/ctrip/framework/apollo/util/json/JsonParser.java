@@ -0,0 +1,133 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.util.json;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Properties;
+
+/**
+ * Flattens json content into properties the same way as {@link com.ctrip.framework.apollo.util.yaml.YamlParser}
+ * does, so that the keys of an object are joined by '.' and the elements of an array are indexed by
+ * [i], e.g. <code>{"a": {"b": [1, {"c": null}]}}</code> is flattened into <code>a.b[0]=1</code> and
+ * <code>a.b[1].c=</code>.
+ * <p>
+ * The content is read as a stream of tokens, without building the json tree.
+ */
+public class JsonParser {
+  private PropertiesFactory propertiesFactory = ApolloInjector.getInstance(PropertiesFactory.class);
+
+  /**
+   * Transform json content to properties
+   *
+   * @throws JsonSyntaxException if the content is not valid json
+   */
+  public Properties jsonToProperties(String jsonContent) {
+    Properties result = propertiesFactory.getPropertiesInstance();
+    StringBuilder path = new StringBuilder();
+    try (JsonReader reader = new JsonReader(new StringReader(jsonContent))) {
+      JsonToken root = reader.peek();
+      if (root == JsonToken.BEGIN_OBJECT) {
+        flattenValue(reader, result, path, 0);
+      } else if (root == JsonToken.NULL) {
+        // an empty document
+        reader.nextNull();
+      } else {
+        // A document can be a text literal
+        path.append("document");
+        flattenValue(reader, result, path, 0);
+      }
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
+        throw new JsonSyntaxException("Expected a single json value but was " + reader.peek()
+            + " at path " + reader.getPath());
+      }
+    } catch (IOException ex) {
+      throw new JsonSyntaxException(ex);
+    }
+    return result;
+  }
+
+  /**
+   * Flatten the next value, whose key is the path from the start index.
+   */
+  private void flattenValue(JsonReader reader, Properties result, StringBuilder path, int start)
+      throws IOException {
+    switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        flattenObject(reader, result, path, start);
+        break;
+      case BEGIN_ARRAY:
+        flattenArray(reader, result, path, start);
+        break;
+      case NULL:
+        reader.nextNull();
+        result.put(path.substring(start), "");
+        break;
+      case BOOLEAN:
+        result.put(path.substring(start), String.valueOf(reader.nextBoolean()));
+        break;
+      default:
+        // the numbers are kept as they are written
+        result.put(path.substring(start), reader.nextString());
+    }
+  }
+
+  private void flattenObject(JsonReader reader, Properties result, StringBuilder path, int start)
+      throws IOException {
+    int length = path.length();
+    boolean blankPath = isBlank(path, start);
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String key = reader.nextName();
+      if (!blankPath && !key.startsWith("[")) {
+        path.append('.');
+      }
+      path.append(key);
+      flattenValue(reader, result, path, blankPath ? length : start);
+      path.setLength(length);
+    }
+    reader.endObject();
+  }
+
+  private void flattenArray(JsonReader reader, Properties result, StringBuilder path, int start)
+      throws IOException {
+    int length = path.length();
+    boolean blankPath = isBlank(path, start);
+    int count = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      path.append('[').append(count++).append(']');
+      flattenValue(reader, result, path, blankPath ? length : start);
+      path.setLength(length);
+    }
+    reader.endArray();
+  }
+
+  private static boolean isBlank(StringBuilder path, int start) {
+    for (int i = start; i < path.length(); i++) {
+      if (!Character.isWhitespace(path.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -18,11 +18,15 @@ package com.ctrip.framework.apollo.util.yaml;
 
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
+import java.io.StringReader;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +34,14 @@ import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
 
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import org.yaml.snakeyaml.representer.Representer;
@@ -44,12 +56,38 @@ public class YamlParser {
 
   private PropertiesFactory propertiesFactory = ApolloInjector.getInstance(PropertiesFactory.class);
 
+  // only used to parse the events, which creates a new parser for each call and so is thread safe
+  private final Yaml eventParser = createYaml();
+  private final Resolver resolver = new Resolver();
+  // the timestamp constructor keeps a calendar, so the constructors are not shared between threads
+  private final ThreadLocal<ScalarConstructor> scalarConstructor = new ThreadLocal<ScalarConstructor>() {
+    @Override
+    protected ScalarConstructor initialValue() {
+      return new ScalarConstructor();
+    }
+  };
+
   /**
    * Transform yaml content to properties
+   * <p>
+   * The properties are flattened from the event stream of the yaml directly, without building the
+   * object graph of the whole content. The content using anchors, aliases, merge keys, explicit tags
+   * or complex keys is loaded as the object graph instead, as well as the one with duplicate keys so
+   * that they are reported as before.
    */
   public Properties yamlToProperties(String yamlContent) {
-    Yaml yaml = createYaml();
     final Properties result = propertiesFactory.getPropertiesInstance();
+    if (logger.isDebugEnabled()) {
+      logger.debug("Loading from YAML: {}", yamlContent);
+    }
+    try {
+      new EventFlattener(eventParser.parse(new StringReader(yamlContent)).iterator(), result).flatten();
+      return result;
+    } catch (UnsupportedYamlException ex) {
+      logger.debug("Loading YAML as object graph, as it is not supported by the event flattener");
+      result.clear();
+    }
+    Yaml yaml = createYaml();
     process(new MatchCallback() {
       @Override
       public void process(Properties properties, Map<String, Object> map) {
@@ -72,9 +110,6 @@ public class YamlParser {
 
   private boolean process(MatchCallback callback, Yaml yaml, String content) {
     int count = 0;
-    if (logger.isDebugEnabled()) {
-      logger.debug("Loading from YAML: {}", content);
-    }
     for (Object object : yaml.loadAll(content)) {
       if (object != null && process(asMap(object), callback)) {
         count++;
@@ -166,4 +201,170 @@ public class YamlParser {
     void process(Properties properties, Map<String, Object> map);
   }
 
+  /**
+   * Flattens the events of the yaml into the properties as {@link #buildFlattenedMap} does, with a
+   * single key path builder shared by all the levels.
+   */
+  private class EventFlattener {
+    private final Iterator<Event> events;
+    private final Properties result;
+    private final StringBuilder path = new StringBuilder();
+
+    EventFlattener(Iterator<Event> events, Properties result) {
+      this.events = events;
+      this.result = result;
+    }
+
+    void flatten() {
+      int count = 0;
+      while (events.hasNext()) {
+        if (!events.next().is(Event.ID.DocumentStart)) {
+          continue;
+        }
+        Event root = checkSupported(events.next());
+        if (root.is(Event.ID.MappingStart)) {
+          flattenMapping(0);
+        } else if (!(root instanceof ScalarEvent) || resolve((ScalarEvent) root) != Tag.NULL) {
+          // A document can be a text literal
+          path.append("document");
+          flattenValue(root, 0);
+          path.setLength(0);
+        } else {
+          continue;
+        }
+        count++;
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Loaded {} document{} from YAML events", count, count > 1 ? "s" : "");
+      }
+    }
+
+    /**
+     * Flatten the value, whose key is the path from the start index.
+     */
+    private void flattenValue(Event event, int start) {
+      if (event.is(Event.ID.MappingStart)) {
+        flattenMapping(start);
+      } else if (event.is(Event.ID.SequenceStart)) {
+        flattenSequence(start);
+      } else {
+        result.put(path.substring(start), scalarValue((ScalarEvent) event));
+      }
+    }
+
+    private void flattenMapping(int start) {
+      int length = path.length();
+      boolean blankPath = isBlankPath(start);
+      Set<String> keys = new HashSet<>();
+      for (Event event = events.next(); !event.is(Event.ID.MappingEnd); event = events.next()) {
+        String key = mappingKey(checkSupported(event));
+        if (!keys.add(key)) {
+          throw UnsupportedYamlException.INSTANCE;
+        }
+        if (!blankPath && !key.startsWith("[")) {
+          path.append('.');
+        }
+        path.append(key);
+        flattenValue(checkSupported(events.next()), blankPath ? length : start);
+        path.setLength(length);
+      }
+    }
+
+    private void flattenSequence(int start) {
+      int length = path.length();
+      boolean blankPath = isBlankPath(start);
+      int count = 0;
+      for (Event event = events.next(); !event.is(Event.ID.SequenceEnd); event = events.next()) {
+        path.append('[').append(count++).append(']');
+        flattenValue(checkSupported(event), blankPath ? length : start);
+        path.setLength(length);
+      }
+    }
+
+    private boolean isBlankPath(int start) {
+      for (int i = start; i < path.length(); i++) {
+        if (!Character.isWhitespace(path.charAt(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private String mappingKey(Event event) {
+      if (!(event instanceof ScalarEvent)) {
+        throw UnsupportedYamlException.INSTANCE;
+      }
+      ScalarEvent scalar = (ScalarEvent) event;
+      Tag tag = resolve(scalar);
+      if (Tag.STR.equals(tag)) {
+        return scalar.getValue();
+      }
+      // YAML can have numbers as keys, but not null
+      if (Tag.NULL.equals(tag)) {
+        throw UnsupportedYamlException.INSTANCE;
+      }
+      return "[" + construct(tag, scalar) + "]";
+    }
+
+    private String scalarValue(ScalarEvent scalar) {
+      Tag tag = resolve(scalar);
+      if (Tag.STR.equals(tag)) {
+        return scalar.getValue();
+      }
+      if (Tag.NULL.equals(tag)) {
+        return "";
+      }
+      return construct(tag, scalar).toString();
+    }
+
+    private Tag resolve(ScalarEvent scalar) {
+      return resolver.resolve(NodeId.scalar, scalar.getValue(), scalar.getImplicit().canOmitTagInPlainScalar());
+    }
+
+    private Object construct(Tag tag, ScalarEvent scalar) {
+      if (!Tag.BOOL.equals(tag) && !Tag.INT.equals(tag) && !Tag.FLOAT.equals(tag)
+          && !Tag.TIMESTAMP.equals(tag)) {
+        // e.g. the merge key
+        throw UnsupportedYamlException.INSTANCE;
+      }
+      return scalarConstructor.get().construct(new ScalarNode(tag, scalar.getValue(),
+          scalar.getStartMark(), scalar.getEndMark(), scalar.getScalarStyle()));
+    }
+
+    private Event checkSupported(Event event) {
+      if (event.is(Event.ID.Alias) || (event instanceof NodeEvent && ((NodeEvent) event).getAnchor() != null)) {
+        throw UnsupportedYamlException.INSTANCE;
+      }
+      if (event instanceof ScalarEvent && ((ScalarEvent) event).getTag() != null
+          || event instanceof CollectionStartEvent && ((CollectionStartEvent) event).getTag() != null) {
+        throw UnsupportedYamlException.INSTANCE;
+      }
+      return event;
+    }
+  }
+
+  /**
+   * Constructs the scalars as the {@link Yaml} created by {@link #createYaml()} does.
+   */
+  private static class ScalarConstructor extends SafeConstructor {
+    ScalarConstructor() {
+      super(new LoaderOptions());
+    }
+
+    Object construct(ScalarNode node) {
+      return getConstructor(node).construct(node);
+    }
+  }
+
+  /**
+   * Thrown once the yaml is not supported by the {@link EventFlattener}.
+   */
+  private static class UnsupportedYamlException extends RuntimeException {
+    private static final UnsupportedYamlException INSTANCE = new UnsupportedYamlException();
+
+    private UnsupportedYamlException() {
+      super(null, null, false, false);
+    }
+  }
+
 }
@@ -21,6 +21,8 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.MetaDomainConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.internals.LocalCacheFileWriter;
+import com.ctrip.framework.apollo.internals.LocalFileConfigRepository;
 import com.ctrip.framework.apollo.internals.RemoteConfigLongPollService;
 import com.google.common.base.Joiner;
 import java.io.File;
@@ -145,6 +147,9 @@ public abstract class BaseIntegrationTest {
     RemoteConfigLongPollService remoteConfigLongPollService
         = ApolloInjector.getInstance(RemoteConfigLongPollService.class);
     ReflectionTestUtils.invokeMethod(remoteConfigLongPollService, "stopLongPollingRefresh");
+    //otherwise the pending local cache files may be written to the dir of the next test
+    ApolloInjector.getInstance(LocalCacheFileWriter.class).awaitPendingWrites(5, TimeUnit.SECONDS);
+    ReflectionTestUtils.invokeMethod(LocalFileConfigRepository.class, "reset");
     recursiveDelete(configDir);
 
     //as ConfigService is singleton, so we must manually clear its container
@@ -192,7 +197,7 @@ public abstract class BaseIntegrationTest {
     createLocalCachePropertyFile(defaultNamespace, properties);
   }
 
-  protected void createLocalCachePropertyFile(String namespace, Properties properties) {
+  protected File createLocalCachePropertyFile(String namespace, Properties properties) {
     String filename = assembleLocalCacheFileName(namespace);
     File file = new File(configDir, filename);
     try (FileOutputStream in = new FileOutputStream(file)) {
@@ -200,6 +205,7 @@ public abstract class BaseIntegrationTest {
     } catch (IOException e) {
       throw new IllegalStateException("fail to save " + namespace + " to file", e);
     }
+    return file;
   }
 
   private String assembleLocalCacheFileName(String namespace) {
@@ -308,7 +314,7 @@ public abstract class BaseIntegrationTest {
    * @return a free port number on localhost
    * @throws IllegalStateException if unable to find a free port
    */
-  private static int findFreePort() {
+  protected static int findFreePort() {
     ServerSocket socket = null;
     try {
       socket = new ServerSocket(0);
@@ -26,6 +26,7 @@ import java.util.regex.Pattern;
 import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletResponse;
 import org.mockserver.integration.ClientAndServer;
+import org.mockserver.matchers.TimeToLive;
 import org.mockserver.matchers.Times;
 import org.mockserver.model.HttpRequest;
 import org.mockserver.model.HttpResponse;
@@ -90,6 +91,10 @@ public class MockedConfigService implements AutoCloseable {
     this.server = ClientAndServer.startClientAndServer(port);
   }
 
+  public String getUrl() {
+    return "http://localhost:" + port;
+  }
+
   public void mockMetaServer(ServiceDTO ... serviceDTOList) {
     mockMetaServer(false, serviceDTOList);
   }
@@ -215,6 +220,42 @@ public class MockedConfigService implements AutoCloseable {
         );
   }
 
+  /**
+   * respond 304 to the config requests carrying the release key, which takes precedence over the
+   * configs mocked before
+   */
+  public void mockConfigsNotModified(String releaseKey) {
+    RequestDefinition requestDefinition = HttpRequest.request("GET").withPath("/configs/.*")
+        .withQueryStringParameter("releaseKey", releaseKey);
+    server.when(requestDefinition, Times.unlimited(), TimeToLive.unlimited(), 1)
+        .respond(HttpResponse.response()
+            .withStatusCode(HttpServletResponse.SC_NOT_MODIFIED)
+        );
+  }
+
+  /**
+   * simulate a stalled config service
+   */
+  public void mockConfigsWithDelay(
+      long milliseconds,
+      int mockedStatusCode,
+      ApolloConfig apolloConfig
+  ) {
+    RequestDefinition requestDefinition = HttpRequest.request("GET").withPath("/configs/.*");
+
+    // need clear
+    server.clear(requestDefinition);
+
+    String body = gson.toJson(apolloConfig);
+    server.when(requestDefinition)
+        .respond(HttpResponse.response()
+            .withDelay(TimeUnit.MILLISECONDS, milliseconds)
+            .withStatusCode(mockedStatusCode)
+            .withContentType(MediaType.JSON_UTF_8)
+            .withBody(body)
+        );
+  }
+
   public void mockLongPollNotifications(
       final long pollResultTimeOutInMS,
       final int statusCode,
@@ -255,6 +296,54 @@ public class MockedConfigService implements AutoCloseable {
         );
   }
 
+  /**
+   * respond the notifications right away to the long polling requests of a client which has not
+   * been notified yet, which takes precedence over the long polling mocked before
+   */
+  public void mockInitialLongPollNotifications(List<ApolloConfigNotification> result) {
+    RequestDefinition requestDefinition = HttpRequest.request("GET").withPath("/notifications/v2?.*")
+        .withQueryStringParameter("notifications", ".*\"notificationId\":-1[,}].*");
+    server.when(requestDefinition, Times.unlimited(), TimeToLive.unlimited(), 1)
+        .respond(HttpResponse.response()
+            .withStatusCode(HttpServletResponse.SC_OK)
+            .withContentType(MediaType.JSON_UTF_8)
+            .withBody(gson.toJson(result))
+        );
+  }
+
+  /**
+   * respond the notifications right away to the next long polling request only, which takes
+   * precedence over the long polling mocked before
+   */
+  public void mockNextLongPollNotifications(List<ApolloConfigNotification> result) {
+    RequestDefinition requestDefinition = HttpRequest.request("GET").withPath("/notifications/v2?.*");
+    server.when(requestDefinition, Times.exactly(1), TimeToLive.unlimited(), 1)
+        .respond(HttpResponse.response()
+            .withStatusCode(HttpServletResponse.SC_OK)
+            .withContentType(MediaType.JSON_UTF_8)
+            .withBody(gson.toJson(result))
+        );
+  }
+
+  /**
+   * @param namespacePrefix only count the requests of the namespaces starting with it, as the
+   * repositories left by the other tests may still refresh their configs from a reused port
+   * @return the number of config requests received
+   */
+  public int getConfigRequestCount(String namespacePrefix) {
+    String path = String.format("/configs/.*/%s.*", Pattern.quote(namespacePrefix));
+    return server.retrieveRecordedRequests(HttpRequest.request("GET").withPath(path)).length;
+  }
+
+  /**
+   * @return the number of config requests carrying the release key
+   */
+  public int getConfigRequestCount(String namespacePrefix, String releaseKey) {
+    String path = String.format("/configs/.*/%s.*", Pattern.quote(namespacePrefix));
+    return server.retrieveRecordedRequests(HttpRequest.request("GET").withPath(path)
+        .withQueryStringParameter("releaseKey", releaseKey)).length;
+  }
+
   @Override
   public void close() {
     if (this.server.isRunning()) {
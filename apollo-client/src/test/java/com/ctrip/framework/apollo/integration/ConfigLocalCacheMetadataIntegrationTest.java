@@ -0,0 +1,204 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ctrip.framework.apollo.BaseIntegrationTest;
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.MockedConfigService;
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.internals.RemoteConfigLongPollService;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Restarts the client with the local cache files of a previous run and unchanged configs.
+ */
+class ConfigLocalCacheMetadataIntegrationTest extends BaseIntegrationTest {
+
+  private static final int NAMESPACE_COUNT = 10;
+  private static final String NAMESPACE_PREFIX = "someNamespace";
+  private static final String someReleaseKey = "someReleaseKey";
+  private static final long someNotificationId = 100;
+  private static final String someKey = "someKey";
+  private static final String someValue = "someValue";
+
+  @Test
+  void restartWithUnchangedConfigDownloadsNothing() throws Exception {
+    LocalCacheMetadataConfigUtil configUtil = new LocalCacheMetadataConfigUtil();
+    MockInjector.setInstance(ConfigUtil.class, configUtil);
+    MockedConfigService mockedConfigService = newMockedConfigService();
+
+    ApolloConfig apolloConfig = assembleApolloConfig(defaultNamespace, someReleaseKey,
+        ImmutableMap.of(someKey, someValue));
+    mockedConfigService.mockConfigs(HttpServletResponse.SC_OK, apolloConfig);
+    mockedConfigService.mockConfigsNotModified(someReleaseKey);
+    mockedConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+    List<ApolloConfigNotification> notifications = Lists.newArrayList();
+    for (int i = 0; i < NAMESPACE_COUNT; i++) {
+      notifications.add(new ApolloConfigNotification(NAMESPACE_PREFIX + i, someNotificationId));
+    }
+    mockedConfigService.mockInitialLongPollNotifications(notifications);
+
+    //the first run downloads the configs and persists them with the release key and notification id
+    loadConfigs();
+    for (int i = 0; i < NAMESPACE_COUNT; i++) {
+      awaitLocalCacheMetadata(NAMESPACE_PREFIX + i);
+    }
+
+    restart(configUtil);
+    int configRequestsBeforeRestart = mockedConfigService.getConfigRequestCount(NAMESPACE_PREFIX);
+    int notModifiedRequestsBeforeRestart =
+        mockedConfigService.getConfigRequestCount(NAMESPACE_PREFIX, someReleaseKey);
+
+    List<Config> configs = loadConfigs();
+    //give the long polling the chance to trigger the syncs, if it did not resume
+    TimeUnit.MILLISECONDS.sleep(1000);
+
+    int configRequests =
+        mockedConfigService.getConfigRequestCount(NAMESPACE_PREFIX) - configRequestsBeforeRestart;
+    int notModifiedRequests =
+        mockedConfigService.getConfigRequestCount(NAMESPACE_PREFIX, someReleaseKey)
+            - notModifiedRequestsBeforeRestart;
+    assertEquals(NAMESPACE_COUNT, configRequests);
+    assertEquals(configRequests, notModifiedRequests, "full downloads after restart");
+    for (Config config : configs) {
+      assertEquals(someValue, config.getProperty(someKey, null));
+      assertEquals(ConfigSourceType.REMOTE, config.getSourceType());
+    }
+  }
+
+  @Test
+  void restartWithLocalCacheFileNotMatchingMetadataDownloadsAll() throws Exception {
+    LocalCacheMetadataConfigUtil configUtil = new LocalCacheMetadataConfigUtil();
+    MockInjector.setInstance(ConfigUtil.class, configUtil);
+    MockedConfigService mockedConfigService = newMockedConfigService();
+
+    ApolloConfig apolloConfig = assembleApolloConfig(defaultNamespace, someReleaseKey,
+        ImmutableMap.of(someKey, someValue));
+    mockedConfigService.mockConfigs(HttpServletResponse.SC_OK, apolloConfig);
+    mockedConfigService.mockConfigsNotModified(someReleaseKey);
+    mockedConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+    List<ApolloConfigNotification> notifications = Lists.newArrayList();
+    for (int i = 0; i < NAMESPACE_COUNT; i++) {
+      notifications.add(new ApolloConfigNotification(NAMESPACE_PREFIX + i, someNotificationId));
+    }
+    mockedConfigService.mockInitialLongPollNotifications(notifications);
+
+    loadConfigs();
+    for (int i = 0; i < NAMESPACE_COUNT; i++) {
+      awaitLocalCacheMetadata(NAMESPACE_PREFIX + i);
+    }
+
+    restart(configUtil);
+    //the same size and hash code as the persisted configs, but another value
+    String anotherValue = "someValvF";
+    assertEquals(someValue.hashCode(), anotherValue.hashCode());
+    Properties anotherProperties = new Properties();
+    anotherProperties.setProperty(someKey, anotherValue);
+    for (int i = 0; i < NAMESPACE_COUNT; i++) {
+      createLocalCachePropertyFile(NAMESPACE_PREFIX + i, anotherProperties);
+    }
+    int notModifiedRequestsBeforeRestart =
+        mockedConfigService.getConfigRequestCount(NAMESPACE_PREFIX, someReleaseKey);
+
+    loadConfigs();
+
+    int notModifiedRequests =
+        mockedConfigService.getConfigRequestCount(NAMESPACE_PREFIX, someReleaseKey)
+            - notModifiedRequestsBeforeRestart;
+    assertEquals(0, notModifiedRequests, "restored from mismatched local cache files");
+  }
+
+  private List<Config> loadConfigs() {
+    List<Config> configs = Lists.newArrayList();
+    for (int i = 0; i < NAMESPACE_COUNT; i++) {
+      Config config = ConfigService.getConfig(NAMESPACE_PREFIX + i);
+      assertEquals(someValue, config.getProperty(someKey, null));
+      configs.add(config);
+    }
+    return configs;
+  }
+
+  private void awaitLocalCacheMetadata(String namespace) throws Exception {
+    ConfigUtil configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    File metadataFile = new File(configUtil.getDefaultLocalCacheDir(someAppId) + "/config-cache",
+        Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).join(someAppId, someClusterName,
+            namespace) + ".meta");
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (System.currentTimeMillis() < deadline) {
+      Properties metadata = loadProperties(metadataFile);
+      if (String.valueOf(someNotificationId).equals(metadata.getProperty("notificationId"))) {
+        assertEquals(someReleaseKey, metadata.getProperty("releaseKey"));
+        return;
+      }
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+    assertTrue(false, "notification id is not persisted in " + metadataFile.getAbsolutePath());
+  }
+
+  private Properties loadProperties(File file) throws IOException {
+    Properties properties = new Properties();
+    if (file.isFile()) {
+      try (InputStream in = new FileInputStream(file)) {
+        properties.load(in);
+      }
+    }
+    return properties;
+  }
+
+  /**
+   * Start over with new singletons, the local cache files are kept.
+   */
+  private void restart(ConfigUtil configUtil) {
+    RemoteConfigLongPollService remoteConfigLongPollService =
+        ApolloInjector.getInstance(RemoteConfigLongPollService.class);
+    ReflectionTestUtils.invokeMethod(remoteConfigLongPollService, "stopLongPollingRefresh");
+    ReflectionTestUtils.invokeMethod(ConfigService.class, "reset");
+    MockInjector.reset();
+    MockInjector.setInstance(ConfigUtil.class, configUtil);
+  }
+
+  private static class LocalCacheMetadataConfigUtil extends MockConfigUtil {
+
+    @Override
+    public long getLongPollingInitialDelayInMills() {
+      //the namespaces are restored before the long polling starts, as with the default value
+      return 500;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ctrip.framework.apollo.BaseIntegrationTest;
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.MockedConfigService;
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.ImmutableMap;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConfigServiceHedgingIntegrationTest extends BaseIntegrationTest {
+
+  private MockedConfigService anotherConfigService;
+
+  @AfterEach
+  void closeAnotherConfigService() {
+    if (anotherConfigService != null) {
+      anotherConfigService.close();
+    }
+  }
+
+  @Test
+  void hedgeToAnotherConfigServiceWhenOneStalls() {
+    MockInjector.setInstance(ConfigUtil.class, new HedgeEnabledConfigUtil());
+
+    MockedConfigService stalledConfigService = newMockedConfigService();
+    anotherConfigService = new MockedConfigService(findFreePort());
+    anotherConfigService.init();
+    stalledConfigService.mockMetaServer(assembleServiceDTO(stalledConfigService),
+        assembleServiceDTO(anotherConfigService));
+
+    String someKey = "someKey";
+    String someValue = "someValue";
+    ApolloConfig apolloConfig = assembleApolloConfig(defaultNamespace, "someReleaseKey",
+        ImmutableMap.of(someKey, someValue));
+
+    // stall longer than the read timeout on one of the ports
+    stalledConfigService.mockConfigsWithDelay(10_000, HttpServletResponse.SC_OK, apolloConfig);
+    anotherConfigService.mockConfigs(HttpServletResponse.SC_OK, apolloConfig);
+    stalledConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+    anotherConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+
+    // config services are shuffled on each load, so load several namespaces to cover both orders
+    for (int i = 0; i < 5; i++) {
+      long start = System.currentTimeMillis();
+      Config config = ConfigService.getConfig("someNamespace" + i);
+      long elapsed = System.currentTimeMillis() - start;
+
+      assertEquals(someValue, config.getProperty(someKey, null));
+      assertTrue(elapsed < 3000, "load config took " + elapsed + " ms");
+    }
+  }
+
+  private ServiceDTO assembleServiceDTO(MockedConfigService mockedConfigService) {
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setAppName("someAppName");
+    serviceDTO.setInstanceId(mockedConfigService.getUrl());
+    serviceDTO.setHomepageUrl(mockedConfigService.getUrl());
+    return serviceDTO;
+  }
+
+  private static class HedgeEnabledConfigUtil extends MockConfigUtil {
+
+    @Override
+    public boolean isConfigServiceHedgeEnabled() {
+      return true;
+    }
+
+    @Override
+    public long getConfigServiceHedgeInitialDelayInMillis() {
+      return 200;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ctrip.framework.apollo.BaseIntegrationTest;
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.MockedConfigService;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.google.common.collect.ImmutableMap;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConfigServiceLoadBalanceIntegrationTest extends BaseIntegrationTest {
+
+  private MockedConfigService fastConfigService;
+
+  @AfterEach
+  void closeFastConfigService() {
+    if (fastConfigService != null) {
+      fastConfigService.close();
+    }
+  }
+
+  @Test
+  void preferTheFasterConfigService() {
+    MockedConfigService slowConfigService = newMockedConfigService();
+    fastConfigService = new MockedConfigService(findFreePort());
+    fastConfigService.init();
+    slowConfigService.mockMetaServer(assembleServiceDTO(slowConfigService),
+        assembleServiceDTO(fastConfigService));
+
+    String someKey = "someKey";
+    String someValue = "someValue";
+    ApolloConfig apolloConfig = assembleApolloConfig(defaultNamespace, "someReleaseKey",
+        ImmutableMap.of(someKey, someValue));
+
+    slowConfigService.mockConfigsWithDelay(300, HttpServletResponse.SC_OK, apolloConfig);
+    fastConfigService.mockConfigs(HttpServletResponse.SC_OK, apolloConfig);
+    slowConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+    fastConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+
+    String someNamespacePrefix = "loadBalanceNamespace";
+    int namespaceCount = 20;
+    for (int i = 0; i < namespaceCount; i++) {
+      Config config = ConfigService.getConfig(someNamespacePrefix + i);
+      assertEquals(someValue, config.getProperty(someKey, null));
+    }
+
+    int slowRequestCount = slowConfigService.getConfigRequestCount(someNamespacePrefix);
+    int fastRequestCount = fastConfigService.getConfigRequestCount(someNamespacePrefix);
+    log.info("slow config service requests: {}, fast config service requests: {}",
+        slowRequestCount, fastRequestCount);
+    assertEquals(namespaceCount, slowRequestCount + fastRequestCount);
+    assertTrue(fastRequestCount > 3 * slowRequestCount,
+        "slow: " + slowRequestCount + ", fast: " + fastRequestCount);
+  }
+
+  private ServiceDTO assembleServiceDTO(MockedConfigService mockedConfigService) {
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setAppName("someAppName");
+    serviceDTO.setInstanceId(mockedConfigService.getUrl());
+    serviceDTO.setHomepageUrl(mockedConfigService.getUrl());
+    return serviceDTO;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ctrip.framework.apollo.BaseIntegrationTest;
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.MockedConfigService;
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.internals.ConfigServiceLocator;
+import com.ctrip.framework.apollo.spi.ConfigServiceLoadBalancerClient;
+import com.ctrip.framework.apollo.spi.RandomConfigServiceLoadBalancerClient;
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConfigServiceOutlierEjectionIntegrationTest extends BaseIntegrationTest {
+
+  private MockedConfigService healthyConfigService;
+
+  @AfterEach
+  void closeHealthyConfigService() {
+    if (healthyConfigService != null) {
+      healthyConfigService.close();
+    }
+  }
+
+  @Test
+  void ejectTheConfigServiceRespondingServerErrors() {
+    // random load balancer, so that the failing config service is not avoided by latency
+    MockInjector.setInstance(ConfigServiceLoadBalancerClient.class,
+        new RandomConfigServiceLoadBalancerClient());
+
+    MockedConfigService failingConfigService = newMockedConfigService();
+    healthyConfigService = new MockedConfigService(findFreePort());
+    healthyConfigService.init();
+    failingConfigService.mockMetaServer(assembleServiceDTO(failingConfigService),
+        assembleServiceDTO(healthyConfigService));
+
+    String someKey = "someKey";
+    String someValue = "someValue";
+    ApolloConfig apolloConfig = assembleApolloConfig(defaultNamespace, "someReleaseKey",
+        ImmutableMap.of(someKey, someValue));
+
+    failingConfigService.mockConfigs(HttpServletResponse.SC_SERVICE_UNAVAILABLE, apolloConfig);
+    healthyConfigService.mockConfigs(HttpServletResponse.SC_OK, apolloConfig);
+    failingConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+        null);
+    healthyConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+
+    String someNamespacePrefix = "outlierEjectionNamespace";
+    for (int i = 0; i < 30; i++) {
+      Config config = ConfigService.getConfig(someNamespacePrefix + i);
+      assertEquals(someValue, config.getProperty(someKey, null));
+    }
+
+    int failedRequestCount = failingConfigService.getConfigRequestCount(someNamespacePrefix);
+    log.info("failing config service received {} config requests", failedRequestCount);
+    assertTrue(failedRequestCount <= 3, "failing config service received "
+        + failedRequestCount + " config requests");
+    assertEquals(30, healthyConfigService.getConfigRequestCount(someNamespacePrefix));
+
+    List<ServiceDTO> configServices =
+        ApolloInjector.getInstance(ConfigServiceLocator.class).getConfigServices();
+    assertEquals(1, configServices.size());
+    assertEquals(healthyConfigService.getUrl(), configServices.get(0).getHomepageUrl());
+  }
+
+  private ServiceDTO assembleServiceDTO(MockedConfigService mockedConfigService) {
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setAppName("someAppName");
+    serviceDTO.setInstanceId(mockedConfigService.getUrl());
+    serviceDTO.setHomepageUrl(mockedConfigService.getUrl());
+    return serviceDTO;
+  }
+}
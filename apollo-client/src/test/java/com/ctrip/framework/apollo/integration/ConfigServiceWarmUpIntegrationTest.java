@@ -0,0 +1,215 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ctrip.framework.apollo.BaseIntegrationTest;
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.MockedConfigService;
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.internals.ConfigServiceLocator;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.ImmutableMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures the time to the first config when every new connection to the config service takes
+ * {@link #CONNECT_LATENCY_IN_MILLIS}, e.g. a remote config service behind a TLS handshake.
+ */
+class ConfigServiceWarmUpIntegrationTest extends BaseIntegrationTest {
+
+  private static final long CONNECT_LATENCY_IN_MILLIS = 1000;
+  private static final String someKey = "someKey";
+  private static final String someValue = "someValue";
+
+  private SlowConnectProxy proxy;
+
+  @AfterEach
+  void closeProxy() throws IOException {
+    if (proxy != null) {
+      proxy.close();
+    }
+  }
+
+  @Test
+  void firstConfigLoadReusesWarmedUpConnection() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new WarmUpConfigUtil(true));
+    prepareConfigServiceBehindProxy();
+
+    ApolloInjector.getInstance(ConfigServiceLocator.class);
+    waitForWarmUp();
+
+    long elapsed = timeToFirstConfig();
+    log.info("time to first config with warm up: {} ms", elapsed);
+    assertTrue(elapsed < CONNECT_LATENCY_IN_MILLIS, "time to first config: " + elapsed + " ms");
+  }
+
+  @Test
+  void firstConfigLoadPaysForConnectWithoutWarmUp() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new WarmUpConfigUtil(false));
+    prepareConfigServiceBehindProxy();
+
+    ApolloInjector.getInstance(ConfigServiceLocator.class);
+    waitForWarmUp();
+
+    long elapsed = timeToFirstConfig();
+    log.info("time to first config without warm up: {} ms", elapsed);
+    assertTrue(elapsed >= CONNECT_LATENCY_IN_MILLIS, "time to first config: " + elapsed + " ms");
+  }
+
+  private void prepareConfigServiceBehindProxy() throws IOException {
+    MockedConfigService mockedConfigService = newMockedConfigService();
+    proxy = new SlowConnectProxy(findFreePort(), mockedConfigService.getUrl(),
+        CONNECT_LATENCY_IN_MILLIS);
+
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setAppName("someAppName");
+    serviceDTO.setInstanceId(proxy.getUrl());
+    serviceDTO.setHomepageUrl(proxy.getUrl());
+    mockedConfigService.mockMetaServer(serviceDTO);
+
+    ApolloConfig apolloConfig = assembleApolloConfig(defaultNamespace, "someReleaseKey",
+        ImmutableMap.of(someKey, someValue));
+    mockedConfigService.mockConfigs(HttpServletResponse.SC_OK, apolloConfig);
+    mockedConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+  }
+
+  private void waitForWarmUp() throws InterruptedException {
+    // the application usually does something else before the first config load
+    TimeUnit.MILLISECONDS.sleep(CONNECT_LATENCY_IN_MILLIS + 500);
+  }
+
+  private long timeToFirstConfig() {
+    long start = System.currentTimeMillis();
+    Config config = ConfigService.getAppConfig();
+    long elapsed = System.currentTimeMillis() - start;
+
+    assertEquals(someValue, config.getProperty(someKey, null));
+    return elapsed;
+  }
+
+  private static class WarmUpConfigUtil extends MockConfigUtil {
+
+    private final boolean warmUpEnabled;
+
+    WarmUpConfigUtil(boolean warmUpEnabled) {
+      this.warmUpEnabled = warmUpEnabled;
+    }
+
+    @Override
+    public boolean isConfigServiceWarmUpEnabled() {
+      return warmUpEnabled;
+    }
+
+    @Override
+    public long getLongPollingInitialDelayInMills() {
+      // the default value, otherwise the long polling may take the idle connection first
+      return 2000;
+    }
+  }
+
+  /**
+   * Forwards the connections to the target after a delay, which simulates the connect latency.
+   */
+  private static class SlowConnectProxy implements Closeable {
+
+    private final ServerSocket serverSocket;
+
+    SlowConnectProxy(int port, String targetUrl, long connectLatencyInMillis) throws IOException {
+      String[] hostAndPort = targetUrl.substring("http://".length()).split(":");
+      String targetHost = hostAndPort[0];
+      int targetPort = Integer.parseInt(hostAndPort[1]);
+      serverSocket = new ServerSocket(port);
+
+      Thread acceptThread = new Thread(() -> {
+        while (!serverSocket.isClosed()) {
+          try {
+            Socket client = serverSocket.accept();
+            startDaemon(() -> {
+              try {
+                TimeUnit.MILLISECONDS.sleep(connectLatencyInMillis);
+                Socket target = new Socket(targetHost, targetPort);
+                startDaemon(() -> pipe(client, target));
+                pipe(target, client);
+              } catch (Exception ex) {
+                closeQuietly(client);
+              }
+            });
+          } catch (IOException ex) {
+            // closed
+          }
+        }
+      });
+      acceptThread.setDaemon(true);
+      acceptThread.start();
+    }
+
+    String getUrl() {
+      return "http://localhost:" + serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+
+    private static void pipe(Socket from, Socket to) {
+      try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+          out.flush();
+        }
+      } catch (IOException ex) {
+        // connection closed
+      } finally {
+        closeQuietly(from);
+        closeQuietly(to);
+      }
+    }
+
+    private static void startDaemon(Runnable runnable) {
+      Thread thread = new Thread(runnable);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    private static void closeQuietly(Socket socket) {
+      try {
+        socket.close();
+      } catch (IOException ex) {
+        // ignore
+      }
+    }
+  }
+}
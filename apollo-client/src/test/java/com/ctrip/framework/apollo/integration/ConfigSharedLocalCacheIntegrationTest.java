@@ -0,0 +1,177 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.ctrip.framework.apollo.BaseIntegrationTest;
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.MockedConfigService;
+import com.ctrip.framework.apollo.core.ApolloClientSystemConsts;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the app in several JVMs sharing the local cache dir, only one of which is supposed to load
+ * the configs from the config service.
+ */
+class ConfigSharedLocalCacheIntegrationTest extends BaseIntegrationTest {
+
+  private static final String VALUE_PREFIX = "SharedLocalCacheProcess value: ";
+  private static final String someKey = "someKey";
+  private static final String someValue = "someValue";
+  private static final String anotherValue = "anotherValue";
+  private static final String yetAnotherValue = "yetAnotherValue";
+
+  private final List<SharedLocalCacheProcess> processes = Lists.newArrayList();
+  private Path cacheRoot;
+
+  @AfterEach
+  void destroyProcesses() throws Exception {
+    for (SharedLocalCacheProcess process : processes) {
+      process.destroy();
+    }
+    if (cacheRoot != null) {
+      try (Stream<Path> paths = Files.walk(cacheRoot)) {
+        paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+      }
+    }
+  }
+
+  @Test
+  void loadConfigsOncePerHostAndHandOverOnExit() throws Exception {
+    MockedConfigService mockedConfigService = newMockedConfigService();
+    mockedConfigService.mockConfigs(HttpServletResponse.SC_OK,
+        assembleApolloConfig(defaultNamespace, "someReleaseKey", ImmutableMap.of(someKey, someValue)));
+    mockedConfigService.mockLongPollNotifications(1000, HttpServletResponse.SC_NOT_MODIFIED, null);
+    cacheRoot = Files.createTempDirectory("shared-local-cache");
+
+    SharedLocalCacheProcess leader = start();
+    assertEquals(someValue, leader.awaitValue());
+    SharedLocalCacheProcess someFollower = start();
+    SharedLocalCacheProcess anotherFollower = start();
+    assertEquals(someValue, someFollower.awaitValue());
+    assertEquals(someValue, anotherFollower.awaitValue());
+    assertEquals(1, mockedConfigService.getConfigRequestCount(defaultNamespace));
+
+    //a new release is loaded by the leader and followed by the others through the local cache dir
+    mockedConfigService.mockConfigs(HttpServletResponse.SC_OK,
+        assembleApolloConfig(defaultNamespace, "anotherReleaseKey", ImmutableMap.of(someKey, anotherValue)));
+    mockedConfigService.mockNextLongPollNotifications(
+        Lists.newArrayList(new ApolloConfigNotification(defaultNamespace, 2)));
+    assertEquals(anotherValue, leader.awaitValue());
+    assertEquals(anotherValue, someFollower.awaitValue());
+    assertEquals(anotherValue, anotherFollower.awaitValue());
+    //the requests recorded before are cleared along with the configs mocked before
+    assertEquals(1, mockedConfigService.getConfigRequestCount(defaultNamespace));
+
+    //one of the followers takes over once the leader exits
+    leader.destroy();
+    mockedConfigService.mockConfigs(HttpServletResponse.SC_OK,
+        assembleApolloConfig(defaultNamespace, "yetAnotherReleaseKey", ImmutableMap.of(someKey, yetAnotherValue)));
+    mockedConfigService.mockNextLongPollNotifications(
+        Lists.newArrayList(new ApolloConfigNotification(defaultNamespace, 3)));
+    assertEquals(yetAnotherValue, someFollower.awaitValue());
+    assertEquals(yetAnotherValue, anotherFollower.awaitValue());
+  }
+
+  private SharedLocalCacheProcess start() throws IOException {
+    SharedLocalCacheProcess process = new SharedLocalCacheProcess(new ProcessBuilder(
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+        "-cp", System.getProperty("java.class.path"),
+        "-D" + ConfigConsts.APOLLO_META_KEY + "=" + System.getProperty(ConfigConsts.APOLLO_META_KEY),
+        "-D" + ApolloClientSystemConsts.APP_ID + "=" + someAppId,
+        "-D" + ApolloClientSystemConsts.APOLLO_CACHE_DIR + "=" + cacheRoot,
+        "-D" + ApolloClientSystemConsts.APOLLO_CACHE_FILE_SHARED_ENABLE + "=true",
+        SharedLocalCacheProcess.class.getName())
+        .redirectErrorStream(true)
+        .start());
+    processes.add(process);
+    return process;
+  }
+
+  /**
+   * Prints the value of {@link #someKey} on startup and on each change, until the stdin is closed.
+   */
+  public static class SharedLocalCacheProcess {
+
+    private final Process process;
+    private final BlockingQueue<String> values = new LinkedBlockingQueue<>();
+
+    SharedLocalCacheProcess(Process process) {
+      this.process = process;
+      Thread reader = new Thread(() -> {
+        try (BufferedReader in = new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+          String line;
+          while ((line = in.readLine()) != null) {
+            if (line.startsWith(VALUE_PREFIX)) {
+              values.add(line.substring(VALUE_PREFIX.length()));
+            }
+          }
+        } catch (IOException ex) {
+          //the process is destroyed
+        }
+      });
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    String awaitValue() throws InterruptedException {
+      return values.poll(15, TimeUnit.SECONDS);
+    }
+
+    void destroy() throws InterruptedException {
+      process.destroy();
+      process.waitFor(10, TimeUnit.SECONDS);
+    }
+
+    public static void main(String[] args) throws Exception {
+      Config config = ConfigService.getAppConfig();
+      config.addChangeListener(changeEvent -> print(config));
+      print(config);
+      while (System.in.read() >= 0) {
+        //wait for the stdin to be closed
+      }
+      System.exit(0);
+    }
+
+    private static void print(Config config) {
+      System.out.println(VALUE_PREFIX + config.getProperty(someKey, null));
+      System.out.flush();
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ctrip.framework.apollo.BaseIntegrationTest;
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.MockedConfigService;
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.model.ConfigChangeEvent;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.File;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures the cold start with the local cache files and a config service adding
+ * {@link #CONFIG_SERVICE_LATENCY_IN_MILLIS} of latency.
+ */
+class ConfigStaleWhileRevalidateIntegrationTest extends BaseIntegrationTest {
+
+  private static final long CONFIG_SERVICE_LATENCY_IN_MILLIS = 500;
+  private static final String someKey = "someKey";
+  private static final String staleValue = "staleValue";
+  private static final String freshValue = "freshValue";
+
+  @Test
+  void serveLocalCacheFilesAndRevalidateInBackground() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new StaleWhileRevalidateConfigUtil());
+    MockedConfigService mockedConfigService = newMockedConfigService();
+
+    int namespaceCount = 100;
+    Properties staleProperties = new Properties();
+    staleProperties.setProperty(someKey, staleValue);
+    for (int i = 0; i < namespaceCount; i++) {
+      createLocalCachePropertyFile("someNamespace" + i, staleProperties);
+    }
+    ApolloConfig apolloConfig = assembleApolloConfig(defaultNamespace, "someReleaseKey",
+        ImmutableMap.of(someKey, freshValue));
+    mockedConfigService.mockConfigsWithDelay(CONFIG_SERVICE_LATENCY_IN_MILLIS,
+        HttpServletResponse.SC_OK, apolloConfig);
+    mockedConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+
+    long start = System.currentTimeMillis();
+    Config firstConfig = ConfigService.getConfig("someNamespace0");
+    SettableFuture<ConfigChangeEvent> changeEvent = SettableFuture.create();
+    firstConfig.addChangeListener(changeEvent::set);
+    assertEquals(staleValue, firstConfig.getProperty(someKey, null));
+    assertEquals(ConfigSourceType.LOCAL, firstConfig.getSourceType());
+
+    List<Config> configs = Lists.newArrayList(firstConfig);
+    for (int i = 1; i < namespaceCount; i++) {
+      configs.add(ConfigService.getConfig("someNamespace" + i));
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    log.info("cold start of {} namespaces took {} ms", namespaceCount, elapsed);
+    assertTrue(elapsed < 3000, "cold start took " + elapsed + " ms");
+
+    ConfigChangeEvent event = changeEvent.get(5, TimeUnit.SECONDS);
+    assertEquals(staleValue, event.getChange(someKey).getOldValue());
+    assertEquals(freshValue, event.getChange(someKey).getNewValue());
+
+    long deadline = System.currentTimeMillis() + 10_000;
+    for (Config config : configs) {
+      while (!freshValue.equals(config.getProperty(someKey, null))
+          && System.currentTimeMillis() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(50);
+      }
+      assertEquals(freshValue, config.getProperty(someKey, null));
+    }
+    log.info("all the {} namespaces were revalidated {} ms after the start", namespaceCount,
+        System.currentTimeMillis() - start);
+  }
+
+  @Test
+  void loadFromRemoteWhenLocalCacheFileIsTooOld() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new StaleWhileRevalidateConfigUtil());
+    MockedConfigService mockedConfigService = newMockedConfigService();
+
+    Properties staleProperties = new Properties();
+    staleProperties.setProperty(someKey, staleValue);
+    File localCacheFile = createLocalCachePropertyFile(defaultNamespace, staleProperties);
+    assertTrue(localCacheFile.setLastModified(System.currentTimeMillis()
+        - TimeUnit.SECONDS.toMillis(StaleWhileRevalidateConfigUtil.MAX_AGE_IN_SECONDS * 2)));
+
+    ApolloConfig apolloConfig = assembleApolloConfig(defaultNamespace, "someReleaseKey",
+        ImmutableMap.of(someKey, freshValue));
+    mockedConfigService.mockConfigs(HttpServletResponse.SC_OK, apolloConfig);
+    mockedConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+
+    Config config = ConfigService.getAppConfig();
+
+    assertEquals(freshValue, config.getProperty(someKey, null));
+    assertEquals(ConfigSourceType.REMOTE, config.getSourceType());
+  }
+
+  private static class StaleWhileRevalidateConfigUtil extends MockConfigUtil {
+
+    private static final long MAX_AGE_IN_SECONDS = 60;
+
+    @Override
+    public boolean isStaleWhileRevalidateEnabled() {
+      return true;
+    }
+
+    @Override
+    public long getStaleWhileRevalidateMaxAgeInSeconds() {
+      return MAX_AGE_IN_SECONDS;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ctrip.framework.apollo.BaseIntegrationTest;
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.MockedConfigService;
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Loads many namespaces at startup while the config service never responds, and the namespaces
+ * requested after the startup deadline.
+ */
+class ConfigStartupDeadlineIntegrationTest extends BaseIntegrationTest {
+
+  private static final long STARTUP_DEADLINE_IN_MILLIS = 1000;
+  private static final String someKey = "someKey";
+  private static final String localValue = "localValue";
+  private static final String remoteValue = "remoteValue";
+  private static final String defaultValue = "defaultValue";
+
+  @Test
+  void fallBackOnceStartupDeadlineIsExceededAndKeepLoadingInBackground() throws Exception {
+    MockedConfigService mockedConfigService = newMockedConfigService();
+    ApolloConfig apolloConfig = assembleApolloConfig(defaultNamespace, "someReleaseKey",
+        ImmutableMap.of(someKey, remoteValue));
+    mockedConfigService.mockConfigsWithDelay(TimeUnit.HOURS.toMillis(1),
+        HttpServletResponse.SC_OK, apolloConfig);
+    mockedConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+
+    int namespaceCount = 10;
+    Properties localProperties = new Properties();
+    localProperties.setProperty(someKey, localValue);
+    for (int i = 0; i < namespaceCount; i += 2) {
+      createLocalCachePropertyFile("someNamespace" + i, localProperties);
+    }
+
+    // the startup deadline is counted from here
+    MockInjector.setInstance(ConfigUtil.class, new StartupDeadlineConfigUtil());
+    // the namespaces are requested concurrently, so all their loads start before the deadline
+    ExecutorService executorService = Executors.newFixedThreadPool(namespaceCount);
+    long start = System.currentTimeMillis();
+    List<Future<Config>> futures = Lists.newArrayList();
+    for (int i = 0; i < namespaceCount; i++) {
+      final String namespace = "someNamespace" + i;
+      futures.add(executorService.submit(new Callable<Config>() {
+        @Override
+        public Config call() {
+          return ConfigService.getConfig(namespace);
+        }
+      }));
+    }
+    List<Config> configs = Lists.newArrayList();
+    for (Future<Config> future : futures) {
+      configs.add(future.get());
+    }
+    executorService.shutdown();
+    long elapsed = System.currentTimeMillis() - start;
+    log.info("startup of {} namespaces took {} ms", namespaceCount, elapsed);
+    // each namespace would take 2 x the read timeout without the deadline
+    assertTrue(elapsed < STARTUP_DEADLINE_IN_MILLIS + 1000, "startup took " + elapsed + " ms");
+
+    for (int i = 0; i < namespaceCount; i++) {
+      String expected = i % 2 == 0 ? localValue : defaultValue;
+      assertEquals(expected, configs.get(i).getProperty(someKey, defaultValue));
+    }
+
+    // the config service recovers
+    mockedConfigService.mockConfigs(HttpServletResponse.SC_OK, apolloConfig);
+
+    long deadline = System.currentTimeMillis() + 15_000;
+    for (Config config : configs) {
+      while (!remoteValue.equals(config.getProperty(someKey, defaultValue))
+          && System.currentTimeMillis() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(50);
+      }
+      assertEquals(remoteValue, config.getProperty(someKey, defaultValue));
+    }
+  }
+
+  @Test
+  void loadNamespaceCreatedAfterStartupDeadlineNormally() throws Exception {
+    ConfigUtil configUtil = new StartupDeadlineConfigUtil();
+    MockInjector.setInstance(ConfigUtil.class, configUtil);
+    MockedConfigService mockedConfigService = newMockedConfigService();
+    ApolloConfig apolloConfig = assembleApolloConfig(defaultNamespace, "someReleaseKey",
+        ImmutableMap.of(someKey, remoteValue));
+    mockedConfigService.mockConfigs(HttpServletResponse.SC_OK, apolloConfig);
+    mockedConfigService.mockLongPollNotifications(50, HttpServletResponse.SC_NOT_MODIFIED, null);
+
+    while (configUtil.getStartupDeadlineRemainingInMillis() > 0) {
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+
+    Config config = ConfigService.getConfig("someNamespaceAfterDeadline");
+
+    assertEquals(remoteValue, config.getProperty(someKey, defaultValue));
+  }
+
+  private static class StartupDeadlineConfigUtil extends MockConfigUtil {
+
+    @Override
+    public long getStartupDeadlineInMillis() {
+      return STARTUP_DEADLINE_IN_MILLIS;
+    }
+
+    @Override
+    public int getReadTimeout() {
+      return 2000;
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.collect.Sets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AbstractConfigFileTest {
+
+  private String someAppId;
+  private String someNamespace;
+  @Mock
+  private ConfigRepository configRepository;
+  private List<String> deserializedContents;
+  private Function<String, SomeObject> someDeserializer;
+
+  @Before
+  public void setUp() throws Exception {
+    someAppId = "someAppId";
+    someNamespace = "someName";
+    deserializedContents = new CopyOnWriteArrayList<>();
+    someDeserializer = new Function<String, SomeObject>() {
+      @Override
+      public SomeObject apply(String content) {
+        deserializedContents.add(content);
+        return new SomeObject(content);
+      }
+    };
+  }
+
+  @Test
+  public void testAsObjectMemoized() throws Exception {
+    TxtConfigFile configFile = createConfigFile("someContent");
+
+    SomeObject someObject = configFile.asObject(SomeObject.class, someDeserializer);
+
+    assertEquals("someContent", someObject.content);
+    for (int i = 0; i < 10; i++) {
+      assertSame(someObject, configFile.asObject(SomeObject.class, someDeserializer));
+    }
+    assertEquals(1, deserializedContents.size());
+  }
+
+  @Test
+  public void testAsObjectRebuiltOnChange() throws Exception {
+    TxtConfigFile configFile = createConfigFile("someContent");
+    SomeObject someObject = configFile.asObject(SomeObject.class, someDeserializer);
+
+    // not changed
+    configFile.onRepositoryChange(someAppId, someNamespace, contentProperties("someContent"));
+    assertSame(someObject, configFile.asObject(SomeObject.class, someDeserializer));
+
+    configFile.onRepositoryChange(someAppId, someNamespace, contentProperties("anotherContent"));
+    SomeObject anotherObject = configFile.asObject(SomeObject.class, someDeserializer);
+
+    assertEquals("anotherContent", anotherObject.content);
+    assertSame(anotherObject, configFile.asObject(SomeObject.class, someDeserializer));
+    assertEquals(2, deserializedContents.size());
+  }
+
+  @Test
+  public void testAsObjectWithoutContent() throws Exception {
+    when(configRepository.getConfig()).thenReturn(null);
+    TxtConfigFile configFile = new TxtConfigFile(someAppId, someNamespace, configRepository);
+
+    assertNull(configFile.asObject(SomeObject.class, someDeserializer));
+    assertTrue(deserializedContents.isEmpty());
+
+    configFile.onRepositoryChange(someAppId, someNamespace, contentProperties("someContent"));
+
+    assertEquals("someContent", configFile.asObject(SomeObject.class, someDeserializer).content);
+  }
+
+  @Test
+  public void testAsObjectConcurrently() throws Exception {
+    final TxtConfigFile configFile = createConfigFile("content-0");
+    int readers = 8;
+    final int changes = 50;
+    final CountDownLatch started = new CountDownLatch(readers);
+    final AtomicInteger changed = new AtomicInteger();
+    ExecutorService executorService = Executors.newFixedThreadPool(readers);
+    List<Future<?>> futures = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < readers; i++) {
+      futures.add(executorService.submit(new Runnable() {
+        @Override
+        public void run() {
+          started.countDown();
+          int lastVersion = -1;
+          while (lastVersion < changes) {
+            int versionBefore = changed.get();
+            SomeObject someObject = configFile.asObject(SomeObject.class, someDeserializer);
+            int version = Integer.parseInt(someObject.content.substring("content-".length()));
+            // never goes back to an older content than the one seen before
+            assertTrue(version >= versionBefore && version >= lastVersion);
+            lastVersion = version;
+          }
+        }
+      }));
+    }
+    started.await(5, TimeUnit.SECONDS);
+    for (int i = 1; i <= changes; i++) {
+      configFile.onRepositoryChange(someAppId, someNamespace, contentProperties("content-" + i));
+      changed.set(i);
+    }
+    for (Future<?> future : futures) {
+      future.get(5, TimeUnit.SECONDS);
+    }
+    executorService.shutdown();
+
+    // each content is deserialized at most once
+    assertTrue(deserializedContents.size() <= changes + 1);
+    assertEquals(deserializedContents.size(), Sets.newHashSet(deserializedContents).size());
+    assertEquals("content-" + changes, configFile.asObject(SomeObject.class, someDeserializer).content);
+  }
+
+  @Test
+  public void testAsObjectRebuiltInBackground() throws Exception {
+    final CountDownLatch rebuildAllowed = new CountDownLatch(1);
+    Function<String, SomeObject> slowDeserializer = new Function<String, SomeObject>() {
+      @Override
+      public SomeObject apply(String content) {
+        if (content.equals("anotherContent")) {
+          try {
+            rebuildAllowed.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return someDeserializer.apply(content);
+      }
+    };
+    TxtConfigFile configFile = createConfigFile("someContent");
+    // built on the first call
+    SomeObject someObject = configFile.asObject(SomeObject.class, slowDeserializer, true);
+    assertEquals("someContent", someObject.content);
+
+    configFile.onRepositoryChange(someAppId, someNamespace, contentProperties("anotherContent"));
+
+    // the previous one is kept until the new one is ready
+    assertSame(someObject, configFile.asObject(SomeObject.class, slowDeserializer, true));
+    rebuildAllowed.countDown();
+    assertEquals("anotherContent", awaitObject(configFile, slowDeserializer, "anotherContent").content);
+    assertEquals(2, deserializedContents.size());
+  }
+
+  @Test
+  public void testAsObjectKeptOnFailedRebuildInBackground() throws Exception {
+    Function<String, SomeObject> failingDeserializer = new Function<String, SomeObject>() {
+      @Override
+      public SomeObject apply(String content) {
+        if (content.equals("invalidContent")) {
+          deserializedContents.add(content);
+          throw new IllegalArgumentException("invalid content");
+        }
+        return someDeserializer.apply(content);
+      }
+    };
+    TxtConfigFile configFile = createConfigFile("someContent");
+    SomeObject someObject = configFile.asObject(SomeObject.class, failingDeserializer, true);
+
+    configFile.onRepositoryChange(someAppId, someNamespace, contentProperties("invalidContent"));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!deserializedContents.contains("invalidContent")) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("Not rebuilt in time");
+      }
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    for (int i = 0; i < 10; i++) {
+      assertSame(someObject, configFile.asObject(SomeObject.class, failingDeserializer, true));
+    }
+    TimeUnit.MILLISECONDS.sleep(100);
+    // not retried until the next change
+    assertEquals(deserializedContents.indexOf("invalidContent"), deserializedContents.lastIndexOf("invalidContent"));
+
+    configFile.onRepositoryChange(someAppId, someNamespace, contentProperties("anotherContent"));
+
+    assertEquals("anotherContent", awaitObject(configFile, failingDeserializer, "anotherContent").content);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAsObjectWithFailedDeserializer() throws Exception {
+    TxtConfigFile configFile = createConfigFile("someContent");
+
+    configFile.asObject(SomeObject.class, new Function<String, SomeObject>() {
+      @Override
+      public SomeObject apply(String content) {
+        throw new IllegalArgumentException("invalid content");
+      }
+    });
+  }
+
+  private SomeObject awaitObject(TxtConfigFile configFile, Function<String, SomeObject> deserializer,
+      String content) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    SomeObject someObject = configFile.asObject(SomeObject.class, deserializer, true);
+    while (!someObject.content.equals(content)) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("Not rebuilt in time");
+      }
+      TimeUnit.MILLISECONDS.sleep(10);
+      someObject = configFile.asObject(SomeObject.class, deserializer, true);
+    }
+    return someObject;
+  }
+
+  private TxtConfigFile createConfigFile(String content) {
+    when(configRepository.getConfig()).thenReturn(contentProperties(content));
+    return new TxtConfigFile(someAppId, someNamespace, configRepository);
+  }
+
+  private Properties contentProperties(String content) {
+    Properties properties = new Properties();
+    properties.setProperty(ConfigConsts.CONFIG_FILE_CONTENT_KEY, content);
+    return properties;
+  }
+
+  private static class SomeObject {
+    private final String content;
+
+    SomeObject(String content) {
+      this.content = content;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.ctrip.framework.apollo.util.OrderedProperties;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryCacheFileTest {
+  private File someBaseDir;
+  private File someFile;
+
+  @Before
+  public void setUp() throws Exception {
+    someBaseDir = Files.createTempDirectory("config-cache").toFile();
+    someFile = new File(someBaseDir, "someAppId+someCluster+someNamespace.bin");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    File[] files = someBaseDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    someBaseDir.delete();
+  }
+
+  @Test
+  public void testStoreAndLoad() throws Exception {
+    Properties properties = assembleProperties();
+
+    store(properties, someFile, false);
+
+    assertEquals(properties, BinaryCacheFile.load(someFile, new Properties()));
+  }
+
+  @Test
+  public void testStoreAndLoadCompressed() throws Exception {
+    Properties properties = assembleProperties();
+
+    store(properties, someFile, true);
+
+    assertEquals(properties, BinaryCacheFile.load(someFile, new Properties()));
+  }
+
+  @Test
+  public void testLoadKeepsOrder() throws Exception {
+    Properties properties = new OrderedProperties();
+    for (int i = 10; i > 0; i--) {
+      properties.setProperty("key" + i, "value" + i);
+    }
+
+    store(properties, someFile, false);
+    Properties loaded = BinaryCacheFile.load(someFile, new OrderedProperties());
+
+    assertEquals(Lists.newArrayList(properties.stringPropertyNames()),
+        Lists.newArrayList(loaded.stringPropertyNames()));
+  }
+
+  @Test
+  public void testCrc32c() throws Exception {
+    byte[] bytes = "123456789".getBytes(Charsets.US_ASCII);
+
+    assertEquals(0xE3069283, BinaryCacheFile.crc32c(bytes, 0, bytes.length));
+  }
+
+  @Test
+  public void testLoadCorruptedFile() throws Exception {
+    store(assembleProperties(), someFile, false);
+    byte[] bytes = Files.readAllBytes(someFile.toPath());
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(someFile.toPath(), bytes);
+
+    assertLoadFails("Checksum");
+  }
+
+  @Test
+  public void testLoadTruncatedFile() throws Exception {
+    store(assembleProperties(), someFile, true);
+    byte[] bytes = Files.readAllBytes(someFile.toPath());
+    Files.write(someFile.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+
+    assertLoadFails("");
+  }
+
+  @Test
+  public void testLoadPropertiesFile() throws Exception {
+    try (OutputStream out = new FileOutputStream(someFile)) {
+      assembleProperties().store(out, "Persisted by BinaryCacheFileTest");
+    }
+
+    assertLoadFails("");
+  }
+
+  @Test
+  public void testLoadLargeNamespace() throws Exception {
+    Properties properties = new Properties();
+    for (int i = 0; i < 100000; i++) {
+      properties.setProperty("some.namespace.key" + i, "some value with = and : " + i);
+    }
+    store(properties, someFile, false);
+    File compressedFile = new File(someBaseDir, "someAppId+someCluster+compressed.bin");
+    store(properties, compressedFile, true);
+
+    assertEquals(properties, BinaryCacheFile.load(someFile, new Properties()));
+    assertEquals(properties, BinaryCacheFile.load(compressedFile, new Properties()));
+    assertTrue(compressedFile.length() < someFile.length());
+  }
+
+  private Properties assembleProperties() {
+    Properties properties = new Properties();
+    properties.setProperty("someKey", "someValue");
+    properties.setProperty("emptyKey", "");
+    properties.setProperty("multiLineKey", "line1\nline2\r\n=:#!");
+    properties.setProperty("unicodeKey", "你好😀");
+    return properties;
+  }
+
+  private void store(Properties properties, File file, boolean compress) throws IOException {
+    try (OutputStream out = new FileOutputStream(file)) {
+      BinaryCacheFile.store(properties, out, compress);
+    }
+  }
+
+  private void assertLoadFails(String expectedMessage) {
+    try {
+      BinaryCacheFile.load(someFile, new Properties());
+      fail();
+    } catch (IOException ex) {
+      assertTrue(ex.getMessage(), ex.getMessage().contains(expectedMessage));
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigLoadRateLimiterTest {
+  private ExecutorService executorService;
+  private AtomicBoolean running;
+
+  @Before
+  public void setUp() throws Exception {
+    executorService = Executors.newSingleThreadExecutor();
+    running = new AtomicBoolean(true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    running.set(false);
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testSharedFairly() throws Exception {
+    ConfigLoadRateLimiter rateLimiter = new ConfigLoadRateLimiter(100, 1000);
+    drainBurst(rateLimiter);
+
+    AtomicInteger grants = new AtomicInteger();
+    List<AtomicInteger> counters = submitBusyNamespaces(rateLimiter, 10, 1, grants, 50);
+    awaitGrants(grants, 50);
+
+    int min = Collections.min(Lists.transform(counters, AtomicInteger::get));
+    int max = Collections.max(Lists.transform(counters, AtomicInteger::get));
+    assertTrue(String.format("min: %d, max: %d", min, max), max - min <= 1);
+  }
+
+  @Test
+  public void testWeightedShare() throws Exception {
+    ConfigLoadRateLimiter rateLimiter = new ConfigLoadRateLimiter(100, 1000);
+    //drain the burst, the weights only matter when the namespaces contend for the permits
+    drainBurst(rateLimiter);
+
+    AtomicInteger grants = new AtomicInteger();
+    List<AtomicInteger> light = submitBusyNamespaces(rateLimiter, 1, 1, grants, 40);
+    List<AtomicInteger> heavy = submitBusyNamespaces(rateLimiter, 1, 3, grants, 40);
+    awaitGrants(grants, 40);
+
+    int lightCount = light.get(0).get();
+    int heavyCount = heavy.get(0).get();
+    assertTrue(String.format("light: %d, heavy: %d", lightCount, heavyCount),
+        heavyCount >= lightCount * 2 && heavyCount <= lightCount * 4);
+  }
+
+  @Test
+  public void testNamespaceRateIsBounded() throws Exception {
+    ConfigLoadRateLimiter rateLimiter = new ConfigLoadRateLimiter(1000, 5);
+
+    assertTrue(rateLimiter.acquire("someNamespace", 0, TimeUnit.MILLISECONDS));
+    //the other namespaces are not limited by it
+    assertTrue(rateLimiter.acquire("anotherNamespace", 0, TimeUnit.MILLISECONDS));
+    assertFalse(rateLimiter.acquire("someNamespace", 50, TimeUnit.MILLISECONDS));
+    assertTrue(rateLimiter.acquire("someNamespace", 1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testAcquire() throws Exception {
+    ConfigLoadRateLimiter rateLimiter = new ConfigLoadRateLimiter(5, 1000);
+
+    for (int i = 0; i < 5; i++) {
+      assertTrue(rateLimiter.acquire("namespace" + i, 0, TimeUnit.MILLISECONDS));
+    }
+    assertFalse(rateLimiter.acquire("someNamespace", 50, TimeUnit.MILLISECONDS));
+
+    long start = System.nanoTime();
+    assertTrue(rateLimiter.acquire("someNamespace", 1, TimeUnit.SECONDS));
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue("elapsed: " + elapsed, elapsed >= 100 && elapsed < 1000);
+  }
+
+  @Test
+  public void testAcquireTakesPrecedenceOverQueuedTasks() throws Exception {
+    ConfigLoadRateLimiter rateLimiter = new ConfigLoadRateLimiter(10, 1000);
+
+    submitBusyNamespaces(rateLimiter, 20, 1, new AtomicInteger(), Integer.MAX_VALUE);
+    TimeUnit.MILLISECONDS.sleep(100);
+
+    //all the permits go to the busy namespaces, so a fair share would take about 2 seconds
+    long start = System.nanoTime();
+    assertTrue(rateLimiter.acquire("someNamespace", 2, TimeUnit.SECONDS));
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue("elapsed: " + elapsed, elapsed < 500);
+  }
+
+  private void stop() throws InterruptedException {
+    running.set(false);
+    //let the task in flight finish
+    TimeUnit.MILLISECONDS.sleep(50);
+  }
+
+  private void drainBurst(ConfigLoadRateLimiter rateLimiter) {
+    int drained = 0;
+    while (rateLimiter.acquire("drained" + drained, 0, TimeUnit.MILLISECONDS)) {
+      drained++;
+    }
+  }
+
+  private void awaitGrants(AtomicInteger grants, int maxGrants) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (grants.get() < maxGrants && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    stop();
+    assertTrue("grants: " + grants.get(), grants.get() >= maxGrants);
+  }
+
+  /**
+   * @param grants the permits granted to all the busy namespaces
+   * @param maxGrants the namespaces stop once the permits granted reach it
+   */
+  private List<AtomicInteger> submitBusyNamespaces(ConfigLoadRateLimiter rateLimiter,
+      int namespaceCount, int weight, AtomicInteger grants, int maxGrants) {
+    List<AtomicInteger> counters = Lists.newArrayList();
+    for (int i = 0; i < namespaceCount; i++) {
+      String key = "namespace-" + weight + "-" + i;
+      AtomicInteger counter = new AtomicInteger();
+      counters.add(counter);
+      //resubmits itself to keep the namespace backlogged
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          if (running.get() && grants.incrementAndGet() <= maxGrants) {
+            counter.incrementAndGet();
+            rateLimiter.submit(key, weight, executorService, this);
+          }
+        }
+      };
+      rateLimiter.submit(key, weight, executorService, task);
+    }
+    return counters;
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConfigServiceOutlierDetectorTest {
+
+  private AtomicLong clock;
+  private ConfigServiceOutlierDetector detector;
+  private ServiceDTO someConfigService;
+  private ServiceDTO anotherConfigService;
+  private List<ServiceDTO> configServices;
+
+  @BeforeEach
+  void setUp() {
+    clock = new AtomicLong(1000);
+    detector = new ConfigServiceOutlierDetector(clock::get);
+    someConfigService = assembleServiceDTO("http://someServer");
+    anotherConfigService = assembleServiceDTO("http://anotherServer");
+    configServices = Lists.newArrayList(someConfigService, anotherConfigService);
+  }
+
+  @Test
+  void ejectAfterConsecutiveFailures() {
+    for (int i = 0; i < ConfigServiceOutlierDetector.CONSECUTIVE_FAILURES_THRESHOLD - 1; i++) {
+      assertFalse(detector.onFailure(someConfigService, configServices));
+    }
+    assertTrue(detector.onFailure(someConfigService, configServices));
+
+    assertFalse(detector.isAvailable(someConfigService));
+    assertEquals(Lists.newArrayList(anotherConfigService), detector.filterAvailable(configServices));
+  }
+
+  @Test
+  void successResetsConsecutiveFailures() {
+    for (int i = 0; i < 10; i++) {
+      detector.onFailure(someConfigService, configServices);
+      detector.onSuccess(someConfigService);
+      detector.onSuccess(someConfigService);
+    }
+
+    assertTrue(detector.isAvailable(someConfigService));
+    assertSame(configServices, detector.filterAvailable(configServices));
+  }
+
+  @Test
+  void ejectOnHighErrorRate() {
+    boolean ejected = false;
+    for (int i = 0; i < ConfigServiceOutlierDetector.ERROR_RATE_WINDOW_SIZE && !ejected; i++) {
+      detector.onSuccess(someConfigService);
+      ejected = detector.onFailure(someConfigService, configServices);
+    }
+
+    assertTrue(ejected);
+    assertFalse(detector.isAvailable(someConfigService));
+  }
+
+  @Test
+  void neverEjectTheLastAvailable() {
+    ejectSomeConfigService();
+
+    for (int i = 0; i < 10; i++) {
+      assertFalse(detector.onFailure(anotherConfigService, configServices));
+    }
+    assertTrue(detector.isAvailable(anotherConfigService));
+
+    List<ServiceDTO> onlyOne = Lists.newArrayList(anotherConfigService);
+    assertSame(onlyOne, detector.filterAvailable(onlyOne));
+  }
+
+  @Test
+  void readmitWithExponentialEjectionTime() {
+    ejectSomeConfigService();
+
+    clock.addAndGet(ConfigServiceOutlierDetector.BASE_EJECTION_TIME_IN_MILLIS - 1);
+    assertFalse(detector.isAvailable(someConfigService));
+    clock.addAndGet(1);
+    assertTrue(detector.isAvailable(someConfigService));
+
+    // fails right after re-admission, ejected twice as long
+    assertTrue(detector.onFailure(someConfigService, configServices));
+    clock.addAndGet(ConfigServiceOutlierDetector.BASE_EJECTION_TIME_IN_MILLIS);
+    assertFalse(detector.isAvailable(someConfigService));
+    clock.addAndGet(ConfigServiceOutlierDetector.BASE_EJECTION_TIME_IN_MILLIS);
+    assertTrue(detector.isAvailable(someConfigService));
+
+    // recovered, the ejection time is reset
+    detector.onSuccess(someConfigService);
+    ejectSomeConfigService();
+    clock.addAndGet(ConfigServiceOutlierDetector.BASE_EJECTION_TIME_IN_MILLIS);
+    assertTrue(detector.isAvailable(someConfigService));
+  }
+
+  @Test
+  void ejectionTimeIsCapped() {
+    for (int i = 0; i < 30; i++) {
+      while (!detector.onFailure(someConfigService, configServices)) {
+      }
+      clock.addAndGet(ConfigServiceOutlierDetector.MAX_EJECTION_TIME_IN_MILLIS);
+      assertTrue(detector.isAvailable(someConfigService));
+    }
+  }
+
+  private void ejectSomeConfigService() {
+    for (int i = 0; i < ConfigServiceOutlierDetector.CONSECUTIVE_FAILURES_THRESHOLD; i++) {
+      detector.onFailure(someConfigService, configServices);
+    }
+    assertFalse(detector.isAvailable(someConfigService));
+  }
+
+  private static ServiceDTO assembleServiceDTO(String homepageUrl) {
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setHomepageUrl(homepageUrl);
+    serviceDTO.setInstanceId(homepageUrl);
+    return serviceDTO;
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.util.OrderedProperties;
+import com.ctrip.framework.apollo.util.PersistentHashMap;
+import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ConfigSnapshotTest {
+  private final PropertiesFactory propertiesFactory = Properties::new;
+  private final PropertiesFactory orderedPropertiesFactory = OrderedProperties::new;
+
+  @Test
+  public void testCopyOf() throws Exception {
+    Properties someProperties = new Properties();
+    someProperties.setProperty("someKey", "someValue");
+
+    ConfigSnapshot snapshot = ConfigSnapshot.copyOf(someProperties, propertiesFactory);
+    someProperties.setProperty("anotherKey", "anotherValue");
+
+    assertEquals(1, snapshot.size());
+    assertEquals("someValue", snapshot.get("someKey"));
+    assertEquals("someValue", snapshot.getProperty("someKey"));
+    assertNull(snapshot.getProperty("anotherKey"));
+    assertEquals(Collections.singleton("someKey"), snapshot.stringPropertyNames());
+    assertEquals(snapshot, ConfigSnapshot.copyOf(Collections.singletonMap("someKey", "someValue"),
+        propertiesFactory));
+    // a snapshot is not copied again
+    assertSame(snapshot, ConfigSnapshot.copyOf(snapshot, propertiesFactory));
+    assertNull(ConfigSnapshot.toProperties(null, propertiesFactory));
+  }
+
+  @Test
+  public void testToProperties() throws Exception {
+    ConfigSnapshot snapshot = ConfigSnapshot.copyOf(
+        PersistentHashMap.<String, String>empty().plus("k1", "v1").plus("k2", "v2"), false);
+
+    Properties someProperties = ConfigSnapshot.toProperties(snapshot, propertiesFactory);
+    Properties anotherProperties = ConfigSnapshot.toProperties(snapshot, propertiesFactory);
+    someProperties.setProperty("k3", "v3");
+    someProperties.remove("k1");
+
+    assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2"), snapshot);
+    assertEquals(snapshot, anotherProperties);
+    assertEquals(anotherProperties, snapshot);
+    assertEquals(anotherProperties.hashCode(), snapshot.hashCode());
+    assertEquals(ImmutableMap.of("k2", "v2", "k3", "v3"), someProperties);
+    assertNotSame(snapshot, ConfigSnapshot.copyOf(someProperties, propertiesFactory));
+  }
+
+  @Test
+  public void testOrderKept() throws Exception {
+    OrderedProperties someProperties = new OrderedProperties();
+    String[] keys = {"k3", "k1", "k4", "k2"};
+    for (String key : keys) {
+      someProperties.setProperty(key, "v" + key);
+    }
+
+    ConfigSnapshot snapshot = ConfigSnapshot.copyOf(someProperties, orderedPropertiesFactory);
+    Properties properties = ConfigSnapshot.toProperties(snapshot, orderedPropertiesFactory);
+
+    assertTrue(properties instanceof OrderedProperties);
+    assertArrayEquals(keys, snapshot.keySet().toArray());
+    assertArrayEquals(keys, snapshot.stringPropertyNames().toArray());
+    assertArrayEquals(keys, properties.stringPropertyNames().toArray());
+    assertEquals(someProperties, properties);
+  }
+
+  @Test
+  public void testOrderKeptByPropertiesFactory() throws Exception {
+    OrderedProperties someProperties = new OrderedProperties();
+    someProperties.setProperty("k2", "v2");
+    someProperties.setProperty("k1", "v1");
+
+    // the order is decided by the properties factory rather than the properties given
+    ConfigSnapshot snapshot = ConfigSnapshot.copyOf(someProperties, propertiesFactory);
+    Properties properties = ConfigSnapshot.toProperties(snapshot, propertiesFactory);
+
+    assertFalse(properties instanceof OrderedProperties);
+    assertEquals(someProperties, properties);
+    assertArrayEquals(new String[]{"k2", "k1"}, ConfigSnapshot.copyOf(
+        ImmutableMap.of("k2", "v2", "k1", "v1"), orderedPropertiesFactory).keySet().toArray());
+  }
+
+  @Test
+  public void testOrderKeptIfRequired() throws Exception {
+    Map<String, String> configs = Maps.newLinkedHashMap();
+    String[] keys = {"k3", "k1", "k4", "k2"};
+    for (String key : keys) {
+      configs.put(key, "v" + key);
+    }
+
+    assertArrayEquals(keys, ConfigSnapshot.copyOf(configs, true).keySet().toArray());
+    assertEquals(configs, ConfigSnapshot.copyOf(configs, false));
+  }
+
+  @Test
+  public void testFireRepositoryChange() throws Exception {
+    ConfigSnapshot snapshot = ConfigSnapshot.copyOf(ImmutableMap.of("k1", "v1"), false);
+    AbstractConfigRepository repository = new AbstractConfigRepository() {
+      @Override
+      protected void sync() {
+      }
+
+      @Override
+      public Properties getConfig() {
+        return null;
+      }
+
+      @Override
+      public void setUpstreamRepository(ConfigRepository upstreamConfigRepository) {
+      }
+
+      @Override
+      public ConfigSourceType getSourceType() {
+        return ConfigSourceType.NONE;
+      }
+    };
+    PropertiesFactory somePropertiesFactory = mock(PropertiesFactory.class);
+    when(somePropertiesFactory.getPropertiesInstance()).thenReturn(new Properties());
+    repository.propertiesFactory = somePropertiesFactory;
+    ConfigSnapshotListener someSnapshotListener = mock(ConfigSnapshotListener.class);
+    RepositoryChangeListener someListener = mock(RepositoryChangeListener.class);
+    RepositoryChangeListener anotherListener = mock(RepositoryChangeListener.class);
+    repository.addChangeListener(someSnapshotListener);
+    repository.addChangeListener(someListener);
+    repository.addChangeListener(anotherListener);
+
+    repository.fireRepositoryChange("someAppId", "someNamespace", snapshot);
+
+    // the snapshot is passed by reference, and copied once for the other listeners
+    verify(someSnapshotListener).onRepositorySnapshotChange("someAppId", "someNamespace", snapshot);
+    ArgumentCaptor<Properties> someCaptor = ArgumentCaptor.forClass(Properties.class);
+    ArgumentCaptor<Properties> anotherCaptor = ArgumentCaptor.forClass(Properties.class);
+    verify(someListener).onRepositoryChange(eq("someAppId"), eq("someNamespace"),
+        someCaptor.capture());
+    verify(anotherListener).onRepositoryChange(eq("someAppId"), eq("someNamespace"),
+        anotherCaptor.capture());
+    assertEquals(snapshot, someCaptor.getValue());
+    assertSame(someCaptor.getValue(), anotherCaptor.getValue());
+    verify(somePropertiesFactory).getPropertiesInstance();
+  }
+}
@@ -20,8 +20,11 @@ import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -40,6 +43,7 @@ import java.util.Set;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.base.Function;
 import com.google.common.base.Splitter;
@@ -63,6 +67,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.SettableFuture;
 import org.mockito.invocation.InvocationOnMock;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.mockito.stubbing.Answer;
 
 /**
@@ -707,6 +712,34 @@ public class DefaultConfigTest {
     assertEquals(anotherSourceType, defaultConfig.getSourceType());
   }
 
+  @Test
+  public void testOnRepositoryChangeWithSnapshot() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    String anotherValue = "anotherValue";
+
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
+    when(configRepository.getConfig()).thenReturn(someProperties);
+    when(configRepository.getSourceType()).thenReturn(ConfigSourceType.REMOTE);
+
+    DefaultConfig defaultConfig = new DefaultConfig(someAppId, someNamespace, configRepository);
+    ConfigChangeListener someListener = mock(ConfigChangeListener.class);
+    defaultConfig.addChangeListener(someListener);
+
+    ConfigSnapshot anotherSnapshot = ConfigSnapshot.copyOf(
+        Collections.singletonMap(someKey, anotherValue), false);
+
+    defaultConfig.onRepositorySnapshotChange(someAppId, someNamespace, anotherSnapshot);
+    defaultConfig.onRepositorySnapshotChange(someAppId, someNamespace, anotherSnapshot);
+
+    assertEquals(anotherValue, defaultConfig.getProperty(someKey, null));
+    // the snapshot is kept as it is, rather than copied
+    assertSame(anotherSnapshot,
+        ((AtomicReference<?>) ReflectionTestUtils.getField(defaultConfig, "m_configProperties")).get());
+    verify(someListener, timeout(1000).times(1)).onChange(any(ConfigChangeEvent.class));
+  }
+
   @Test
   public void testFireConfigChangeWithInterestedKeys() throws Exception {
     String someKeyChanged = "someKeyChanged";
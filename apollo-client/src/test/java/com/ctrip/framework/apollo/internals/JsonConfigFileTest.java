@@ -19,10 +19,12 @@ package com.ctrip.framework.apollo.internals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import java.util.Properties;
 
 import org.junit.Before;
@@ -73,6 +75,51 @@ public class JsonConfigFileTest {
     assertEquals(someSourceType, configFile.getSourceType());
   }
 
+  @Test
+  public void testAsProperties() throws Exception {
+    Properties someProperties = new Properties();
+    someProperties.setProperty(ConfigConsts.CONFIG_FILE_CONTENT_KEY,
+        "{\"redis\": {\"timeout\": 30, \"hosts\": [\"a\", \"b\"]}}");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    JsonConfigFile configFile = new JsonConfigFile(someAppId, someNamespace, configRepository);
+
+    Properties properties = configFile.asProperties();
+    assertEquals(3, properties.size());
+    assertEquals("30", properties.getProperty("redis.timeout"));
+    assertEquals("a", properties.getProperty("redis.hosts[0]"));
+    assertEquals("b", properties.getProperty("redis.hosts[1]"));
+    // parsed once for each change
+    assertSame(properties, configFile.asProperties());
+  }
+
+  @Test
+  public void testAsPropertiesOnRepositoryChange() throws Exception {
+    Properties someProperties = new Properties();
+    someProperties.setProperty(ConfigConsts.CONFIG_FILE_CONTENT_KEY, "{\"someKey\": \"someValue\"}");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+    JsonConfigFile configFile = new JsonConfigFile(someAppId, someNamespace, configRepository);
+    assertEquals("someValue", configFile.asProperties().getProperty("someKey"));
+
+    Properties anotherProperties = new Properties();
+    anotherProperties.setProperty(ConfigConsts.CONFIG_FILE_CONTENT_KEY, "{\"someKey\": \"anotherValue\"}");
+    configFile.onRepositoryChange(someAppId, someNamespace, anotherProperties);
+
+    assertEquals("anotherValue", configFile.asProperties().getProperty("someKey"));
+  }
+
+  @Test(expected = ApolloConfigException.class)
+  public void testWhenInvalidJsonContent() throws Exception {
+    Properties someProperties = new Properties();
+    someProperties.setProperty(ConfigConsts.CONFIG_FILE_CONTENT_KEY, "{\"someKey\": ");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    JsonConfigFile configFile = new JsonConfigFile(someAppId, someNamespace, configRepository);
+
+    assertTrue(configFile.hasContent());
+    configFile.asProperties();
+  }
+
   @Test
   public void testWhenHasNoContent() throws Exception {
     when(configRepository.getConfig()).thenReturn(null);
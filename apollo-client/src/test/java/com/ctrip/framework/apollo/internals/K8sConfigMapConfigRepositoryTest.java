@@ -18,6 +18,8 @@ package com.ctrip.framework.apollo.internals;
 
 import com.ctrip.framework.apollo.build.MockInjector;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.kubernetes.ConfigMapChangeListener;
+import com.ctrip.framework.apollo.kubernetes.KubernetesConfigMapWriter;
 import com.ctrip.framework.apollo.kubernetes.KubernetesManager;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.escape.EscapeUtil;
@@ -27,8 +29,10 @@ import io.kubernetes.client.openapi.models.V1ObjectMeta;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -64,6 +68,7 @@ public class K8sConfigMapConfigRepositoryTest {
         // mock kubernetesManager
         kubernetesManager = mock(KubernetesManager.class);
         MockInjector.setInstance(KubernetesManager.class, kubernetesManager);
+        MockInjector.setInstance(KubernetesConfigMapWriter.class, new KubernetesConfigMapWriter(kubernetesManager, 0));
 
         // mock upstream
         someProperties = new Properties();
@@ -161,7 +166,7 @@ public class K8sConfigMapConfigRepositoryTest {
         // Act
         k8sConfigMapConfigRepository.persistConfigMap(properties);
         // Assert
-        verify(kubernetesManager, times(1)).updateConfigMap(anyString(), anyString(), anyMap());
+        verify(kubernetesManager, timeout(1000).times(1)).patchConfigMap(anyString(), anyString(), anyMap());
     }
 
     @Test
@@ -172,7 +177,7 @@ public class K8sConfigMapConfigRepositoryTest {
         // Act
         k8sConfigMapConfigRepository.onRepositoryChange(someAppId, someNamespace, newProperties);
         // Assert
-        verify(kubernetesManager, times(1)).updateConfigMap(anyString(), anyString(), anyMap());
+        verify(kubernetesManager, timeout(1000).times(1)).patchConfigMap(anyString(), anyString(), anyMap());
     }
 
     @Test
@@ -184,6 +189,42 @@ public class K8sConfigMapConfigRepositoryTest {
         assertNotNull(properties);
     }
 
+    @Test
+    public void testOnConfigMapChangeWhenUpstreamUnavailable() throws ApiException {
+        ArgumentCaptor<ConfigMapChangeListener> listenerCaptor = ArgumentCaptor.forClass(ConfigMapChangeListener.class);
+        verify(kubernetesManager).addConfigMapChangeListener(anyString(), eq(someConfigmapName), listenerCaptor.capture());
+        when(upstreamRepo.getConfig()).thenThrow(new RuntimeException("Upstream sync failed"));
+        when(kubernetesManager.getValueFromConfigMap(anyString(), anyString(), anyString())).thenReturn(defaultJsonValue);
+        assertEquals("John Doe", k8sConfigMapConfigRepository.getConfig().getProperty("name"));
+        RepositoryChangeListener changeListener = mock(RepositoryChangeListener.class);
+        k8sConfigMapConfigRepository.addChangeListener(changeListener);
+        String configMapKey = (String) ReflectionTestUtils.getField(k8sConfigMapConfigRepository, "configMapKey");
+
+        // written by another pod
+        listenerCaptor.getValue().onChange(Collections.singletonMap(configMapKey, "{\"name\":\"Jane Doe\"}"));
+        // the other keys of the config map are changed
+        listenerCaptor.getValue().onChange(Collections.singletonMap("anotherKey", "{\"name\":\"John Doe\"}"));
+
+        assertEquals("Jane Doe", k8sConfigMapConfigRepository.getConfig().getProperty("name"));
+        verify(changeListener, times(1)).onRepositoryChange(eq(someAppId), eq(someNamespace), any(Properties.class));
+        verify(kubernetesManager, never()).patchConfigMap(anyString(), anyString(), anyMap());
+    }
+
+    @Test
+    public void testOnConfigMapChangeIgnoredWhenUpstreamAvailable() {
+        ArgumentCaptor<ConfigMapChangeListener> listenerCaptor = ArgumentCaptor.forClass(ConfigMapChangeListener.class);
+        verify(kubernetesManager).addConfigMapChangeListener(anyString(), eq(someConfigmapName), listenerCaptor.capture());
+        assertEquals(defaultValue, k8sConfigMapConfigRepository.getConfig().getProperty(defaultKey));
+        RepositoryChangeListener changeListener = mock(RepositoryChangeListener.class);
+        k8sConfigMapConfigRepository.addChangeListener(changeListener);
+        String configMapKey = (String) ReflectionTestUtils.getField(k8sConfigMapConfigRepository, "configMapKey");
+
+        listenerCaptor.getValue().onChange(Collections.singletonMap(configMapKey, "{\"name\":\"Jane Doe\"}"));
+
+        assertEquals(defaultValue, k8sConfigMapConfigRepository.getConfig().getProperty(defaultKey));
+        verify(changeListener, never()).onRepositoryChange(anyString(), anyString(), any(Properties.class));
+    }
+
     public static class MockConfigUtil extends ConfigUtil {
         @Override
         public String getAppId() {
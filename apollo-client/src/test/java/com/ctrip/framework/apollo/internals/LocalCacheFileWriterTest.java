@@ -0,0 +1,170 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalCacheFileWriterTest {
+  private File someBaseDir;
+  private File someFile;
+  private String someKey;
+
+  @Before
+  public void setUp() throws Exception {
+    someBaseDir = Files.createTempDirectory("config-cache").toFile();
+    someFile = new File(someBaseDir, "someAppId+someCluster+someNamespace.properties");
+    someKey = "someKey";
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    File[] files = someBaseDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    someBaseDir.delete();
+  }
+
+  @Test
+  public void testWrite() throws Exception {
+    LocalCacheFileWriter writer = new LocalCacheFileWriter(true, false);
+    Properties snapshot = assembleProperties("someValue");
+
+    writer.write(someFile, snapshot);
+    awaitWritten(writer);
+
+    assertEquals(snapshot, load(someFile));
+    assertArrayEquals(new String[]{someFile.getName()}, someBaseDir.list());
+  }
+
+  @Test
+  public void testPreviousFileSurvivesWriterKilledMidStream() throws Exception {
+    Properties previous = assembleProperties("previousValue");
+    LocalCacheFileWriter writer = new LocalCacheFileWriter(false, false);
+    writer.write(someFile, previous);
+    awaitWritten(writer);
+    byte[] previousContent = Files.readAllBytes(someFile.toPath());
+
+    LocalCacheFileWriter killedWriter = new LocalCacheFileWriter(false, false) {
+      @Override
+      void store(File file, Properties snapshot, FileOutputStream out) throws IOException {
+        //dies after writing half of the content
+        out.write(previousContent, 0, previousContent.length / 2);
+        throw new IOException("killed");
+      }
+    };
+    killedWriter.write(someFile, assembleProperties("someValue"));
+    awaitWritten(killedWriter);
+
+    assertArrayEquals(previousContent, Files.readAllBytes(someFile.toPath()));
+    assertEquals(previous, load(someFile));
+    assertArrayEquals(new String[]{someFile.getName()}, someBaseDir.list());
+  }
+
+  @Test
+  public void testTempFileLeftByCrashIsReplaced() throws Exception {
+    File staleTempFile = new File(someBaseDir, someFile.getName() + ".tmp");
+    Files.write(staleTempFile.toPath(), "someStaleContent".getBytes());
+    LocalCacheFileWriter writer = new LocalCacheFileWriter(false, false);
+    Properties snapshot = assembleProperties("someValue");
+
+    writer.write(someFile, snapshot);
+    awaitWritten(writer);
+
+    assertEquals(snapshot, load(someFile));
+    assertArrayEquals(new String[]{someFile.getName()}, someBaseDir.list());
+  }
+
+  @Test
+  public void testCoalescePendingSnapshots() throws Exception {
+    final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+    final CountDownLatch firstWriteReleased = new CountDownLatch(1);
+    final AtomicInteger writes = new AtomicInteger();
+    LocalCacheFileWriter writer = new LocalCacheFileWriter(false, false) {
+      @Override
+      void store(File file, Properties snapshot, FileOutputStream out) throws IOException {
+        if (writes.incrementAndGet() == 1) {
+          firstWriteStarted.countDown();
+          try {
+            firstWriteReleased.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        super.store(file, snapshot, out);
+      }
+    };
+
+    Properties last = null;
+    try {
+      writer.write(someFile, assembleProperties("value-0"));
+      firstWriteStarted.await(5, TimeUnit.SECONDS);
+      for (int i = 1; i <= 10; i++) {
+        last = assembleProperties("value-" + i);
+        writer.write(someFile, last);
+      }
+      assertSame(last, writer.getPendingSnapshot(someFile));
+    } finally {
+      firstWriteReleased.countDown();
+    }
+    awaitWritten(writer);
+
+    assertEquals(2, writes.get());
+    assertEquals(last, load(someFile));
+  }
+
+  private Properties assembleProperties(String value) {
+    Properties properties = new Properties();
+    properties.setProperty(someKey, value);
+    return properties;
+  }
+
+  private void awaitWritten(LocalCacheFileWriter writer) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (writer.getPendingSnapshot(someFile) != null && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertNull(writer.getPendingSnapshot(someFile));
+  }
+
+  private Properties load(File file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+    }
+    return properties;
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalCacheLogTest {
+  private File someBaseDir;
+  private File someFile;
+  private String someName;
+  private String anotherName;
+  private List<LocalCacheLog> openedLogs;
+
+  @Before
+  public void setUp() throws Exception {
+    someBaseDir = Files.createTempDirectory("config-cache").toFile();
+    someFile = new File(someBaseDir, "someAppId." + LocalCacheLog.FILE_EXTENSION);
+    someName = "someAppId+someCluster+someNamespace.properties";
+    anotherName = "someAppId+someCluster+anotherNamespace.properties";
+    openedLogs = Lists.newArrayList();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (LocalCacheLog cacheLog : openedLogs) {
+      cacheLog.close();
+    }
+    File[] files = someBaseDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    someBaseDir.delete();
+  }
+
+  @Test
+  public void testWriteAndReopen() throws Exception {
+    LocalCacheLog cacheLog = open();
+    Properties someProperties = assembleProperties("someValue", 10);
+    Properties anotherProperties = assembleProperties("anotherValue", 10);
+
+    cacheLog.write(someName, someProperties);
+    cacheLog.write(anotherName, anotherProperties);
+    assertEquals(someProperties, cacheLog.read(someName, new Properties()));
+    awaitWritten(cacheLog, someName, anotherName);
+    assertNull(cacheLog.read("someAppId+someCluster+missing.properties", new Properties()));
+    cacheLog.close();
+
+    LocalCacheLog reopened = open();
+    assertEquals(someProperties, reopened.read(someName, new Properties()));
+    assertEquals(anotherProperties, reopened.read(anotherName, new Properties()));
+    assertTrue(reopened.lastModified(someName) > 0);
+    assertEquals(0, reopened.lastModified("someAppId+someCluster+missing.properties"));
+  }
+
+  @Test
+  public void testTouch() throws Exception {
+    LocalCacheLog cacheLog = open();
+    Properties someProperties = assembleProperties("someValue", 10);
+    cacheLog.write(someName, someProperties);
+    awaitWritten(cacheLog, someName);
+    long lastModified = cacheLog.lastModified(someName);
+
+    TimeUnit.MILLISECONDS.sleep(10);
+    cacheLog.touch(someName);
+    long touched = cacheLog.lastModified(someName);
+    assertTrue(touched > lastModified);
+    cacheLog.close();
+
+    LocalCacheLog reopened = open();
+    assertEquals(touched, reopened.lastModified(someName));
+    assertEquals(someProperties, reopened.read(someName, new Properties()));
+  }
+
+  @Test
+  public void testRecoverTornTail() throws Exception {
+    Properties previous = assembleProperties("previousValue", 10);
+    Properties anotherProperties = assembleProperties("anotherValue", 10);
+    long lengthBeforeLastRecord = writeAndClose(previous, anotherProperties,
+        assembleProperties("someValue", 10));
+
+    //the process crashed in the middle of appending the last record
+    try (RandomAccessFile file = new RandomAccessFile(someFile, "rw")) {
+      file.setLength(file.length() - 7);
+    }
+
+    assertRecovered(previous, anotherProperties, lengthBeforeLastRecord);
+  }
+
+  @Test
+  public void testRecoverTornRecordHeader() throws Exception {
+    Properties previous = assembleProperties("previousValue", 10);
+    Properties anotherProperties = assembleProperties("anotherValue", 10);
+    long lengthBeforeLastRecord = writeAndClose(previous, anotherProperties,
+        assembleProperties("someValue", 10));
+
+    try (RandomAccessFile file = new RandomAccessFile(someFile, "rw")) {
+      file.setLength(lengthBeforeLastRecord + 10);
+    }
+
+    assertRecovered(previous, anotherProperties, lengthBeforeLastRecord);
+  }
+
+  @Test
+  public void testRecoverCorruptedTail() throws Exception {
+    Properties previous = assembleProperties("previousValue", 10);
+    Properties anotherProperties = assembleProperties("anotherValue", 10);
+    long lengthBeforeLastRecord = writeAndClose(previous, anotherProperties,
+        assembleProperties("someValue", 10));
+
+    //the last record was partially flushed before a power loss
+    try (RandomAccessFile file = new RandomAccessFile(someFile, "rw")) {
+      file.seek(file.length() - 20);
+      int value = file.read();
+      file.seek(file.length() - 20);
+      file.write(value ^ 0xff);
+    }
+
+    assertRecovered(previous, anotherProperties, lengthBeforeLastRecord);
+  }
+
+  @Test
+  public void testCompact() throws Exception {
+    LocalCacheLog cacheLog = open();
+    Properties anotherProperties = assembleProperties("anotherValue", 10);
+    cacheLog.write(anotherName, anotherProperties);
+    Properties last = null;
+    for (int i = 0; i < 5; i++) {
+      last = assembleProperties("value-" + i, 100);
+      cacheLog.write(someName, last);
+      awaitWritten(cacheLog, someName, anotherName);
+    }
+    long lengthBeforeCompaction = someFile.length();
+
+    cacheLog.compact();
+
+    assertTrue(someFile.length() < lengthBeforeCompaction);
+    assertEquals(last, cacheLog.read(someName, new Properties()));
+    assertEquals(anotherProperties, cacheLog.read(anotherName, new Properties()));
+    assertEquals(1, someBaseDir.list((dir, name) -> name.endsWith(LocalCacheLog.FILE_EXTENSION)).length);
+
+    //appended after the compaction
+    Properties afterCompaction = assembleProperties("afterCompaction", 10);
+    cacheLog.write(someName, afterCompaction);
+    awaitWritten(cacheLog, someName);
+    cacheLog.close();
+
+    LocalCacheLog reopened = open();
+    assertEquals(afterCompaction, reopened.read(someName, new Properties()));
+    assertEquals(anotherProperties, reopened.read(anotherName, new Properties()));
+  }
+
+  @Test
+  public void testCompactOnceGarbageExceedsLiveRecords() throws Exception {
+    LocalCacheLog cacheLog = open();
+    Properties last = null;
+    for (int i = 0; i < 50; i++) {
+      last = assembleProperties("value-" + i, 1000);
+      cacheLog.write(someName, last);
+      awaitWritten(cacheLog, someName);
+    }
+
+    //a record is about 40KB, so it is compacted every 1MB of garbage
+    assertTrue("length: " + someFile.length(), someFile.length() < 2 * 1024 * 1024);
+    assertEquals(last, cacheLog.read(someName, new Properties()));
+  }
+
+  @Test
+  public void testLockedByAnotherInstance() throws Exception {
+    open();
+    try {
+      new LocalCacheLog(someFile, false);
+      fail();
+    } catch (IOException ex) {
+      assertTrue(ex.getMessage(), ex.getMessage().contains("locked"));
+    }
+  }
+
+  @Test
+  public void testNotCacheLog() throws Exception {
+    Files.write(someFile.toPath(), "someKey=someValue".getBytes());
+    //the lock is released by the failed attempt, so the second one fails for the same reason
+    for (int i = 0; i < 2; i++) {
+      try {
+        new LocalCacheLog(someFile, false);
+        fail();
+      } catch (IOException ex) {
+        assertTrue(ex.getMessage(), ex.getMessage().contains("not a local cache log"));
+      }
+    }
+  }
+
+  @Test
+  public void testReopenWithManyNamespaces() throws Exception {
+    int namespaceCount = 400;
+    List<String> names = Lists.newArrayList();
+    LocalCacheLog cacheLog = open();
+    for (int i = 0; i < namespaceCount; i++) {
+      String name = "someAppId+someCluster+someNamespace" + i + ".properties";
+      cacheLog.write(name, assembleProperties("someValue" + i, 20));
+      names.add(name);
+    }
+    awaitWritten(cacheLog, names.toArray(new String[0]));
+    cacheLog.close();
+
+    LocalCacheLog reopened = open();
+    for (int i = 0; i < namespaceCount; i++) {
+      assertEquals(assembleProperties("someValue" + i, 20),
+          reopened.read(names.get(i), new Properties()));
+    }
+  }
+
+  /**
+   * Write the previous snapshot of someName, the one of anotherName and then the last snapshot of
+   * someName.
+   *
+   * @return the length of the log before the last snapshot is appended
+   */
+  private long writeAndClose(Properties previous, Properties anotherProperties, Properties last)
+      throws Exception {
+    LocalCacheLog cacheLog = open();
+    cacheLog.write(someName, previous);
+    cacheLog.write(anotherName, anotherProperties);
+    awaitWritten(cacheLog, someName, anotherName);
+    long lengthBeforeLastRecord = someFile.length();
+    cacheLog.write(someName, last);
+    awaitWritten(cacheLog, someName);
+    cacheLog.close();
+    return lengthBeforeLastRecord;
+  }
+
+  private void assertRecovered(Properties previous, Properties anotherProperties,
+      long lengthBeforeLastRecord) throws Exception {
+    LocalCacheLog recovered = open();
+    assertEquals(previous, recovered.read(someName, new Properties()));
+    assertEquals(anotherProperties, recovered.read(anotherName, new Properties()));
+    assertEquals(lengthBeforeLastRecord, someFile.length());
+
+    //appending goes on after the recovered records
+    Properties someProperties = assembleProperties("someValue", 10);
+    recovered.write(someName, someProperties);
+    awaitWritten(recovered, someName);
+    recovered.close();
+
+    LocalCacheLog reopened = open();
+    assertEquals(someProperties, reopened.read(someName, new Properties()));
+    assertEquals(anotherProperties, reopened.read(anotherName, new Properties()));
+  }
+
+  private LocalCacheLog open() throws IOException {
+    LocalCacheLog cacheLog = new LocalCacheLog(someFile, false);
+    openedLogs.add(cacheLog);
+    return cacheLog;
+  }
+
+  private Properties assembleProperties(String value, int count) {
+    Properties properties = new Properties();
+    for (int i = 0; i < count; i++) {
+      properties.setProperty("some.key" + i, value + " with some padding " + i);
+    }
+    return properties;
+  }
+
+  private void awaitWritten(LocalCacheLog cacheLog, String... names) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    for (String name : names) {
+      while (cacheLog.getPendingSnapshot(name) != null && System.currentTimeMillis() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+      assertNull(cacheLog.getPendingSnapshot(name));
+    }
+  }
+}
@@ -17,8 +17,14 @@
 package com.ctrip.framework.apollo.internals;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -28,21 +34,28 @@ import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Collections;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.build.MockInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
 
 /**
  * Created by Jason on 4/9/16.
@@ -104,8 +117,12 @@ public class LocalFileConfigRepositoryTest {
   }
 
   private String assembleLocalCacheFileName() {
-    return String.format("%s.properties", Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
-        .join(someAppId, someCluster, someNamespace));
+    return assembleLocalCacheFileName("properties");
+  }
+
+  private String assembleLocalCacheFileName(String extension) {
+    return String.format("%s.%s", Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, someNamespace), extension);
   }
 
 
@@ -211,6 +228,202 @@ public class LocalFileConfigRepositoryTest {
     assertEquals(anotherSourceType, localFileConfigRepository.getSourceType());
   }
 
+  @Test
+  public void testSnapshotSharedThroughRepositoryChain() throws Exception {
+    ConfigSnapshot snapshot = ConfigSnapshot.copyOf(
+        Collections.singletonMap("someKey", "someValue"), false);
+    AbstractConfigRepository someUpstreamRepo = mock(AbstractConfigRepository.class);
+    when(someUpstreamRepo.getConfigSnapshot()).thenReturn(snapshot);
+
+    LocalFileConfigRepository localFileConfigRepository =
+        new LocalFileConfigRepository(someAppId, someNamespace, someUpstreamRepo);
+    localFileConfigRepository.setLocalCacheDir(someBaseDir, true);
+    DefaultConfig defaultConfig = new DefaultConfig(someAppId, someNamespace, localFileConfigRepository);
+
+    // each of them used to keep a copy of the configurations
+    assertSame(snapshot, localFileConfigRepository.getConfigSnapshot());
+    assertSame(snapshot,
+        ((AtomicReference<?>) ReflectionTestUtils.getField(defaultConfig, "m_configProperties")).get());
+    assertEquals("someValue", defaultConfig.getProperty("someKey", null));
+
+    // the config returned is a copy, which is modifiable without affecting the snapshot
+    Properties config = localFileConfigRepository.getConfig();
+    config.setProperty("someKey", "anotherValue");
+
+    assertEquals("anotherValue", config.getProperty("someKey"));
+    assertEquals("someValue", localFileConfigRepository.getConfig().getProperty("someKey"));
+    assertEquals("someValue", defaultConfig.getProperty("someKey", null));
+    assertEquals("someValue", snapshot.get("someKey"));
+  }
+
+  @Test
+  public void testOnRepositoryChangeWithSnapshot() throws Exception {
+    ConfigSnapshotListener someSnapshotListener = mock(ConfigSnapshotListener.class);
+    RepositoryChangeListener someListener = mock(RepositoryChangeListener.class);
+
+    LocalFileConfigRepository localFileConfigRepository =
+        new LocalFileConfigRepository(someAppId, someNamespace, upstreamRepo);
+    localFileConfigRepository.setLocalCacheDir(someBaseDir, true);
+    localFileConfigRepository.addChangeListener(someSnapshotListener);
+    localFileConfigRepository.addChangeListener(someListener);
+
+    ConfigSnapshot anotherSnapshot = ConfigSnapshot.copyOf(
+        Collections.singletonMap("anotherKey", "anotherValue"), false);
+
+    localFileConfigRepository.onRepositorySnapshotChange(someAppId, someNamespace, anotherSnapshot);
+
+    // the snapshot is kept and passed on as it is, rather than copied
+    assertSame(anotherSnapshot, localFileConfigRepository.getConfigSnapshot());
+    verify(someSnapshotListener, times(1)).onRepositorySnapshotChange(someAppId, someNamespace,
+        anotherSnapshot);
+    final ArgumentCaptor<Properties> captor = ArgumentCaptor.forClass(Properties.class);
+    verify(someListener, times(1)).onRepositoryChange(eq(someAppId), eq(someNamespace),
+        captor.capture());
+    assertEquals(anotherSnapshot, captor.getValue());
+  }
+
+  @Test
+  public void testMigratePropertiesFileToBinaryFormat() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new BinaryCacheFileConfigUtil());
+    String someKey = "someKey";
+    String someValue = "someValue";
+    Properties someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
+    createLocalCachePropertyFile(someProperties);
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someAppId, someNamespace);
+    localRepo.setLocalCacheDir(someBaseDir, true);
+
+    assertEquals(someValue, localRepo.getConfig().getProperty(someKey));
+
+    File binaryFile = new File(someBaseDir, assembleLocalCacheFileName("bin"));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!binaryFile.isFile() && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertEquals(someProperties, BinaryCacheFile.load(binaryFile, new Properties()));
+  }
+
+  @Test
+  public void testLoadPropertiesFileWhenBinaryFileIsCorrupted() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new BinaryCacheFileConfigUtil());
+    String someKey = "someKey";
+    String someValue = "someValue";
+    Properties someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
+    File propertiesFile = createLocalCachePropertyFile(someProperties);
+    File binaryFile = new File(someBaseDir, assembleLocalCacheFileName("bin"));
+    Files.write("corrupted", binaryFile, Charsets.UTF_8);
+    binaryFile.setLastModified(propertiesFile.lastModified() + 1000);
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someAppId, someNamespace);
+    localRepo.setLocalCacheDir(someBaseDir, true);
+
+    assertEquals(someValue, localRepo.getConfig().getProperty(someKey));
+  }
+
+  @Test
+  public void testMigrateLocalCacheFilesToLocalCacheLog() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new LocalCacheLogConfigUtil());
+    String someKey = "someKey";
+    String someValue = "someValue";
+    Properties someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
+    File propertiesFile = createLocalCachePropertyFile(someProperties);
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someAppId, someNamespace);
+    localRepo.setLocalCacheDir(someBaseDir, true);
+
+    assertEquals(someValue, localRepo.getConfig().getProperty(someKey));
+
+    LocalCacheLog cacheLog = LocalCacheLog.getInstance(
+        new File(someBaseDir, someAppId + "." + LocalCacheLog.FILE_EXTENSION), false);
+    String name = propertiesFile.getName();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (cacheLog.getPendingSnapshot(name) != null && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertEquals(someProperties, cacheLog.read(name, new Properties()));
+
+    //loaded from the local cache log from now on
+    propertiesFile.delete();
+    LocalFileConfigRepository anotherLocalRepo =
+        new LocalFileConfigRepository(someAppId, someNamespace);
+    anotherLocalRepo.setLocalCacheDir(someBaseDir, true);
+
+    assertEquals(someValue, anotherLocalRepo.getConfig().getProperty(someKey));
+  }
+
+  @Test
+  public void testReloadLocalCacheFileEditedInLocalMode() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new LocalModeConfigUtil());
+    File someDir = java.nio.file.Files.createTempDirectory("config-cache").toFile();
+    String someKey = "someKey";
+    try {
+      Properties someProperties = new Properties();
+      someProperties.setProperty(someKey, "someValue");
+      File someFile = createLocalCachePropertyFile(someDir, someNamespace, someProperties);
+      createLocalCachePropertyFile(someDir, "anotherNamespace", someProperties);
+
+      LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someAppId, someNamespace);
+      localRepo.setLocalCacheDir(someDir, true);
+      LocalFileConfigRepository anotherLocalRepo =
+          new LocalFileConfigRepository(someAppId, "anotherNamespace");
+      anotherLocalRepo.setLocalCacheDir(someDir, true);
+      assertEquals("someValue", localRepo.getConfig().getProperty(someKey));
+      assertEquals("someValue", anotherLocalRepo.getConfig().getProperty(someKey));
+      RepositoryChangeListener someListener = mock(RepositoryChangeListener.class);
+      RepositoryChangeListener anotherListener = mock(RepositoryChangeListener.class);
+      localRepo.addChangeListener(someListener);
+      anotherLocalRepo.addChangeListener(anotherListener);
+
+      //rapid successive edits, e.g. saved several times in a row
+      for (int i = 0; i < 10; i++) {
+        someProperties.setProperty(someKey, "editedValue" + i);
+        createLocalCachePropertyFile(someDir, someNamespace, someProperties);
+        TimeUnit.MILLISECONDS.sleep(LocalCacheDirWatcher.DEBOUNCE_IN_MILLIS / 10);
+      }
+      assertTrue(someFile.isFile());
+
+      final ArgumentCaptor<Properties> captor = ArgumentCaptor.forClass(Properties.class);
+      verify(someListener, timeout(5000)).onRepositoryChange(eq(someAppId), eq(someNamespace),
+          captor.capture());
+      TimeUnit.MILLISECONDS.sleep(LocalCacheDirWatcher.DEBOUNCE_IN_MILLIS * 3);
+
+      //debounced into a single change of the edited namespace only
+      verify(someListener, times(1)).onRepositoryChange(anyString(), anyString(),
+          any(Properties.class));
+      verify(anotherListener, never()).onRepositoryChange(anyString(), anyString(),
+          any(Properties.class));
+      assertEquals("editedValue9", captor.getValue().getProperty(someKey));
+      assertEquals("editedValue9", localRepo.getConfig().getProperty(someKey));
+      assertEquals(ConfigSourceType.LOCAL, localRepo.getSourceType());
+    } finally {
+      recursiveDelete(someDir);
+    }
+  }
+
+  public static class LocalModeConfigUtil extends MockConfigUtil {
+    @Override
+    public boolean isInLocalMode() {
+      return true;
+    }
+  }
+
+  public static class LocalCacheLogConfigUtil extends MockConfigUtil {
+    @Override
+    public boolean isCacheFileConsolidatedEnabled() {
+      return true;
+    }
+  }
+
+  public static class BinaryCacheFileConfigUtil extends MockConfigUtil {
+    @Override
+    public boolean isCacheFileBinaryEnabled() {
+      return true;
+    }
+  }
+
   public static class MockConfigUtil extends ConfigUtil {
     @Override
     public String getAppId() {
@@ -224,7 +437,13 @@ public class LocalFileConfigRepositoryTest {
   }
 
   private File createLocalCachePropertyFile(Properties properties) throws IOException {
-    File file = new File(someBaseDir, assembleLocalCacheFileName());
+    return createLocalCachePropertyFile(someBaseDir, someNamespace, properties);
+  }
+
+  private File createLocalCachePropertyFile(File baseDir, String namespace, Properties properties)
+      throws IOException {
+    File file = new File(baseDir, String.format("%s.properties",
+        Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).join(someAppId, someCluster, namespace)));
     FileOutputStream in = null;
     try {
       in = new FileOutputStream(file);
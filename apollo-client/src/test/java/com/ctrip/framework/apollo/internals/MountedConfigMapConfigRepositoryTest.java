@@ -0,0 +1,245 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.escape.EscapeUtil;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class MountedConfigMapConfigRepositoryTest {
+  private static String someAppId = "someApp";
+  private static String someCluster = "someCluster";
+  private String someNamespace;
+  private String someConfigMapKey;
+  private Path someMountDir;
+  private int someDataVersion;
+  private ConfigRepository upstreamRepo;
+  private Properties someProperties;
+
+  @Before
+  public void setUp() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
+    someNamespace = "some_namespace";
+    someConfigMapKey = EscapeUtil.createConfigMapKey(someCluster, someNamespace);
+    someMountDir = Files.createTempDirectory("apollo-configcache");
+    someProperties = new Properties();
+    someProperties.setProperty("someKey", "someValue");
+    upstreamRepo = mock(ConfigRepository.class);
+    when(upstreamRepo.getConfig()).thenReturn(someProperties);
+    when(upstreamRepo.getSourceType()).thenReturn(ConfigSourceType.REMOTE);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MockInjector.reset();
+    recursiveDelete(someMountDir.toFile());
+  }
+
+  @Test
+  public void testLoadFromMountedConfigMapWhenUpstreamUnavailable() throws Exception {
+    mountConfigMap(ImmutableMap.of(someConfigMapKey, "{\"someKey\":\"mountedValue\"}",
+        "someCluster___anotherNamespace", "{\"someKey\":\"anotherValue\"}"));
+    when(upstreamRepo.getConfig()).thenThrow(new RuntimeException("Upstream sync failed"));
+
+    MountedConfigMapConfigRepository repository = new MountedConfigMapConfigRepository(someAppId,
+        someNamespace, someMountDir.toFile(), upstreamRepo);
+
+    assertEquals("mountedValue", repository.getConfig().getProperty("someKey"));
+    assertEquals(ConfigSourceType.CONFIGMAP, repository.getSourceType());
+  }
+
+  @Test
+  public void testLoadFromCompressedMountedConfigMap() throws Exception {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write("{\"someKey\":\"mountedValue\"}".getBytes(StandardCharsets.UTF_8));
+    }
+    //the binaryData of the ConfigMap is mounted as is
+    mountBinaryConfigMap(ImmutableMap.of(someConfigMapKey, compressed.toByteArray()));
+    when(upstreamRepo.getConfig()).thenThrow(new RuntimeException("Upstream sync failed"));
+
+    MountedConfigMapConfigRepository repository = new MountedConfigMapConfigRepository(someAppId,
+        someNamespace, someMountDir.toFile(), upstreamRepo);
+
+    assertEquals("mountedValue", repository.getConfig().getProperty("someKey"));
+  }
+
+  @Test
+  public void testLoadFromUpstream() throws Exception {
+    mountConfigMap(ImmutableMap.of(someConfigMapKey, "{\"someKey\":\"mountedValue\"}"));
+
+    MountedConfigMapConfigRepository repository = new MountedConfigMapConfigRepository(someAppId,
+        someNamespace, someMountDir.toFile(), upstreamRepo);
+
+    assertEquals("someValue", repository.getConfig().getProperty("someKey"));
+    assertEquals(ConfigSourceType.REMOTE, repository.getSourceType());
+  }
+
+  @Test(expected = ApolloConfigException.class)
+  public void testLoadWithoutMountedFileWhenUpstreamUnavailable() throws Exception {
+    mountConfigMap(ImmutableMap.of("someCluster___anotherNamespace", "{\"someKey\":\"anotherValue\"}"));
+    when(upstreamRepo.getConfig()).thenThrow(new RuntimeException("Upstream sync failed"));
+
+    new MountedConfigMapConfigRepository(someAppId, someNamespace, someMountDir.toFile(), upstreamRepo)
+        .getConfig();
+  }
+
+  @Test
+  public void testReloadOnDataSymlinkSwap() throws Exception {
+    mountConfigMap(ImmutableMap.of(someConfigMapKey, "{\"someKey\":\"mountedValue\"}"));
+    when(upstreamRepo.getConfig()).thenThrow(new RuntimeException("Upstream sync failed"));
+    MountedConfigMapConfigRepository repository = new MountedConfigMapConfigRepository(someAppId,
+        someNamespace, someMountDir.toFile(), upstreamRepo);
+    assertEquals("mountedValue", repository.getConfig().getProperty("someKey"));
+    RepositoryChangeListener someListener = mock(RepositoryChangeListener.class);
+    repository.addChangeListener(someListener);
+
+    mountConfigMap(ImmutableMap.of(someConfigMapKey, "{\"someKey\":\"updatedValue\"}"));
+
+    ArgumentCaptor<Properties> captor = ArgumentCaptor.forClass(Properties.class);
+    verify(someListener, timeout(5000)).onRepositoryChange(eq(someAppId), eq(someNamespace),
+        captor.capture());
+    assertEquals("updatedValue", captor.getValue().getProperty("someKey"));
+    assertEquals("updatedValue", repository.getConfig().getProperty("someKey"));
+  }
+
+  @Test
+  public void testIgnoreDataSymlinkSwapWhenUpstreamAvailable() throws Exception {
+    mountConfigMap(ImmutableMap.of(someConfigMapKey, "{\"someKey\":\"mountedValue\"}"));
+    MountedConfigMapConfigRepository repository = new MountedConfigMapConfigRepository(someAppId,
+        someNamespace, someMountDir.toFile(), upstreamRepo);
+    assertEquals("someValue", repository.getConfig().getProperty("someKey"));
+    RepositoryChangeListener someListener = mock(RepositoryChangeListener.class);
+    repository.addChangeListener(someListener);
+
+    mountConfigMap(ImmutableMap.of(someConfigMapKey, "{\"someKey\":\"updatedValue\"}"));
+    TimeUnit.MILLISECONDS.sleep(LocalCacheDirWatcher.DEBOUNCE_IN_MILLIS * 5);
+
+    verify(someListener, never()).onRepositoryChange(anyString(), anyString(), any(Properties.class));
+    assertEquals("someValue", repository.getConfig().getProperty("someKey"));
+  }
+
+  @Test
+  public void testOnUpstreamChange() throws Exception {
+    mountConfigMap(ImmutableMap.of(someConfigMapKey, "{\"someKey\":\"mountedValue\"}"));
+    MountedConfigMapConfigRepository repository = new MountedConfigMapConfigRepository(someAppId,
+        someNamespace, someMountDir.toFile(), upstreamRepo);
+    assertEquals("someValue", repository.getConfig().getProperty("someKey"));
+    RepositoryChangeListener someListener = mock(RepositoryChangeListener.class);
+    repository.addChangeListener(someListener);
+    Properties anotherProperties = new Properties();
+    anotherProperties.setProperty("someKey", "anotherValue");
+
+    repository.onRepositoryChange(someAppId, someNamespace, anotherProperties);
+
+    verify(someListener).onRepositoryChange(someAppId, someNamespace, anotherProperties);
+    assertEquals("anotherValue", repository.getConfig().getProperty("someKey"));
+  }
+
+  /**
+   * Reproduces how the kubelet updates a ConfigMap volume: the files are written into a new
+   * timestamped dir, the ..data symlink is swapped to it atomically, and the old dir is removed. The
+   * files in the mount dir are symlinks through ..data.
+   */
+  private void mountConfigMap(Map<String, String> data) throws IOException {
+    Map<String, byte[]> binaryData = new HashMap<>();
+    for (Map.Entry<String, String> entry : data.entrySet()) {
+      binaryData.put(entry.getKey(), entry.getValue().getBytes(StandardCharsets.UTF_8));
+    }
+    mountBinaryConfigMap(binaryData);
+  }
+
+  private void mountBinaryConfigMap(Map<String, byte[]> data) throws IOException {
+    Path dataDir = someMountDir.resolve("..2026_10_19_08_00_00." + (++someDataVersion));
+    Files.createDirectory(dataDir);
+    for (Map.Entry<String, byte[]> entry : data.entrySet()) {
+      Files.write(dataDir.resolve(entry.getKey()), entry.getValue());
+    }
+    Path dataLink = someMountDir.resolve(MountedConfigMapConfigRepository.DATA_DIR_NAME);
+    Path previousDataDir = Files.exists(dataLink) ? dataLink.toRealPath() : null;
+    Path tmpLink = someMountDir.resolve("..data_tmp");
+    Files.createSymbolicLink(tmpLink, dataDir.getFileName());
+    Files.move(tmpLink, dataLink, StandardCopyOption.ATOMIC_MOVE);
+    for (String key : data.keySet()) {
+      Path file = someMountDir.resolve(key);
+      if (!Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+        Files.createSymbolicLink(file, Paths.get(MountedConfigMapConfigRepository.DATA_DIR_NAME, key));
+      }
+    }
+    if (previousDataDir != null) {
+      recursiveDelete(previousDataDir.toFile());
+    }
+    assertTrue(Files.isSymbolicLink(dataLink));
+  }
+
+  //helper method to clean created files
+  private void recursiveDelete(File file) {
+    if (!file.exists() && !Files.isSymbolicLink(file.toPath())) {
+      return;
+    }
+    if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+      for (File f : file.listFiles()) {
+        recursiveDelete(f);
+      }
+    }
+    file.delete();
+  }
+
+  public static class MockConfigUtil extends ConfigUtil {
+    @Override
+    public String getAppId() {
+      return someAppId;
+    }
+
+    @Override
+    public String getCluster() {
+      return someCluster;
+    }
+  }
+}
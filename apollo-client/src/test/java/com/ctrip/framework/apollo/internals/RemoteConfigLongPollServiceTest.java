@@ -20,10 +20,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -33,6 +36,8 @@ import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
 import com.ctrip.framework.apollo.core.signature.Signature;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.spi.ConfigServiceLoadBalancerClient;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
@@ -144,6 +149,69 @@ public class RemoteConfigLongPollServiceTest {
     verify(someRepository, never()).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
   }
 
+  @Test
+  public void testLongPollNotTrackedByLoadBalancer() throws Exception {
+    ConfigServiceLoadBalancerClient loadBalancerClient = mockLoadBalancerClient();
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
+    final SettableFuture<Boolean> longPollFinished = SettableFuture.create();
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation) {
+        longPollFinished.set(true);
+        return pollResponse;
+      }
+    }).when(httpClient).doGet(any(HttpRequest.class), eq(responseType));
+
+    remoteConfigLongPollService.submit(someAppId, someNamespace, someRepository);
+
+    longPollFinished.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    // held by the server, so neither in flight nor timed
+    verify(loadBalancerClient, never()).onRequestStart(any(ServiceDTO.class));
+    verify(loadBalancerClient, never())
+        .onRequestComplete(any(ServiceDTO.class), anyLong(), anyBoolean());
+  }
+
+  @Test
+  public void testLongPollFailureReportedToLoadBalancer() throws Exception {
+    ConfigServiceLoadBalancerClient loadBalancerClient = mockLoadBalancerClient();
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    final SettableFuture<Boolean> longPollFinished = SettableFuture.create();
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation) {
+        remoteConfigLongPollService.stopLongPollingRefresh();
+        longPollFinished.set(true);
+        throw new ApolloConfigException("some failure");
+      }
+    }).when(httpClient).doGet(any(HttpRequest.class), eq(responseType));
+
+    remoteConfigLongPollService.submit(someAppId, someNamespace, someRepository);
+
+    longPollFinished.get(5000, TimeUnit.MILLISECONDS);
+
+    // reported without the time held, which the load balancer caps to its failure penalty
+    verify(loadBalancerClient, timeout(1000).times(1)).onRequestStart(any(ServiceDTO.class));
+    verify(loadBalancerClient, timeout(1000).times(1))
+        .onRequestComplete(any(ServiceDTO.class), eq(-1L), eq(false));
+  }
+
+  private ConfigServiceLoadBalancerClient mockLoadBalancerClient() {
+    ConfigServiceLoadBalancerClient loadBalancerClient = mock(ConfigServiceLoadBalancerClient.class);
+    when(loadBalancerClient.chooseOneFrom(any())).thenAnswer(
+        invocation -> invocation.<List<ServiceDTO>>getArgument(0).get(0));
+    MockInjector.setInstance(ConfigServiceLoadBalancerClient.class, loadBalancerClient);
+    remoteConfigLongPollService = new RemoteConfigLongPollService();
+    return loadBalancerClient;
+  }
+
   @Test
   public void testSubmitLongPollNamespaceWith200Response() throws Exception {
     RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
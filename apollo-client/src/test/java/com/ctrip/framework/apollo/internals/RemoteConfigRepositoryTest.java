@@ -43,6 +43,7 @@ import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.OrderedProperties;
+import com.ctrip.framework.apollo.util.PersistentHashMap;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
@@ -228,6 +229,24 @@ public class RemoteConfigRepositoryTest {
     assertEquals(value2, result.get(key2));
   }
 
+  @Test
+  public void testMergeConfigurationsKeepPreviousOnes() throws Exception {
+    Map<String, String> previousConfigurations = ImmutableMap.of("key1", "value1", "key2", "value2");
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someAppId,
+        someNamespace);
+
+    Map<String, String> someResult = remoteConfigRepository.mergeConfigurations(
+        previousConfigurations,
+        Lists.newArrayList(new ConfigurationChange("key1", "anotherValue1", "MODIFIED")));
+    Map<String, String> anotherResult = remoteConfigRepository.mergeConfigurations(someResult,
+        Lists.newArrayList(new ConfigurationChange("key2", null, "DELETED"),
+            new ConfigurationChange("key3", "value3", "ADDED")));
+
+    assertTrue(someResult instanceof PersistentHashMap);
+    assertEquals(ImmutableMap.of("key1", "anotherValue1", "key2", "value2"), someResult);
+    assertEquals(ImmutableMap.of("key1", "anotherValue1", "key3", "value3"), anotherResult);
+  }
+
   @Test
   public void testMergeConfigurationWithPreviousConfigurationsIsNULL() throws Exception {
     String key1 = "key1";
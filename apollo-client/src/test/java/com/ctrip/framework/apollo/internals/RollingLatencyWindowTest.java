@@ -0,0 +1,60 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RollingLatencyWindowTest {
+
+  @Test
+  public void testPercentile() throws Exception {
+    RollingLatencyWindow window = new RollingLatencyWindow(100);
+
+    assertEquals(-1, window.percentile(0.95));
+
+    for (int i = 1; i <= 100; i++) {
+      window.record(i);
+    }
+
+    assertEquals(100, window.size());
+    assertEquals(95, window.percentile(0.95));
+    assertEquals(50, window.percentile(0.5));
+    assertEquals(100, window.percentile(1));
+  }
+
+  @Test
+  public void testOldSamplesAreEvicted() throws Exception {
+    RollingLatencyWindow window = new RollingLatencyWindow(10);
+
+    for (int i = 0; i < 10; i++) {
+      window.record(10_000);
+    }
+    for (int i = 0; i < 10; i++) {
+      window.record(1);
+    }
+
+    assertEquals(10, window.size());
+    assertEquals(1, window.percentile(0.95));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCapacity() throws Exception {
+    new RollingLatencyWindow(0);
+  }
+}
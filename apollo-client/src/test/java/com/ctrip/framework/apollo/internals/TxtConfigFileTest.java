@@ -21,6 +21,10 @@ import static org.mockito.Mockito.when;
 
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
+import com.google.common.io.ByteStreams;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Properties;
 import org.junit.Before;
 import org.junit.Test;
@@ -59,4 +63,56 @@ public class TxtConfigFileTest {
     assertTrue(configFile.hasContent());
     assertEquals(someValue, configFile.getContent());
   }
+
+  @Test
+  public void testGetContentBytes() throws Exception {
+    Properties someProperties = new Properties();
+    String someValue = "someValue\n中文";
+    someProperties.setProperty(ConfigConsts.CONFIG_FILE_CONTENT_KEY, someValue);
+
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    TxtConfigFile configFile = new TxtConfigFile(someAppId, someNamespace, configRepository);
+    ByteBuffer contentBytes = configFile.getContentBytes();
+
+    assertTrue(contentBytes.isReadOnly());
+    assertEquals(ByteBuffer.wrap(someValue.getBytes(StandardCharsets.UTF_8)), contentBytes);
+    try (InputStream inputStream = configFile.getContentAsStream()) {
+      assertArrayEquals(someValue.getBytes(StandardCharsets.UTF_8), ByteStreams.toByteArray(inputStream));
+    }
+    // reading one buffer doesn't affect the others
+    contentBytes.get();
+    assertEquals(someValue.getBytes(StandardCharsets.UTF_8).length, configFile.getContentBytes().remaining());
+  }
+
+  @Test
+  public void testGetContentBytesAfterChange() throws Exception {
+    Properties someProperties = new Properties();
+    someProperties.setProperty(ConfigConsts.CONFIG_FILE_CONTENT_KEY, "someValue");
+    Properties anotherProperties = new Properties();
+    String anotherValue = "anotherValue";
+    anotherProperties.setProperty(ConfigConsts.CONFIG_FILE_CONTENT_KEY, anotherValue);
+
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    TxtConfigFile configFile = new TxtConfigFile(someAppId, someNamespace, configRepository);
+    configFile.getContentBytes();
+
+    configFile.onRepositoryChange(someAppId, someNamespace, anotherProperties);
+
+    assertEquals(ByteBuffer.wrap(anotherValue.getBytes(StandardCharsets.UTF_8)), configFile.getContentBytes());
+    try (InputStream inputStream = configFile.getContentAsStream()) {
+      assertArrayEquals(anotherValue.getBytes(StandardCharsets.UTF_8), ByteStreams.toByteArray(inputStream));
+    }
+  }
+
+  @Test
+  public void testGetContentBytesWhenHasNoContent() throws Exception {
+    when(configRepository.getConfig()).thenReturn(null);
+
+    TxtConfigFile configFile = new TxtConfigFile(someAppId, someNamespace, configRepository);
+
+    assertNull(configFile.getContentBytes());
+    assertNull(configFile.getContentAsStream());
+  }
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.kubernetes;
+
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
+import io.kubernetes.client.openapi.models.V1ConfigMapList;
+import io.kubernetes.client.openapi.models.V1ListMeta;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Status;
+import io.kubernetes.client.util.Watch;
+import io.kubernetes.client.util.Watchable;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.verification.VerificationMode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class KubernetesConfigMapCacheTest {
+    private static final String someK8sNamespace = "default";
+    private static final String someConfigMapName = "apollo-configcache-someApp";
+    private static final String someKey = "someCluster+application";
+
+    private CoreV1Api coreV1Api;
+    // the watches opened, which are fed with the events by the tests
+    private BlockingQueue<FakeWatch> watches;
+    // the resourceVersions the watches are opened from
+    private List<String> watchedResourceVersions;
+    private KubernetesConfigMapCache configMapCache;
+
+    @Before
+    public void setUp() {
+        coreV1Api = mock(CoreV1Api.class);
+        watches = new LinkedBlockingQueue<>();
+        watchedResourceVersions = new CopyOnWriteArrayList<>();
+        configMapCache = new KubernetesConfigMapCache(coreV1Api, coreV1Api) {
+            @Override
+            Watchable<V1ConfigMap> watch(String k8sNamespace, String name, String resourceVersion) {
+                watchedResourceVersions.add(resourceVersion);
+                FakeWatch watch = new FakeWatch();
+                watches.add(watch);
+                return watch;
+            }
+        };
+    }
+
+    @Test
+    public void testGetDataListedOnce() throws Exception {
+        mockList("1", configMap("1", "someValue"));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("someValue", configMapCache.getData(someK8sNamespace, someConfigMapName).get(someKey));
+        }
+
+        verifyList(times(1));
+        verify(coreV1Api, never()).readNamespacedConfigMap(any(), any(), any());
+        nextWatch();
+        assertEquals(Collections.singletonList("1"), watchedResourceVersions);
+    }
+
+    @Test
+    public void testGetDataNotListed() throws Exception {
+        when(coreV1Api.listNamespacedConfigMap(eq(someK8sNamespace), isNull(), isNull(), isNull(),
+                eq("metadata.name=" + someConfigMapName), isNull(), isNull(), isNull(), isNull(), isNull(), isNull()))
+                .thenThrow(new ApiException(403, "forbidden"));
+
+        assertNull(configMapCache.getData(someK8sNamespace, someConfigMapName));
+        assertNull(configMapCache.getData(someK8sNamespace, someConfigMapName));
+
+        // listed again on the next read, and not watched
+        verifyList(times(2));
+        assertTrue(watchedResourceVersions.isEmpty());
+    }
+
+    @Test
+    public void testChangesPushedByWatch() throws Exception {
+        mockList("1", configMap("1", "someValue"));
+        BlockingQueue<Map<String, String>> changes = new LinkedBlockingQueue<>();
+        configMapCache.addChangeListener(someK8sNamespace, someConfigMapName, changes::add);
+        FakeWatch watch = nextWatch();
+
+        watch.send("MODIFIED", configMap("2", "anotherValue"));
+
+        assertEquals("anotherValue", changes.poll(5, TimeUnit.SECONDS).get(someKey));
+        assertEquals("anotherValue", configMapCache.getData(someK8sNamespace, someConfigMapName).get(someKey));
+
+        watch.send("DELETED", configMap("3", "anotherValue"));
+
+        assertTrue(changes.poll(5, TimeUnit.SECONDS).isEmpty());
+        verifyList(times(1));
+    }
+
+    @Test
+    public void testWatchResumedFromLastResourceVersion() throws Exception {
+        mockList("1", configMap("1", "someValue"));
+        configMapCache.getData(someK8sNamespace, someConfigMapName);
+        FakeWatch watch = nextWatch();
+
+        watch.send("MODIFIED", configMap("2", "anotherValue"));
+        watch.sendBookmark("5");
+        // closed by the API server once timed out
+        watch.end();
+
+        nextWatch();
+        assertEquals(Arrays.asList("1", "5"), watchedResourceVersions);
+        verifyList(times(1));
+        assertEquals("anotherValue", configMapCache.getData(someK8sNamespace, someConfigMapName).get(someKey));
+    }
+
+    @Test
+    public void testWatchClosedRightAwayResumedAfterDelay() throws Exception {
+        mockList("1", configMap("1", "someValue"));
+        configMapCache.getData(someK8sNamespace, someConfigMapName);
+
+        FakeWatch watch = nextWatch();
+        long closedAt = System.nanoTime();
+        // closed by the API server right away
+        watch.end();
+
+        nextWatch();
+        // resumed after at least half of the minimum retry interval
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - closedAt) >= 500);
+        assertEquals(Arrays.asList("1", "1"), watchedResourceVersions);
+    }
+
+    @Test
+    public void testListedAgainOnceWatchExpired() throws Exception {
+        mockList("1", configMap("1", "someValue"));
+        BlockingQueue<Map<String, String>> changes = new LinkedBlockingQueue<>();
+        configMapCache.addChangeListener(someK8sNamespace, someConfigMapName, changes::add);
+        FakeWatch watch = nextWatch();
+        // changed while the resourceVersion expired
+        mockList("7", configMap("6", "yetAnotherValue"));
+
+        watch.sendError(410, "too old resource version: 1 (6)");
+
+        assertEquals("yetAnotherValue", changes.poll(5, TimeUnit.SECONDS).get(someKey));
+        nextWatch();
+        verifyList(times(2));
+        assertEquals(Arrays.asList("1", "7"), watchedResourceVersions);
+    }
+
+    private FakeWatch nextWatch() throws InterruptedException {
+        FakeWatch watch = watches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(watch);
+        return watch;
+    }
+
+    private void mockList(String resourceVersion, V1ConfigMap... items) throws ApiException {
+        V1ConfigMapList list = new V1ConfigMapList().metadata(new V1ListMeta().resourceVersion(resourceVersion));
+        for (V1ConfigMap item : items) {
+            list.addItemsItem(item);
+        }
+        when(coreV1Api.listNamespacedConfigMap(eq(someK8sNamespace), isNull(), isNull(), isNull(),
+                eq("metadata.name=" + someConfigMapName), isNull(), isNull(), isNull(), isNull(), isNull(), isNull()))
+                .thenReturn(list);
+    }
+
+    private void verifyList(VerificationMode mode) throws ApiException {
+        verify(coreV1Api, mode).listNamespacedConfigMap(eq(someK8sNamespace), isNull(), isNull(), isNull(),
+                eq("metadata.name=" + someConfigMapName), isNull(), isNull(), isNull(), isNull(), isNull(), isNull());
+    }
+
+    private static V1ConfigMap configMap(String resourceVersion, String value) {
+        return new V1ConfigMap()
+                .metadata(new V1ObjectMeta().name(someConfigMapName).namespace(someK8sNamespace)
+                        .resourceVersion(resourceVersion))
+                .data(Collections.singletonMap(someKey, value));
+    }
+
+    /**
+     * a watch stream fed by the tests, which blocks until the next event like the real one
+     */
+    private static class FakeWatch implements Watchable<V1ConfigMap> {
+        private static final Watch.Response<V1ConfigMap> END = new Watch.Response<>("END", (V1ConfigMap) null);
+        private final BlockingQueue<Watch.Response<V1ConfigMap>> events = new LinkedBlockingQueue<>();
+        private Watch.Response<V1ConfigMap> next;
+
+        void send(String type, V1ConfigMap configMap) {
+            events.add(new Watch.Response<>(type, configMap));
+        }
+
+        void sendBookmark(String resourceVersion) {
+            events.add(new Watch.Response<>("BOOKMARK",
+                    new V1ConfigMap().metadata(new V1ObjectMeta().resourceVersion(resourceVersion))));
+        }
+
+        void sendError(int code, String message) {
+            events.add(new Watch.Response<>("ERROR", new V1Status().code(code).message(message)));
+        }
+
+        void end() {
+            events.add(END);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = events.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return next != END;
+        }
+
+        @Override
+        public Watch.Response<V1ConfigMap> next() {
+            hasNext();
+            Watch.Response<V1ConfigMap> response = next;
+            next = null;
+            return response;
+        }
+
+        @Override
+        public Iterator<Watch.Response<V1ConfigMap>> iterator() {
+            return this;
+        }
+
+        @Override
+        public void close() {
+            end();
+        }
+    }
+}
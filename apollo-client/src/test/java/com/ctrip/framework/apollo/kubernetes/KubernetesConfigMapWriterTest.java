@@ -0,0 +1,166 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.kubernetes;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class KubernetesConfigMapWriterTest {
+    private static final String someK8sNamespace = "default";
+    private static final String someConfigMapName = "apollo-configcache-someApp";
+    private static final String anotherConfigMapName = "apollo-configcache-anotherApp";
+
+    private KubernetesManager kubernetesManager;
+
+    @Before
+    public void setUp() throws Exception {
+        kubernetesManager = mock(KubernetesManager.class);
+        doAnswer(invocation -> true).when(kubernetesManager).patchConfigMap(anyString(), anyString(), anyMap());
+    }
+
+    @Test
+    public void testConcurrentWritesCoalescedInOnePatch() throws Exception {
+        KubernetesConfigMapWriter writer = new KubernetesConfigMapWriter(kubernetesManager, 500);
+        int writers = 20;
+        ExecutorService executorService = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(writers);
+        for (int i = 0; i < writers; i++) {
+            String key = "someCluster+namespace" + i;
+            executorService.submit(() -> {
+                try {
+                    start.await();
+                    writer.write(someK8sNamespace, someConfigMapName, key, "{\"someKey\":\"someValue\"}");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executorService.shutdown();
+
+        // the invocation is recorded before the answer runs, so the data is captured from the invocation
+        ArgumentCaptor<Map<String, String>> data = ArgumentCaptor.forClass(Map.class);
+        verify(kubernetesManager, timeout(5000).times(1)).patchConfigMap(anyString(), anyString(), data.capture());
+        assertEquals(writers, data.getValue().size());
+        for (int i = 0; i < writers; i++) {
+            assertEquals("{\"someKey\":\"someValue\"}", data.getValue().get("someCluster+namespace" + i));
+        }
+    }
+
+    @Test
+    public void testLatestValueOfKeyWrittenInBatch() throws Exception {
+        KubernetesConfigMapWriter writer = new KubernetesConfigMapWriter(kubernetesManager, 200);
+
+        writer.write(someK8sNamespace, someConfigMapName, "someKey", "someValue");
+        writer.write(someK8sNamespace, someConfigMapName, "someKey", "anotherValue");
+
+        verify(kubernetesManager, timeout(5000).times(1))
+                .patchConfigMap(someK8sNamespace, someConfigMapName, Collections.singletonMap("someKey", "anotherValue"));
+    }
+
+    @Test
+    public void testConfigMapsPatchedSeparately() throws Exception {
+        KubernetesConfigMapWriter writer = new KubernetesConfigMapWriter(kubernetesManager, 200);
+
+        writer.write(someK8sNamespace, someConfigMapName, "someKey", "someValue");
+        writer.write(someK8sNamespace, anotherConfigMapName, "someKey", "anotherValue");
+
+        verify(kubernetesManager, timeout(5000).times(1))
+                .patchConfigMap(someK8sNamespace, someConfigMapName, Collections.singletonMap("someKey", "someValue"));
+        verify(kubernetesManager, timeout(5000).times(1))
+                .patchConfigMap(someK8sNamespace, anotherConfigMapName, Collections.singletonMap("someKey", "anotherValue"));
+    }
+
+    @Test
+    public void testFailedPatchRetried() throws Exception {
+        KubernetesConfigMapWriter writer = new KubernetesConfigMapWriter(kubernetesManager, 0);
+        doThrow(new RuntimeException("patch failed")).doThrow(new RuntimeException("patch failed"))
+                .doAnswer(invocation -> true)
+                .when(kubernetesManager).patchConfigMap(anyString(), anyString(), anyMap());
+
+        writer.write(someK8sNamespace, someConfigMapName, "someKey", "someValue");
+
+        verify(kubernetesManager, timeout(5000).times(3))
+                .patchConfigMap(someK8sNamespace, someConfigMapName, Collections.singletonMap("someKey", "someValue"));
+        verify(kubernetesManager, after(1000).times(3)).patchConfigMap(anyString(), anyString(), anyMap());
+    }
+
+    @Test
+    public void testRetryKeepsNewerValue() throws Exception {
+        KubernetesConfigMapWriter writer = new KubernetesConfigMapWriter(kubernetesManager, 0);
+        CountDownLatch patchStarted = new CountDownLatch(1);
+        CountDownLatch patchReleased = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            patchStarted.countDown();
+            patchReleased.await(5, TimeUnit.SECONDS);
+            throw new RuntimeException("patch failed");
+        }).doAnswer(invocation -> true)
+                .when(kubernetesManager).patchConfigMap(anyString(), anyString(), anyMap());
+
+        writer.write(someK8sNamespace, someConfigMapName, "someKey", "someValue");
+        writer.write(someK8sNamespace, someConfigMapName, "anotherKey", "someValue");
+        assertTrue(patchStarted.await(5, TimeUnit.SECONDS));
+        // written while the failing patch is in flight
+        writer.write(someK8sNamespace, someConfigMapName, "someKey", "anotherValue");
+        patchReleased.countDown();
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("someKey", "anotherValue");
+        expected.put("anotherKey", "someValue");
+        verify(kubernetesManager, timeout(5000).times(1))
+                .patchConfigMap(someK8sNamespace, someConfigMapName, expected);
+    }
+
+    @Test
+    public void testWriteAfterFlushStartsNewBatch() throws Exception {
+        KubernetesConfigMapWriter writer = new KubernetesConfigMapWriter(kubernetesManager, 0);
+        doThrow(new RuntimeException("patch failed")).doAnswer(invocation -> true)
+                .when(kubernetesManager).patchConfigMap(anyString(), anyString(), anyMap());
+
+        writer.write(someK8sNamespace, someConfigMapName, "someKey", "someValue");
+        verify(kubernetesManager, timeout(5000).times(1)).patchConfigMap(anyString(), anyString(), anyMap());
+        // a failed patch does not block the subsequent writes
+        writer.write(someK8sNamespace, someConfigMapName, "someKey", "anotherValue");
+
+        verify(kubernetesManager, after(500).times(2)).patchConfigMap(anyString(), anyString(), anyMap());
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.kubernetes;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.kubernetes.client.custom.V1Patch;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.ApiResponse;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Writes and reads the config maps of the cache through a stubbed API server, which keeps the config
+ * maps in memory and rejects the ones exceeding the size limit like the real one.
+ */
+public class KubernetesManagerShardingTest {
+    private static final String someK8sNamespace = "default";
+    private static final String someConfigMapName = "apollo-configcache-someApp";
+    private static final Gson GSON = new Gson();
+
+    // name -> the data and binaryData (base64) of the config map
+    private Map<String, Map<String, String>> configMapData;
+    private Map<String, Map<String, String>> configMapBinaryData;
+    private CoreV1Api coreV1Api;
+
+    @Before
+    public void setUp() throws Exception {
+        configMapData = new ConcurrentHashMap<>();
+        configMapBinaryData = new ConcurrentHashMap<>();
+        coreV1Api = mock(CoreV1Api.class);
+        ApiClient apiClient = mock(ApiClient.class);
+        when(coreV1Api.getApiClient()).thenReturn(apiClient);
+        when(apiClient.getHttpClient()).thenReturn(new OkHttpClient());
+        when(coreV1Api.patchNamespacedConfigMapCall(anyString(), eq(someK8sNamespace), any(V1Patch.class),
+                isNull(), isNull(), isNull(), isNull(), isNull(), isNull()))
+                .thenAnswer(invocation -> {
+                    V1Patch patch = invocation.getArgument(2);
+                    Request request = new Request.Builder()
+                            .url("http://localhost/api/v1/namespaces/" + someK8sNamespace + "/configmaps/"
+                                    + invocation.getArgument(0))
+                            .patch(RequestBody.create(patch.getValue(), MediaType.parse(V1Patch.PATCH_FORMAT_JSON_PATCH)))
+                            .build();
+                    return new OkHttpClient().newCall(request);
+                });
+        when(apiClient.execute(any(Call.class), any(Type.class)))
+                .thenAnswer(invocation -> applyMergePatch(invocation.getArgument(0)));
+        when(coreV1Api.createNamespacedConfigMap(eq(someK8sNamespace), any(V1ConfigMap.class),
+                isNull(), isNull(), isNull(), isNull()))
+                .thenAnswer(invocation -> {
+                    V1ConfigMap configMap = invocation.getArgument(1);
+                    configMapData.put(configMap.getMetadata().getName(), new HashMap<>());
+                    configMapBinaryData.put(configMap.getMetadata().getName(), new HashMap<>());
+                    return configMap;
+                });
+        when(coreV1Api.readNamespacedConfigMap(anyString(), eq(someK8sNamespace), isNull()))
+                .thenAnswer(invocation -> readConfigMap(invocation.getArgument(0)));
+        // created by the repository
+        coreV1Api.createNamespacedConfigMap(someK8sNamespace,
+                new V1ConfigMap().metadata(new V1ObjectMeta().name(someConfigMapName)), null, null, null, null);
+    }
+
+    @Test
+    public void testLargeValueCompressedIntoBinaryData() throws Exception {
+        KubernetesManager kubernetesManager = newKubernetesManager(1);
+        String someLargeValue = json(2000, 20, new Random(0));
+        Map<String, String> data = new LinkedHashMap<>();
+        data.put("someCluster___someNamespace", someLargeValue);
+        data.put("someCluster___anotherNamespace", "{\"someKey\":\"someValue\"}");
+
+        assertTrue(kubernetesManager.patchConfigMap(someK8sNamespace, someConfigMapName, data));
+
+        Map<String, String> storedData = configMapData.get(someConfigMapName);
+        Map<String, String> storedBinaryData = configMapBinaryData.get(someConfigMapName);
+        assertFalse(storedData.containsKey("someCluster___someNamespace"));
+        assertTrue(Base64.getDecoder().decode(storedBinaryData.get("someCluster___someNamespace")).length
+                < someLargeValue.length() / 2);
+        assertEquals("{\"someKey\":\"someValue\"}", storedData.get("someCluster___anotherNamespace"));
+        assertFalse(storedBinaryData.containsKey("someCluster___anotherNamespace"));
+        assertEquals(someLargeValue, kubernetesManager.getValueFromConfigMap(someK8sNamespace, someConfigMapName,
+                "someCluster___someNamespace"));
+    }
+
+    @Test
+    public void testValueMovedBetweenDataAndBinaryData() throws Exception {
+        KubernetesManager kubernetesManager = newKubernetesManager(1);
+        String someKey = "someCluster___someNamespace";
+        String someLargeValue = json(2000, 20, new Random(0));
+
+        kubernetesManager.patchConfigMap(someK8sNamespace, someConfigMapName,
+                Collections.singletonMap(someKey, someLargeValue));
+        kubernetesManager.patchConfigMap(someK8sNamespace, someConfigMapName,
+                Collections.singletonMap(someKey, "{}"));
+
+        assertEquals("{}", configMapData.get(someConfigMapName).get(someKey));
+        assertFalse(configMapBinaryData.get(someConfigMapName).containsKey(someKey));
+        assertEquals("{}", kubernetesManager.getValueFromConfigMap(someK8sNamespace, someConfigMapName, someKey));
+    }
+
+    @Test
+    public void testRejectedBySizeLimitWithoutShards() throws Exception {
+        KubernetesManager kubernetesManager = newKubernetesManager(1);
+
+        try {
+            kubernetesManager.patchConfigMap(someK8sNamespace, someConfigMapName, namespaces(8));
+            fail();
+        } catch (ApiException e) {
+            assertEquals(422, e.getCode());
+        }
+    }
+
+    @Test
+    public void testShardedAcrossConfigMaps() throws Exception {
+        int someShards = 8;
+        KubernetesManager kubernetesManager = newKubernetesManager(someShards);
+        Map<String, String> namespaces = namespaces(8);
+
+        assertTrue(kubernetesManager.patchConfigMap(someK8sNamespace, someConfigMapName, namespaces));
+
+        assertEquals(String.valueOf(someShards),
+                configMapData.get(someConfigMapName).get(ConfigMapPayloads.SHARDS_INDEX_KEY));
+        assertEquals(Collections.singleton(ConfigMapPayloads.SHARDS_INDEX_KEY),
+                configMapData.get(someConfigMapName).keySet());
+        assertTrue(configMapData.size() > 2);
+        for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+            String shardName = ConfigMapPayloads.shardName(someConfigMapName, namespace.getKey(), someShards);
+            assertTrue(configMapBinaryData.get(shardName).containsKey(namespace.getKey()));
+            assertEquals(namespace.getValue(), kubernetesManager.getValueFromConfigMap(someK8sNamespace,
+                    someConfigMapName, namespace.getKey()));
+        }
+    }
+
+    @Test
+    public void testReadFollowsShardsIndex() throws Exception {
+        Map<String, String> namespaces = namespaces(8);
+        newKubernetesManager(8).patchConfigMap(someK8sNamespace, someConfigMapName, namespaces);
+
+        // configured with another number of shards
+        KubernetesManager reader = newKubernetesManager(1);
+
+        for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+            assertEquals(namespace.getValue(), reader.getValueFromConfigMap(someK8sNamespace, someConfigMapName,
+                    namespace.getKey()));
+        }
+    }
+
+    @Test
+    public void testShardsIndexRemovedOnceNotSharded() throws Exception {
+        String someKey = "someCluster___someNamespace";
+        newKubernetesManager(4).patchConfigMap(someK8sNamespace, someConfigMapName,
+                Collections.singletonMap(someKey, "{\"someKey\":\"someValue\"}"));
+
+        KubernetesManager kubernetesManager = newKubernetesManager(1);
+        kubernetesManager.patchConfigMap(someK8sNamespace, someConfigMapName,
+                Collections.singletonMap(someKey, "{\"someKey\":\"anotherValue\"}"));
+
+        assertNull(configMapData.get(someConfigMapName).get(ConfigMapPayloads.SHARDS_INDEX_KEY));
+        assertEquals("{\"someKey\":\"anotherValue\"}",
+                kubernetesManager.getValueFromConfigMap(someK8sNamespace, someConfigMapName, someKey));
+    }
+
+    private KubernetesManager newKubernetesManager(int shards) {
+        // the config maps are not listed by the stub, so they are read from the API server each time
+        return new KubernetesManager(coreV1Api, null, 3, new KubernetesConfigMapCache(coreV1Api, coreV1Api), shards);
+    }
+
+    /**
+     * @return the namespaces of about 200KB each, which are hardly compressible
+     */
+    private static Map<String, String> namespaces(int count) {
+        Random random = new Random(0);
+        Map<String, String> namespaces = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            namespaces.put("someCluster___namespace" + i, json(2500, 60, random));
+        }
+        return namespaces;
+    }
+
+    private static String json(int keys, int valueLength, Random random) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        char[] value = new char[valueLength];
+        for (int i = 0; i < keys; i++) {
+            for (int j = 0; j < valueLength; j++) {
+                value[j] = (char) ('a' + random.nextInt(26));
+            }
+            properties.put("some.key." + i, new String(value));
+        }
+        return GSON.toJson(properties);
+    }
+
+    private ApiResponse<V1ConfigMap> applyMergePatch(Call call) throws Exception {
+        String url = call.request().url().toString();
+        String name = url.substring(url.lastIndexOf('/') + 1);
+        Buffer buffer = new Buffer();
+        call.request().body().writeTo(buffer);
+        assertEquals(V1Patch.PATCH_FORMAT_JSON_MERGE_PATCH, call.request().body().contentType().toString());
+        JsonObject patch = GSON.fromJson(buffer.readUtf8(), JsonObject.class);
+
+        Map<String, String> data = configMapData.get(name);
+        Map<String, String> binaryData = configMapBinaryData.get(name);
+        if (data == null) {
+            throw new ApiException(404, "configmaps \"" + name + "\" not found");
+        }
+        Map<String, String> newData = merge(data, patch.getAsJsonObject("data"));
+        Map<String, String> newBinaryData = merge(binaryData, patch.getAsJsonObject("binaryData"));
+        long size = 0;
+        for (Map<String, String> values : Arrays.asList(newData, newBinaryData)) {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                size += entry.getKey().length() + entry.getValue().length();
+            }
+        }
+        if (size > ConfigMapPayloads.MAX_CONFIG_MAP_BYTES) {
+            throw new ApiException(422, "ConfigMap \"" + name + "\" is invalid: []: Too long: must have at most "
+                    + ConfigMapPayloads.MAX_CONFIG_MAP_BYTES + " bytes");
+        }
+        configMapData.put(name, newData);
+        configMapBinaryData.put(name, newBinaryData);
+        return new ApiResponse<>(200, Collections.emptyMap(), readConfigMap(name));
+    }
+
+    private static Map<String, String> merge(Map<String, String> values, JsonObject patch) {
+        Map<String, String> merged = new HashMap<>(values);
+        if (patch == null) {
+            return merged;
+        }
+        for (Map.Entry<String, JsonElement> entry : patch.entrySet()) {
+            if (entry.getValue().isJsonNull()) {
+                merged.remove(entry.getKey());
+            } else {
+                merged.put(entry.getKey(), entry.getValue().getAsString());
+            }
+        }
+        return merged;
+    }
+
+    private V1ConfigMap readConfigMap(String name) throws ApiException {
+        Map<String, String> data = configMapData.get(name);
+        if (data == null) {
+            throw new ApiException(404, "configmaps \"" + name + "\" not found");
+        }
+        Map<String, byte[]> binaryData = new HashMap<>();
+        configMapBinaryData.get(name).forEach((key, value) -> binaryData.put(key, Base64.getDecoder().decode(value)));
+        return new V1ConfigMap()
+                .metadata(new V1ObjectMeta().name(name).namespace(someK8sNamespace))
+                .data(new HashMap<>(data))
+                .binaryData(binaryData);
+    }
+}
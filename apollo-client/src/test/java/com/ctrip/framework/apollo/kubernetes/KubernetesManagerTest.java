@@ -17,20 +17,36 @@
 package com.ctrip.framework.apollo.kubernetes;
 
 import com.ctrip.framework.apollo.build.MockInjector;
+import io.kubernetes.client.custom.V1Patch;
+import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.ApiResponse;
 import io.kubernetes.client.openapi.apis.CoreV1Api;
 import io.kubernetes.client.openapi.models.V1ConfigMap;
+import io.kubernetes.client.openapi.models.V1ConfigMapList;
+import io.kubernetes.client.openapi.models.V1ListMeta;
 import io.kubernetes.client.openapi.models.V1ObjectMeta;
 import io.kubernetes.client.openapi.models.V1Pod;
 import io.kubernetes.client.openapi.models.V1PodList;
+import io.kubernetes.client.util.Watchable;
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.verification.VerificationMode;
 
+import java.lang.reflect.Type;
 import java.time.OffsetDateTime;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
@@ -43,6 +59,7 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -149,6 +166,37 @@ public class KubernetesManagerTest {
         assertNull(actualValue);
     }
 
+    /**
+     * the config map is listed once, and then served by the cache which is updated by watching it
+     */
+    @Test
+    public void testGetValueFromConfigMapServedByCache() throws Exception {
+        String namespace = "default";
+        String name = "testConfigMap";
+        V1ConfigMap configMap = new V1ConfigMap()
+                .metadata(new V1ObjectMeta().name(name).namespace(namespace).resourceVersion("1"))
+                .data(Collections.singletonMap("key", "value"));
+        when(coreV1Api.listNamespacedConfigMap(eq(namespace), isNull(), isNull(), isNull(), eq("metadata.name=" + name),
+                isNull(), isNull(), isNull(), isNull(), isNull(), isNull()))
+                .thenReturn(new V1ConfigMapList().metadata(new V1ListMeta().resourceVersion("1")).addItemsItem(configMap));
+        kubernetesManager = new KubernetesManager(coreV1Api, "localPodName", 3,
+                new KubernetesConfigMapCache(coreV1Api, coreV1Api) {
+                    @Override
+                    Watchable<V1ConfigMap> watch(String k8sNamespace, String name, String resourceVersion)
+                            throws ApiException {
+                        throw new ApiException("watch not supported");
+                    }
+                }, 1);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("value", kubernetesManager.getValueFromConfigMap(namespace, name, "key"));
+        }
+
+        verify(coreV1Api, times(1)).listNamespacedConfigMap(eq(namespace), isNull(), isNull(), isNull(),
+                eq("metadata.name=" + name), isNull(), isNull(), isNull(), isNull(), isNull(), isNull());
+        verify(coreV1Api, never()).readNamespacedConfigMap(name, namespace, null);
+    }
+
     /**
      * 测试updateConfigMap成功的情况
      */
@@ -193,6 +241,161 @@ public class KubernetesManagerTest {
                 , null, null);
     }
 
+    /**
+     * the write pod election is reused by the subsequent updates until it expires
+     */
+    @Test
+    public void testUpdateConfigMapReusesWritePodElection() throws Exception {
+        String namespace = "default";
+        String name = "testConfigMap";
+        mockRunningPods(namespace, "localPodName");
+        V1ConfigMap configMap = new V1ConfigMap().metadata(new V1ObjectMeta().name(name).namespace(namespace));
+        when(coreV1Api.readNamespacedConfigMap(name, namespace, null)).thenReturn(configMap);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(kubernetesManager.updateConfigMap(namespace, name, Collections.singletonMap("key", "value" + i)));
+        }
+
+        verify(coreV1Api, times(1)).readNamespacedPod("localPodName", namespace, null);
+        verifyListRunningPods(namespace, times(1));
+        verify(coreV1Api, times(5)).replaceNamespacedConfigMap(eq(name), eq(namespace), any(V1ConfigMap.class),
+                isNull(), isNull(), isNull(), isNull());
+    }
+
+    @Test
+    public void testUpdateConfigMapElectsWritePodAgainOnceExpired() throws Exception {
+        String namespace = "default";
+        String name = "testConfigMap";
+        kubernetesManager = new KubernetesManager(coreV1Api, "localPodName", 3, 0);
+        mockRunningPods(namespace, "localPodName");
+        V1ConfigMap configMap = new V1ConfigMap().metadata(new V1ObjectMeta().name(name).namespace(namespace));
+        when(coreV1Api.readNamespacedConfigMap(name, namespace, null)).thenReturn(configMap);
+
+        kubernetesManager.updateConfigMap(namespace, name, Collections.singletonMap("key", "value"));
+        kubernetesManager.updateConfigMap(namespace, name, Collections.singletonMap("key", "anotherValue"));
+
+        verifyListRunningPods(namespace, times(2));
+    }
+
+    @Test
+    public void testUpdateConfigMapSkippedByNotWritePod() throws Exception {
+        String namespace = "default";
+        String name = "testConfigMap";
+        kubernetesManager = new KubernetesManager(coreV1Api, "localPodName", 1);
+        mockRunningPods(namespace, "olderPodName", "localPodName");
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(kubernetesManager.updateConfigMap(namespace, name, Collections.singletonMap("key", "value" + i)));
+        }
+
+        verifyListRunningPods(namespace, times(1));
+        verify(coreV1Api, never()).readNamespacedConfigMap(name, namespace, null);
+    }
+
+    @Test
+    public void testUpdateConfigMapElectsWritePodAgainAfterFailure() throws Exception {
+        String namespace = "default";
+        String name = "testConfigMap";
+        mockRunningPods(namespace, "localPodName");
+        when(coreV1Api.listNamespacedPod(eq(namespace), isNull(), isNull(), isNull(), eq("status.phase=Running"),
+                eq("app=app"), eq(100), isNull(), isNull(), isNull(), isNull()))
+                .thenThrow(new ApiException("list pods failed"));
+        V1ConfigMap configMap = new V1ConfigMap().metadata(new V1ObjectMeta().name(name).namespace(namespace));
+        when(coreV1Api.readNamespacedConfigMap(name, namespace, null)).thenReturn(configMap);
+
+        // the pods are assumed to be writable if the election fails
+        assertTrue(kubernetesManager.updateConfigMap(namespace, name, Collections.singletonMap("key", "value")));
+        assertTrue(kubernetesManager.updateConfigMap(namespace, name, Collections.singletonMap("key", "anotherValue")));
+
+        verifyListRunningPods(namespace, times(2));
+        verify(coreV1Api, times(2)).replaceNamespacedConfigMap(eq(name), eq(namespace), any(V1ConfigMap.class),
+                isNull(), isNull(), isNull(), isNull());
+    }
+
+    /**
+     * mock the running pods of the app, ordered by creation time
+     */
+    private void mockRunningPods(String namespace, String... podNames) throws ApiException {
+        V1PodList v1PodList = new V1PodList();
+        OffsetDateTime creationTimestamp = OffsetDateTime.now().minusHours(1);
+        for (String podName : podNames) {
+            V1ObjectMeta metadata = new V1ObjectMeta()
+                    .name(podName)
+                    .creationTimestamp(creationTimestamp)
+                    .labels(Collections.singletonMap("app", "app"));
+            v1PodList.addItemsItem(new V1Pod().metadata(metadata));
+            if ("localPodName".equals(podName)) {
+                when(coreV1Api.readNamespacedPod(podName, namespace, null)).thenReturn(new V1Pod().metadata(metadata));
+            }
+            creationTimestamp = creationTimestamp.plusMinutes(1);
+        }
+        when(coreV1Api.listNamespacedPod(eq(namespace), isNull(), isNull(), isNull(), eq("status.phase=Running"),
+                eq("app=app"), eq(100), isNull(), isNull(), isNull(), isNull())).thenReturn(v1PodList);
+    }
+
+    private void verifyListRunningPods(String namespace, VerificationMode mode)
+            throws ApiException {
+        verify(coreV1Api, mode).listNamespacedPod(namespace, null, null,
+                null, "status.phase=Running", "app=app",
+                100, null, null
+                , null, null);
+    }
+
+    /**
+     * the changed keys are sent in a JSON merge patch, without reading the config map first
+     */
+    @Test
+    public void testPatchConfigMapSendsMergePatchOfChangedKeys() throws Exception {
+        String namespace = "default";
+        String name = "testConfigMap";
+        mockRunningPods(namespace, "localPodName");
+        ApiClient apiClient = mock(ApiClient.class);
+        when(coreV1Api.getApiClient()).thenReturn(apiClient);
+        when(apiClient.getHttpClient()).thenReturn(new OkHttpClient());
+        when(coreV1Api.patchNamespacedConfigMapCall(eq(name), eq(namespace), any(V1Patch.class),
+                isNull(), isNull(), isNull(), isNull(), isNull(), isNull()))
+                .thenAnswer(invocation -> {
+                    V1Patch patch = invocation.getArgument(2);
+                    // the content type set by the generated client, which is supposed to be replaced
+                    Request request = new Request.Builder()
+                            .url("http://localhost/api/v1/namespaces/" + namespace + "/configmaps/" + name)
+                            .patch(RequestBody.create(patch.getValue(), MediaType.parse(V1Patch.PATCH_FORMAT_JSON_PATCH)))
+                            .build();
+                    return new OkHttpClient().newCall(request);
+                });
+        ArgumentCaptor<Call> callCaptor = ArgumentCaptor.forClass(Call.class);
+        when(apiClient.execute(callCaptor.capture(), any(Type.class)))
+                .thenReturn(new ApiResponse<>(200, Collections.emptyMap(), new V1ConfigMap()));
+
+        Map<String, String> data = new LinkedHashMap<>();
+        data.put("someKey", "someValue");
+        data.put("anotherKey", "anotherValue");
+        assertTrue(kubernetesManager.patchConfigMap(namespace, name, data));
+
+        RequestBody body = callCaptor.getValue().request().body();
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        assertEquals(V1Patch.PATCH_FORMAT_JSON_MERGE_PATCH, body.contentType().toString());
+        assertEquals("{\"data\":{\"shards\":null,\"someKey\":\"someValue\",\"anotherKey\":\"anotherValue\"},"
+                + "\"binaryData\":{\"someKey\":null,\"anotherKey\":null}}", buffer.readUtf8());
+        verify(coreV1Api, never()).readNamespacedConfigMap(name, namespace, null);
+        verify(coreV1Api, never()).replaceNamespacedConfigMap(eq(name), eq(namespace), any(V1ConfigMap.class),
+                isNull(), isNull(), isNull(), isNull());
+    }
+
+    @Test
+    public void testPatchConfigMapSkippedByNotWritePod() throws Exception {
+        String namespace = "default";
+        String name = "testConfigMap";
+        kubernetesManager = new KubernetesManager(coreV1Api, "localPodName", 1);
+        mockRunningPods(namespace, "olderPodName", "localPodName");
+
+        assertTrue(kubernetesManager.patchConfigMap(namespace, name, Collections.singletonMap("key", "value")));
+
+        verify(coreV1Api, never()).patchNamespacedConfigMapCall(any(), any(), any(), any(), any(), any(), any(),
+                any(), any());
+    }
+
     /**
      * 测试ConfigMap存在时，checkConfigMapExist方法返回true
      */
@@ -51,6 +51,6 @@ class ConfigServiceLoadBalancerClientTest {
   void classTypeMatch() {
     ConfigServiceLoadBalancerClient loadBalancerClient =
         ServiceBootstrap.loadPrimary(ConfigServiceLoadBalancerClient.class);
-    assertTrue(loadBalancerClient instanceof RandomConfigServiceLoadBalancerClient);
+    assertTrue(loadBalancerClient instanceof LatencyAwareConfigServiceLoadBalancerClient);
   }
 }
\ No newline at end of file
@@ -26,7 +26,10 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
+import com.ctrip.framework.apollo.internals.ConfigRepository;
+import com.ctrip.framework.apollo.internals.MountedConfigMapConfigRepository;
 import com.ctrip.framework.apollo.internals.PropertiesCompatibleFileConfigRepository;
+import java.io.File;
 import java.util.Properties;
 
 import org.junit.After;
@@ -55,11 +58,13 @@ public class DefaultConfigFactoryTest {
   private DefaultConfigFactory defaultConfigFactory;
   private static String someAppId;
   private static Env someEnv;
+  private static String someMountPath;
 
   @Before
   public void setUp() throws Exception {
     someAppId = "someId";
     someEnv = Env.DEV;
+    someMountPath = null;
     MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
     defaultConfigFactory = spy(new DefaultConfigFactory());
   }
@@ -100,6 +105,20 @@ public class DefaultConfigFactoryTest {
     assertNull(ReflectionTestUtils.getField(localFileConfigRepository, "m_upstream"));
   }
 
+  @Test
+  public void testCreateMountedConfigMapConfigRepository() throws Exception {
+    String someNamespace = "someName";
+    someMountPath = "/etc/apollo/configcache";
+    LocalFileConfigRepository someLocalConfigRepo = mock(LocalFileConfigRepository.class);
+    doReturn(someLocalConfigRepo).when(defaultConfigFactory).createLocalConfigRepository(someAppId, someNamespace);
+
+    ConfigRepository configRepository = defaultConfigFactory.createConfigRepository(someAppId, someNamespace);
+
+    assertThat(configRepository, is(instanceOf(MountedConfigMapConfigRepository.class)));
+    assertEquals(new File(someMountPath), ReflectionTestUtils.getField(configRepository, "m_mountDir"));
+    assertEquals(someLocalConfigRepo, ReflectionTestUtils.getField(configRepository, "m_upstream"));
+  }
+
   @Test
   public void testCreatePropertiesCompatibleFileConfigRepository() throws Exception {
     ConfigFileFormat somePropertiesCompatibleFormat = ConfigFileFormat.YML;
@@ -122,6 +141,23 @@ public class DefaultConfigFactoryTest {
     assertEquals(someValue, result.getProperty(someKey, null));
   }
 
+  @Test
+  public void testCreateJsonConfig() throws Exception {
+    String someNamespace = "someName" + "." + ConfigFileFormat.JSON.getValue();
+    Properties someProperties = new Properties();
+    someProperties.setProperty("some.key", "someValue");
+
+    PropertiesCompatibleFileConfigRepository someRepository = mock(PropertiesCompatibleFileConfigRepository.class);
+    when(someRepository.getConfig()).thenReturn(someProperties);
+
+    doReturn(someRepository).when(defaultConfigFactory)
+        .createPropertiesCompatibleFileConfigRepository(someAppId, someNamespace, ConfigFileFormat.JSON);
+
+    Config result = defaultConfigFactory.create(someAppId, someNamespace);
+
+    assertEquals("someValue", result.getProperty("some.key", null));
+  }
+
   @Test
   public void testCreateConfigFile() throws Exception {
     String someNamespace = "someName";
@@ -225,6 +261,11 @@ public class DefaultConfigFactoryTest {
     public Env getApolloEnv() {
       return someEnv;
     }
+
+    @Override
+    public String getK8sConfigMapMountPath() {
+      return someMountPath;
+    }
   }
 
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.spi;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LatencyAwareConfigServiceLoadBalancerClientTest {
+
+  @Test
+  void chooseTheFasterOne() {
+    LatencyAwareConfigServiceLoadBalancerClient loadBalancerClient =
+        new LatencyAwareConfigServiceLoadBalancerClient();
+    ServiceDTO slow = assembleServiceDTO("http://slow");
+    ServiceDTO fast = assembleServiceDTO("http://fast");
+    List<ServiceDTO> configServices = Lists.newArrayList(slow, fast);
+
+    feed(loadBalancerClient, slow, 300, true);
+    feed(loadBalancerClient, fast, 10, true);
+
+    for (int i = 0; i < 100; i++) {
+      assertSame(fast, loadBalancerClient.chooseOneFrom(configServices));
+    }
+  }
+
+  @Test
+  void chooseTheNeverUsedOneFirst() {
+    LatencyAwareConfigServiceLoadBalancerClient loadBalancerClient =
+        new LatencyAwareConfigServiceLoadBalancerClient();
+    ServiceDTO used = assembleServiceDTO("http://used");
+    ServiceDTO neverUsed = assembleServiceDTO("http://neverUsed");
+
+    feed(loadBalancerClient, used, 1, true);
+
+    assertSame(neverUsed, loadBalancerClient.chooseOneFrom(Lists.newArrayList(used, neverUsed)));
+  }
+
+  @Test
+  void avoidTheFailingOne() {
+    LatencyAwareConfigServiceLoadBalancerClient loadBalancerClient =
+        new LatencyAwareConfigServiceLoadBalancerClient();
+    ServiceDTO failing = assembleServiceDTO("http://failing");
+    ServiceDTO healthy = assembleServiceDTO("http://healthy");
+
+    feed(loadBalancerClient, failing, 1, false);
+    feed(loadBalancerClient, healthy, 100, true);
+
+    assertSame(healthy, loadBalancerClient.chooseOneFrom(Lists.newArrayList(failing, healthy)));
+  }
+
+  @Test
+  void weightByInFlightRequests() {
+    LatencyAwareConfigServiceLoadBalancerClient loadBalancerClient =
+        new LatencyAwareConfigServiceLoadBalancerClient();
+    ServiceDTO busy = assembleServiceDTO("http://busy");
+    ServiceDTO idle = assembleServiceDTO("http://idle");
+    long now = System.currentTimeMillis();
+
+    feed(loadBalancerClient, busy, 10, true);
+    feed(loadBalancerClient, idle, 15, true);
+    double costBeforeBusy = loadBalancerClient.cost(busy, now);
+    for (int i = 0; i < 3; i++) {
+      loadBalancerClient.onRequestStart(busy);
+    }
+
+    assertTrue(loadBalancerClient.cost(busy, now) > costBeforeBusy);
+    assertSame(idle, loadBalancerClient.chooseOneFrom(Lists.newArrayList(busy, idle)));
+  }
+
+  @Test
+  void ignoreMeaninglessLatency() {
+    LatencyAwareConfigServiceLoadBalancerClient loadBalancerClient =
+        new LatencyAwareConfigServiceLoadBalancerClient();
+    ServiceDTO configService = assembleServiceDTO("http://someServer");
+    long now = System.currentTimeMillis();
+
+    feed(loadBalancerClient, configService, 10, true);
+    feed(loadBalancerClient, configService, -1, true);
+
+    assertTrue(loadBalancerClient.cost(configService, now) <= 10);
+  }
+
+  private static void feed(ConfigServiceLoadBalancerClient loadBalancerClient,
+      ServiceDTO configService, long latencyInMillis, boolean success) {
+    loadBalancerClient.onRequestStart(configService);
+    loadBalancerClient.onRequestComplete(configService, latencyInMillis, success);
+  }
+
+  private static ServiceDTO assembleServiceDTO(String homepageUrl) {
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setHomepageUrl(homepageUrl);
+    serviceDTO.setInstanceId(homepageUrl);
+    return serviceDTO;
+  }
+}
@@ -21,6 +21,7 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.ApolloClientSystemConsts;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Test;
 
@@ -40,6 +41,7 @@ public class ConfigUtilTest {
     System.clearProperty("apollo.readTimeout");
     System.clearProperty("apollo.refreshInterval");
     System.clearProperty("apollo.loadConfigQPS");
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_LOAD_CONFIG_GLOBAL_QPS);
     System.clearProperty("apollo.longPollQPS");
     System.clearProperty("apollo.configCacheSize");
     System.clearProperty("apollo.longPollingInitialDelayInMills");
@@ -48,7 +50,20 @@ public class ConfigUtilTest {
     System.clearProperty(PropertiesFactory.APOLLO_PROPERTY_ORDER_ENABLE);
     System.clearProperty(ApolloClientSystemConsts.APOLLO_PROPERTY_NAMES_CACHE_ENABLE);
     System.clearProperty(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_NAMESPACE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_MOUNT_PATH);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_SHARDS);
     System.clearProperty(ApolloClientSystemConsts.APOLLO_KUBERNETES_CACHE_ENABLE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_SHARED_ENABLE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_CONSOLIDATED_ENABLE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_BINARY_ENABLE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_BINARY_COMPRESSION_ENABLE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_FSYNC_ENABLE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_STARTUP_DEADLINE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_ENABLE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_MAX_AGE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_WARM_UP_ENABLE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_HEDGE_ENABLE);
+    System.clearProperty(ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_HEDGE_INITIAL_DELAY);
   }
 
   @Test
@@ -141,6 +156,29 @@ public class ConfigUtilTest {
     assertTrue(configUtil.getLoadConfigQPS() > 0);
   }
 
+  @Test
+  public void testCustomizeLoadConfigGlobalQPS() throws Exception {
+    int someQPS = 10;
+    System.setProperty(ApolloClientSystemConsts.APOLLO_LOAD_CONFIG_GLOBAL_QPS, String.valueOf(someQPS));
+
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertEquals(someQPS, configUtil.getLoadConfigGlobalQPS());
+  }
+
+  @Test
+  public void testCustomizeInvalidLoadConfigGlobalQPS() throws Exception {
+    int defaultQPS = new ConfigUtil().getLoadConfigGlobalQPS();
+
+    for (String someInvalidQPS : new String[]{"a", "0", "-1"}) {
+      System.setProperty(ApolloClientSystemConsts.APOLLO_LOAD_CONFIG_GLOBAL_QPS, someInvalidQPS);
+
+      ConfigUtil configUtil = new ConfigUtil();
+
+      assertEquals(defaultQPS, configUtil.getLoadConfigGlobalQPS());
+    }
+  }
+
   @Test
   public void testCustomizeLongPollQPS() throws Exception {
     int someQPS = 1;
@@ -263,6 +301,43 @@ public class ConfigUtilTest {
     assertEquals(ConfigConsts.KUBERNETES_CACHE_CONFIG_MAP_NAMESPACE_DEFAULT, configUtil.getK8sNamespace());
   }
 
+  @Test
+  public void testK8sConfigMapMountPathWithSystemProperty() {
+    String someMountPath = "/etc/apollo/configcache";
+
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_MOUNT_PATH, someMountPath);
+
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertEquals(someMountPath, configUtil.getK8sConfigMapMountPath());
+  }
+
+  @Test
+  public void testK8sConfigMapMountPathWithDefault() {
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertNull(configUtil.getK8sConfigMapMountPath());
+  }
+
+  @Test
+  public void testK8sConfigMapShards() {
+    int someShards = 4;
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_SHARDS, String.valueOf(someShards));
+
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertEquals(someShards, configUtil.getK8sConfigMapShards());
+  }
+
+  @Test
+  public void testK8sConfigMapShardsWithInvalidValue() {
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_KUBERNETES_SHARDS, "0");
+
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertEquals(1, configUtil.getK8sConfigMapShards());
+  }
+
   @Test
   public void testKubernetesCacheEnabledWithSystemProperty() {
     boolean someKubernetesCacheEnabled = true;
@@ -372,6 +447,142 @@ public class ConfigUtilTest {
     assertEquals(25, configUtil.getMonitorExceptionQueueSize()); // Default value
   }
 
+  @Test
+  public void testConfigServiceHedge() {
+    ConfigUtil configUtil = new ConfigUtil();
+    assertFalse(configUtil.isConfigServiceHedgeEnabled());
+    assertEquals(1000, configUtil.getConfigServiceHedgeInitialDelayInMillis());
+
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_HEDGE_ENABLE, "true");
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_HEDGE_INITIAL_DELAY, "200");
+    configUtil = new ConfigUtil();
+    assertTrue(configUtil.isConfigServiceHedgeEnabled());
+    assertEquals(200, configUtil.getConfigServiceHedgeInitialDelayInMillis());
+  }
+
+  @Test
+  public void testConfigServiceWarmUp() throws Exception {
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertFalse(configUtil.isConfigServiceWarmUpEnabled());
+
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CONFIG_SERVICE_WARM_UP_ENABLE, "true");
+
+    configUtil = new ConfigUtil();
+
+    assertTrue(configUtil.isConfigServiceWarmUpEnabled());
+  }
+
+  @Test
+  public void testCustomizeStaleWhileRevalidate() throws Exception {
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertFalse(configUtil.isStaleWhileRevalidateEnabled());
+    assertEquals(TimeUnit.DAYS.toSeconds(1), configUtil.getStaleWhileRevalidateMaxAgeInSeconds());
+
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_ENABLE,
+        "true");
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_MAX_AGE,
+        "3600");
+
+    configUtil = new ConfigUtil();
+
+    assertTrue(configUtil.isStaleWhileRevalidateEnabled());
+    assertEquals(3600, configUtil.getStaleWhileRevalidateMaxAgeInSeconds());
+  }
+
+  @Test
+  public void testCustomizeInvalidStaleWhileRevalidateMaxAge() throws Exception {
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_MAX_AGE,
+        "-1");
+
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertEquals(TimeUnit.DAYS.toSeconds(1), configUtil.getStaleWhileRevalidateMaxAgeInSeconds());
+  }
+
+  @Test
+  public void testCustomizeStartupDeadline() throws Exception {
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertEquals(0, configUtil.getStartupDeadlineInMillis());
+    assertEquals(Long.MAX_VALUE, configUtil.getStartupDeadlineRemainingInMillis());
+
+    System.setProperty(ApolloClientSystemConsts.APOLLO_STARTUP_DEADLINE, "60000");
+
+    configUtil = new ConfigUtil();
+
+    assertEquals(60000, configUtil.getStartupDeadlineInMillis());
+    long remaining = configUtil.getStartupDeadlineRemainingInMillis();
+    assertTrue(remaining > 0 && remaining <= 60000);
+  }
+
+  @Test
+  public void testStartupDeadlineExceeded() throws Exception {
+    System.setProperty(ApolloClientSystemConsts.APOLLO_STARTUP_DEADLINE, "1");
+
+    ConfigUtil configUtil = new ConfigUtil();
+    TimeUnit.MILLISECONDS.sleep(10);
+
+    assertEquals(0, configUtil.getStartupDeadlineRemainingInMillis());
+  }
+
+  @Test
+  public void testCacheFileFsyncEnabled() throws Exception {
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertFalse(configUtil.isCacheFileFsyncEnabled());
+
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_FSYNC_ENABLE, "true");
+
+    configUtil = new ConfigUtil();
+
+    assertTrue(configUtil.isCacheFileFsyncEnabled());
+  }
+
+  @Test
+  public void testCacheFileBinary() throws Exception {
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertFalse(configUtil.isCacheFileBinaryEnabled());
+    assertFalse(configUtil.isCacheFileBinaryCompressionEnabled());
+
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_BINARY_ENABLE, "true");
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_BINARY_COMPRESSION_ENABLE,
+        "true");
+
+    configUtil = new ConfigUtil();
+
+    assertTrue(configUtil.isCacheFileBinaryEnabled());
+    assertTrue(configUtil.isCacheFileBinaryCompressionEnabled());
+  }
+
+  @Test
+  public void testCacheFileConsolidated() throws Exception {
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertFalse(configUtil.isCacheFileConsolidatedEnabled());
+
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_CONSOLIDATED_ENABLE, "true");
+
+    configUtil = new ConfigUtil();
+
+    assertTrue(configUtil.isCacheFileConsolidatedEnabled());
+  }
+
+  @Test
+  public void testCacheFileShared() throws Exception {
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertFalse(configUtil.isCacheFileSharedEnabled());
+
+    System.setProperty(ApolloClientSystemConsts.APOLLO_CACHE_FILE_SHARED_ENABLE, "true");
+
+    configUtil = new ConfigUtil();
+
+    assertTrue(configUtil.isCacheFileSharedEnabled());
+  }
+
   @Test
   public void test() {
     ConfigUtil configUtil = new ConfigUtil();
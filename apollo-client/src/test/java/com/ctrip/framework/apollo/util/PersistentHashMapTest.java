@@ -0,0 +1,149 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class PersistentHashMapTest {
+
+  @Test
+  public void testPlusAndMinus() throws Exception {
+    PersistentHashMap<String, String> empty = PersistentHashMap.empty();
+    PersistentHashMap<String, String> someMap = empty.plus("k1", "v1").plus("k2", "v2");
+    PersistentHashMap<String, String> anotherMap = someMap.plus("k1", "v1'").minus("k2");
+
+    assertTrue(empty.isEmpty());
+    assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2"), someMap);
+    assertEquals(ImmutableMap.of("k1", "v1'"), anotherMap);
+    assertEquals("v1", someMap.get("k1"));
+    assertNull(anotherMap.get("k2"));
+    assertFalse(anotherMap.containsKey("k2"));
+    // no change, no copy
+    assertSame(someMap, someMap.plus("k1", "v1"));
+    assertSame(someMap, someMap.minus("k3"));
+    assertSame(empty, empty.plus("k1", "v1").minus("k1"));
+  }
+
+  @Test
+  public void testSameAsHashMap() throws Exception {
+    Random random = new Random(42);
+    Map<SomeKey, Integer> expected = Maps.newHashMap();
+    PersistentHashMap<SomeKey, Integer> map = PersistentHashMap.empty();
+    PersistentHashMap.Builder<SomeKey, Integer> builder = map.toBuilder();
+    for (int i = 0; i < 20000; i++) {
+      SomeKey key = new SomeKey(random.nextInt(5000));
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        map = map.minus(key);
+        builder.remove(key);
+      } else {
+        expected.put(key, i);
+        map = map.plus(key, i);
+        builder.put(key, i);
+      }
+    }
+
+    assertEquals(expected.size(), map.size());
+    assertEquals(expected, map);
+    assertEquals(map, expected);
+    assertEquals(expected.hashCode(), map.hashCode());
+    assertEquals(expected.size(), Maps.newHashMap(map).size());
+    assertEquals(expected, builder.build());
+    for (Map.Entry<SomeKey, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+  }
+
+  @Test
+  public void testStructureShared() throws Exception {
+    PersistentHashMap.Builder<String, String> builder = PersistentHashMap.<String, String>empty()
+        .toBuilder();
+    for (int i = 0; i < 1000; i++) {
+      builder.put("key" + i, "value" + i);
+    }
+    PersistentHashMap<String, String> someMap = builder.build();
+
+    PersistentHashMap<String, String> anotherMap = someMap.plus("key1", "anotherValue")
+        .minus("key2").plus("newKey", "newValue");
+
+    // the previous map is not affected
+    assertEquals(1000, someMap.size());
+    assertEquals("value1", someMap.get("key1"));
+    assertEquals("value2", someMap.get("key2"));
+    assertNull(someMap.get("newKey"));
+    assertEquals(1000, anotherMap.size());
+    assertEquals("anotherValue", anotherMap.get("key1"));
+    assertNull(anotherMap.get("key2"));
+    assertEquals("newValue", anotherMap.get("newKey"));
+    assertEquals("value3", anotherMap.get("key3"));
+  }
+
+  @Test
+  public void testBuilderNotAffectingBuiltMaps() throws Exception {
+    PersistentHashMap<String, String> someMap = PersistentHashMap.copyOf(
+        ImmutableMap.of("k1", "v1", "k2", "v2"));
+    PersistentHashMap.Builder<String, String> builder = someMap.toBuilder();
+
+    PersistentHashMap<String, String> anotherMap = builder.put("k3", "v3").remove("k1").build();
+    PersistentHashMap<String, String> yetAnotherMap = builder.put("k4", "v4").remove("k2").build();
+
+    assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2"), someMap);
+    assertEquals(ImmutableMap.of("k2", "v2", "k3", "v3"), anotherMap);
+    assertEquals(ImmutableMap.of("k3", "v3", "k4", "v4"), yetAnotherMap);
+    assertSame(someMap, PersistentHashMap.copyOf(someMap));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testImmutable() throws Exception {
+    PersistentHashMap.copyOf(Collections.singletonMap("k1", "v1")).put("k2", "v2");
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullValue() throws Exception {
+    PersistentHashMap.<String, String>empty().plus("k1", null);
+  }
+
+  private static class SomeKey {
+    private final int id;
+
+    SomeKey(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof SomeKey && ((SomeKey) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      // a narrow hash range to have collisions
+      return id % 1000;
+    }
+  }
+}
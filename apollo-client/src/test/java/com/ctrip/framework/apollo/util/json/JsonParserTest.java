@@ -0,0 +1,114 @@
+/*
+ * Copyright 2022 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.util.json;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.util.OrderedProperties;
+import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
+import com.ctrip.framework.apollo.util.yaml.YamlParser;
+import com.google.gson.JsonSyntaxException;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JsonParserTest {
+
+  private JsonParser parser;
+
+  @Before
+  public void setUp() throws Exception {
+    parser = new JsonParser();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MockInjector.reset();
+  }
+
+  @Test
+  public void testFlatten() throws Exception {
+    String someJson = "{\"root\": {"
+        + "\"string\": \"someValue\", \"int\": 100, \"float\": 1.50, \"exponent\": 1e3,"
+        + "\"boolean\": true, \"null\": null, \"emptyArray\": [], \"emptyObject\": {},"
+        + "\"list\": [\"a\", [\"b\", \"c\"], {\"key\": \"d\"}],"
+        + "\"[bracketed]\": \"e\", \"\": {\"blank\": \"f\"}}}";
+
+    Properties properties = parser.jsonToProperties(someJson);
+
+    assertEquals(12, properties.size());
+    assertEquals("someValue", properties.getProperty("root.string"));
+    assertEquals("100", properties.getProperty("root.int"));
+    // the numbers are kept as they are written
+    assertEquals("1.50", properties.getProperty("root.float"));
+    assertEquals("1e3", properties.getProperty("root.exponent"));
+    assertEquals("true", properties.getProperty("root.boolean"));
+    assertEquals("", properties.getProperty("root.null"));
+    assertEquals("a", properties.getProperty("root.list[0]"));
+    assertEquals("b", properties.getProperty("root.list[1][0]"));
+    assertEquals("c", properties.getProperty("root.list[1][1]"));
+    assertEquals("d", properties.getProperty("root.list[2].key"));
+    assertEquals("e", properties.getProperty("root[bracketed]"));
+    assertEquals("f", properties.getProperty("root..blank"));
+  }
+
+  @Test
+  public void testFlattenSameAsYaml() throws Exception {
+    String someJson = "{\"a\": {\"b\": [1, {\"c\": \"x\", \"d\": [true, null]}], \"\": {\"e\": \"y\"}},"
+        + " \" \": [\"z\"]}";
+
+    // json is a subset of yaml
+    assertEquals(new YamlParser().yamlToProperties(someJson), parser.jsonToProperties(someJson));
+  }
+
+  @Test
+  public void testDocumentNotObject() throws Exception {
+    assertEquals("someValue", parser.jsonToProperties("\"someValue\"").getProperty("document"));
+    assertEquals("b", parser.jsonToProperties("[\"a\", \"b\"]").getProperty("document[1]"));
+    assertTrue(parser.jsonToProperties("null").isEmpty());
+  }
+
+  @Test
+  public void testOrderedProperties() throws Exception {
+    PropertiesFactory propertiesFactory = mock(PropertiesFactory.class);
+    when(propertiesFactory.getPropertiesInstance()).thenReturn(new OrderedProperties());
+    MockInjector.setInstance(PropertiesFactory.class, propertiesFactory);
+    parser = new JsonParser();
+
+    Properties properties = parser.jsonToProperties("{\"k2\": \"v2\", \"k4\": {\"k3\": \"v3\"}, \"k1\": \"v1\"}");
+
+    assertTrue(properties instanceof OrderedProperties);
+    assertArrayEquals(new String[]{"k2", "k4.k3", "k1"},
+        properties.stringPropertyNames().toArray(new String[0]));
+  }
+
+  @Test(expected = JsonSyntaxException.class)
+  public void testInvalidJson() throws Exception {
+    parser.jsonToProperties("{\"someKey\": ");
+  }
+
+  @Test(expected = JsonSyntaxException.class)
+  public void testMultipleValues() throws Exception {
+    parser.jsonToProperties("{\"someKey\": \"someValue\"} {\"anotherKey\": \"anotherValue\"}");
+  }
+}
@@ -62,6 +62,37 @@ public class YamlParserTest {
     test("case5.yaml");
     test("case6.yaml");
     test("case7.yaml");
+    test("case10.yaml");
+  }
+
+  @Test
+  public void testLargeYaml() throws Exception {
+    StringBuilder yamlContent = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      yamlContent.append("service").append(i).append(":\n")
+          .append("  enabled: true\n")
+          .append("  timeout: 3000\n")
+          .append("  name: \"service ").append(i).append("\"\n")
+          .append("  endpoints:\n");
+      for (int j = 0; j < 3; j++) {
+        yamlContent.append("    - host: host").append(j).append(".example.com\n")
+            .append("      port: 808").append(j).append("\n");
+      }
+      yamlContent.append("  nested:\n")
+          .append("    deeper:\n")
+          .append("      key: some value\n")
+          .append("      other: ~\n");
+    }
+
+    check(yamlContent.toString());
+  }
+
+  @Test
+  public void testEmptyCollections() throws Exception {
+    Properties properties = parser.yamlToProperties("root:\n  emptyList: []\n  emptyMap: {}\n  key: value\n");
+
+    assertEquals(1, properties.size());
+    assertEquals("value", properties.getProperty("root.key"));
   }
 
   @Test(expected = DuplicateKeyException.class)
@@ -83,6 +83,21 @@ public class ApolloClientSystemConsts {
    */
   public static final String APOLLO_CACHE_KUBERNETES_NAMESPACE_ENVIRONMENT_VARIABLES = "APOLLO_CACHE_KUBERNETES_NAMESPACE";
 
+  /**
+   * the dir the kubernetes configmap cache is mounted to as a volume
+   */
+  public static final String APOLLO_CACHE_KUBERNETES_MOUNT_PATH = "apollo.cache.kubernetes.mount-path";
+
+  /**
+   * the dir the kubernetes configmap cache is mounted to as a volume environment variables
+   */
+  public static final String APOLLO_CACHE_KUBERNETES_MOUNT_PATH_ENVIRONMENT_VARIABLES = "APOLLO_CACHE_KUBERNETES_MOUNT_PATH";
+
+  /**
+   * the number of the kubernetes configmaps the cache of an app is sharded across
+   */
+  public static final String APOLLO_CACHE_KUBERNETES_SHARDS = "apollo.cache.kubernetes.shards";
+
   /**
    * apollo client access key
    */
@@ -137,6 +152,41 @@ public class ApolloClientSystemConsts {
   @Deprecated
   public static final String DEPRECATED_APOLLO_CONFIG_SERVICE_ENVIRONMENT_VARIABLES = "APOLLO_CONFIGSERVICE";
 
+  /**
+   * enable hedged config fetches across config service instances
+   */
+  public static final String APOLLO_CONFIG_SERVICE_HEDGE_ENABLE = "apollo.config-service.hedge.enable";
+
+  /**
+   * enable hedged config fetches environment variables
+   */
+  public static final String APOLLO_CONFIG_SERVICE_HEDGE_ENABLE_ENVIRONMENT_VARIABLES = "APOLLO_CONFIG_SERVICE_HEDGE_ENABLE";
+
+  /**
+   * hedge delay in milliseconds before enough latency samples are collected
+   */
+  public static final String APOLLO_CONFIG_SERVICE_HEDGE_INITIAL_DELAY = "apollo.config-service.hedge.initial-delay";
+
+  /**
+   * enable warming up the connections to the config services once they are located
+   */
+  public static final String APOLLO_CONFIG_SERVICE_WARM_UP_ENABLE = "apollo.config-service.warm-up.enable";
+
+  /**
+   * enable warming up the connections to the config services environment variables
+   */
+  public static final String APOLLO_CONFIG_SERVICE_WARM_UP_ENABLE_ENVIRONMENT_VARIABLES = "APOLLO_CONFIG_SERVICE_WARM_UP_ENABLE";
+
+  /**
+   * the time budget in milliseconds for the first load of all the namespaces at startup
+   */
+  public static final String APOLLO_STARTUP_DEADLINE = "apollo.startup.deadline";
+
+  /**
+   * the rate of loading configs shared by all the namespaces, in times per second
+   */
+  public static final String APOLLO_LOAD_CONFIG_GLOBAL_QPS = "apollo.loadConfigGlobalQPS";
+
   /**
    * enable property order
    */
@@ -167,6 +217,71 @@ public class ApolloClientSystemConsts {
    */
   public static final String APOLLO_CACHE_FILE_ENABLE_ENVIRONMENT_VARIABLES = "APOLLO_CACHE_FILE_ENABLE";
 
+  /**
+   * enable serving the local cache file at startup and revalidating it in the background
+   */
+  public static final String APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_ENABLE = "apollo.cache.file.stale-while-revalidate.enable";
+
+  /**
+   * enable serving the local cache file at startup environment variables
+   */
+  public static final String APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_ENABLE_ENVIRONMENT_VARIABLES = "APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_ENABLE";
+
+  /**
+   * max age in seconds of the local cache file to be served at startup
+   */
+  public static final String APOLLO_CACHE_FILE_STALE_WHILE_REVALIDATE_MAX_AGE = "apollo.cache.file.stale-while-revalidate.max-age";
+
+  /**
+   * enable flushing the local cache files to the storage device before replacing the old ones
+   */
+  public static final String APOLLO_CACHE_FILE_FSYNC_ENABLE = "apollo.cache.file.fsync.enable";
+
+  /**
+   * enable flushing the local cache files environment variables
+   */
+  public static final String APOLLO_CACHE_FILE_FSYNC_ENABLE_ENVIRONMENT_VARIABLES = "APOLLO_CACHE_FILE_FSYNC_ENABLE";
+
+  /**
+   * enable the binary format of the local cache files
+   */
+  public static final String APOLLO_CACHE_FILE_BINARY_ENABLE = "apollo.cache.file.binary.enable";
+
+  /**
+   * enable the binary format of the local cache files environment variables
+   */
+  public static final String APOLLO_CACHE_FILE_BINARY_ENABLE_ENVIRONMENT_VARIABLES = "APOLLO_CACHE_FILE_BINARY_ENABLE";
+
+  /**
+   * enable compressing the local cache files in the binary format
+   */
+  public static final String APOLLO_CACHE_FILE_BINARY_COMPRESSION_ENABLE = "apollo.cache.file.binary.compression.enable";
+
+  /**
+   * enable compressing the local cache files in the binary format environment variables
+   */
+  public static final String APOLLO_CACHE_FILE_BINARY_COMPRESSION_ENABLE_ENVIRONMENT_VARIABLES = "APOLLO_CACHE_FILE_BINARY_COMPRESSION_ENABLE";
+
+  /**
+   * enable keeping the local cache files of all the namespaces in a single log
+   */
+  public static final String APOLLO_CACHE_FILE_CONSOLIDATED_ENABLE = "apollo.cache.file.consolidated.enable";
+
+  /**
+   * enable keeping the local cache files of all the namespaces in a single log environment variables
+   */
+  public static final String APOLLO_CACHE_FILE_CONSOLIDATED_ENABLE_ENVIRONMENT_VARIABLES = "APOLLO_CACHE_FILE_CONSOLIDATED_ENABLE";
+
+  /**
+   * enable sharing the local cache dir with the other processes of the app on the same host
+   */
+  public static final String APOLLO_CACHE_FILE_SHARED_ENABLE = "apollo.cache.file.shared.enable";
+
+  /**
+   * enable sharing the local cache dir with the other processes of the app on the same host environment variables
+   */
+  public static final String APOLLO_CACHE_FILE_SHARED_ENABLE_ENVIRONMENT_VARIABLES = "APOLLO_CACHE_FILE_SHARED_ENABLE";
+
   /**
    * enable property names cache
    */
@@ -22,7 +22,13 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -69,6 +75,17 @@ public class MetaDomainConsts {
   // comma separated meta server address -> selected single meta server address cache
   private static final Map<String, String> selectedMetaServerAddressCache = Maps.newConcurrentMap();
   private static final AtomicBoolean periodicRefreshStarted = new AtomicBoolean(false);
+  // meta server address -> smoothed latency in milliseconds of the successful probes
+  private static final Map<String, Double> metaServerLatencyCache = Maps.newConcurrentMap();
+  private static final ExecutorService probeExecutorService = Executors.newCachedThreadPool(
+      ApolloThreadFactory.create("MetaServiceProbe", true));
+
+  // the connect and read timeout of a probe, also the deadline of probing all the addresses
+  private static final int PROBE_TIMEOUT_IN_MILLIS = 2000;
+  private static final double LATENCY_SMOOTHING_FACTOR = 0.5;
+  // switch to another meta server only if it takes at most half of the current one's latency
+  private static final double SWITCH_LATENCY_RATIO = 0.5;
+  private static final double MIN_SWITCH_IMPROVEMENT_IN_MILLIS = 10;
 
   private static final Object LOCK = new Object();
 
@@ -172,27 +189,25 @@ public class MetaDomainConsts {
     transaction.addData("Url", metaServerAddresses);
 
     try {
-      List<String> metaServers = Lists.newArrayList(metaServerAddresses.split(","));
+      List<String> metaServers = Lists.newArrayList();
+      for (String address : metaServerAddresses.split(",")) {
+        metaServers.add(address.trim());
+      }
       // random load balancing
       Collections.shuffle(metaServers);
 
-      boolean serverAvailable = false;
+      String currentAddress = selectedMetaServerAddressCache.get(metaServerAddresses);
+      String selectedAddress = probeMetaServers(metaServers, currentAddress);
+      boolean serverAvailable = selectedAddress != null;
 
-      for (String address : metaServers) {
-        address = address.trim();
-        //check whether /services/config is accessible
-        if (NetUtil.pingUrl(address + "/services/config")) {
-          // select the first available meta server
-          selectedMetaServerAddressCache.put(metaServerAddresses, address);
-          serverAvailable = true;
-          logger.debug("Selected meta server address {} for {}", address, metaServerAddresses);
-          break;
-        }
+      if (serverAvailable) {
+        selectedMetaServerAddressCache.put(metaServerAddresses, selectedAddress);
+        logger.debug("Selected meta server address {} for {}", selectedAddress, metaServerAddresses);
       }
 
       // we need to make sure the map is not empty, e.g. the first update might be failed
       if (!selectedMetaServerAddressCache.containsKey(metaServerAddresses)) {
-        selectedMetaServerAddressCache.put(metaServerAddresses, metaServers.get(0).trim());
+        selectedMetaServerAddressCache.put(metaServerAddresses, metaServers.get(0));
       }
 
       if (!serverAvailable) {
@@ -210,6 +225,95 @@ public class MetaDomainConsts {
     }
   }
 
+  /**
+   * Probe all the meta servers concurrently, i.e. check whether /services/config is accessible.
+   * <p>
+   * Without a selected meta server yet, the fastest healthy one is returned as soon as it answers.
+   * Otherwise all the probes are awaited, and the selected one is kept unless it is unhealthy or
+   * another one is meaningfully faster, so the periodic refresh doesn't flip between similar ones.
+   *
+   * @return the meta server to select, or null if none answered before the deadline
+   */
+  private static String probeMetaServers(List<String> metaServers, String currentAddress) {
+    CompletionService<String> completionService =
+        new ExecutorCompletionService<>(probeExecutorService);
+    for (final String address : metaServers) {
+      completionService.submit(new Callable<String>() {
+        @Override
+        public String call() {
+          return probeMetaServer(address) ? address : null;
+        }
+      });
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_IN_MILLIS);
+    List<String> healthyAddresses = Lists.newArrayList();
+    try {
+      for (int i = 0; i < metaServers.size(); i++) {
+        Future<String> future = completionService.poll(deadline - System.nanoTime(),
+            TimeUnit.NANOSECONDS);
+        if (future == null) {
+          // the others are too slow or unreachable
+          break;
+        }
+        String healthyAddress = future.get();
+        if (healthyAddress == null) {
+          continue;
+        }
+        if (currentAddress == null) {
+          return healthyAddress;
+        }
+        healthyAddresses.add(healthyAddress);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ex) {
+      // not expected as the probe never throws
+      logger.warn("Probing meta servers failed", ex);
+    }
+
+    String fastestAddress = null;
+    for (String address : healthyAddresses) {
+      if (fastestAddress == null || getLatency(address) < getLatency(fastestAddress)) {
+        fastestAddress = address;
+      }
+    }
+    if (fastestAddress == null || !healthyAddresses.contains(currentAddress)) {
+      return fastestAddress;
+    }
+
+    double currentLatency = getLatency(currentAddress);
+    double fastestLatency = getLatency(fastestAddress);
+    if (fastestLatency <= currentLatency * SWITCH_LATENCY_RATIO
+        && currentLatency - fastestLatency >= MIN_SWITCH_IMPROVEMENT_IN_MILLIS) {
+      logger.debug("Switch meta server from {}({} ms) to {}({} ms)", currentAddress,
+          currentLatency, fastestAddress, fastestLatency);
+      return fastestAddress;
+    }
+    return currentAddress;
+  }
+
+  private static boolean probeMetaServer(String address) {
+    long start = System.nanoTime();
+    if (!NetUtil.pingUrl(address + "/services/config", PROBE_TIMEOUT_IN_MILLIS)) {
+      metaServerLatencyCache.remove(address);
+      return false;
+    }
+    double latency = (System.nanoTime() - start) / 1_000_000.0;
+    Double previousLatency = metaServerLatencyCache.get(address);
+    if (previousLatency != null) {
+      latency = LATENCY_SMOOTHING_FACTOR * latency
+          + (1 - LATENCY_SMOOTHING_FACTOR) * previousLatency;
+    }
+    metaServerLatencyCache.put(address, latency);
+    return true;
+  }
+
+  private static double getLatency(String address) {
+    Double latency = metaServerLatencyCache.get(address);
+    return latency == null ? Double.MAX_VALUE : latency;
+  }
+
   private static void schedulePeriodicRefresh() {
     ScheduledExecutorService scheduledExecutorService =
         Executors.newScheduledThreadPool(1, ApolloThreadFactory.create("MetaServiceLocator", true));
@@ -218,9 +322,7 @@ public class MetaDomainConsts {
       @Override
       public void run() {
         try {
-          for (String metaServerAddresses : selectedMetaServerAddressCache.keySet()) {
-            updateMetaServerAddresses(metaServerAddresses);
-          }
+          refreshMetaServerAddresses();
         } catch (Throwable ex) {
           logger.warn("Refreshing meta server address failed, will retry in {} seconds", REFRESH_INTERVAL_IN_SECOND, ex);
         }
@@ -228,10 +330,17 @@ public class MetaDomainConsts {
     }, REFRESH_INTERVAL_IN_SECOND, REFRESH_INTERVAL_IN_SECOND, TimeUnit.SECONDS);
   }
 
+  static void refreshMetaServerAddresses() {
+    for (String metaServerAddresses : selectedMetaServerAddressCache.keySet()) {
+      updateMetaServerAddresses(metaServerAddresses);
+    }
+  }
+
   // for test only
   static void reset() {
     metaServerAddressCache.clear();
     selectedMetaServerAddressCache.clear();
+    metaServerLatencyCache.clear();
     metaServerProviders = null;
     periodicRefreshStarted.set(false);
   }
@@ -35,13 +35,20 @@ public class NetUtil {
    * ping the url, return true if ping ok, false otherwise
    */
   public static boolean pingUrl(String address) {
+    return pingUrl(address, DEFAULT_TIMEOUT_IN_SECONDS);
+  }
+
+  /**
+   * ping the url with the given connect and read timeout, return true if ping ok, false otherwise
+   */
+  public static boolean pingUrl(String address, int timeoutInMillis) {
     try {
       URL urlObj = new URL(address);
       HttpURLConnection connection = (HttpURLConnection) urlObj.openConnection();
       connection.setRequestMethod("GET");
       connection.setUseCaches(false);
-      connection.setConnectTimeout(DEFAULT_TIMEOUT_IN_SECONDS);
-      connection.setReadTimeout(DEFAULT_TIMEOUT_IN_SECONDS);
+      connection.setConnectTimeout(timeoutInMillis);
+      connection.setReadTimeout(timeoutInMillis);
       int statusCode = connection.getResponseCode();
       cleanUpConnection(connection);
       return (200 <= statusCode && statusCode <= 399);
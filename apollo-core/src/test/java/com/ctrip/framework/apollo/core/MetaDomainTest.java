@@ -23,19 +23,36 @@ import com.ctrip.framework.apollo.BaseIntegrationTest;
 import com.ctrip.framework.apollo.core.enums.Env;
 import com.ctrip.framework.apollo.core.internals.LegacyMetaServerProvider;
 import com.ctrip.framework.apollo.core.spi.MetaServerProvider;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.junit.After;
 import org.junit.Test;
 
 public class MetaDomainTest extends BaseIntegrationTest {
 
+  private final List<Server> servers = Lists.newArrayList();
+
   @Override
   @After
   public void tearDown() throws Exception {
     super.tearDown();
+    for (Server server : servers) {
+      server.stop();
+    }
     MockMetaServerProvider.clear();
+    MetaDomainConsts.reset();
   }
 
   @Test
@@ -72,6 +89,76 @@ public class MetaDomainTest extends BaseIntegrationTest {
     assertTrue(metaServer.equals(invalidServer.trim()) || metaServer.equals(anotherInvalidServer.trim()));
   }
 
+  @Test
+  public void testSelectFastestAddressWithoutWaitingForUnresponsiveOnes() throws Exception {
+    String fastServer = startServerWithDelay(new AtomicLong(0));
+    String slowServer = startServerWithDelay(new AtomicLong(300));
+
+    // accepts the connections but never responds
+    try (ServerSocket unresponsiveSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      String unresponsiveServer = "http://localhost:" + unresponsiveSocket.getLocalPort();
+
+      MockMetaServerProvider.mock(Env.FAT, unresponsiveServer + "," + slowServer + "," + fastServer);
+
+      long start = System.currentTimeMillis();
+      String metaServer = MetaDomainConsts.getDomain(Env.FAT);
+      long elapsed = System.currentTimeMillis() - start;
+
+      assertEquals(fastServer, metaServer);
+      assertTrue("selecting meta server took " + elapsed + " ms", elapsed < 1000);
+    }
+  }
+
+  @Test
+  public void testRefreshOnlySwitchesOnMeaningfulImprovement() throws Exception {
+    AtomicLong someDelay = new AtomicLong(0);
+    AtomicLong anotherDelay = new AtomicLong(200);
+    String someServer = startServerWithDelay(someDelay);
+    String anotherServer = startServerWithDelay(anotherDelay);
+
+    MockMetaServerProvider.mock(Env.FAT, someServer + "," + anotherServer);
+
+    assertEquals(someServer, MetaDomainConsts.getDomain(Env.FAT));
+
+    // slightly faster is not worth switching
+    someDelay.set(60);
+    anotherDelay.set(40);
+    refreshMetaServerAddresses(3);
+    assertEquals(someServer, MetaDomainConsts.getDomain(Env.FAT));
+
+    someDelay.set(300);
+    anotherDelay.set(0);
+    refreshMetaServerAddresses(3);
+    assertEquals(anotherServer, MetaDomainConsts.getDomain(Env.FAT));
+  }
+
+  private void refreshMetaServerAddresses(int times) {
+    for (int i = 0; i < times; i++) {
+      MetaDomainConsts.refreshMetaServerAddresses();
+    }
+  }
+
+  private String startServerWithDelay(final AtomicLong delayInMillis) throws Exception {
+    int port = findFreePort();
+    Server server = new Server(port);
+    server.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+          HttpServletResponse response) throws IOException {
+        try {
+          TimeUnit.MILLISECONDS.sleep(delayInMillis.get());
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        baseRequest.setHandled(true);
+      }
+    });
+    server.start();
+    servers.add(server);
+    return "http://localhost:" + port;
+  }
+
   public static class MockMetaServerProvider implements MetaServerProvider {
 
     private static Map<Env, String> mockMetaServerAddress = Maps.newHashMap();
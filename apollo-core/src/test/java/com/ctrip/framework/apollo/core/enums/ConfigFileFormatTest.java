@@ -128,5 +128,8 @@ public class ConfigFileFormatTest {
     assertTrue(ConfigFileFormat.isPropertiesCompatible(ConfigFileFormat.YAML));
     assertTrue(ConfigFileFormat.isPropertiesCompatible(ConfigFileFormat.YML));
     assertTrue(ConfigFileFormat.isPropertiesCompatible(ConfigFileFormat.Properties));
+    assertTrue(ConfigFileFormat.isPropertiesCompatible(ConfigFileFormat.JSON));
+    assertFalse(ConfigFileFormat.isPropertiesCompatible(ConfigFileFormat.XML));
+    assertFalse(ConfigFileFormat.isPropertiesCompatible(ConfigFileFormat.TXT));
   }
 }